@@ -1,26 +1,64 @@
 package it.unisa.biblioteca.controller;
 
 import it.unisa.biblioteca.model.*;
+import it.unisa.biblioteca.persistenza.ArchivioBiblioteca;
+import it.unisa.biblioteca.persistenza.ArchivioChiosco;
+import it.unisa.biblioteca.persistenza.ArchivioDatabase;
+import it.unisa.biblioteca.persistenza.EsportatoreArchivio;
+import it.unisa.biblioteca.persistenza.FlussoModifiche;
+import it.unisa.biblioteca.persistenza.ImportatoreCsvLibri;
+import it.unisa.biblioteca.persistenza.ImportatoreMarc21;
+import it.unisa.biblioteca.persistenza.IndiciRicerca;
+import it.unisa.biblioteca.persistenza.IntervalloDate;
+import it.unisa.biblioteca.persistenza.ModificheRemote;
+import it.unisa.biblioteca.persistenza.RiepilogoImportazione;
+import it.unisa.biblioteca.persistenza.SincronizzazioneAnagrafica;
 import it.unisa.biblioteca.view.*;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.cell.TextFieldTableCell;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.scene.Parent;
 import javafx.stage.StageStyle;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Controller principale.
@@ -33,19 +71,44 @@ import java.util.Optional;
  */
 public class BibliotecaController {
 
+    private static final String PROPRIETA_ARCHIVIO = "biblioteca.archivio";
+    private static final String FILE_DATABASE = "database_biblioteca";
+    private static final String PROPRIETA_FLUSSO_MODIFICHE = "biblioteca.flussoModifiche";
+
     private final Stage stage;
-    private final GestoreFile gestoreFile = new GestoreFile();
+    private final ArchivioBiblioteca gestoreFile = creaArchivio();
+    // true mentre si aggiungono alle liste oggetti letti dal backend (non sono modifiche da registrare)
+    private boolean sincronizzazioneSospesa = false;
+    // Ultimo gruppo di registrazioni di cui si attende l'esito (vedi registraGruppo)
+    private CompletableFuture<Void> gruppoAvvisato;
+    // Eventi di modifica per i sistemi di analisi (null se non richiesto)
+    private final FlussoModifiche flussoModifiche = creaFlussoModifiche();
+    // Caricamento dell'archivio in background: le liste vengono riempite solo quando è concluso
+    private Task<DatiCaricati> caricamento;
+    private final BooleanProperty datiPronti = new SimpleBooleanProperty(false);
+    // true mentre un file viene importato nel catalogo o nell'anagrafica
+    private boolean importazioneInCorso = false;
 
     private ObservableList<Libro> catalogo = FXCollections.observableArrayList();
     private ObservableList<Utente> anagrafica = FXCollections.observableArrayList();
     private ObservableList<Prestito> prestiti = FXCollections.observableArrayList();
+    // Indici per le ricerche in catalogo e anagrafica, aggiornati insieme alle liste
+    private IndiciRicerca indici = new IndiciRicerca();
+
+    private final SalvataggioAutomatico salvataggioAutomatico = new SalvataggioAutomatico(
+            () -> gestoreFile.getModificheNonSalvate(),
+            () -> gestoreFile.salvaInBackground(catalogo, anagrafica, prestiti),
+            () -> gestoreFile.compattaInBackground(catalogo, anagrafica, prestiti),
+            () -> gestoreFile.sincronizza());
 
     /**
      * Costruttore del controller
      * <p>
      *     Inizializza lo stage che viene passato come parametro.
-     *     Si occupa di effettuare il caricamento del file dati all'avvio del programma ({@link caricaTutto})
-     *     e si occupa di effettuare il salvataggio automatico in caso di tentativo di chiusura del programma ({@link salvaTutto})
+     *     Avvia il caricamento del file dati ({@link caricaTutto}) su un thread in background, così la Home
+     *     viene mostrata subito qualunque sia la dimensione dell'archivio ({@link #avviaCaricamento}),
+     *     e si occupa di effettuare il salvataggio automatico in caso di tentativo di chiusura del programma ({@link salvaTutto}).
+     *     Durante l'uso i dati vengono salvati periodicamente in background ({@link SalvataggioAutomatico}).
      *
      * </p>
      * @param stage stage da caricare passato come parametro
@@ -55,13 +118,420 @@ public class BibliotecaController {
     public BibliotecaController(Stage stage) {
         this.stage = stage;
 
-        gestoreFile.caricaTutto(catalogo, anagrafica, prestiti);
+        avviaCaricamento();
+        stage.setOnCloseRequest(event -> salvaEChiudi());
+    }
+
+    /**
+     * Dati letti dal thread di caricamento, non ancora collegati all'interfaccia.
+     */
+    private static class DatiCaricati {
+        final ObservableList<Libro> libri = FXCollections.observableArrayList();
+        final ObservableList<Utente> utenti = FXCollections.observableArrayList();
+        final ObservableList<Prestito> prestiti = FXCollections.observableArrayList();
+        final IndiciRicerca indici = new IndiciRicerca();
+        boolean archivioVuoto;
+    }
+
+    /**
+     * Avvia il caricamento dell'archivio su un thread in background
+     * <p>
+     *     I dati vengono letti in liste separate, non ancora visibili all'interfaccia; a caricamento concluso
+     *     {@link #attendiCaricamento} le copia nelle liste osservabili sul thread JavaFX, collega il journal
+     *     e abilita i pulsanti della Home. Le tre sezioni diventano disponibili insieme: i prestiti fanno
+     *     riferimento a libri e utenti, e i controlli sull'eliminazione di un libro o di un utente
+     *     richiedono i prestiti già letti.
+     * </p>
+     */
+    private void avviaCaricamento() {
+        // Il backend resta quello scelto all'avvio anche se nel frattempo il campo viene sostituito (test)
+        ArchivioBiblioteca archivio = gestoreFile;
+        caricamento = new Task<DatiCaricati>() {
+            @Override
+            protected DatiCaricati call() {
+                if (archivio instanceof ArchivioDatabase) importaArchivioFile((ArchivioDatabase) archivio);
+                DatiCaricati dati = new DatiCaricati();
+                archivio.caricaTutto(dati.libri, dati.utenti, dati.prestiti);
+                // Gli indici di ricerca si costruiscono qui, non sul thread JavaFX
+                for (Libro l : dati.libri) dati.indici.aggiungiLibro(l);
+                for (Utente u : dati.utenti) dati.indici.aggiungiUtente(u);
+                for (Prestito p : dati.prestiti) dati.indici.aggiungiPrestito(p);
+                dati.archivioVuoto = !archivio.isSolaLettura() && archivio.libri().conta() == 0 && archivio.utenti().conta() == 0;
+                return dati;
+            }
+        };
+        caricamento.setOnSucceeded(e -> attendiCaricamento());
+        caricamento.setOnFailed(e -> attendiCaricamento());
+        Thread thread = new Thread(caricamento, "caricamento-biblioteca");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        if (catalogo.isEmpty() && anagrafica.isEmpty()) {
+    /**
+     * Attende la fine del caricamento in background e ne applica i dati (sul thread JavaFX)
+     * <p>
+     *     Chiamato a caricamento concluso e alla chiusura del programma, se avviene prima. Le liste vengono
+     *     riempite prima di collegare il journal, così i dati letti non vengono registrati come modifiche.
+     *     Se il caricamento fallisce i pulsanti restano disabilitati e l'archivio su disco non viene toccato.
+     * </p>
+     */
+    void attendiCaricamento() {
+        if (datiPronti.get() || caricamento == null) return;
+        DatiCaricati dati;
+        try {
+            dati = caricamento.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            System.err.println("Errore caricamento archivio: " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+            caricamento = null;
+            showAlert("Errore caricamento", "Impossibile leggere l'archivio: " + e.getCause().getMessage());
+            return;
+        }
+        catalogo.setAll(dati.libri);
+        anagrafica.setAll(dati.utenti);
+        prestiti.setAll(dati.prestiti);
+        indici = dati.indici;
+        registraListenerIndici();
+
+        // Da qui in poi ogni inserimento/rimozione viene registrato nel journal
+        registraListenerJournal();
+        // Le modifiche di altre postazioni e gli esiti delle scritture in background arrivano sul thread JavaFX
+        gestoreFile.setAscoltatoreModificheRemote(this::applicaModificheRemote, Platform::runLater);
+
+        if (dati.archivioVuoto) {
             inizializzaDatiProva();
         }
 
-        stage.setOnCloseRequest(event -> gestoreFile.salvaTutto(catalogo, anagrafica, prestiti));
+        salvataggioAutomatico.avvia();
+        datiPronti.set(true);
+    }
+
+    /**
+     * Sceglie il backend di memorizzazione.
+     * <p>
+     *     Di norma i dati sono tenuti in memoria e salvati su file binario + journal ({@link GestoreFile}).
+     *     Con {@code -Dbiblioteca.archivio=database} sono invece tenuti in un database H2 incorporato
+     *     ({@link ArchivioDatabase}), adatto agli archivi molto grandi: all'avvio si legge solo una parte
+     *     fissa dei dati e le ricerche vengono eseguite dal database. Al primo avvio in questa modalità
+     *     l'archivio su file, se presente, viene importato nel database ({@link #importaArchivioFile}).
+     *     Con {@code -Dbiblioteca.archivio=chiosco} il programma diventa un terminale di ricerca in sola lettura
+     *     ({@link ArchivioChiosco}) sul catalogo pubblicato dal banco prestiti, avviato con
+     *     {@code -Dbiblioteca.catalogoCondiviso=true} nella stessa cartella.
+     *     Più banchi prestiti possono lavorare sullo stesso archivio su file avviandoli tutti con
+     *     {@code -Dbiblioteca.condiviso=true} ({@link GestoreFile#PROPRIETA_CONDIVISO}).
+     * </p>
+     * @return il backend da usare
+     */
+    private static ArchivioBiblioteca creaArchivio() {
+        String archivio = System.getProperty(PROPRIETA_ARCHIVIO);
+        if ("chiosco".equals(archivio)) {
+            return new ArchivioChiosco(new File(GestoreFile.FILE_CATALOGO));
+        }
+        if (!"database".equals(archivio)) {
+            return new GestoreFile();
+        }
+        try {
+            return new ArchivioDatabase(new File(FILE_DATABASE));
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage() + " Uso l'archivio su file.");
+            return new GestoreFile();
+        }
+    }
+
+    /**
+     * Apre il flusso delle modifiche, se richiesto
+     * <p>
+     *     Con {@code -Dbiblioteca.flussoModifiche=modifiche.jsonl} ogni libro, utente o prestito creato,
+     *     modificato o eliminato viene scritto come evento numerato in quel file ({@link FlussoModifiche}).
+     *     Se il file non può essere aperto il programma funziona comunque, senza eventi.
+     * </p>
+     * @return il flusso, o null se non richiesto
+     */
+    private static FlussoModifiche creaFlussoModifiche() {
+        String file = System.getProperty(PROPRIETA_FLUSSO_MODIFICHE);
+        if (file == null || file.isEmpty()) return null;
+        try {
+            return new FlussoModifiche(new File(file));
+        } catch (IOException e) {
+            System.err.println("Impossibile aprire il flusso delle modifiche: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Importa nel database ancora vuoto l'archivio su file, se presente (eseguito dal thread di caricamento)
+     * @param database il database appena aperto
+     */
+    private static void importaArchivioFile(ArchivioDatabase database) {
+        if (database.libri().conta() > 0 || database.utenti().conta() > 0) return;
+        GestoreFile archivioFile = new GestoreFile();
+        ObservableList<Libro> libri = FXCollections.observableArrayList();
+        ObservableList<Utente> utenti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestiti = FXCollections.observableArrayList();
+        archivioFile.caricaTutto(libri, utenti, prestiti);
+        archivioFile.chiudi();
+        if (!libri.isEmpty() || !utenti.isEmpty()) {
+            database.importa(libri, utenti, prestiti);
+            System.out.println("Archivio su file importato nel database.");
+        }
+    }
+
+    /**
+     * Aggiunge alle liste osservabili gli oggetti trovati dal backend che non sono già presenti
+     * <p>
+     *     Serve quando il backend carica solo una parte dei dati: i risultati di una ricerca entrano
+     *     nelle liste senza essere registrati di nuovo come modifiche. Con un backend in sola lettura
+     *     la lista viene sostituita dai risultati, così la disponibilità mostrata è sempre quella attuale.
+     * </p>
+     * @param lista lista osservabile da completare
+     * @param trovati oggetti restituiti dal backend
+     */
+    private <T> void aggiungiDalBackend(ObservableList<T> lista, List<T> trovati) {
+        Set<T> presenti = new HashSet<>(lista);
+        List<T> nuovi = new java.util.ArrayList<>();
+        for (T t : trovati) if (presenti.add(t)) nuovi.add(t);
+        sincronizzazioneSospesa = true;
+        try {
+            if (gestoreFile.isSolaLettura()) lista.setAll(trovati);
+            else lista.addAll(nuovi);
+        } finally {
+            sincronizzazioneSospesa = false;
+        }
+    }
+
+    /**
+     * Riporta nelle liste osservabili le modifiche arrivate da altre postazioni
+     * <p>
+     *     Gli oggetti aggiornati sono già stati modificati dal backend: vengono solo risostituiti nella lista,
+     *     così le tabelle li ridisegnano. Nulla di tutto questo viene registrato di nuovo come modifica.
+     *     I conflitti con le modifiche fatte da questa postazione vengono mostrati all'operatore; le modifiche
+     *     locali annullate dal conflitto arrivano qui come le altre (es. un prestito rimosso).
+     * </p>
+     * @param modifiche modifiche lette dal backend
+     */
+    private void applicaModificheRemote(ModificheRemote modifiche) {
+        sincronizzazioneSospesa = true;
+        try {
+            catalogo.removeAll(modifiche.getLibriRimossi());
+            catalogo.addAll(modifiche.getLibriAggiunti());
+            ridisegna(catalogo, modifiche.getLibriAggiornati());
+            anagrafica.removeAll(modifiche.getUtentiRimossi());
+            anagrafica.addAll(modifiche.getUtentiAggiunti());
+            ridisegna(anagrafica, modifiche.getUtentiAggiornati());
+            prestiti.removeAll(modifiche.getPrestitiRimossi());
+            prestiti.addAll(modifiche.getPrestitiAggiunti());
+        } finally {
+            sincronizzazioneSospesa = false;
+        }
+        if (!modifiche.getConflitti().isEmpty()) {
+            showAlert("Modifiche da un'altra postazione", String.join("\n", modifiche.getConflitti()));
+        }
+    }
+
+    private <T> void ridisegna(ObservableList<T> lista, List<T> aggiornati) {
+        for (T t : aggiornati) {
+            int i = lista.indexOf(t);
+            if (i >= 0) lista.set(i, t);
+        }
+    }
+
+    /**
+     * Salvataggio finale alla chiusura del programma.
+     * <p>
+     *     Ferma il salvataggio automatico e attende che tutte le modifiche in coda siano scritte su disco.
+     *     Se il caricamento è ancora in corso ne attende la fine: salvare le liste ancora vuote
+     *     cancellerebbe l'archivio.
+     * </p>
+     */
+    private void salvaEChiudi() {
+        salvataggioAutomatico.ferma();
+        attendiCaricamento();
+        if (datiPronti.get()) {
+            gestoreFile.salvaTutto(catalogo, anagrafica, prestiti);
+        }
+        gestoreFile.chiudi();
+        if (flussoModifiche != null) flussoModifiche.close();
+    }
+
+    /**
+     * Collega le liste osservabili al backend di memorizzazione ({@link ArchivioBiblioteca})
+     * <p>
+     *     Ogni libro, utente o prestito aggiunto o rimosso dalle liste viene registrato
+     *     nel backend nel momento stesso in cui avviene. Le modifiche ai campi di un oggetto
+     *     (titolo, disponibilità, email...) non sono osservabili dalla lista e vanno quindi
+     *     registrate esplicitamente con {@link #registraLibro} e {@link #registraUtente}.
+     *     Ogni modifica registrata diventa anche un evento del flusso delle modifiche, se attivo.
+     *     Tutte le modifiche di un cambiamento della lista (es. un lotto importato) formano un unico gruppo
+     *     ({@link #registraGruppo}).
+     * </p>
+     */
+    private void registraListenerJournal() {
+        catalogo.addListener((ListChangeListener<Libro>) c -> registraGruppo(() -> {
+            while (c.next()) {
+                if (c.wasPermutated() || sincronizzazioneSospesa) continue;
+                for (Libro l : c.getRemoved()) {
+                    gestoreFile.registraRimozioneLibro(l);
+                    if (flussoModifiche != null) flussoModifiche.libro(FlussoModifiche.Tipo.LIBRO_ELIMINATO, l);
+                }
+                for (Libro l : c.getAddedSubList()) registraLibro(l, FlussoModifiche.Tipo.LIBRO_CREATO);
+            }
+        }));
+        anagrafica.addListener((ListChangeListener<Utente>) c -> registraGruppo(() -> {
+            while (c.next()) {
+                if (c.wasPermutated() || sincronizzazioneSospesa) continue;
+                for (Utente u : c.getRemoved()) {
+                    gestoreFile.registraRimozioneUtente(u);
+                    if (flussoModifiche != null) flussoModifiche.utente(FlussoModifiche.Tipo.UTENTE_ELIMINATO, u);
+                }
+                for (Utente u : c.getAddedSubList()) {
+                    gestoreFile.registraUtente(u);
+                    if (flussoModifiche != null) flussoModifiche.utente(FlussoModifiche.Tipo.UTENTE_CREATO, u);
+                }
+            }
+        }));
+        prestiti.addListener((ListChangeListener<Prestito>) c -> registraGruppo(() -> {
+            while (c.next()) {
+                if (c.wasPermutated() || sincronizzazioneSospesa) continue;
+                for (Prestito p : c.getRemoved()) {
+                    gestoreFile.registraRimozionePrestito(p);
+                    if (flussoModifiche != null) flussoModifiche.prestito(FlussoModifiche.Tipo.PRESTITO_CHIUSO, p);
+                }
+                for (Prestito p : c.getAddedSubList()) {
+                    gestoreFile.registraPrestito(p);
+                    if (flussoModifiche != null) flussoModifiche.prestito(FlussoModifiche.Tipo.PRESTITO_APERTO, p);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Registra nel backend, come un unico gruppo, le modifiche fatte da {@code registrazioni}
+     * <p>
+     *     Con più postazioni il gruppo viene scritto in background con un solo blocco e un solo fsync.
+     *     Se la scrittura fallisce l'operatore viene avvisato: le modifiche restano in memoria e vengono
+     *     riprovate. Una modifica rifiutata (es. l'ultima copia presa da un'altra postazione) è già stata
+     *     annullata dal backend e viene solo segnalata.
+     * </p>
+     * @param registrazioni registrazioni del gruppo
+     * @return la scrittura del gruppo, completata sul thread JavaFX
+     */
+    private CompletableFuture<Void> registraGruppo(Runnable registrazioni) {
+        CompletableFuture<Void> esito = gestoreFile.inGruppo(registrazioni);
+        // I gruppi annidati fanno parte di quello esterno: l'avviso va dato una volta sola
+        if (esito == gruppoAvvisato) return esito;
+        gruppoAvvisato = esito;
+        esito.whenComplete((nulla, errore) -> {
+            if (errore instanceof IllegalStateException) {
+                showAlert("Attenzione", errore.getMessage());
+            } else if (errore != null) {
+                showAlert("Errore salvataggio", "Modifiche non ancora salvate nell'archivio, verranno riprovate: " + errore.getMessage());
+            }
+        });
+        return esito;
+    }
+
+    /**
+     * Tiene gli indici di ricerca allineati al catalogo, all'anagrafica e ai prestiti
+     * <p>
+     *     A differenza del journal gli indici seguono anche gli inserimenti arrivati dal backend o da altre
+     *     postazioni. Le modifiche ai campi di un oggetto già in lista vengono reindicizzate da
+     *     {@link #registraLibro} e {@link #registraUtente}; quelle di altre postazioni sostituiscono
+     *     l'oggetto nella lista ({@link #applicaModificheRemote}) e vengono reindicizzate da qui.
+     * </p>
+     */
+    private void registraListenerIndici() {
+        catalogo.addListener((ListChangeListener<Libro>) c -> {
+            while (c.next()) {
+                if (c.wasPermutated()) continue;
+                for (Libro l : c.getRemoved()) indici.rimuoviLibro(l);
+                for (Libro l : c.getAddedSubList()) indici.aggiungiLibro(l);
+            }
+        });
+        anagrafica.addListener((ListChangeListener<Utente>) c -> {
+            while (c.next()) {
+                if (c.wasPermutated()) continue;
+                for (Utente u : c.getRemoved()) indici.rimuoviUtente(u);
+                for (Utente u : c.getAddedSubList()) indici.aggiungiUtente(u);
+            }
+        });
+        prestiti.addListener((ListChangeListener<Prestito>) c -> {
+            while (c.next()) {
+                if (c.wasPermutated()) continue;
+                for (Prestito p : c.getRemoved()) indici.rimuoviPrestito(p);
+                for (Prestito p : c.getAddedSubList()) indici.aggiungiPrestito(p);
+            }
+        });
+    }
+
+    /**
+     * Cerca un libro per ISBN
+     * <p>
+     *     L'unico accesso per chiave è il repository del backend: con l'archivio su file è una mappa hash
+     *     allineata alle liste, a costo costante; con un caricamento parziale il libro può non essere in lista
+     *     e il backend lo cerca da sé.
+     * </p>
+     * @param isbn ISBN esatto
+     * @return il libro, se presente
+     */
+    private Optional<Libro> trovaLibro(String isbn) {
+        return gestoreFile.libri().trova(isbn);
+    }
+
+    /**
+     * Cerca un utente per matricola (come {@link #trovaLibro})
+     * @param matricola matricola esatta
+     * @return l'utente, se presente
+     */
+    private Optional<Utente> trovaUtente(String matricola) {
+        return gestoreFile.utenti().trova(matricola);
+    }
+
+    /**
+     * Restituisce i prestiti di un libro
+     * <p>
+     *     Con le liste complete li legge dall'indice dei prestiti per libro, a costo costante; con un
+     *     caricamento parziale li chiede al backend.
+     * </p>
+     * @param libro il libro
+     * @return i prestiti del libro
+     */
+    private Collection<Prestito> prestitiDelLibro(Libro libro) {
+        if (gestoreFile.isCaricamentoParziale()) return gestoreFile.prestitiDelLibro(libro.getIsbn());
+        return indici.prestitiDelLibro(libro.getIsbn());
+    }
+
+    /**
+     * Restituisce i prestiti di un utente (come {@link #prestitiDelLibro})
+     * @param utente l'utente
+     * @return i prestiti dell'utente
+     */
+    private Collection<Prestito> prestitiDellUtente(Utente utente) {
+        if (gestoreFile.isCaricamentoParziale()) return gestoreFile.prestitiDellUtente(utente.getMatricola());
+        return indici.prestitiDellUtente(utente.getMatricola());
+    }
+
+    /**
+     * Registra la modifica di un libro nel backend, negli indici di ricerca e nel flusso delle modifiche
+     * @param libro libro modificato
+     * @param tipo tipo di modifica da riportare nel flusso
+     */
+    private void registraLibro(Libro libro, FlussoModifiche.Tipo tipo) {
+        registraGruppo(() -> gestoreFile.registraLibro(libro));
+        if (tipo == FlussoModifiche.Tipo.LIBRO_MODIFICATO) indici.aggiornaLibro(libro);
+        if (flussoModifiche != null) flussoModifiche.libro(tipo, libro);
+    }
+
+    /**
+     * Registra la modifica dei dati di un utente nel backend, negli indici di ricerca e nel flusso delle modifiche
+     * @param utente utente modificato
+     */
+    private void registraUtente(Utente utente) {
+        registraGruppo(() -> gestoreFile.registraUtente(utente));
+        indici.aggiornaUtente(utente);
+        if (flussoModifiche != null) flussoModifiche.utente(FlussoModifiche.Tipo.UTENTE_MODIFICATO, utente);
     }
 
     /**
@@ -114,15 +584,69 @@ public class BibliotecaController {
         view.getBtnUtenti().setOnAction(e -> mostraUtenti());
         view.getBtnPrestiti().setOnAction(e -> mostraPrestiti());
         view.getBtnInfo().setOnAction(e -> mostraInfo());
+        view.getBtnEsporta().setOnAction(e -> esportaArchivio());
+        // Libri, Utenti e Prestiti restano disabilitati finché l'archivio non è caricato
+        view.caricamentoInCorsoProperty().bind(datiPronti.not());
+        // Sul terminale di ricerca c'è solo il catalogo
+        view.setSoloCatalogo(gestoreFile.isSolaLettura());
         view.getBtnEsci().setOnAction(e -> {
             // Salva i dati e chiude (chiama la funzione che già fa il salvataggio)
-            gestoreFile.salvaTutto(catalogo, anagrafica, prestiti);
+            salvaEChiudi();
             System.exit(0);
         });
         // SOSTITUISCI TUTTA LA LOGICA DI SCENE/SCREEN CON QUESTA RIGA:
         cambiaVista(view, "Gestionale Biblioteca - Home");
     }
 
+    /**
+     * Esporta libri, utenti e prestiti in CSV o JSON lines in una cartella scelta dall'operatore
+     * <p>
+     *     La scrittura avviene in background ({@link EsportatoreArchivio}) e l'interfaccia resta utilizzabile.
+     *     Qui si copiano solo i riferimenti agli oggetti delle liste (non i dati), così il thread
+     *     dell'esportazione non scorre liste che nel frattempo possono cambiare.
+     *     Con un backend a caricamento parziale i dati vengono letti dal backend stesso; il database li scrive
+     *     direttamente dalle sue righe, senza caricarli in memoria.
+     * </p>
+     */
+    private void esportaArchivio() {
+        ChoiceDialog<EsportatoreArchivio.Formato> sceltaFormato = new ChoiceDialog<>(EsportatoreArchivio.Formato.CSV,
+                EsportatoreArchivio.Formato.values());
+        sceltaFormato.setTitle("Esporta dati");
+        sceltaFormato.setHeaderText("Formato dei file (libri, utenti, prestiti):");
+        Optional<EsportatoreArchivio.Formato> formato = sceltaFormato.showAndWait();
+        if (!formato.isPresent()) return;
+        DirectoryChooser sceltaCartella = new DirectoryChooser();
+        sceltaCartella.setTitle("Cartella di destinazione");
+        File cartella = sceltaCartella.showDialog(stage);
+        if (cartella == null) return;
+
+        ArchivioBiblioteca archivio = gestoreFile;
+        boolean parziale = archivio.isCaricamentoParziale();
+        List<Libro> libri = parziale ? null : Arrays.asList(catalogo.toArray(new Libro[0]));
+        List<Utente> utenti = parziale ? null : Arrays.asList(anagrafica.toArray(new Utente[0]));
+        List<Prestito> elencoPrestiti = parziale ? null : Arrays.asList(prestiti.toArray(new Prestito[0]));
+        long inizio = System.nanoTime();
+        Task<Long> esportazione = new Task<Long>() {
+            @Override
+            protected Long call() throws Exception {
+                EsportatoreArchivio esportatore = new EsportatoreArchivio(formato.get());
+                if (!parziale) return esportatore.esporta(cartella, libri, utenti, elencoPrestiti);
+                if (archivio instanceof ArchivioDatabase) return ((ArchivioDatabase) archivio).esporta(esportatore, cartella);
+                return esportatore.esporta(cartella, archivio.libri().intervallo(null, null),
+                        archivio.utenti().intervallo(null, null), archivio.prestiti().intervallo(null, null));
+            }
+        };
+        esportazione.setOnSucceeded(e -> showAlert("Esportazione completata", esportazione.getValue() + " record esportati in "
+                + cartella + " (" + (System.nanoTime() - inizio) / 1_000_000 + " ms)."));
+        esportazione.setOnFailed(e -> {
+            System.err.println("Errore esportazione: " + esportazione.getException().getMessage());
+            showAlert("Errore esportazione", "Impossibile esportare i dati: " + esportazione.getException().getMessage());
+        });
+        Thread thread = new Thread(esportazione, "esportazione-archivio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     // --- GESTIONE LIBRI ---
 
     /**
@@ -136,6 +660,14 @@ public class BibliotecaController {
      */
     public void mostraLibri() {
         LibriView view = new LibriView(catalogo);
+        if (gestoreFile.isSolaLettura()) {
+            // Terminale di ricerca: il catalogo si consulta soltanto
+            view.getBtnNuovo().setDisable(true);
+            view.getBtnImporta().setDisable(true);
+            view.getBtnElimina().setDisable(true);
+            view.getBtnPiu().setDisable(true);
+            view.getBtnMeno().setDisable(true);
+        }
 
         FilteredList<Libro> filteredData = new FilteredList<>(catalogo, b -> true);
 
@@ -175,29 +707,37 @@ public class BibliotecaController {
                 filteredData.setPredicate(p -> true);
                 return;
             }
-            String lower = filter.toLowerCase();
             String crit = view.getCmbCriterio().getValue();
-            filteredData.setPredicate(libro -> {
-                switch (crit) {
-                    case "Titolo": return libro.getTitolo().toLowerCase().contains(lower);
-                    case "ISBN": return libro.getIsbn().toLowerCase().contains(lower);
-                    case "Autore": return libro.getAutori().toString().toLowerCase().contains(lower);
-                    case "Anno": return String.valueOf(libro.getDataPubblicazione().getYear()).contains(lower);
-                    default: return false;
+            if (crit.equals("Anno")) {
+                // Un anno, un intervallo di anni o di date: ricerca sull'indice ordinato per data
+                IntervalloDate intervallo;
+                try {
+                    intervallo = IntervalloDate.leggi(filter);
+                } catch (IllegalArgumentException ex) {
+                    showAlert("Ricerca per anno", ex.getMessage());
+                    return;
                 }
-            });
+                if (gestoreFile.isCaricamentoParziale()) aggiungiDalBackend(catalogo, gestoreFile.cercaLibriPubblicatiTra(intervallo));
+                Set<Libro> pubblicati = new HashSet<>(indici.libriPubblicatiTra(intervallo));
+                filteredData.setPredicate(pubblicati::contains);
+                return;
+            }
+            if (gestoreFile.isCaricamentoParziale()) aggiungiDalBackend(catalogo, gestoreFile.cercaLibri(crit, filter));
+            // Titolo e ISBN: testo in qualunque punto; autori: parole che iniziano con quelle cercate
+            Set<Libro> trovati = indici.cercaLibri(crit, filter);
+            filteredData.setPredicate(libro -> trovati != null && trovati.contains(libro));
         });
 
         view.getBtnIndietro().setOnAction(e -> mostraHome());
         view.getBtnNuovo().setOnAction(e -> mostraAggiungiLibro());
+        view.getBtnImporta().setOnAction(e -> importaCatalogo());
 
         view.getBtnElimina().setOnAction(e -> {
             Libro selezionato = view.getTabella().getSelectionModel().getSelectedItem();
             if (selezionato == null) { showAlert("Attenzione", "Seleziona un libro."); return; }
 
             // Controllo integrità
-            boolean inPrestito = false;
-            for (Prestito p : prestiti) if (p.getLibro().equals(selezionato)) { inPrestito = true; break; }
+            boolean inPrestito = !prestitiDelLibro(selezionato).isEmpty();
             if (inPrestito) { showAlert("Impossibile Eliminare", "Libro attualmente in prestito."); return; }
 
             if (confermaAzione("Elimina Libro", "Eliminare '" + selezionato.getTitolo() + "'?")) {
@@ -207,13 +747,13 @@ public class BibliotecaController {
 
         view.getBtnPiu().setOnAction(e -> {
             Libro l = view.getTabella().getSelectionModel().getSelectedItem();
-            if (l != null) { l.incrementaDisponibilita(); view.refresh(); }
+            if (l != null) { l.incrementaDisponibilita(); registraLibro(l, FlussoModifiche.Tipo.COPIE_INCREMENTATE); view.refresh(); }
         });
 
         view.getBtnMeno().setOnAction(e -> {
             Libro l = view.getTabella().getSelectionModel().getSelectedItem();
             if (l != null) {
-                try { l.decrementaDisponibilita(); view.refresh(); }
+                try { l.decrementaDisponibilita(); registraLibro(l, FlussoModifiche.Tipo.COPIE_DECREMENTATE); view.refresh(); }
                 catch (IllegalStateException ex) { showAlert("Attenzione", ex.getMessage()); }
             }
         });
@@ -221,7 +761,7 @@ public class BibliotecaController {
         ///Sezione per la gestione di editing dati dalla table
 
 
-        view.getTabella().setEditable(true);
+        view.getTabella().setEditable(!gestoreFile.isSolaLettura());
 
         // Colonna titolo
         TableColumn<Libro, String> colTitolo = (TableColumn<Libro, String>) view.getTabella().getColumns().get(0);
@@ -231,6 +771,7 @@ public class BibliotecaController {
             String nuovoTitolo = event.getNewValue();
             try {
                 libro.setTitolo(nuovoTitolo); // Validazione dati della classe LIBRO
+                registraLibro(libro, FlussoModifiche.Tipo.LIBRO_MODIFICATO);
             } catch (IllegalArgumentException ex) {
                 showAlert("Errore Modifica", ex.getMessage());
                 view.getTabella().refresh(); // Ripristina il valore vecchio
@@ -249,6 +790,7 @@ public class BibliotecaController {
                 // Pulisco spazi extra
                 listaAutori.replaceAll(String::trim);
                 libro.setAutori(listaAutori);
+                registraLibro(libro, FlussoModifiche.Tipo.LIBRO_MODIFICATO);
             } catch (IllegalArgumentException ex) {
                 showAlert("Errore Autori", ex.getMessage());
                 view.getTabella().refresh();
@@ -317,9 +859,13 @@ public class BibliotecaController {
                 if (!isbn.matches("\\d{13}")) {
                     throw new IllegalArgumentException("L'ISBN deve essere composto da 13 cifre esatte.");
                 }
+                // Stessa regola dell'importazione da file: un ISBN con la cifra di controllo errata è un errore di battitura
+                if (ImportatoreCsvLibri.cifraControlloIsbn(isbn) != isbn.charAt(12)) {
+                    throw new IllegalArgumentException("La cifra di controllo dell'ISBN è errata: verificare il codice.");
+                }
                 // Controllo duplicati
-                for (Libro l : catalogo) {
-                    if (l.getIsbn().equals(isbn)) throw new IllegalArgumentException("Esiste già un libro con questo ISBN.");
+                if (trovaLibro(isbn).isPresent()) {
+                    throw new IllegalArgumentException("Esiste già un libro con questo ISBN.");
                 }
                 if (!copie.matches("\\d+")) {
                     throw new IllegalArgumentException("Il campo 'Copie' deve contenere un numero valido.");
@@ -346,6 +892,90 @@ public class BibliotecaController {
         cambiaVista(view, "Gestionale Biblioteca - Aggiungi Libro");
     }
 
+    /**
+     * Importa in blocco nel catalogo i libri di un file scelto dall'operatore
+     * <p>
+     *     Il file può essere un CSV ({@link ImportatoreCsvLibri}) o un file MARC21 dell'ufficio acquisti
+     *     ({@link ImportatoreMarc21}), riconosciuto dall'estensione. Viene letto e validato in background,
+     *     con gli stessi controlli della schermata di inserimento. I duplicati si riconoscono con un indice hash degli ISBN
+     *     già in catalogo, preparato qui: il thread dell'importazione non tocca le liste.
+     *     I libri nuovi entrano nel catalogo a lotti ({@link #aggiungiLotto}), con una sola notifica della lista
+     *     per lotto, e vengono registrati dal listener del journal come quelli inseriti a mano.
+     *     Con il database i lotti vengono invece scritti direttamente, una transazione per lotto, e finiscono
+     *     nel flusso delle modifiche come gli inserimenti a mano.
+     *     Al termine viene mostrato il riepilogo, con i primi errori trovati.
+     * </p>
+     */
+    private void importaCatalogo() {
+        if (importazioneInCorso) { showAlert("Attenzione", "Un'importazione è già in corso."); return; }
+        FileChooser scelta = new FileChooser();
+        scelta.setTitle("Importa catalogo");
+        scelta.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("File CSV (titolo, autori, data, ISBN, copie)", "*.csv"),
+                new FileChooser.ExtensionFilter("File MARC21", "*.mrc", "*.marc"));
+        File file = scelta.showOpenDialog(stage);
+        if (file == null) return;
+        String nome = file.getName().toLowerCase();
+        boolean marc = nome.endsWith(".mrc") || nome.endsWith(".marc");
+
+        ArchivioBiblioteca archivio = gestoreFile;
+        Predicate<String> isbnPresente;
+        if (archivio.isCaricamentoParziale()) {
+            isbnPresente = isbn -> archivio.libri().trova(isbn).isPresent();
+        } else {
+            // Copia per il thread dell'importazione, che non deve leggere le strutture del thread JavaFX
+            Set<String> presenti = new HashSet<>(catalogo.size() * 2);
+            for (Libro l : catalogo) presenti.add(l.getIsbn());
+            isbnPresente = presenti::contains;
+        }
+        Task<RiepilogoImportazione> importazione = new Task<RiepilogoImportazione>() {
+            @Override
+            protected RiepilogoImportazione call() throws Exception {
+                Consumer<List<Libro>> destinazione = lotto -> {
+                    if (archivio instanceof ArchivioDatabase) {
+                        // Il lotto non passa dalle liste: gli eventi si registrano qui (il flusso accetta più thread)
+                        ((ArchivioDatabase) archivio).importa(lotto, Collections.emptyList(), Collections.emptyList());
+                        if (flussoModifiche != null) {
+                            for (Libro l : lotto) flussoModifiche.libro(FlussoModifiche.Tipo.LIBRO_CREATO, l);
+                        }
+                    } else {
+                        Platform.runLater(() -> aggiungiLotto(lotto));
+                    }
+                };
+                try (InputStream sorgente = new FileInputStream(file)) {
+                    if (marc) return new ImportatoreMarc21().importa(sorgente, isbnPresente, destinazione);
+                    return new ImportatoreCsvLibri().importa(new InputStreamReader(sorgente, StandardCharsets.UTF_8), isbnPresente, destinazione);
+                }
+            }
+        };
+        // I lotti sono già in coda sul thread JavaFX: il riepilogo arriva dopo l'ultimo
+        importazione.setOnSucceeded(e -> {
+            importazioneInCorso = false;
+            mostraRiepilogo("Libri", importazione.getValue());
+        });
+        importazione.setOnFailed(e -> {
+            importazioneInCorso = false;
+            System.err.println("Errore importazione: " + importazione.getException().getMessage());
+            showAlert("Errore importazione", "Impossibile importare il file: " + importazione.getException().getMessage());
+        });
+        importazioneInCorso = true;
+        Thread thread = new Thread(importazione, "importazione-catalogo");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Aggiunge al catalogo un lotto di libri importati (sul thread JavaFX)
+     * <p>
+     *     Un libro inserito a mano dopo l'inizio dell'importazione non viene aggiunto una seconda volta.
+     * </p>
+     * @param lotto libri validati dall'importazione
+     */
+    private void aggiungiLotto(List<Libro> lotto) {
+        lotto.removeIf(l -> trovaLibro(l.getIsbn()).isPresent());
+        catalogo.addAll(lotto);
+    }
+
     // --- GESTIONE UTENTI ---
 
     /**
@@ -393,25 +1023,21 @@ public class BibliotecaController {
         view.getBtnCerca().setOnAction(e -> {
             String filter = view.getTxtRicerca().getText();
             if (filter == null || filter.isEmpty()) { filteredData.setPredicate(p -> true); return; }
-            String lower = filter.toLowerCase();
             String crit = view.getCmbCriterio().getValue();
-            filteredData.setPredicate(u -> {
-                if (crit.equals("Cognome")) return u.getCognome().toLowerCase().contains(lower);
-                if (crit.equals("Matricola")) return u.getMatricola().toLowerCase().contains(lower);
-                if (crit.equals("Email")) return u.getEmail().toLowerCase().contains(lower);
-                return false;
-            });
+            if (gestoreFile.isCaricamentoParziale()) aggiungiDalBackend(anagrafica, gestoreFile.cercaUtenti(crit, filter));
+            Set<Utente> trovati = indici.cercaUtenti(crit, filter);
+            filteredData.setPredicate(u -> trovati != null && trovati.contains(u));
         });
 
         view.getBtnIndietro().setOnAction(e -> mostraHome());
         view.getBtnNuovo().setOnAction(e -> mostraAggiungiUtente());
+        view.getBtnSincronizza().setOnAction(e -> sincronizzaElencoStudenti());
 
         view.getBtnElimina().setOnAction(e -> {
             Utente selezionato = view.getTabella().getSelectionModel().getSelectedItem();
             if (selezionato == null) { showAlert("Attenzione", "Seleziona un utente."); return; }
 
-            boolean haPrestiti = false;
-            for (Prestito p : prestiti) if (p.getUtente().equals(selezionato)) { haPrestiti = true; break; }
+            boolean haPrestiti = !prestitiDellUtente(selezionato).isEmpty();
             if (haPrestiti) { showAlert("Errore", "Utente ha prestiti attivi."); return; }
 
             if (confermaAzione("Elimina Utente", "Eliminare " + selezionato.getNome() + "?")) {
@@ -429,6 +1055,7 @@ public class BibliotecaController {
             String nuovoNome = event.getNewValue();
             try{
                 utente.setNome(nuovoNome);
+                registraUtente(utente);
             }
             catch(IllegalArgumentException ex){
                 showAlert("Errore modifica", ex.getMessage());
@@ -445,6 +1072,7 @@ public class BibliotecaController {
             String nuovoCognome = event.getNewValue();
             try{
                 utente.setCognome(nuovoCognome);
+                registraUtente(utente);
             }
             catch(IllegalArgumentException ex){
                 showAlert("Errore modifica", ex.getMessage());
@@ -461,6 +1089,7 @@ public class BibliotecaController {
             String nuovaEmail = event.getNewValue();
             try{
                 utente.setEmail(nuovaEmail);
+                registraUtente(utente);
             }
             catch(IllegalArgumentException ex){
                 showAlert("Errore modifica", ex.getMessage());
@@ -511,7 +1140,7 @@ public class BibliotecaController {
                 String matr = view.getTxtMatricola().getText().trim();
                 if (!matr.matches("\\d{1,10}")) throw new IllegalArgumentException("Matricola deve essere composto da sole 10 CIFRE");
 
-                for(Utente u : anagrafica) if(u.getMatricola().equals(matr)) throw new IllegalArgumentException("Matricola esistente.");
+                if (trovaUtente(matr).isPresent()) throw new IllegalArgumentException("Matricola esistente.");
 
                 anagrafica.add(new Utente(view.getTxtNome().getText(), view.getTxtCognome().getText(), matr, view.getTxtEmail().getText()));
                 mostraUtenti();
@@ -520,6 +1149,118 @@ public class BibliotecaController {
         cambiaVista(view, "Gestionale Biblioteca - Aggiungi Utente");
     }
 
+    /**
+     * Allinea l'anagrafica all'elenco completo degli studenti inviato dalla segreteria (file CSV)
+     * <p>
+     *     Il file viene letto e confrontato con l'anagrafica per matricola in background
+     *     ({@link SincronizzazioneAnagrafica}), usando un indice hash preparato qui. Poi, sul thread JavaFX,
+     *     vengono applicate solo le differenze: i dati cambiati vengono aggiornati e gli studenti nuovi entrano
+     *     con una sola aggiunta alla lista; tutto viene registrato insieme (con il database, in una sola transazione).
+     *     Gli utenti che non compaiono nell'elenco non vengono toccati. Al termine viene mostrato il riepilogo.
+     * </p>
+     */
+    private void sincronizzaElencoStudenti() {
+        if (importazioneInCorso) { showAlert("Attenzione", "Un'importazione è già in corso."); return; }
+        FileChooser scelta = new FileChooser();
+        scelta.setTitle("Sincronizza elenco studenti");
+        scelta.getExtensionFilters().add(new FileChooser.ExtensionFilter("File CSV (matricola, nome, cognome, email)", "*.csv"));
+        File file = scelta.showOpenDialog(stage);
+        if (file == null) return;
+
+        ArchivioBiblioteca archivio = gestoreFile;
+        Function<String, Utente> esistente;
+        if (archivio.isCaricamentoParziale()) {
+            esistente = matricola -> archivio.utenti().trova(matricola).orElse(null);
+        } else {
+            // Copia per il thread del confronto, come per l'importazione del catalogo
+            Map<String, Utente> presenti = new HashMap<>(anagrafica.size() * 2);
+            for (Utente u : anagrafica) presenti.put(u.getMatricola(), u);
+            esistente = presenti::get;
+        }
+        Task<SincronizzazioneAnagrafica.Differenze> confronto = new Task<SincronizzazioneAnagrafica.Differenze>() {
+            @Override
+            protected SincronizzazioneAnagrafica.Differenze call() throws Exception {
+                try (Reader sorgente = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    return SincronizzazioneAnagrafica.confronta(sorgente, esistente);
+                }
+            }
+        };
+        confronto.setOnSucceeded(e -> {
+            importazioneInCorso = false;
+            RiepilogoImportazione riepilogo = applicaElencoStudenti(confronto.getValue());
+            mostraUtenti();
+            mostraRiepilogo("Studenti", riepilogo);
+        });
+        confronto.setOnFailed(e -> {
+            importazioneInCorso = false;
+            System.err.println("Errore sincronizzazione anagrafica: " + confronto.getException().getMessage());
+            showAlert("Errore sincronizzazione", "Impossibile leggere l'elenco: " + confronto.getException().getMessage());
+        });
+        importazioneInCorso = true;
+        Thread thread = new Thread(confronto, "sincronizzazione-anagrafica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Applica all'anagrafica le differenze trovate nell'elenco degli studenti (sul thread JavaFX)
+     * @param differenze differenze trovate da {@link SincronizzazioneAnagrafica#confronta}
+     * @return il riepilogo completo della sincronizzazione
+     */
+    private RiepilogoImportazione applicaElencoStudenti(SincronizzazioneAnagrafica.Differenze differenze) {
+        RiepilogoImportazione riepilogo = differenze.getRiepilogo();
+        // Si ricontrolla ogni matricola: uno studente inserito a mano durante il confronto va aggiornato, non inserito
+        List<Utente> letti = new java.util.ArrayList<>(differenze.getAggiornati());
+        letti.addAll(differenze.getNuovi());
+        List<Utente> nuovi = new java.util.ArrayList<>();
+        List<Utente> modificati = new java.util.ArrayList<>();
+        for (Utente letto : letti) {
+            Optional<Utente> presente = trovaUtente(letto.getMatricola());
+            if (!presente.isPresent()) {
+                nuovi.add(letto);
+            } else if (SincronizzazioneAnagrafica.aggiorna(presente.get(), letto)) {
+                modificati.add(presente.get());
+            } else {
+                riepilogo.duplicato();
+            }
+        }
+        if (gestoreFile instanceof ArchivioDatabase) {
+            // Aggiornati e nuovi nella stessa transazione: il MERGE sulla matricola li distingue da sé
+            List<Utente> daScrivere = new java.util.ArrayList<>(modificati);
+            daScrivere.addAll(nuovi);
+            ((ArchivioDatabase) gestoreFile).importa(Collections.emptyList(), daScrivere, Collections.emptyList());
+            for (Utente u : modificati) {
+                indici.aggiornaUtente(u);
+                if (flussoModifiche != null) flussoModifiche.utente(FlussoModifiche.Tipo.UTENTE_MODIFICATO, u);
+            }
+            if (flussoModifiche != null) {
+                for (Utente u : nuovi) flussoModifiche.utente(FlussoModifiche.Tipo.UTENTE_CREATO, u);
+            }
+        } else {
+            // Un solo gruppo: con più postazioni, un solo blocco e un solo fsync per tutto l'elenco
+            registraGruppo(() -> {
+                for (Utente u : modificati) registraUtente(u);
+                anagrafica.addAll(nuovi);
+            });
+        }
+        riepilogo.importati(nuovi.size());
+        riepilogo.aggiornati(modificati.size());
+        return riepilogo;
+    }
+
+    /**
+     * Mostra il riepilogo di un'importazione, con i primi errori trovati
+     * @param cosa cosa è stato importato (es. "Libri")
+     * @param riepilogo conteggi ed errori
+     */
+    private void mostraRiepilogo(String cosa, RiepilogoImportazione riepilogo) {
+        StringBuilder testo = new StringBuilder(cosa + ": " + riepilogo + ".");
+        List<String> errori = riepilogo.getErrori();
+        for (int i = 0; i < Math.min(10, errori.size()); i++) testo.append("\n").append(errori.get(i));
+        if (riepilogo.getScartati() > 10) testo.append("\n...");
+        showAlert("Importazione completata", testo.toString());
+    }
+
     // --- GESTIONE PRESTITI ---
 
     /**
@@ -570,13 +1311,26 @@ public class BibliotecaController {
                 filteredData.setPredicate(p -> true);
                 return;
             }
-            String lower = filter.toLowerCase();
             String crit = view.getCmbCriterio().getValue();
-            filteredData.setPredicate(p -> {
-                if (crit.startsWith("Utente")) return p.getUtente().getCognome().toLowerCase().contains(lower);
-                if (crit.startsWith("Libro")) return p.getLibro().getTitolo().toLowerCase().contains(lower);
-                return false;
-            });
+            if (gestoreFile.isCaricamentoParziale()) {
+                // Utenti e libri dei prestiti trovati dal backend possono mancare dalle liste (e dagli indici)
+                aggiungiDalBackend(prestiti, gestoreFile.cercaPrestiti(crit, filter));
+                String lower = filter.toLowerCase();
+                filteredData.setPredicate(p -> {
+                    if (crit.startsWith("Utente")) return p.getUtente().getCognome().toLowerCase().contains(lower);
+                    if (crit.startsWith("Libro")) return p.getLibro().getTitolo().toLowerCase().contains(lower);
+                    return false;
+                });
+            } else if (crit.startsWith("Utente")) {
+                // Si cercano cognomi e titoli negli indici, poi si tengono i prestiti di quegli utenti o libri
+                Set<Utente> utenti = indici.cercaUtenti("Cognome", filter);
+                filteredData.setPredicate(p -> utenti.contains(p.getUtente()));
+            } else if (crit.startsWith("Libro")) {
+                Set<Libro> libri = indici.cercaLibri("Titolo", filter);
+                filteredData.setPredicate(p -> libri.contains(p.getLibro()));
+            } else {
+                filteredData.setPredicate(p -> false);
+            }
         });
 
         view.getBtnIndietro().setOnAction(e -> mostraHome());
@@ -587,6 +1341,9 @@ public class BibliotecaController {
             if (selezionato == null) { showAlert("Attenzione", "Seleziona un prestito."); return; }
             if (confermaAzione("Elimina Prestito", "Rimuovere dallo storico?")) {
                 selezionato.getLibro().incrementaDisponibilita();
+                registraLibro(selezionato.getLibro(), FlussoModifiche.Tipo.COPIE_INCREMENTATE);
+                // Il prestito chiuso non conta più nel limite dell'utente
+                selezionato.getUtente().rimuoviPrestito(selezionato);
                 prestiti.remove(selezionato);
             }
         });
@@ -624,13 +1381,10 @@ public class BibliotecaController {
         view.getBtnCercaUtente().setOnAction(e -> {
             String filter = view.getTxtSearchUtente().getText();
             if (filter == null || filter.isEmpty()) { filteredUtenti.setPredicate(p -> true); return; }
-            String lower = filter.toLowerCase();
             String crit = view.getCmbFilterUtente().getValue();
-            filteredUtenti.setPredicate(u -> {
-                if (crit.equals("Cognome")) return u.getCognome().toLowerCase().contains(lower);
-                if (crit.equals("Matricola")) return u.getMatricola().toLowerCase().contains(lower);
-                return false;
-            });
+            if (gestoreFile.isCaricamentoParziale()) aggiungiDalBackend(anagrafica, gestoreFile.cercaUtenti(crit, filter));
+            Set<Utente> trovati = indici.cercaUtenti(crit, filter);
+            filteredUtenti.setPredicate(u -> trovati != null && trovati.contains(u));
         });
 
         // 2. LIBRI (Destra)
@@ -646,13 +1400,10 @@ public class BibliotecaController {
         view.getBtnCercaLibro().setOnAction(e -> {
             String filter = view.getTxtSearchLibro().getText();
             if (filter == null || filter.isEmpty()) { filteredLibri.setPredicate(p -> true); return; }
-            String lower = filter.toLowerCase();
             String crit = view.getCmbFilterLibro().getValue();
-            filteredLibri.setPredicate(l -> {
-                if (crit.equals("Titolo")) return l.getTitolo().toLowerCase().contains(lower);
-                if (crit.equals("ISBN")) return l.getIsbn().toLowerCase().contains(lower);
-                return false;
-            });
+            if (gestoreFile.isCaricamentoParziale()) aggiungiDalBackend(catalogo, gestoreFile.cercaLibri(crit, filter));
+            Set<Libro> trovati = indici.cercaLibri(crit, filter);
+            filteredLibri.setPredicate(l -> trovati != null && trovati.contains(l));
         });
 
         view.getBtnAnnulla().setOnAction(e -> mostraPrestiti());
@@ -668,7 +1419,13 @@ public class BibliotecaController {
                     Prestito p = new Prestito(u, l, LocalDate.now());
                     u.aggiungiPrestito(p);
                     l.decrementaDisponibilita();
-                    prestiti.add(p);
+                    // Il prestito resta in memoria anche se la scrittura va riprovata: il modulo si chiude subito,
+                    // così non si registra due volte. Un rifiuto (ultima copia presa da un'altra postazione)
+                    // o un errore di scrittura vengono segnalati da registraGruppo quando arriva l'esito.
+                    registraGruppo(() -> {
+                        registraLibro(l, FlussoModifiche.Tipo.COPIE_DECREMENTATE);
+                        prestiti.add(p);
+                    });
                     showAlert("Successo", "Prestito registrato!");
                     mostraPrestiti();
                 } else {
@@ -854,7 +1611,9 @@ public class BibliotecaController {
                 autoriLibro = Arrays.asList(autore1);
             }
 
-            String isbn = String.format("97888%08d", i * 1234);
+            // ISBN con cifra di controllo valida, come quelli accettati dall'inserimento e dall'importazione
+            String primeCifre = String.format("97888%07d", i * 1234);
+            String isbn = primeCifre + ImportatoreCsvLibri.cifraControlloIsbn(primeCifre);
             LocalDate dataPub = LocalDate.now().minusYears(rand.nextInt(20)).minusDays(rand.nextInt(365));
             int copie = 3 + rand.nextInt(8);
 
@@ -890,6 +1649,7 @@ public class BibliotecaController {
                 try {
                     u.aggiungiPrestito(p);
                     l.decrementaDisponibilita();
+                    registraLibro(l, FlussoModifiche.Tipo.COPIE_DECREMENTATE);
                     prestiti.add(p);
                 } catch (Exception e) {
                     // Ignoro errori di validazione (es. utente ha già questo libro specifico)
@@ -1,94 +1,1392 @@
 package it.unisa.biblioteca.controller;
 
+import it.unisa.biblioteca.model.ContatoreModifiche;
 import it.unisa.biblioteca.model.Libro;
 import it.unisa.biblioteca.model.Prestito;
 import it.unisa.biblioteca.model.Utente;
+import it.unisa.biblioteca.persistenza.ArchivioBiblioteca;
+import it.unisa.biblioteca.persistenza.BloccoArchivio;
+import it.unisa.biblioteca.persistenza.CatalogoMappato;
+import it.unisa.biblioteca.persistenza.ChiavePrestito;
+import it.unisa.biblioteca.persistenza.ContenutoArchivio;
+import it.unisa.biblioteca.persistenza.FileSezione;
+import it.unisa.biblioteca.persistenza.JournalModifiche;
+import it.unisa.biblioteca.persistenza.MappaIdentita;
+import it.unisa.biblioteca.persistenza.ModificheRemote;
+import it.unisa.biblioteca.persistenza.Repository;
+import it.unisa.biblioteca.persistenza.RepositoryInMemoria;
+import it.unisa.biblioteca.persistenza.Sezione;
+import it.unisa.biblioteca.persistenza.SnapshotArchivio;
 import javafx.collections.ObservableList;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Gestore salvataggio BINARIO (.dat).
  * I file non sono modificabili manualmente con editor di testo.
+ * <p>
+ *     Ogni sezione dell'archivio (libri, utenti, prestiti) ha i propri file ({@link FileSezione}):
+ *     uno <b>snapshot</b> completo ({@code base.libri.dat}, ...) e un <b>journal</b> append-only
+ *     ({@link JournalModifiche}) che registra le singole modifiche nel momento in cui avvengono.
+ *     Il caricamento applica a ogni snapshot il suo journal. Tutti usano la codifica binaria
+ *     compatta di {@link it.unisa.biblioteca.persistenza.CodecRecord}.
+ * </p>
+ * <p>
+ *     Le sezioni sono indipendenti: un salvataggio tocca solo quelle modificate dal salvataggio
+ *     precedente, così i prestiti (che cambiano di continuo) non costringono a riscrivere il
+ *     catalogo (che cambia di rado).
+ * </p>
+ * <p>
+ *     Tutte le scritture su disco avvengono su un thread dedicato, così il thread JavaFX
+ *     non resta mai bloccato sull'I/O: sul thread chiamante i record vengono solo codificati.
+ * </p>
+ * <p>
+ *     Con {@link #PROPRIETA_CONDIVISO} più postazioni (processi) usano lo stesso archivio senza un server:
+ *     ogni gruppo di modifiche ({@link #inGruppo}) viene scritto dal thread di scrittura nel journal
+ *     tenendo un blocco sul file {@code base.lock} ({@link BloccoArchivio}), dopo aver letto quelle delle
+ *     altre postazioni. Per libri e utenti si ricorda lo stato su disco su cui si basa ogni modifica
+ *     ({@link StatoRecord}): le modifiche concorrenti a record diversi si sommano, quelle allo stesso
+ *     record si fondono o vengono segnalate come conflitto ({@link Aggiornamento}). Chi legge non prende
+ *     mai il blocco. Gli snapshot non vengono mai riscritti dalla memoria se un'altra postazione ha
+ *     scritto nel frattempo.
+ * </p>
  */
-public class GestoreFile {
+public class GestoreFile implements ArchivioBiblioteca {
 
     private static final String FILE_DATI = "database_biblioteca.dat";
+    // Frazione dello snapshot oltre la quale la compattazione periodica ripiega il journal
+    private static final double RAPPORTO_COMPATTAZIONE = 0.25;
+    /** Proprietà di sistema che attiva la compressione dello snapshot (es. {@code -Dbiblioteca.compressione=true}). */
+    public static final String PROPRIETA_COMPRESSIONE = "biblioteca.compressione";
+    /** Proprietà di sistema che attiva la pubblicazione del catalogo per i terminali di ricerca. */
+    public static final String PROPRIETA_CATALOGO_CONDIVISO = "biblioteca.catalogoCondiviso";
+    /** Catalogo pubblicato per i terminali di ricerca (vedi {@link CatalogoMappato}). */
+    public static final String FILE_CATALOGO = "database_biblioteca.catalogo";
+    /** Proprietà di sistema che permette a più postazioni di usare lo stesso archivio (es. su una cartella condivisa). */
+    public static final String PROPRIETA_CONDIVISO = "biblioteca.condiviso";
+
+    // Archivio della prima versione (serializzazione Java), letto solo per la migrazione
+    private final File fileDati;
+
+    private final FileSezione fileLibri;
+    private final FileSezione fileUtenti;
+    private final FileSezione filePrestiti;
+    private final boolean compressione;
+    private final File fileCatalogo;
+    // true se l'ultima pubblicazione del catalogo è fallita
+    private volatile boolean catalogoDaPubblicare;
+    // Sequenza del journal dei libri al momento dell'ultima pubblicazione del catalogo
+    private volatile long seqCatalogo;
+
+    // Archivio condiviso tra più postazioni (null se usato da una sola)
+    private final BloccoArchivio blocco;
+    // Ultimo stato su disco di libri e utenti, usato dal thread di scrittura
+    private final Map<String, StatoRecord> statoLibri = new HashMap<>();
+    private final Map<String, StatoRecord> statoUtenti = new HashMap<>();
+    // Stato su disco su cui si basano gli oggetti in memoria, usato dal thread dei dati
+    private final Map<String, StatoRecord> baseLibri = new HashMap<>();
+    private final Map<String, StatoRecord> baseUtenti = new HashMap<>();
+    // Registrazioni condivise non scritte per un errore, riprovate dalla scrittura successiva (thread di scrittura)
+    private final List<Registrazione> daRiprovare = new ArrayList<>();
+    private volatile Consumer<ModificheRemote> ascoltatore = modifiche -> { };
+    private volatile Executor threadDati = Runnable::run;
+
+    // Registrazioni del gruppo aperto con inGruppo (livello > 0), inviate insieme al thread di scrittura
+    private List<Registrazione> gruppo = new ArrayList<>();
+    private int livelloGruppo;
+    private CompletableFuture<Void> esitoGruppo;
+
+    /** Unico thread che scrive su disco: le operazioni vengono eseguite nell'ordine di invio. */
+    private final ExecutorService scrittore = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "salvataggio-biblioteca");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger modificheNonSalvate = new AtomicInteger();
+
+    // Indici per chiave: ogni modifica passa di qui e viene accodata al journal della sua sezione
+    private final RepositoryInMemoria<String, Libro> libri;
+    private final RepositoryInMemoria<String, Utente> utenti;
+    private final RepositoryInMemoria<ChiavePrestito, Prestito> prestitiPerChiave;
+
+    // Ultimo checkpoint delle modifiche al modello: i record con sequenza più alta sono stati modificati dopo
+    private long checkpoint = ContatoreModifiche.ultimo();
+    // Sequenza di modifica con cui ogni libro/utente è stato accodato al journal dall'ultimo checkpoint
+    private final Map<Object, Long> versioniRegistrate = new IdentityHashMap<>();
+
+    /**
+     * @brief Crea un gestore che lavora sul file dati predefinito ({@code FILE_DATI}).
+     * * La compressione dello snapshot si attiva con la proprietà {@link #PROPRIETA_COMPRESSIONE},
+     * la pubblicazione del catalogo con {@link #PROPRIETA_CATALOGO_CONDIVISO} e l'uso da più
+     * postazioni con {@link #PROPRIETA_CONDIVISO}.
+     */
+    public GestoreFile() {
+        this(new File(FILE_DATI), Boolean.getBoolean(PROPRIETA_COMPRESSIONE), Boolean.getBoolean(PROPRIETA_CATALOGO_CONDIVISO),
+                Boolean.getBoolean(PROPRIETA_CONDIVISO));
+    }
+
+    /**
+     * @brief Crea un gestore che lavora sul file dati indicato, senza compressione.
+     * @param fileDati Nome base dell'archivio (es. {@code database_biblioteca.dat}).
+     */
+    public GestoreFile(File fileDati) {
+        this(fileDati, false);
+    }
+
+    /**
+     * @brief Crea un gestore che lavora sul file dati indicato.
+     * * I file delle sezioni vengono salvati accanto, con il nome del file dati senza
+     * estensione seguito dalla sezione: {@code base.libri.dat}, {@code base.libri.journal},
+     * {@code base.libri.bak} e {@code base.libri.journal.bak} (lo snapshot precedente e il
+     * relativo journal, usati se lo snapshot corrente risulta danneggiato); lo stesso per
+     * utenti e prestiti. Un archivio salvato in un unico file {@code fileDati} dalla prima
+     * versione del programma viene convertito al primo caricamento.
+     * * Con la compressione ogni blocco dello snapshot viene compresso in parallelo: il file
+     * è più piccolo (utile su una cartella di rete) al prezzo di un po' di CPU. Il caricamento
+     * riconosce da solo i blocchi compressi, quindi la scelta può cambiare da un avvio all'altro.
+     * @param fileDati Nome base dell'archivio (es. {@code database_biblioteca.dat}).
+     * @param compressione true per comprimere gli snapshot.
+     */
+    public GestoreFile(File fileDati, boolean compressione) {
+        this(fileDati, compressione, false);
+    }
+
+    /**
+     * @brief Crea un gestore che lavora sul file dati indicato e, se richiesto, pubblica il catalogo.
+     * * Con la pubblicazione, a ogni salvataggio in cui i libri sono cambiati (compresa la
+     * disponibilità) il catalogo viene riscritto in {@code base.catalogo} nel formato di
+     * {@link CatalogoMappato}, letto dai terminali di ricerca sulla stessa macchina.
+     * La scrittura avviene sul thread di scrittura, dopo le sezioni.
+     * @param fileDati Nome base dell'archivio (es. {@code database_biblioteca.dat}).
+     * @param compressione true per comprimere gli snapshot.
+     * @param catalogoCondiviso true per pubblicare il catalogo.
+     */
+    public GestoreFile(File fileDati, boolean compressione, boolean catalogoCondiviso) {
+        this(fileDati, compressione, catalogoCondiviso, false);
+    }
+
+    /**
+     * @brief Crea un gestore che lavora sul file dati indicato, eventualmente insieme ad altre postazioni.
+     * * Con {@code condiviso} ogni gruppo di registrazioni viene scritto subito nel journal dal thread
+     * di scrittura, sotto il blocco {@code base.lock} e dopo aver letto le modifiche delle altre
+     * postazioni (vedi {@link #sincronizza}); i salvataggi si limitano alla compattazione, fatta solo
+     * se nessun altro ha scritto dopo la copia dei dati. Tutte le postazioni sullo stesso archivio
+     * devono usare questa modalità.
+     * @param fileDati Nome base dell'archivio (es. {@code database_biblioteca.dat}).
+     * @param compressione true per comprimere gli snapshot.
+     * @param catalogoCondiviso true per pubblicare il catalogo.
+     * @param condiviso true se altre postazioni usano lo stesso archivio.
+     */
+    public GestoreFile(File fileDati, boolean compressione, boolean catalogoCondiviso, boolean condiviso) {
+        this.fileDati = fileDati;
+        this.compressione = compressione;
+        String base = fileDati.getPath().replaceFirst("\\.dat$", "");
+        this.fileCatalogo = catalogoCondiviso ? new File(base + ".catalogo") : null;
+        this.blocco = condiviso ? new BloccoArchivio(new File(base + ".lock")) : null;
+        this.fileLibri = new FileSezione(base, Sezione.LIBRI);
+        this.fileUtenti = new FileSezione(base, Sezione.UTENTI);
+        this.filePrestiti = new FileSezione(base, Sezione.PRESTITI);
+
+        JournalModifiche journalLibri = fileLibri.getJournal();
+        JournalModifiche journalUtenti = fileUtenti.getJournal();
+        JournalModifiche journalPrestiti = filePrestiti.getJournal();
+        this.libri = new RepositoryInMemoria<>(Libro::getIsbn,
+                l -> registra(fileLibri, l.getIsbn(), l, l.getSeqModifica(), () -> journalLibri.preparaLibro(l)),
+                isbn -> registra(fileLibri, isbn, null, 0, () -> journalLibri.preparaRimozioneLibro(isbn)));
+        this.utenti = new RepositoryInMemoria<>(Utente::getMatricola,
+                u -> registra(fileUtenti, u.getMatricola(), u, u.getSeqModifica(), () -> journalUtenti.preparaUtente(u)),
+                matricola -> registra(fileUtenti, matricola, null, 0, () -> journalUtenti.preparaRimozioneUtente(matricola)));
+        this.prestitiPerChiave = new RepositoryInMemoria<>(ChiavePrestito::di,
+                p -> registra(filePrestiti, ChiavePrestito.di(p), p, 0, () -> journalPrestiti.preparaPrestito(p)),
+                chiave -> registra(filePrestiti, chiave, null, 0, () -> journalPrestiti.preparaRimozionePrestito(chiave)));
+    }
 
     /**
      * @brief Salva su file binario tutti i dati del sistema (libri, utenti e prestiti).
      *
-     * Questo metodo serializza le liste fornite convertendole prima da
-     * {@code ObservableList} a {@code ArrayList}, poiché le ObservableList
-     * non sono direttamente serializzabili. I dati vengono scritti nel file
-     * indicato da {@code FILE_DATI}.
+     * Il salvataggio viene eseguito dal thread di scrittura, come {@link #salvaInBackground},
+     * ma questo metodo ne attende la fine: va usato alla chiusura del programma, così
+     * tutte le modifiche ancora in coda arrivano su disco prima dell'uscita.
      *
      * @param libri    Lista osservabile contenente i libri da salvare.
      * @param utenti   Lista osservabile degli utenti registrati.
      * @param prestiti Lista osservabile dei prestiti correnti.
      *
-     * @throws IOException Se si verifica un errore durante la scrittura del file.
+     * @see JournalModifiche
+     * @see SnapshotArchivio
+     */
+    @Override
+    public void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti) {
+        attendi(salvaInBackground(libri, utenti, prestiti));
+    }
+
+    /**
+     * @brief Avvia il salvataggio sul thread di scrittura, senza attenderne la fine.
+     *
+     * Sul thread chiamante viene fatta solo una copia delle liste delle sezioni modificate
+     * (copia dei riferimenti, senza I/O): da quel momento l'interfaccia può continuare a
+     * modificarle. Le modifiche ai campi degli oggetti successive alla copia hanno una
+     * sequenza del journal più alta di quella dello snapshot e vengono quindi riapplicate
+     * al caricamento.
+     *
+     * Prima vengono accodati al journal, un record ciascuno, i libri e gli utenti modificati
+     * dopo l'ultimo checkpoint e non ancora registrati (ad esempio con un setter senza la
+     * chiamata a {@link #registraLibro}): una modifica al modello non va persa anche se
+     * nessuno l'ha segnalata, e costa comunque una sola scrittura di record.
      *
-     * @see ObjectOutputStream
-     * @see FileOutputStream
+     * Le sezioni senza modifiche dall'ultimo salvataggio non vengono toccate. Per le altre,
+     * le modifiche della sessione sono già state accodate al journal: basta renderle
+     * persistenti su disco, con un costo proporzionale al numero di modifiche. Lo snapshot
+     * della sezione viene riscritto solo se non esiste ancora, se va ricostruito oppure se
+     * il journal è diventato più grande dello snapshot stesso (così il costo resta
+     * ammortizzato sulle modifiche effettuate).
+     *
+     * Con più postazioni le modifiche sono già su disco al momento della registrazione: lo
+     * snapshot viene riscritto solo se richiesto, e solo se la copia comprende tutto ciò
+     * che le altre postazioni hanno scritto (altrimenti la riscrittura viene rinviata).
+     *
+     * @param libri    Libri da salvare.
+     * @param utenti   Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @return Il salvataggio in corso.
      */
+    @Override
+    public Future<?> salvaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        return avviaSalvataggio(libri, utenti, prestiti, false);
+    }
 
+    /**
+     * @brief Ripiega nello snapshot il journal delle sezioni che lo richiedono, in background.
+     *
+     * Pensato per essere chiamato periodicamente nei momenti di inattività: riscrive le sezioni
+     * il cui journal supera un quarto dello snapshot ({@code RAPPORTO_COMPATTAZIONE}) o le soglie
+     * di {@link FileSezione} su dimensione e tempo stimato di rilettura. Così il journal non cresce
+     * senza limite e il tempo di avvio resta limitato. Le modifiche in sospeso vengono salvate
+     * come in {@link #salvaInBackground}.
+     *
+     * @param libri    Libri da salvare.
+     * @param utenti   Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @return La compattazione in corso.
+     */
+    @Override
+    public Future<?> compattaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        return avviaSalvataggio(libri, utenti, prestiti, true);
+    }
 
-    public void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE_DATI))) {
+    /**
+     * @brief Restituisce la durata della rilettura dei journal durante l'ultimo caricamento.
+     * @return Millisecondi spesi nel replay, sommati su tutte le sezioni.
+     */
+    public long getDurataReplayMs() {
+        return fileLibri.getDurataReplayMs() + fileUtenti.getDurataReplayMs() + filePrestiti.getDurataReplayMs();
+    }
+
+    /**
+     * @brief Restituisce il numero di record dei journal applicati durante l'ultimo caricamento.
+     * @return Record riletti, sommati su tutte le sezioni.
+     */
+    public int getRecordRiletti() {
+        return fileLibri.getRecordRiletti() + fileUtenti.getRecordRiletti() + filePrestiti.getRecordRiletti();
+    }
+
+    /**
+     * Sul thread chiamante registra le modifiche non segnalate e copia le liste delle sezioni
+     * da scrivere; la scrittura è affidata al thread di scrittura.
+     */
+    private synchronized Future<?> avviaSalvataggio(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti, boolean compattazione) {
+        registraModificati(libri, utenti);
+        modificheNonSalvate.set(0);
+        List<SalvataggioSezione> sezioni = preparaSezioni(libri, utenti, prestiti, compattazione, false);
+        // Il catalogo condiviso si ripubblica quando i libri cambiano, o se non è ancora stato pubblicato
+        long seqLibri = fileLibri.getJournal().getUltimaSeq();
+        boolean libriCambiati = seqLibri != seqCatalogo;
+        for (SalvataggioSezione sezione : sezioni) libriCambiati |= sezione.file == fileLibri;
+        boolean pubblica = fileCatalogo != null && (libriCambiati || catalogoDaPubblicare || !fileCatalogo.exists());
+        List<Libro> copiaLibri = pubblica ? new ArrayList<>(libri) : null;
+        return scrittore.submit(() -> {
+            boolean riuscito = salva(sezioni);
+            if (pubblica) pubblicaCatalogo(copiaLibri, seqLibri);
+            return riuscito;
+        });
+    }
+
+    /**
+     * Prepara il salvataggio delle sezioni da scrivere (o di tutte), copiando le liste sul thread
+     * chiamante: solo i riferimenti, senza I/O.
+     */
+    private List<SalvataggioSezione> preparaSezioni(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti,
+                                                    boolean compattazione, boolean tutte) {
+        List<SalvataggioSezione> sezioni = new ArrayList<>();
+        SalvataggioSezione sezione = new SalvataggioSezione(fileLibri, compattazione);
+        if (tutte || sezione.isNecessario()) {
+            List<Libro> copia = new ArrayList<>(libri);
+            sezione.scrittore = (file, seq) -> SnapshotArchivio.scrivi(file, copia, Collections.emptyList(), Collections.emptyList(), seq, compressione);
+            sezioni.add(sezione);
+        }
+        sezione = new SalvataggioSezione(fileUtenti, compattazione);
+        if (tutte || sezione.isNecessario()) {
+            List<Utente> copia = new ArrayList<>(utenti);
+            sezione.scrittore = (file, seq) -> SnapshotArchivio.scrivi(file, Collections.emptyList(), copia, Collections.emptyList(), seq, compressione);
+            sezioni.add(sezione);
+        }
+        sezione = new SalvataggioSezione(filePrestiti, compattazione);
+        if (tutte || sezione.isNecessario()) {
+            List<Prestito> copia = new ArrayList<>(prestiti);
+            sezione.scrittore = (file, seq) -> SnapshotArchivio.scrivi(file, Collections.emptyList(), Collections.emptyList(), copia, seq, compressione);
+            sezioni.add(sezione);
+        }
+        return sezioni;
+    }
 
-            // Le ObservableList non sono serializzabili, le convertiamo in ArrayList normali
-            oos.writeObject(new ArrayList<>(libri));
-            oos.writeObject(new ArrayList<>(utenti));
-            oos.writeObject(new ArrayList<>(prestiti));
+    /**
+     * @brief Restituisce il numero di modifiche registrate dall'ultimo salvataggio avviato.
+     * @return Numero di modifiche.
+     */
+    @Override
+    public int getModificheNonSalvate() {
+        return modificheNonSalvate.get();
+    }
 
-            System.out.println("Salvataggio binario completato.");
+    /**
+     * @brief Registra come un unico gruppo le modifiche fatte da {@code registrazioni}.
+     * * I record del gruppo vengono inviati al thread di scrittura alla chiusura del gruppo più
+     * esterno, in un solo compito; con più postazioni il gruppo costa un solo blocco, una sola
+     * lettura delle modifiche altrui e un solo fsync per journal, qualunque sia il numero di record.
+     * Le registrazioni fuori da un gruppo formano un gruppo a sé.
+     * @param registrazioni Esegue le registrazioni del gruppo.
+     * @return La scrittura del gruppo, completata sul thread dei dati (vedi {@link #setAscoltatoreModificheRemote}).
+     */
+    @Override
+    public synchronized CompletableFuture<Void> inGruppo(Runnable registrazioni) {
+        if (livelloGruppo++ == 0) esitoGruppo = new CompletableFuture<>();
+        CompletableFuture<Void> esito = esitoGruppo;
+        try {
+            registrazioni.run();
+        } finally {
+            if (--livelloGruppo == 0) inviaGruppo();
+        }
+        return esito;
+    }
+
+    /**
+     * @brief Applica le modifiche scritte dalle altre postazioni dopo l'ultima lettura.
+     * * La lettura avviene sul thread di scrittura, legge solo i record nuovi dei journal e non prende
+     * il blocco: chi scrive non viene rallentato. Se una scrittura condivisa è fallita viene invece
+     * riprovata, insieme alla lettura. Va chiamato periodicamente; le modifiche vengono applicate sul
+     * thread dei dati. Senza postazioni condivise non fa nulla.
+     * @return La lettura in corso.
+     */
+    @Override
+    public Future<?> sincronizza() {
+        if (blocco == null) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> esito = new CompletableFuture<>();
+        scrittore.execute(() -> {
+            if (!daRiprovare.isEmpty()) {
+                scriviCondiviso(Collections.emptyList(), esito);
+                return;
+            }
+            Aggiornamento aggiornamento = new Aggiornamento(esito);
+            try {
+                aggiornaSezioni(aggiornamento, false);
+            } catch (IOException e) {
+                System.err.println("Errore lettura modifiche condivise: " + e.getMessage());
+                aggiornamento.errore = e;
+            }
+            consegna(aggiornamento);
+        });
+        return esito;
+    }
+
+    @Override
+    public void setAscoltatoreModificheRemote(Consumer<ModificheRemote> ascoltatore, Executor threadDati) {
+        this.ascoltatore = ascoltatore;
+        this.threadDati = threadDati;
+    }
+
+    /**
+     * @brief Attende la scrittura delle modifiche in coda e rilascia il thread di scrittura e i journal.
+     * * Le scritture condivise fallite vengono riprovate un'ultima volta.
+     */
+    @Override
+    public void chiudi() {
+        if (blocco != null) {
+            scrittore.execute(() -> {
+                if (!daRiprovare.isEmpty()) scriviCondiviso(Collections.emptyList(), new CompletableFuture<>());
+            });
+        }
+        scrittore.shutdown();
+        try {
+            if (!scrittore.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Salvataggio non terminato entro il tempo limite.");
+            }
+            fileLibri.close();
+            fileUtenti.close();
+            filePrestiti.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
-            System.err.println("Errore salvataggio: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Errore chiusura journal: " + e.getMessage());
         }
     }
- 
+
     /**
-     * @brief Carica dal file binario tutti i dati salvati (libri, utenti e prestiti).
+     * @brief Carica dai file binari tutti i dati salvati (libri, utenti e prestiti).
+     *
+     * Per ogni sezione legge lo snapshot e vi applica, in ordine, le modifiche registrate
+     * nel suo journal dopo lo snapshot; i prestiti vengono collegati per ultimi, quando
+     * libri e utenti sono già completi.
+     * Se uno snapshot è danneggiato (checksum errato, file troncato) viene messo da parte
+     * e si riparte dallo snapshot precedente della stessa sezione, applicando prima il
+     * journal archiviato con esso e poi quello corrente: i dati ottenuti sono gli stessi.
+     * Se una sezione non ha ancora alcuno snapshot (archivio nuovo) il suo journal viene riletto
+     * dall'inizio; se snapshot e backup sono entrambi danneggiati il journal viene messo da parte.
+     *
+     * Un archivio della prima versione del programma (un unico file {@code FILE_DATI} scritto
+     * con la serializzazione Java) viene letto e subito convertito.
      *
-     * Questo metodo deserializza il contenuto del file indicato da {@code FILE_DATI}
-     * e ripristina le liste osservabili passate come parametro. Se il file non esiste,
-     * l'operazione viene semplicemente ignorata. I dati vengono letti nello stesso
-     * ordine in cui erano stati precedentemente salvati.
+     * Con più postazioni il caricamento avviene sotto il blocco in scrittura, e le sezioni
+     * senza snapshot vengono scritte subito: il journal che le altre postazioni iniziano
+     * a riempire ha così sempre una base comune.
      *
      * @param catalogo    Lista osservabile in cui verranno caricati i libri.
      * @param anagrafica  Lista osservabile degli utenti da ripristinare.
      * @param prestiti    Lista osservabile dei prestiti da ripristinare.
      *
-     * @throws IOException Se si verifica un errore durante la lettura del file.
-     * @throws ClassNotFoundException Se le classi degli oggetti serializzati non vengono trovate.
-     *
-     * @see ObjectInputStream
-     * @see FileInputStream
+     * @see FileSezione#carica
+     * @see JournalModifiche#rileggi
      * */
-     public void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
-        File file = new File(FILE_DATI);
-        if (!file.exists()) return;
+    @Override
+    public void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
+        if (blocco == null) {
+            carica(catalogo, anagrafica, prestiti);
+            return;
+        }
+        try {
+            blocco.esegui(() -> {
+                carica(catalogo, anagrafica, prestiti);
+                List<SalvataggioSezione> sezioni = preparaSezioni(catalogo, anagrafica, prestiti, false, false);
+                if (!sezioni.isEmpty()) salva(sezioni);
+                return null;
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossibile bloccare l'archivio condiviso: " + e.getMessage(), e);
+        }
+        // Prima di qualunque scrittura: il thread di scrittura e quello dei dati partono dallo stesso stato
+        for (Libro l : catalogo) {
+            StatoRecord stato = new StatoRecord(copia(l));
+            statoLibri.put(l.getIsbn(), stato);
+            baseLibri.put(l.getIsbn(), stato);
+        }
+        for (Utente u : anagrafica) {
+            StatoRecord stato = new StatoRecord(copia(u));
+            statoUtenti.put(u.getMatricola(), stato);
+            baseUtenti.put(u.getMatricola(), stato);
+        }
+    }
+
+    private void carica(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
+        boolean formatoUnico = !fileLibri.esiste() && !fileUtenti.esiste() && !filePrestiti.esiste()
+                && fileDati.exists();
+        Replay replay = formatoUnico ? caricaFormatoUnico() : caricaSezioni();
+        if (replay == null) return;
+
+        // Puliamo e riempiamo le liste osservabili e gli indici per chiave
+        catalogo.setAll(replay.mappa.getLibri());
+        anagrafica.setAll(replay.mappa.getUtenti());
+        prestiti.setAll(replay.getPrestiti());
+        libri.ricarica(catalogo);
+        utenti.ricarica(anagrafica);
+        prestitiPerChiave.ricarica(prestiti);
+
+        if (formatoUnico) convertiFormatoUnico(catalogo, anagrafica, prestiti);
+        // I record appena letti coincidono con quelli su disco (e con il catalogo pubblicato con essi)
+        segnaCheckpoint(ContatoreModifiche.ultimo());
+        seqCatalogo = fileLibri.getJournal().getUltimaSeq();
+        System.out.println("Caricamento binario completato.");
+    }
+
+    // --- REPOSITORY ---
+
+    /**
+     * @brief Repository dei libri: ogni salvataggio o eliminazione viene registrato nel journal.
+     * @return Repository dei libri, per ISBN.
+     */
+    @Override
+    public Repository<String, Libro> libri() {
+        return libri;
+    }
+
+    /**
+     * @brief Repository degli utenti: ogni salvataggio o eliminazione viene registrato nel journal.
+     * @return Repository degli utenti, per matricola.
+     */
+    @Override
+    public Repository<String, Utente> utenti() {
+        return utenti;
+    }
+
+    /**
+     * @brief Repository dei prestiti: ogni salvataggio o eliminazione viene registrato nel journal.
+     * @return Repository dei prestiti, per chiave.
+     */
+    @Override
+    public Repository<ChiavePrestito, Prestito> prestiti() {
+        return prestitiPerChiave;
+    }
+
+    // --- METODI PRIVATI ---
+
+    /**
+     * Preparazione di un record del journal che può fallire con IOException.
+     */
+    private interface PreparazioneRecord {
+        JournalModifiche.Record prepara() throws IOException;
+    }
+
+    /**
+     * Registra una modifica nel gruppo aperto, inviato al thread di scrittura alla sua chiusura (subito
+     * se non c'è un gruppo aperto). Per libri e utenti si ricorda la sequenza di modifica registrata,
+     * così il salvataggio non li accoda una seconda volta.
+     * Con una sola postazione il record viene codificato subito, sul thread della modifica, e la sezione
+     * risulta modificata. Con più postazioni si copia solo lo stato registrato, collegandolo a quello su
+     * cui si basa: il record verrà preparato dal thread di scrittura ({@link #scriviCondiviso}).
+     */
+    private synchronized void registra(FileSezione sezione, Object chiave, Object oggetto, long seqModifica, PreparazioneRecord preparazione) {
+        Registrazione registrazione = new Registrazione(sezione, chiave, oggetto, preparazione);
+        if (blocco != null) {
+            Map<String, StatoRecord> basi = basi(sezione);
+            if (basi != null) {
+                registrazione.base = basi.get(chiave);
+                registrazione.stato = new StatoRecord(copia(oggetto));
+                registrazione.stato.inAttesa = true;
+                basi.put((String) chiave, registrazione.stato);
+            }
+        } else {
+            try {
+                registrazione.record = preparazione.prepara();
+            } catch (IOException e) {
+                System.err.println("Errore journal: " + e.getMessage());
+                sezione.richiediRiscrittura();
+                return;
+            }
+            modificheNonSalvate.incrementAndGet();
+            sezione.segnaModifica();
+        }
+        if (oggetto != null && sezione != filePrestiti) versioniRegistrate.put(oggetto, seqModifica);
+        gruppo.add(registrazione);
+        if (livelloGruppo == 0) inviaGruppo();
+    }
+
+    private void inviaGruppo() {
+        CompletableFuture<Void> esito = esitoGruppo != null ? esitoGruppo : new CompletableFuture<>();
+        List<Registrazione> registrazioni = gruppo;
+        esitoGruppo = null;
+        gruppo = new ArrayList<>();
+        if (registrazioni.isEmpty()) {
+            esito.complete(null);
+        } else if (blocco != null) {
+            scrittore.execute(() -> scriviCondiviso(registrazioni, esito));
+        } else {
+            scrittore.execute(() -> scriviLocale(registrazioni, esito));
+        }
+    }
+
+    /**
+     * Eseguito sul thread di scrittura: un record che non arriva nel journal fa riscrivere lo snapshot
+     * della sua sezione al prossimo salvataggio, così la modifica (anche un prestito o un'eliminazione,
+     * che il salvataggio non saprebbe ritrovare) non va persa.
+     */
+    private void scriviLocale(List<Registrazione> registrazioni, CompletableFuture<Void> esito) {
+        IOException errore = null;
+        for (Registrazione registrazione : registrazioni) {
+            try {
+                registrazione.sezione.getJournal().accoda(registrazione.record);
+            } catch (IOException e) {
+                System.err.println("Errore journal: " + e.getMessage());
+                registrazione.sezione.richiediRiscrittura();
+                errore = e;
+            }
+        }
+        IOException fallimento = errore;
+        threadDati.execute(() -> {
+            if (fallimento == null) esito.complete(null);
+            else esito.completeExceptionally(fallimento);
+        });
+    }
+
+    /**
+     * Scrittura di un gruppo con più postazioni, sul thread di scrittura: sotto il blocco si leggono
+     * prima le modifiche delle altre postazioni, poi ogni registrazione viene confrontata con lo stato
+     * su disco del suo record ({@link Aggiornamento#risolvi}) e i record da scrivere vengono preparati
+     * (con le sequenze successive all'ultima scritta da chiunque), accodati e resi persistenti con un
+     * solo fsync per journal. Se la scrittura fallisce i record già accodati vengono tolti e il gruppo
+     * viene riprovato dalla scrittura successiva (o da {@link #sincronizza}); l'errore arriva al
+     * risultato del gruppo. Il resto avviene sul thread dei dati ({@link #applica}).
+     */
+    private void scriviCondiviso(List<Registrazione> nuove, CompletableFuture<Void> esito) {
+        List<Registrazione> registrazioni = new ArrayList<>(daRiprovare);
+        registrazioni.addAll(nuove);
+        daRiprovare.clear();
+        Aggiornamento aggiornamento = new Aggiornamento(esito);
+        try {
+            blocco.esegui(() -> {
+                aggiornaSezioni(aggiornamento, true);
+                List<Registrazione> daScrivere = aggiornamento.risolvi(registrazioni);
+                accoda(daScrivere);
+                aggiornamento.conferma(registrazioni);
+                return null;
+            });
+        } catch (IOException e) {
+            System.err.println("Errore journal condiviso, modifiche da riprovare: " + e.getMessage());
+            for (Registrazione registrazione : registrazioni) registrazione.azzera();
+            daRiprovare.addAll(registrazioni);
+            aggiornamento.rifiuto = null;
+            aggiornamento.errore = e;
+        }
+        consegna(aggiornamento);
+    }
+
+    /**
+     * Accoda i record delle registrazioni e li rende persistenti, un fsync per journal. Se qualcosa
+     * fallisce i record del gruppo già accodati vengono tolti, così riprovare non li duplica.
+     */
+    private void accoda(List<Registrazione> registrazioni) throws IOException {
+        Map<JournalModifiche, Long> dimensioni = new LinkedHashMap<>();
+        try {
+            for (Registrazione registrazione : registrazioni) {
+                JournalModifiche journal = registrazione.sezione.getJournal();
+                dimensioni.putIfAbsent(journal, journal.dimensione());
+                journal.accoda(registrazione.prepara());
+            }
+            for (JournalModifiche journal : dimensioni.keySet()) journal.sincronizza();
+        } catch (IOException e) {
+            for (Map.Entry<JournalModifiche, Long> dimensione : dimensioni.entrySet()) {
+                try {
+                    dimensione.getKey().tronca(dimensione.getValue());
+                } catch (IOException annullamento) {
+                    e.addSuppressed(annullamento);
+                }
+            }
+            throw e;
+        }
+        // I record sono su disco: un errore da qui in poi non va riprovato
+        for (JournalModifiche journal : dimensioni.keySet()) {
+            try {
+                // Un'altra postazione può archiviare il file: lo si riapre a ogni scrittura
+                journal.close();
+                journal.segnaLetto();
+            } catch (IOException e) {
+                System.err.println("Errore chiusura journal condiviso: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Legge le modifiche di tutte le sezioni: i prestiti per ultimi, quando libri e utenti sono aggiornati. */
+    private void aggiornaSezioni(Aggiornamento aggiornamento, boolean troncaCoda) throws IOException {
+        fileLibri.aggiorna(aggiornamento, troncaCoda);
+        fileUtenti.aggiorna(aggiornamento, troncaCoda);
+        filePrestiti.aggiorna(aggiornamento, troncaCoda);
+    }
+
+    private void consegna(Aggiornamento aggiornamento) {
+        threadDati.execute(() -> applica(aggiornamento));
+    }
+
+    /**
+     * Sul thread dei dati: applica agli oggetti in memoria le modifiche lette e l'esito delle
+     * registrazioni, avvisa l'ascoltatore e completa il risultato del gruppo.
+     */
+    private synchronized void applica(Aggiornamento aggiornamento) {
+        ModificheRemote modifiche = new ModificheRemote();
+        for (RecordLetto letto : aggiornamento.letti) applicaLetto(letto, modifiche);
+        for (Registrazione registrazione : aggiornamento.registrazioni) applicaEsito(registrazione, modifiche);
+        if (!modifiche.isVuota()) ascoltatore.accept(modifiche);
+        if (aggiornamento.errore != null) {
+            aggiornamento.esito.completeExceptionally(aggiornamento.errore);
+        } else if (aggiornamento.rifiuto != null) {
+            aggiornamento.esito.completeExceptionally(new IllegalStateException(aggiornamento.rifiuto));
+        } else {
+            aggiornamento.esito.complete(null);
+        }
+    }
+
+    /**
+     * Una modifica di un'altra postazione. Se il record ha una registrazione locale non ancora scritta
+     * l'oggetto non viene toccato: le due modifiche le fonde il thread di scrittura.
+     */
+    private void applicaLetto(RecordLetto letto, ModificheRemote modifiche) {
+        if (letto.sezione == filePrestiti) {
+            ChiavePrestito chiave = (ChiavePrestito) letto.chiave;
+            if (letto.rimozione) rimuoviPrestito(chiave, modifiche);
+            else aggiungiPrestito(chiave, modifiche);
+            return;
+        }
+        Map<String, StatoRecord> basi = basi(letto.sezione);
+        StatoRecord base = basi.get(letto.chiave);
+        if (base != null && base.inAttesa) return;
+        basi.put((String) letto.chiave, letto.stato);
+        applicaStato(letto.sezione, (String) letto.chiave, letto.stato, modifiche);
+    }
+
+    /**
+     * L'esito di una registrazione locale. Se il record è stato registrato di nuovo nel frattempo
+     * conta l'esito della registrazione più recente; altrimenti l'oggetto prende lo stato finito su
+     * disco (quello fuso o quello che ha prevalso). Un prestito annullato viene tolto.
+     */
+    private void applicaEsito(Registrazione registrazione, ModificheRemote modifiche) {
+        if (registrazione.conflitto != null) modifiche.conflitto(registrazione.conflitto);
+        if (registrazione.sezione == filePrestiti) {
+            if (!registrazione.scritta && registrazione.oggetto != null) {
+                rimuoviPrestito((ChiavePrestito) registrazione.chiave, modifiche);
+            }
+            return;
+        }
+        Map<String, StatoRecord> basi = basi(registrazione.sezione);
+        if (basi.get(registrazione.chiave) != registrazione.stato) return;
+        registrazione.stato.inAttesa = false;
+        StatoRecord finale = registrazione.scritta ? registrazione.scritto : registrazione.vincente;
+        if (finale == registrazione.stato) return;
+        basi.put((String) registrazione.chiave, finale);
+        applicaStato(registrazione.sezione, (String) registrazione.chiave, finale, modifiche);
+    }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+    /** Porta il libro o l'utente in memoria allo stato indicato: lo aggiorna sul posto, lo inserisce o lo rimuove. */
+    private void applicaStato(FileSezione sezione, String chiave, StatoRecord stato, ModificheRemote modifiche) {
+        Object valori = stato == null ? null : stato.valori;
+        if (sezione == fileLibri) {
+            Libro esistente = libri.trova(chiave).orElse(null);
+            if (valori == null) {
+                if (esistente != null) modifiche.libroRimosso(libri.rimuovi(chiave));
+                return;
+            }
+            if (esistente == null) {
+                esistente = copia((Libro) valori);
+                libri.inserisci(esistente);
+                modifiche.libroAggiunto(esistente);
+            } else {
+                copiaCampi((Libro) valori, esistente);
+                esistente.setDisponibilita(((Libro) valori).getDisponibilita());
+                modifiche.libroAggiornato(esistente);
+            }
+            versioniRegistrate.put(esistente, esistente.getSeqModifica());
+        } else {
+            Utente esistente = utenti.trova(chiave).orElse(null);
+            if (valori == null) {
+                if (esistente != null) modifiche.utenteRimosso(utenti.rimuovi(chiave));
+                return;
+            }
+            if (esistente == null) {
+                esistente = copia((Utente) valori);
+                utenti.inserisci(esistente);
+                modifiche.utenteAggiunto(esistente);
+            } else {
+                copiaCampi((Utente) valori, esistente);
+                modifiche.utenteAggiornato(esistente);
+            }
+            versioniRegistrate.put(esistente, esistente.getSeqModifica());
+        }
+    }
 
-            // Leggiamo nell'ordine esatto di scrittura
-            List<Libro> libriCaricati = (List<Libro>) ois.readObject();
-            List<Utente> utentiCaricati = (List<Utente>) ois.readObject();
-            List<Prestito> prestitiCaricati = (List<Prestito>) ois.readObject();
+    private void aggiungiPrestito(ChiavePrestito chiave, ModificheRemote modifiche) {
+        if (prestitiPerChiave.trova(chiave).isPresent()) return;
+        Utente u = utenti.trova(chiave.getMatricola()).orElse(null);
+        Libro l = libri.trova(chiave.getIsbn()).orElse(null);
+        if (u == null || l == null) {
+            System.err.println("Prestito ignorato, riferimenti mancanti (" + chiave + ")");
+            return;
+        }
+        Prestito p = new Prestito(u, l, chiave.getDataInizio());
+        try {
+            u.aggiungiPrestito(p);
+        } catch (IllegalStateException e) {
+            System.err.println("Prestito " + chiave + ": " + e.getMessage());
+        }
+        prestitiPerChiave.inserisci(p);
+        modifiche.prestitoAggiunto(p);
+    }
 
-            // Puliamo e riempiamo le liste osservabili
-            catalogo.setAll(libriCaricati);
-            anagrafica.setAll(utentiCaricati);
-            prestiti.setAll(prestitiCaricati);
+    private void rimuoviPrestito(ChiavePrestito chiave, ModificheRemote modifiche) {
+        Prestito rimosso = prestitiPerChiave.rimuovi(chiave);
+        if (rimosso == null) return;
+        rimosso.getUtente().rimuoviPrestito(rimosso);
+        modifiche.prestitoRimosso(rimosso);
+    }
 
-            System.out.println("Caricamento binario completato.");
+    private Map<String, StatoRecord> basi(FileSezione sezione) {
+        if (sezione == fileLibri) return baseLibri;
+        if (sezione == fileUtenti) return baseUtenti;
+        return null;
+    }
 
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Errore caricamento: " + e.getMessage());
+    /**
+     * Accoda al journal i libri e gli utenti modificati dopo il checkpoint e non ancora registrati
+     * in quella versione, poi sposta il checkpoint. Il costo è una scansione delle liste (solo
+     * confronti tra numeri) più una scrittura di record per ogni oggetto modificato.
+     */
+    private void registraModificati(List<Libro> libri, List<Utente> utenti) {
+        long nuovoCheckpoint = ContatoreModifiche.ultimo();
+        for (Libro l : libri) {
+            if (isNonRegistrato(l, l.getSeqModifica())) this.libri.salva(l);
+        }
+        for (Utente u : utenti) {
+            if (isNonRegistrato(u, u.getSeqModifica())) this.utenti.salva(u);
         }
+        segnaCheckpoint(nuovoCheckpoint);
+    }
+
+    private boolean isNonRegistrato(Object oggetto, long seqModifica) {
+        if (seqModifica <= checkpoint) return false;
+        Long registrata = versioniRegistrate.get(oggetto);
+        return registrata == null || registrata != seqModifica;
+    }
+
+    private synchronized void segnaCheckpoint(long seqModifica) {
+        checkpoint = seqModifica;
+        versioniRegistrate.clear();
+    }
+
+    /**
+     * Salvataggio di una sezione: modifiche, sequenza del journal e copia dei dati sono presi
+     * sul thread chiamante; la scrittura avviene sul thread di scrittura.
+     */
+    private static class SalvataggioSezione {
+        final FileSezione file;
+        final int modifiche;
+        final long seqJournal;
+        final boolean compattare;
+        FileSezione.Scrittore scrittore;
+
+        SalvataggioSezione(FileSezione file, boolean compattazione) {
+            this.file = file;
+            this.modifiche = file.prendiModifiche();
+            this.seqJournal = file.getJournal().getUltimaSeq();
+            this.compattare = compattazione && file.isDaCompattare(RAPPORTO_COMPATTAZIONE);
+        }
+
+        boolean isNecessario() {
+            return compattare || file.isDaSalvare(modifiche > 0);
+        }
+    }
+
+    /**
+     * Eseguito sul thread di scrittura: salva solo le sezioni indicate (vedi {@link FileSezione#salva}),
+     * con più postazioni sotto il blocco e solo quelle la cui copia è allineata all'archivio.
+     * Se una sezione fallisce il suo snapshot precedente resta valido e le sue modifiche
+     * vengono rimesse in conto, così il salvataggio successivo la riprova.
+     * @return true se tutte le sezioni sono state salvate.
+     */
+    private boolean salva(List<SalvataggioSezione> sezioni) {
+        if (blocco == null) return salvaSezioni(sezioni);
+        try {
+            return blocco.esegui(() -> {
+                // Una sezione scritta da un'altra postazione dopo la copia perderebbe quelle modifiche
+                List<SalvataggioSezione> allineate = new ArrayList<>();
+                for (SalvataggioSezione sezione : sezioni) {
+                    if (sezione.file.isAllineata(sezione.seqJournal)) allineate.add(sezione);
+                    else System.out.println("Sezione " + sezione.file.getSezione() + " modificata da un'altra postazione: riscrittura rinviata.");
+                }
+                return salvaSezioni(allineate);
+            });
+        } catch (IOException e) {
+            System.err.println("Errore blocco archivio: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean salvaSezioni(List<SalvataggioSezione> sezioni) {
+        boolean riuscito = true;
+        long byteScritti = 0;
+        List<Sezione> riscritte = new ArrayList<>();
+        for (SalvataggioSezione sezione : sezioni) {
+            try {
+                long scritti = sezione.file.salva(sezione.scrittore, sezione.seqJournal, sezione.modifiche > 0, sezione.compattare);
+                if (scritti > 0) riscritte.add(sezione.file.getSezione());
+                byteScritti += scritti;
+            } catch (IOException e) {
+                riuscito = false;
+                sezione.file.restituisciModifiche(Math.max(sezione.modifiche, 1));
+                System.err.println("Errore salvataggio " + sezione.file.getFileDati() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        if (riscritte.isEmpty()) {
+            System.out.println("Salvataggio incrementale completato (journal).");
+        } else {
+            System.out.println("Salvataggio binario completato: riscritte " + riscritte + ", " + byteScritti + " byte.");
+        }
+        return riuscito;
+    }
+
+    /**
+     * Eseguito sul thread di scrittura: un errore non compromette l'archivio, il catalogo
+     * precedente resta quello letto dai terminali e verrà ripubblicato al prossimo salvataggio.
+     */
+    private void pubblicaCatalogo(List<Libro> libri, long seqLibri) {
+        try {
+            CatalogoMappato.scrivi(fileCatalogo, libri);
+            catalogoDaPubblicare = false;
+            seqCatalogo = seqLibri;
+        } catch (IOException e) {
+            catalogoDaPubblicare = true;
+            System.err.println("Errore pubblicazione catalogo: " + e.getMessage());
+        }
+    }
+
+    private static void attendi(Future<?> salvataggio) {
+        try {
+            salvataggio.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Salvataggio interrotto.");
+        } catch (ExecutionException e) {
+            System.err.println("Errore salvataggio: " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Legge le tre sezioni, ciascuna con il suo journal. I prestiti vengono letti per ultimi
+     * e collegati ai libri e agli utenti già completi.
+     */
+    private Replay caricaSezioni() {
+        Replay replay = new Replay(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        int modifiche = 0;
+        modifiche += fileLibri.carica(SnapshotArchivio::leggiLibri, letti -> {
+            for (Libro l : letti) replay.mappa.inserisciLibro(l);
+        }, replay);
+        modifiche += fileUtenti.carica(SnapshotArchivio::leggiUtenti, letti -> {
+            for (Utente u : letti) replay.mappa.inserisciUtente(u);
+        }, replay);
+        modifiche += filePrestiti.carica(SnapshotArchivio::leggiChiaviPrestiti, letti -> {
+            for (ChiavePrestito chiave : letti) replay.prestito(chiave);
+        }, replay);
+        if (modifiche > 0) {
+            System.out.println("Journal: applicate " + modifiche + " modifiche in " + getDurataReplayMs() + " ms.");
+        }
+        if (getDurataReplayMs() >= FileSezione.SOGLIA_REPLAY_MS) {
+            System.err.println("Rilettura del journal lenta: le sezioni verranno compattate.");
+        }
+        return replay;
+    }
+
+    /**
+     * Legge l'archivio della prima versione: le tre liste salvate con la serializzazione Java.
+     * Se il file non è leggibile viene rinominato in {@code .danneggiato}, così non viene
+     * sovrascritto e resta disponibile per un recupero manuale.
+     * @return I dati letti, oppure null se il file non è valido.
+     */
+    private Replay caricaFormatoUnico() {
+        ContenutoArchivio contenuto;
+        try {
+            contenuto = SnapshotArchivio.leggiArchivioPrecedente(fileDati);
+        } catch (IOException e) {
+            System.err.println("Archivio " + fileDati + " danneggiato: " + e.getMessage());
+            File danneggiato = new File(fileDati.getPath() + ".danneggiato");
+            if (!fileDati.renameTo(danneggiato)) {
+                System.err.println("Impossibile rinominare " + fileDati + " in " + danneggiato);
+            }
+            return null;
+        }
+        return new Replay(contenuto.getLibri(), contenuto.getUtenti(), contenuto.getPrestiti());
+    }
+
+    /**
+     * Scrive subito i file delle sezioni con i dati letti dal formato precedente e, solo se
+     * tutte sono state scritte, elimina il vecchio file. Fatto al caricamento, così le modifiche
+     * della sessione finiscono già nei journal delle sezioni.
+     */
+    private void convertiFormatoUnico(List<Libro> catalogo, List<Utente> anagrafica, List<Prestito> prestiti) {
+        // Al caricamento il thread di scrittura non ha nulla in coda: si scrive direttamente
+        // (con più postazioni il blocco è già tenuto da questo thread)
+        if (!salva(preparaSezioni(catalogo, anagrafica, prestiti, false, true))) return;
+        try {
+            Files.deleteIfExists(fileDati.toPath());
+            System.out.println("Archivio convertito in file separati per sezione.");
+        } catch (IOException e) {
+            System.err.println("Errore conversione archivio: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @brief Applica le modifiche del journal ai dati letti dallo snapshot.
+     * * Libri e utenti vengono risolti tramite la {@link MappaIdentita}, così i
+     * prestiti del journal puntano alle stesse istanze presenti nelle liste e
+     * l'ordine resta quello che si aveva in memoria al momento delle modifiche.
+     */
+    private static class Replay implements JournalModifiche.Destinatario {
+        private final MappaIdentita mappa;
+        // Prestiti per chiave, nell'ordine in cui sono stati letti
+        private final Map<ChiavePrestito, Prestito> prestiti = new LinkedHashMap<>();
+
+        Replay(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+            this.mappa = new MappaIdentita(libri, utenti);
+            for (Prestito p : prestiti) this.prestiti.put(ChiavePrestito.di(p), p);
+        }
+
+        /** @return I prestiti risultanti, nell'ordine in cui sono stati letti. */
+        List<Prestito> getPrestiti() {
+            return new ArrayList<>(prestiti.values());
+        }
+
+        @Override
+        public void libro(Libro letto) {
+            Libro esistente = mappa.libro(letto.getIsbn());
+            if (esistente == null) {
+                mappa.inserisciLibro(letto);
+                return;
+            }
+            // Aggiorno l'oggetto esistente: i prestiti caricati puntano già a lui
+            esistente.setTitolo(letto.getTitolo());
+            esistente.setAutori(letto.getAutori());
+            esistente.setDataPubblicazione(letto.getDataPubblicazione());
+            esistente.setDisponibilita(letto.getDisponibilita());
+        }
+
+        @Override
+        public void libroRimosso(String isbn) {
+            mappa.rimuoviLibro(isbn);
+        }
+
+        @Override
+        public void utente(Utente letto) {
+            Utente esistente = mappa.utente(letto.getMatricola());
+            if (esistente == null) {
+                mappa.inserisciUtente(letto);
+                return;
+            }
+            esistente.setNome(letto.getNome());
+            esistente.setCognome(letto.getCognome());
+            esistente.setEmail(letto.getEmail());
+        }
+
+        @Override
+        public void utenteRimosso(String matricola) {
+            mappa.rimuoviUtente(matricola);
+        }
+
+        @Override
+        public void prestito(ChiavePrestito chiave) {
+            // Un prestito già presente è stato solo risalvato (upsert): non va duplicato
+            if (prestiti.containsKey(chiave)) return;
+            Prestito p = mappa.collega(chiave);
+            if (p != null) prestiti.put(chiave, p);
+        }
+
+        @Override
+        public void prestitoRimosso(ChiavePrestito chiave) {
+            Prestito rimosso = prestiti.remove(chiave);
+            // collega() lo aveva aggiunto ai prestiti attivi dell'utente: non deve più contare nel limite
+            if (rimosso != null) rimosso.getUtente().rimuoviPrestito(rimosso);
+        }
+    }
+
+    /**
+     * Stato di un libro o di un utente su disco, scritto da questa o da un'altra postazione: una copia
+     * dei campi (null se il record è stato eliminato). Il thread di scrittura tiene l'ultimo stato di ogni
+     * record, quello dei dati lo stato su cui si basano gli oggetti in memoria: sono lo stesso oggetto
+     * finché nessuno modifica il record, quindi una modifica è concorrente se i due sono diversi.
+     */
+    private static final class StatoRecord {
+        final Object valori;
+        // Registrato da questa postazione e non ancora scritto (solo sul thread dei dati)
+        boolean inAttesa;
+
+        StatoRecord(Object valori) {
+            this.valori = valori;
+        }
+    }
+
+    /**
+     * Una modifica registrata, con il suo record (una sola postazione) oppure con lo stato registrato e
+     * quello su cui si basa (più postazioni), più l'esito della scrittura deciso dal thread di scrittura.
+     */
+    private static final class Registrazione {
+        final FileSezione sezione;
+        final Object chiave;
+        // Libro o utente registrato, prestito creato (null per un'eliminazione)
+        final Object oggetto;
+        final PreparazioneRecord preparazione;
+        JournalModifiche.Record record;
+        StatoRecord base;
+        StatoRecord stato;
+
+        // Esito: scritta con lo stato indicato, oppure annullata perché su disco prevale un altro stato
+        boolean scritta;
+        StatoRecord scritto;
+        StatoRecord vincente;
+        String conflitto;
+
+        Registrazione(FileSezione sezione, Object chiave, Object oggetto, PreparazioneRecord preparazione) {
+            this.sezione = sezione;
+            this.chiave = chiave;
+            this.oggetto = oggetto;
+            this.preparazione = preparazione;
+        }
+
+        /** Il record dello stato da scrivere, con la sequenza successiva del suo journal. */
+        JournalModifiche.Record prepara() throws IOException {
+            Object valori = scritto == null ? null : scritto.valori;
+            if (valori instanceof Libro) return sezione.getJournal().preparaLibro((Libro) valori);
+            if (valori instanceof Utente) return sezione.getJournal().preparaUtente((Utente) valori);
+            return preparazione.prepara();
+        }
+
+        void scrivi(StatoRecord stato) {
+            scritta = true;
+            scritto = stato;
+        }
+
+        void annulla(StatoRecord vincente, String conflitto) {
+            this.vincente = vincente;
+            this.conflitto = conflitto;
+        }
+
+        /** Dimentica l'esito di una scrittura fallita, da ripetere. */
+        void azzera() {
+            scritta = false;
+            scritto = null;
+            vincente = null;
+            conflitto = null;
+        }
+    }
+
+    /** Un record scritto da un'altra postazione, letto dal thread di scrittura. */
+    private static final class RecordLetto {
+        final FileSezione sezione;
+        final Object chiave;
+        final boolean rimozione;
+        // Stato del libro o dell'utente (null per i prestiti)
+        final StatoRecord stato;
+
+        RecordLetto(FileSezione sezione, Object chiave, boolean rimozione, StatoRecord stato) {
+            this.sezione = sezione;
+            this.chiave = chiave;
+            this.rimozione = rimozione;
+            this.stato = stato;
+        }
+    }
+
+    /**
+     * @brief Un passaggio del thread di scrittura sui journal condivisi: modifiche lette ed esito delle registrazioni.
+     * * Le modifiche delle altre postazioni aggiornano l'ultimo stato su disco di ogni record e vengono
+     * consegnate al thread dei dati. Una registrazione basata su uno stato diverso dall'ultimo è
+     * concorrente con un'altra modifica e {@link #risolvi} decide cosa scrivere:
+     * - la disponibilità di un libro si somma (le postazioni hanno prestato o restituito copie diverse),
+     *   ma non può scendere sotto zero: la modifica viene rifiutata, insieme ai prestiti dello stesso
+     *   libro aperti nel gruppo;
+     * - gli altri campi restano quelli cambiati da una sola delle due; se li hanno cambiati entrambe
+     *   prevale chi ha scritto per primo e il conflitto viene segnalato;
+     * - tra modifica ed eliminazione prevale quella già scritta;
+     * - i prestiti sono identificati dalla loro chiave: vale l'ultima scrittura.
+     */
+    private final class Aggiornamento implements JournalModifiche.Destinatario {
+        final CompletableFuture<Void> esito;
+        final List<RecordLetto> letti = new ArrayList<>();
+        // Registrazioni con il loro esito, consegnate solo se la scrittura è riuscita
+        final List<Registrazione> registrazioni = new ArrayList<>();
+        String rifiuto;
+        IOException errore;
+
+        // Stati scritti dal gruppo, resi definitivi solo se la scrittura riesce
+        private final Map<String, StatoRecord> libriScritti = new HashMap<>();
+        private final Map<String, StatoRecord> utentiScritti = new HashMap<>();
+
+        Aggiornamento(CompletableFuture<Void> esito) {
+            this.esito = esito;
+        }
+
+        @Override
+        public void libro(Libro letto) {
+            leggi(fileLibri, letto.getIsbn(), new StatoRecord(copia(letto)));
+        }
+
+        @Override
+        public void libroRimosso(String isbn) {
+            leggi(fileLibri, isbn, new StatoRecord(null));
+        }
+
+        @Override
+        public void utente(Utente letto) {
+            leggi(fileUtenti, letto.getMatricola(), new StatoRecord(copia(letto)));
+        }
+
+        @Override
+        public void utenteRimosso(String matricola) {
+            leggi(fileUtenti, matricola, new StatoRecord(null));
+        }
+
+        @Override
+        public void prestito(ChiavePrestito chiave) {
+            letti.add(new RecordLetto(filePrestiti, chiave, false, null));
+        }
+
+        @Override
+        public void prestitoRimosso(ChiavePrestito chiave) {
+            letti.add(new RecordLetto(filePrestiti, chiave, true, null));
+        }
+
+        private void leggi(FileSezione sezione, String chiave, StatoRecord stato) {
+            (sezione == fileLibri ? statoLibri : statoUtenti).put(chiave, stato);
+            letti.add(new RecordLetto(sezione, chiave, stato.valori == null, stato));
+        }
+
+        /**
+         * Decide l'esito di ogni registrazione, nell'ordine in cui sono state fatte.
+         * @return Le registrazioni da scrivere.
+         */
+        List<Registrazione> risolvi(List<Registrazione> gruppo) {
+            Set<String> esauriti = new HashSet<>();
+            for (Registrazione r : gruppo) {
+                if (r.sezione == fileLibri) risolviLibro(r, esauriti);
+                else if (r.sezione == fileUtenti) risolviUtente(r);
+            }
+            List<Registrazione> daScrivere = new ArrayList<>();
+            for (Registrazione r : gruppo) {
+                if (r.sezione == filePrestiti) {
+                    // Un prestito dell'ultima copia, presa da un'altra postazione, non va scritto
+                    if (r.oggetto == null || !esauriti.contains(((ChiavePrestito) r.chiave).getIsbn())) r.scrivi(null);
+                }
+                if (r.scritta) daScrivere.add(r);
+            }
+            return daScrivere;
+        }
+
+        /** Rende definitivi gli stati scritti e consegna l'esito delle registrazioni. */
+        void conferma(List<Registrazione> gruppo) {
+            statoLibri.putAll(libriScritti);
+            statoUtenti.putAll(utentiScritti);
+            registrazioni.addAll(gruppo);
+        }
+
+        private void risolviLibro(Registrazione r, Set<String> esauriti) {
+            String isbn = (String) r.chiave;
+            StatoRecord disco = libriScritti.containsKey(isbn) ? libriScritti.get(isbn) : statoLibri.get(isbn);
+            Libro remoto = disco == null ? null : (Libro) disco.valori;
+            Libro locale = (Libro) r.stato.valori;
+            Libro base = r.base == null ? null : (Libro) r.base.valori;
+            if (disco == r.base || remoto == null && base == null) {
+                // Nessuna modifica concorrente (o libro reinserito dopo un'eliminazione)
+                scrivi(r, r.stato, libriScritti);
+            } else if (locale == null) {
+                if (remoto == null) r.annulla(disco, null); // Eliminato anche dall'altra postazione
+                else r.annulla(disco, "Il libro \"" + remoto.getTitolo() + "\" è stato modificato da un'altra postazione: eliminazione annullata.");
+            } else if (remoto == null) {
+                r.annulla(disco, "Il libro \"" + locale.getTitolo() + "\" è stato eliminato da un'altra postazione: modifica annullata.");
+            } else if (base == null) {
+                // Inserito con lo stesso ISBN da entrambe: resta il primo
+                r.annulla(disco, "L'ISBN " + isbn + " è già stato inserito da un'altra postazione: mantenuti i suoi dati.");
+            } else {
+                int disponibilita = remoto.getDisponibilita() + locale.getDisponibilita() - base.getDisponibilita();
+                if (disponibilita < 0) {
+                    rifiuto = "Copie esaurite per \"" + locale.getTitolo() + "\": sono state prestate da un'altra postazione.";
+                    esauriti.add(isbn);
+                    r.annulla(disco, null);
+                    return;
+                }
+                Libro fuso = copia(campiDaScrivere(r, remoto, locale, base,
+                        "Il libro \"" + locale.getTitolo() + "\" è stato modificato anche da un'altra postazione: mantenuta la sua versione."));
+                fuso.setDisponibilita(disponibilita);
+                scrivi(r, new StatoRecord(fuso), libriScritti);
+            }
+        }
+
+        private void risolviUtente(Registrazione r) {
+            String matricola = (String) r.chiave;
+            StatoRecord disco = utentiScritti.containsKey(matricola) ? utentiScritti.get(matricola) : statoUtenti.get(matricola);
+            Utente remoto = disco == null ? null : (Utente) disco.valori;
+            Utente locale = (Utente) r.stato.valori;
+            Utente base = r.base == null ? null : (Utente) r.base.valori;
+            if (disco == r.base || remoto == null && base == null) {
+                scrivi(r, r.stato, utentiScritti);
+            } else if (locale == null) {
+                if (remoto == null) r.annulla(disco, null);
+                else r.annulla(disco, "L'utente " + matricola + " è stato modificato da un'altra postazione: eliminazione annullata.");
+            } else if (remoto == null) {
+                r.annulla(disco, "L'utente " + matricola + " è stato eliminato da un'altra postazione: modifica annullata.");
+            } else if (base == null) {
+                r.annulla(disco, "La matricola " + matricola + " è già stata inserita da un'altra postazione: mantenuti i suoi dati.");
+            } else {
+                Utente fuso = copia(campiDaScrivere(r, remoto, locale, base,
+                        "L'utente " + matricola + " è stato modificato anche da un'altra postazione: mantenuta la sua versione."));
+                scrivi(r, new StatoRecord(fuso), utentiScritti);
+            }
+        }
+
+        /**
+         * Campi (disponibilità esclusa) da scrivere per due modifiche concorrenti: quelli cambiati da una
+         * sola delle due; se le due li hanno cambiati in modo diverso restano quelli già scritti.
+         * @return La versione da cui prendere i campi.
+         */
+        private <T> T campiDaScrivere(Registrazione r, T remoto, T locale, T base, String conflitto) {
+            if (campi(locale).equals(campi(base))) return remoto;
+            if (campi(remoto).equals(campi(base)) || campi(remoto).equals(campi(locale))) return locale;
+            r.conflitto = conflitto;
+            return remoto;
+        }
+
+        private void scrivi(Registrazione r, StatoRecord stato, Map<String, StatoRecord> scritti) {
+            r.scrivi(stato);
+            scritti.put((String) r.chiave, stato);
+        }
+    }
+
+    /** Copia scollegata di un libro o di un utente (null per null). */
+    private static Object copia(Object oggetto) {
+        if (oggetto instanceof Libro) return copia((Libro) oggetto);
+        if (oggetto instanceof Utente) return copia((Utente) oggetto);
+        return null;
+    }
+
+    private static Libro copia(Libro l) {
+        Libro copia = new Libro(l.getTitolo(), l.getAutori(), l.getDataPubblicazione(), l.getIsbn(), Math.max(l.getDisponibilita(), 1));
+        copia.setDisponibilita(l.getDisponibilita());
+        return copia;
+    }
+
+    private static Utente copia(Utente u) {
+        return new Utente(u.getNome(), u.getCognome(), u.getMatricola(), u.getEmail());
+    }
+
+    /** Campi confrontati per riconoscere una modifica: la disponibilità di un libro si confronta a parte. */
+    private static List<Object> campi(Object oggetto) {
+        if (oggetto instanceof Libro) {
+            Libro l = (Libro) oggetto;
+            return Arrays.asList(l.getTitolo(), l.getAutori(), l.getDataPubblicazione());
+        }
+        Utente u = (Utente) oggetto;
+        return Arrays.asList(u.getNome(), u.getCognome(), u.getEmail());
+    }
+
+    private static void copiaCampi(Libro da, Libro a) {
+        a.setTitolo(da.getTitolo());
+        a.setAutori(da.getAutori());
+        a.setDataPubblicazione(da.getDataPubblicazione());
+    }
+
+    private static void copiaCampi(Utente da, Utente a) {
+        a.setNome(da.getNome());
+        a.setCognome(da.getCognome());
+        a.setEmail(da.getEmail());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package it.unisa.biblioteca.controller;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.util.Duration;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Salvataggio automatico periodico.
+ * <p>
+ *     A intervalli regolari controlla quante modifiche si sono accumulate dall'ultimo salvataggio
+ *     e decide se avviarne uno: con molte modifiche si salva subito, con poche si attende al massimo
+ *     {@code INTERVALLO_MASSIMO_MS}, senza modifiche non si salva affatto. La frequenza si adatta
+ *     quindi al carico di lavoro.
+ * </p>
+ * <p>
+ *     Nei controlli in cui non c'è nulla da salvare, al più ogni {@code INTERVALLO_COMPATTAZIONE_MS}
+ *     viene avviata anche la compattazione dell'archivio (il journal ripiegato nello snapshot),
+ *     così il registro delle modifiche non cresce per tutta la durata della sessione. Il primo
+ *     controllo la avvia subito, per le sezioni risultate lente da rileggere all'avvio.
+ * </p>
+ * <p>
+ *     Ogni controllo legge anche le modifiche delle altre postazioni che usano lo stesso archivio
+ *     (se ce ne sono): compaiono quindi entro {@code INTERVALLO_CONTROLLO_SECONDI}.
+ * </p>
+ * <p>
+ *     Il controllo gira sul thread JavaFX (tramite {@link Timeline}), così la copia delle liste
+ *     avviene in un momento coerente; la scrittura su disco è poi affidata al thread di
+ *     {@link GestoreFile}.
+ * </p>
+ */
+public class SalvataggioAutomatico {
+
+    private static final double INTERVALLO_CONTROLLO_SECONDI = 15;
+    private static final int SOGLIA_MODIFICHE = 100;
+    private static final long INTERVALLO_MASSIMO_MS = 5 * 60 * 1000L;
+    private static final long INTERVALLO_COMPATTAZIONE_MS = 10 * 60 * 1000L;
+
+    private final IntSupplier modificheInSospeso;
+    private final Runnable salvataggio;
+    private final Runnable compattazione;
+    private final Runnable sincronizzazione;
+    private final Timeline timeline;
+    private long ultimoSalvataggio = System.currentTimeMillis();
+    private long ultimaCompattazione = 0;
+
+    /**
+     * Costruttore del salvataggio automatico
+     * @param modificheInSospeso fornisce il numero di modifiche non ancora salvate
+     * @param salvataggio avvia un salvataggio in background (non deve bloccare)
+     * @param compattazione avvia una compattazione in background (non deve bloccare)
+     * @param sincronizzazione applica le modifiche delle altre postazioni
+     */
+    public SalvataggioAutomatico(IntSupplier modificheInSospeso, Runnable salvataggio, Runnable compattazione, Runnable sincronizzazione) {
+        this.modificheInSospeso = modificheInSospeso;
+        this.salvataggio = salvataggio;
+        this.compattazione = compattazione;
+        this.sincronizzazione = sincronizzazione;
+        this.timeline = new Timeline(new KeyFrame(Duration.seconds(INTERVALLO_CONTROLLO_SECONDI), e -> controlla()));
+        this.timeline.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    /**
+     * Avvia i controlli periodici.
+     */
+    public void avvia() {
+        timeline.play();
+    }
+
+    /**
+     * Ferma i controlli periodici (es. alla chiusura del programma).
+     */
+    public void ferma() {
+        timeline.stop();
+    }
+
+    /**
+     * Decide se avviare un salvataggio in base alle modifiche accumulate e al tempo trascorso,
+     * altrimenti se è il momento di una compattazione.
+     */
+    private void controlla() {
+        sincronizzazione.run();
+        int modifiche = modificheInSospeso.getAsInt();
+        long adesso = System.currentTimeMillis();
+        if (modifiche >= SOGLIA_MODIFICHE || (modifiche > 0 && adesso - ultimoSalvataggio >= INTERVALLO_MASSIMO_MS)) {
+            salvataggio.run();
+            ultimoSalvataggio = adesso;
+        } else if (adesso - ultimaCompattazione >= INTERVALLO_COMPATTAZIONE_MS) {
+            compattazione.run();
+            ultimaCompattazione = adesso;
+            // La compattazione salva anche le modifiche in sospeso
+            if (modifiche > 0) ultimoSalvataggio = adesso;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package it.unisa.biblioteca.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @brief Sequenza globale delle modifiche ai record del modello.
+ * * Ogni creazione o modifica di un {@link Libro} o di un {@link Utente} riceve un numero
+ * sempre crescente: confrontandolo con il valore letto a un certo istante ("checkpoint")
+ * si sa quali record sono stati modificati da allora, senza confrontarne i campi.
+ */
+public final class ContatoreModifiche {
+
+    private static final AtomicLong ULTIMA = new AtomicLong();
+
+    private ContatoreModifiche() {
+    }
+
+    /**
+     * @brief Assegna il numero alla prossima modifica.
+     * @return Numero della modifica, maggiore di tutti quelli assegnati prima.
+     */
+    static long prossimo() {
+        return ULTIMA.incrementAndGet();
+    }
+
+    /**
+     * @brief Restituisce il numero dell'ultima modifica assegnata, da usare come checkpoint.
+     * @return Ultimo numero assegnato (0 se non ci sono ancora state modifiche).
+     */
+    public static long ultimo() {
+        return ULTIMA.get();
+    }
+}
@@ -16,12 +16,17 @@ import java.util.Objects;
  */
 
 public class Libro implements Serializable {
+    // Fissato al valore dei file già salvati: aggiungere metodi non deve renderli illeggibili
+    private static final long serialVersionUID = -6188643890987835323L;
+
     private String titolo;
     private List<String> autori;
     private LocalDate dataPubblicazione;
     private int disponibilita;
     //L'ISBN è final: identifica il libro univocamente.
     private final String isbn;
+    // Numero dell'ultima modifica (vedi ContatoreModifiche): non viene salvato
+    private transient long seqModifica;
 
 
     ///  --- Costruttore ---///
@@ -71,6 +76,7 @@ public class Libro implements Serializable {
         //3. Defensive Copy per la lista (Importante per Ingegneria del Software)
         //Creiamo una NUOVA lista contenente gli autori passati, così se la lista originale fuori da questa classe cambia, il libro non viene corrotto.*/
         this.autori = new ArrayList<>(autori);
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     //--- Getters
@@ -117,6 +123,15 @@ public class Libro implements Serializable {
         return disponibilita;
     }
 
+    /**
+     * @brief Restituisce il numero dell'ultima modifica del libro (creazione compresa).
+     * * Cresce a ogni setter: serve a riconoscere i libri modificati dopo un checkpoint.
+     * @return Numero assegnato da {@link ContatoreModifiche}, 0 per un libro deserializzato.
+     */
+    public long getSeqModifica() {
+        return seqModifica;
+    }
+
 
     //  --- Setter ---
 
@@ -130,6 +145,7 @@ public class Libro implements Serializable {
             throw new IllegalArgumentException("Il titolo non può essere vuoto.");
         }
         this.titolo = titolo;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     /**
@@ -138,6 +154,7 @@ public class Libro implements Serializable {
      */
     public void setDataPubblicazione(LocalDate dataPubblicazione) {
         this.dataPubblicazione = dataPubblicazione;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     /**
@@ -152,16 +169,33 @@ public class Libro implements Serializable {
         }
         ///Defensive copy anche qui: scolleghiamo la lista interna da quella passata
         this.autori = new ArrayList<>(nuoviAutori);
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     // --- Gestione Stato --
 
+    /**
+     * @brief Imposta direttamente il numero di copie disponibili.
+     * * Usato in fase di ripristino dei dati salvati, dove la disponibilità
+     * può legittimamente essere 0 (tutte le copie in prestito).
+     * * @param disponibilita Il nuovo numero di copie disponibili.
+     * @throws IllegalArgumentException Se la disponibilità è negativa.
+     */
+    public void setDisponibilita(int disponibilita) {
+        if (disponibilita < 0) {
+            throw new IllegalArgumentException("La disponibilità non può essere negativa.");
+        }
+        this.disponibilita = disponibilita;
+        this.seqModifica = ContatoreModifiche.prossimo();
+    }
+
     /**
      * @brief Incrementa la disponibilità del libro di una unità.
      * * Da utilizzare quando un libro viene restituito o vengono acquistate nuove copie.
      */
     public void incrementaDisponibilita() {
         this.disponibilita++;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     //Diminuisce la disponibilità (es. Prestito).
@@ -174,6 +208,7 @@ public class Libro implements Serializable {
     public void decrementaDisponibilita() {
         if (this.disponibilita > 0) {
             this.disponibilita--;
+            this.seqModifica = ContatoreModifiche.prossimo();
         } else {
             throw new IllegalStateException("Impossibile decrementare: copie esaurite.");
         }
@@ -16,6 +16,8 @@ import java.util.regex.Pattern;
  */
 
 public class Utente implements Serializable {
+    // Fissato al valore dei file già salvati: aggiungere metodi non deve renderli illeggibili
+    private static final long serialVersionUID = -6220619304079089746L;
 
     
     //Forse mi va 
@@ -33,6 +35,9 @@ public class Utente implements Serializable {
     // Uso una lista di Prestiti (e non di Libri) perché mi serve sapere le date di scadenza
     private final List<Prestito> prestitiAttivi;
 
+    // Numero dell'ultima modifica ai dati anagrafici (vedi ContatoreModifiche): non viene salvato
+    private transient long seqModifica;
+
     // Regex standard per validare la mail (copiata per sicurezza formale)
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,6}$");
 
@@ -81,6 +86,7 @@ public class Utente implements Serializable {
             throw new IllegalArgumentException("Il nome non può essere vuoto.");
         }
         this.nome = nome;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     /**
@@ -93,6 +99,7 @@ public class Utente implements Serializable {
             throw new IllegalArgumentException("Il cognome non può essere vuoto.");
         }
         this.cognome = cognome;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     /**
@@ -107,6 +114,7 @@ public class Utente implements Serializable {
             throw new IllegalArgumentException("Formato email non valido: " + email);
         }
         this.email = email;
+        this.seqModifica = ContatoreModifiche.prossimo();
     }
 
     // --- GETTER (Accesso ai dati) ---
@@ -132,6 +140,13 @@ public class Utente implements Serializable {
      */
     public String getMatricola() { return matricola; }
 
+    /**
+     * @brief Restituisce il numero dell'ultima modifica ai dati anagrafici dell'utente.
+     * * Serve a riconoscere gli utenti modificati dopo un checkpoint.
+     * @return Numero assegnato da {@link ContatoreModifiche}, 0 per un utente deserializzato.
+     */
+    public long getSeqModifica() { return seqModifica; }
+
     // --- GESTIONE PRESTITI ---
 
     // Ritorno una lista "unmodifiable" così nessuno può fare getPrestiti().clear() da fuori rompendo tutto
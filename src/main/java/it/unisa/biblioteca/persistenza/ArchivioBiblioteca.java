@@ -0,0 +1,297 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * @brief Backend di memorizzazione dei dati della biblioteca (interfaccia SPI).
+ * * Il controller lavora solo con questa interfaccia, quindi il backend può essere scelto
+ * in base alla mole di dati (file binario, database incorporato...) o sostituito nei test
+ * con {@link ArchivioInMemoria}; lo stesso carico di lavoro può essere eseguito su
+ * backend diversi per confrontarli.
+ * * Ogni modifica puntuale passa dai repository ({@link #libri()}, {@link #utenti()},
+ * {@link #prestiti()}); le operazioni "tutto" servono a riempire e salvare le liste
+ * osservabili mostrate dalla GUI.
+ */
+public interface ArchivioBiblioteca {
+
+    /** @return Repository dei libri, per ISBN. */
+    Repository<String, Libro> libri();
+
+    /** @return Repository degli utenti, per matricola. */
+    Repository<String, Utente> utenti();
+
+    /** @return Repository dei prestiti, per (matricola, ISBN, data di inizio). */
+    Repository<ChiavePrestito, Prestito> prestiti();
+
+    // --- SCORCIATOIE PER IL CONTROLLER ---
+
+    /**
+     * @brief Registra l'inserimento o la modifica di un libro (titolo, autori, disponibilità...).
+     * @param libro Il libro nel suo stato aggiornato.
+     */
+    default void registraLibro(Libro libro) {
+        libri().salva(libro);
+    }
+
+    /**
+     * @brief Registra l'eliminazione di un libro dal catalogo.
+     * @param libro Il libro eliminato.
+     */
+    default void registraRimozioneLibro(Libro libro) {
+        libri().elimina(libro.getIsbn());
+    }
+
+    /**
+     * @brief Registra l'inserimento o la modifica di un utente.
+     * @param utente L'utente nel suo stato aggiornato.
+     */
+    default void registraUtente(Utente utente) {
+        utenti().salva(utente);
+    }
+
+    /**
+     * @brief Registra l'eliminazione di un utente dall'anagrafica.
+     * @param utente L'utente eliminato.
+     */
+    default void registraRimozioneUtente(Utente utente) {
+        utenti().elimina(utente.getMatricola());
+    }
+
+    /**
+     * @brief Registra la creazione di un prestito.
+     * @param prestito Il prestito creato.
+     */
+    default void registraPrestito(Prestito prestito) {
+        prestiti().salva(prestito);
+    }
+
+    /**
+     * @brief Registra la rimozione di un prestito.
+     * @param prestito Il prestito rimosso.
+     */
+    default void registraRimozionePrestito(Prestito prestito) {
+        prestiti().elimina(ChiavePrestito.di(prestito));
+    }
+
+    // --- RICERCHE ---
+
+    /**
+     * @brief Indica se {@link #caricaTutto} carica solo una parte dei dati.
+     * * In questo caso le liste della GUI contengono solo gli oggetti già richiesti e le
+     * ricerche vanno fatte sul backend ({@link #cercaLibri}, {@link #cercaUtenti}, {@link #cercaPrestiti}).
+     * @return true se il caricamento è parziale.
+     */
+    default boolean isCaricamentoParziale() {
+        return false;
+    }
+
+    /**
+     * @brief Indica se il backend è in sola lettura (es. un terminale di ricerca).
+     * * In questo caso la GUI non deve permettere modifiche: i repository le rifiutano.
+     * @return true se il backend non accetta modifiche.
+     */
+    default boolean isSolaLettura() {
+        return false;
+    }
+
+    /**
+     * @brief Cerca i libri il cui campo contiene il testo (senza distinguere maiuscole e minuscole).
+     * * La ricerca per data di pubblicazione è {@link #cercaLibriPubblicatiTra}.
+     * @param criterio Campo su cui cercare, come nella vista: "Titolo", "ISBN" o "Autore".
+     * @param testo Testo da cercare.
+     * @return I libri trovati.
+     */
+    default List<Libro> cercaLibri(String criterio, String testo) {
+        String cercato = testo.toLowerCase();
+        List<Libro> trovati = new ArrayList<>();
+        for (Libro l : libri().intervallo(null, null)) {
+            String campo;
+            switch (criterio) {
+                case "Titolo": campo = l.getTitolo(); break;
+                case "ISBN": campo = l.getIsbn(); break;
+                case "Autore": campo = l.getAutori().toString(); break;
+                default: return trovati;
+            }
+            if (campo.toLowerCase().contains(cercato)) trovati.add(l);
+        }
+        return trovati;
+    }
+
+    /**
+     * @brief Cerca i libri pubblicati in un intervallo di date.
+     * @param intervallo Date comprese (un estremo null vuol dire senza limite).
+     * @return I libri trovati.
+     */
+    default List<Libro> cercaLibriPubblicatiTra(IntervalloDate intervallo) {
+        List<Libro> trovati = new ArrayList<>();
+        for (Libro l : libri().intervallo(null, null)) {
+            if (intervallo.contiene(l.getDataPubblicazione())) trovati.add(l);
+        }
+        return trovati;
+    }
+
+    /**
+     * @brief Cerca gli utenti il cui campo contiene il testo (senza distinguere maiuscole e minuscole).
+     * @param criterio Campo su cui cercare, come nella vista: "Cognome", "Matricola" o "Email".
+     * @param testo Testo da cercare.
+     * @return Gli utenti trovati.
+     */
+    default List<Utente> cercaUtenti(String criterio, String testo) {
+        String cercato = testo.toLowerCase();
+        List<Utente> trovati = new ArrayList<>();
+        for (Utente u : utenti().intervallo(null, null)) {
+            String campo;
+            switch (criterio) {
+                case "Cognome": campo = u.getCognome(); break;
+                case "Matricola": campo = u.getMatricola(); break;
+                case "Email": campo = u.getEmail(); break;
+                default: return trovati;
+            }
+            if (campo.toLowerCase().contains(cercato)) trovati.add(u);
+        }
+        return trovati;
+    }
+
+    /**
+     * @brief Cerca i prestiti per cognome dell'utente o per titolo del libro.
+     * @param criterio Come nella vista: inizia con "Utente" (cognome) o con "Libro" (titolo).
+     * @param testo Testo da cercare.
+     * @return I prestiti trovati.
+     */
+    default List<Prestito> cercaPrestiti(String criterio, String testo) {
+        String cercato = testo.toLowerCase();
+        List<Prestito> trovati = new ArrayList<>();
+        for (Prestito p : prestiti().intervallo(null, null)) {
+            String campo;
+            if (criterio.startsWith("Utente")) campo = p.getUtente().getCognome();
+            else if (criterio.startsWith("Libro")) campo = p.getLibro().getTitolo();
+            else return trovati;
+            if (campo.toLowerCase().contains(cercato)) trovati.add(p);
+        }
+        return trovati;
+    }
+
+    /**
+     * @brief Restituisce i prestiti di un libro (es. per impedirne l'eliminazione).
+     * @param isbn ISBN del libro.
+     * @return I prestiti del libro.
+     */
+    default List<Prestito> prestitiDelLibro(String isbn) {
+        List<Prestito> trovati = new ArrayList<>();
+        for (Prestito p : prestiti().intervallo(null, null)) {
+            if (p.getLibro().getIsbn().equals(isbn)) trovati.add(p);
+        }
+        return trovati;
+    }
+
+    /**
+     * @brief Restituisce i prestiti di un utente (es. per impedirne l'eliminazione).
+     * @param matricola Matricola dell'utente.
+     * @return I prestiti dell'utente.
+     */
+    default List<Prestito> prestitiDellUtente(String matricola) {
+        List<Prestito> trovati = new ArrayList<>();
+        for (Prestito p : prestiti().intervallo(null, null)) {
+            if (p.getUtente().getMatricola().equals(matricola)) trovati.add(p);
+        }
+        return trovati;
+    }
+
+    // --- OPERAZIONI SU TUTTI I DATI ---
+
+    /**
+     * @brief Carica tutti i dati nelle liste della GUI.
+     * * Se {@link #isCaricamentoParziale()} è true ne carica solo una parte.
+     * @param catalogo Lista in cui caricare i libri.
+     * @param anagrafica Lista in cui caricare gli utenti.
+     * @param prestiti Lista in cui caricare i prestiti.
+     */
+    void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti);
+
+    /**
+     * @brief Salva tutti i dati e attende la fine del salvataggio (es. alla chiusura).
+     * @param libri Libri da salvare.
+     * @param utenti Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     */
+    void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti);
+
+    /**
+     * @brief Avvia un salvataggio senza attenderne la fine.
+     * @param libri Libri da salvare.
+     * @param utenti Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @return Il salvataggio in corso.
+     */
+    Future<?> salvaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti);
+
+    /**
+     * @brief Avvia una compattazione senza attenderne la fine (es. periodicamente, nei momenti di inattività).
+     * * Per i backend con un registro delle modifiche, lo ripiega in una copia completa dei dati
+     * così il registro non cresce senza limite; per gli altri equivale a {@link #salvaInBackground}.
+     * @param libri Libri da salvare.
+     * @param utenti Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @return La compattazione in corso.
+     */
+    default Future<?> compattaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        return salvaInBackground(libri, utenti, prestiti);
+    }
+
+    // --- POSTAZIONI CONDIVISE ---
+
+    /**
+     * @brief Registra come un unico gruppo le modifiche fatte da {@code registrazioni} (es. un cambiamento di una lista).
+     * * I backend che scrivono in background possono scrivere il gruppo in una volta sola. Il
+     * risultato fallisce con IOException se il gruppo non è stato scritto (verrà riprovato) e con
+     * IllegalStateException se una modifica è stata rifiutata (es. copie prestate da un'altra postazione).
+     * @param registrazioni Esegue le registrazioni del gruppo (anche annidate in altri gruppi).
+     * @return La scrittura del gruppo; già completata per i backend che scrivono subito.
+     */
+    default CompletableFuture<Void> inGruppo(Runnable registrazioni) {
+        registrazioni.run();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @brief Legge le modifiche fatte da altre postazioni sullo stesso archivio (es. periodicamente).
+     * * Gli oggetti già in memoria vengono aggiornati sul posto; aggiunte, rimozioni e conflitti
+     * arrivano all'ascoltatore ({@link #setAscoltatoreModificheRemote}). Per i backend usati da una
+     * sola postazione non fa nulla.
+     * @return La lettura in corso.
+     */
+    default Future<?> sincronizza() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @brief Imposta chi riceve le modifiche arrivate da altre postazioni e il thread su cui vengono applicate.
+     * * Gli oggetti in memoria vengono aggiornati, l'ascoltatore chiamato e i risultati di
+     * {@link #inGruppo} completati sempre tramite {@code threadDati}, mai durante una registrazione.
+     * @param ascoltatore Riceve le modifiche lette.
+     * @param threadDati Esegue i compiti sul thread che modifica i dati (es. {@code Platform::runLater}).
+     */
+    default void setAscoltatoreModificheRemote(Consumer<ModificheRemote> ascoltatore, Executor threadDati) {
+    }
+
+    /**
+     * @brief Restituisce il numero di modifiche non ancora salvate.
+     * @return Numero di modifiche.
+     */
+    int getModificheNonSalvate();
+
+    /**
+     * @brief Rilascia le risorse del backend (file, thread, connessioni).
+     */
+    void chiudi();
+}
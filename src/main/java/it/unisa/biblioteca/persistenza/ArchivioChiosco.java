@@ -0,0 +1,102 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.ObservableList;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * @brief Backend in sola lettura per i terminali di ricerca (chioschi).
+ * * Legge il catalogo pubblicato dal banco prestiti tramite un {@link CatalogoMappato}: nessun libro
+ * viene caricato all'avvio e le ricerche vengono eseguite direttamente sul file mappato, che viene
+ * rimappato quando il banco lo aggiorna. Utenti e prestiti non sono disponibili sui terminali.
+ */
+public class ArchivioChiosco implements ArchivioBiblioteca {
+
+    /** Numero massimo di libri restituiti da una ricerca. */
+    public static final int LIMITE_RISULTATI = 1000;
+
+    private final CatalogoMappato catalogo;
+    private final RepositoryInMemoria<String, Utente> utenti = new RepositoryInMemoria<>(Utente::getMatricola);
+    private final RepositoryInMemoria<ChiavePrestito, Prestito> prestiti = new RepositoryInMemoria<>(ChiavePrestito::di);
+
+    /**
+     * @brief Apre il catalogo pubblicato dal banco prestiti.
+     * @param fileCatalogo File del catalogo (può non esistere ancora).
+     */
+    public ArchivioChiosco(File fileCatalogo) {
+        this.catalogo = new CatalogoMappato(fileCatalogo);
+    }
+
+    @Override
+    public Repository<String, Libro> libri() {
+        catalogo.aggiorna();
+        return catalogo;
+    }
+
+    @Override
+    public Repository<String, Utente> utenti() {
+        return utenti;
+    }
+
+    @Override
+    public Repository<ChiavePrestito, Prestito> prestiti() {
+        return prestiti;
+    }
+
+    @Override
+    public boolean isCaricamentoParziale() {
+        return true;
+    }
+
+    @Override
+    public boolean isSolaLettura() {
+        return true;
+    }
+
+    /**
+     * @brief Non carica alcun libro: le tabelle si riempiono con i risultati delle ricerche.
+     */
+    @Override
+    public void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
+        this.catalogo.aggiorna();
+        System.out.println("Catalogo condiviso aperto: " + this.catalogo.conta() + " libri.");
+    }
+
+    @Override
+    public List<Libro> cercaLibri(String criterio, String testo) {
+        catalogo.aggiorna();
+        return catalogo.cerca(criterio, testo, LIMITE_RISULTATI);
+    }
+
+    @Override
+    public List<Libro> cercaLibriPubblicatiTra(IntervalloDate intervallo) {
+        catalogo.aggiorna();
+        return catalogo.cercaPubblicatiTra(intervallo, LIMITE_RISULTATI);
+    }
+
+    @Override
+    public void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti) {
+        // Sola lettura: nulla da salvare
+    }
+
+    @Override
+    public Future<?> salvaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public int getModificheNonSalvate() {
+        return 0;
+    }
+
+    @Override
+    public void chiudi() {
+        catalogo.close();
+    }
+}
@@ -0,0 +1,667 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.ObservableList;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * @brief Backend su database SQL incorporato (H2 su file, senza server).
+ * * Pensato per gli archivi troppo grandi per essere tenuti in memoria e riscritti in un
+ * unico file: ogni modifica è un'istruzione SQL confermata subito, quindi non esiste un
+ * "salvataggio" vero e proprio, e all'avvio si leggono solo i prestiti più vicini alla
+ * scadenza ({@link #LIMITE_CARICAMENTO}), in tempo costante rispetto alla dimensione dell'archivio.
+ * * Indici:
+ * - libro: chiave primaria su isbn (ricerca per ISBN e controllo duplicati);
+ * - utente: chiave primaria su matricola (ricerca per matricola e controllo duplicati);
+ * - prestito: chiave primaria (matricola, isbn, data_inizio), che serve anche le ricerche
+ *   per matricola, più un indice su isbn e uno su data_fine_prevista.
+ * * Gli oggetti letti passano da una {@link MappaIdentita}: uno stesso ISBN o matricola
+ * corrisponde sempre alla stessa istanza, così le modifiche fatte dalla GUI su un oggetto
+ * si vedono ovunque sia mostrato. Un utente viene sempre letto insieme ai suoi prestiti.
+ */
+public class ArchivioDatabase implements ArchivioBiblioteca {
+
+    /** Numero massimo di righe restituite da una ricerca. */
+    public static final int LIMITE_RISULTATI = 1000;
+    /** Numero di prestiti (i più vicini alla scadenza) caricati all'avvio. */
+    public static final int LIMITE_CARICAMENTO = 200;
+    private static final int DIMENSIONE_BATCH = 1000;
+    private static final String SEPARATORE_AUTORI = "\n";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS libro (isbn CHAR(13) PRIMARY KEY, titolo VARCHAR NOT NULL, "
+                    + "autori VARCHAR NOT NULL, data_pubblicazione DATE, disponibilita INT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS utente (matricola CHAR(10) PRIMARY KEY, nome VARCHAR NOT NULL, "
+                    + "cognome VARCHAR NOT NULL, email VARCHAR NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS prestito (matricola CHAR(10) NOT NULL, isbn CHAR(13) NOT NULL, "
+                    + "data_inizio DATE NOT NULL, data_fine_prevista DATE NOT NULL, "
+                    + "PRIMARY KEY (matricola, isbn, data_inizio))",
+            "CREATE INDEX IF NOT EXISTS idx_prestito_isbn ON prestito (isbn)",
+            "CREATE INDEX IF NOT EXISTS idx_prestito_scadenza ON prestito (data_fine_prevista)",
+            "CREATE INDEX IF NOT EXISTS idx_libro_data ON libro (data_pubblicazione)"
+    };
+
+    private final String url;
+    private final Connection connessione;
+    private final MappaIdentita mappa = new MappaIdentita(Collections.emptyList(), Collections.emptyList());
+    private final Map<ChiavePrestito, Prestito> prestitiCaricati = new HashMap<>();
+    private final TabellaLibri libri = new TabellaLibri();
+    private final TabellaUtenti utenti = new TabellaUtenti();
+    private final TabellaPrestiti prestiti = new TabellaPrestiti();
+
+    /**
+     * @brief Apre (o crea) il database.
+     * @param base Percorso del database senza estensione (H2 crea {@code base.mv.db}).
+     * @throws IllegalStateException Se il driver manca o il database non può essere aperto.
+     */
+    public ArchivioDatabase(File base) {
+        this("jdbc:h2:file:" + base.getAbsolutePath());
+    }
+
+    /**
+     * @brief Apre il database indicato da un URL JDBC (es. {@code jdbc:h2:mem:} nei test).
+     * @param url URL JDBC.
+     * @throws IllegalStateException Se il driver manca o il database non può essere aperto.
+     */
+    public ArchivioDatabase(String url) {
+        this.url = url;
+        try {
+            connessione = DriverManager.getConnection(url);
+            try (Statement st = connessione.createStatement()) {
+                for (String istruzione : SCHEMA) st.execute(istruzione);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Impossibile aprire il database " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Repository<String, Libro> libri() {
+        return libri;
+    }
+
+    @Override
+    public Repository<String, Utente> utenti() {
+        return utenti;
+    }
+
+    @Override
+    public Repository<ChiavePrestito, Prestito> prestiti() {
+        return prestiti;
+    }
+
+    // --- RICERCHE ---
+
+    @Override
+    public boolean isCaricamentoParziale() {
+        return true;
+    }
+
+    @Override
+    public synchronized List<Libro> cercaLibri(String criterio, String testo) {
+        String condizione;
+        switch (criterio) {
+            case "Titolo": condizione = "LOWER(titolo) LIKE ?"; break;
+            case "ISBN": condizione = "isbn LIKE ?"; break;
+            case "Autore": condizione = "LOWER(autori) LIKE ?"; break;
+            default: return new ArrayList<>();
+        }
+        return libri.seleziona(condizione + " LIMIT " + LIMITE_RISULTATI, contiene(testo));
+    }
+
+    @Override
+    public synchronized List<Libro> cercaLibriPubblicatiTra(IntervalloDate intervallo) {
+        // Scansione dell'indice su data_pubblicazione, solo con gli estremi presenti
+        StringBuilder condizione = new StringBuilder("data_pubblicazione IS NOT NULL");
+        List<Object> parametri = new ArrayList<>();
+        if (intervallo.getDa() != null) {
+            condizione.append(" AND data_pubblicazione >= ?");
+            parametri.add(data(intervallo.getDa()));
+        }
+        if (intervallo.getA() != null) {
+            condizione.append(" AND data_pubblicazione <= ?");
+            parametri.add(data(intervallo.getA()));
+        }
+        condizione.append(" ORDER BY data_pubblicazione LIMIT ").append(LIMITE_RISULTATI);
+        return libri.seleziona(condizione.toString(), parametri.toArray());
+    }
+
+    @Override
+    public synchronized List<Utente> cercaUtenti(String criterio, String testo) {
+        String condizione;
+        switch (criterio) {
+            case "Cognome": condizione = "LOWER(cognome) LIKE ?"; break;
+            case "Matricola": condizione = "matricola LIKE ?"; break;
+            case "Email": condizione = "LOWER(email) LIKE ?"; break;
+            default: return new ArrayList<>();
+        }
+        return utenti.seleziona(condizione + " LIMIT " + LIMITE_RISULTATI, contiene(testo));
+    }
+
+    @Override
+    public synchronized List<Prestito> cercaPrestiti(String criterio, String testo) {
+        String condizione;
+        if (criterio.startsWith("Utente")) {
+            condizione = "matricola IN (SELECT matricola FROM utente WHERE LOWER(cognome) LIKE ?)";
+        } else if (criterio.startsWith("Libro")) {
+            condizione = "isbn IN (SELECT isbn FROM libro WHERE LOWER(titolo) LIKE ?)";
+        } else {
+            return new ArrayList<>();
+        }
+        return prestiti.seleziona(condizione + " LIMIT " + LIMITE_RISULTATI, contiene(testo));
+    }
+
+    @Override
+    public synchronized List<Prestito> prestitiDelLibro(String isbn) {
+        return prestiti.seleziona("isbn = ?", isbn);
+    }
+
+    @Override
+    public synchronized List<Prestito> prestitiDellUtente(String matricola) {
+        return prestiti.seleziona("matricola = ?", matricola);
+    }
+
+    // --- OPERAZIONI SU TUTTI I DATI ---
+
+    /**
+     * @brief Carica solo i prestiti più vicini alla scadenza (usando l'indice su data_fine_prevista).
+     * * Libri e utenti restano nel database e arrivano nelle liste tramite le ricerche.
+     */
+    @Override
+    public synchronized void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
+        prestiti.setAll(this.prestiti.seleziona("TRUE ORDER BY data_fine_prevista LIMIT " + LIMITE_CARICAMENTO));
+        System.out.println("Database aperto: " + prestiti.size() + " prestiti caricati.");
+    }
+
+    /**
+     * @brief Non fa nulla: ogni modifica è già stata confermata nel database.
+     * * Le liste della GUI contengono solo una parte dei dati e NON devono sostituire il database.
+     */
+    @Override
+    public void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti) {
+        // Nulla da salvare
+    }
+
+    @Override
+    public Future<?> salvaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public int getModificheNonSalvate() {
+        return 0;
+    }
+
+    /**
+     * @brief Inserisce o aggiorna molti dati in un'unica transazione, a blocchi di {@link #DIMENSIONE_BATCH} righe.
+     * * Usato per importare un archivio esistente o un elenco; gli oggetti non vengono tenuti in memoria.
+     * Le righe con una chiave già presente vengono sovrascritte (MERGE).
+     * @param libri Libri da inserire o aggiornare.
+     * @param utenti Utenti da inserire o aggiornare.
+     * @param prestiti Prestiti da inserire o aggiornare.
+     */
+    public synchronized void importa(Collection<Libro> libri, Collection<Utente> utenti, Collection<Prestito> prestiti) {
+        try {
+            connessione.setAutoCommit(false);
+            try {
+                this.libri.inserisciABlocchi(libri);
+                this.utenti.inserisciABlocchi(utenti);
+                this.prestiti.inserisciABlocchi(prestiti);
+                connessione.commit();
+            } catch (SQLException e) {
+                connessione.rollback();
+                throw e;
+            } finally {
+                connessione.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw errore(e);
+        }
+    }
+
+    /**
+     * @brief Esporta tutto l'archivio scorrendo le tabelle con un cursore, riga per riga.
+     * * Le righe vengono scritte direttamente dal ResultSet: non diventano oggetti del modello, non
+     * passano dalla {@link MappaIdentita} e non si leggono i prestiti di ogni utente. La lettura usa una
+     * connessione propria e non prende il blocco dell'archivio, che resta utilizzabile durante
+     * l'esportazione; serve quindi un database raggiungibile da più connessioni (come quello su file).
+     * @param esportatore Esportatore nel formato scelto.
+     * @param cartella Cartella di destinazione.
+     * @return Numero di record scritti.
+     * @throws IOException Se un file non può essere scritto o il database non può essere letto.
+     */
+    public long esporta(EsportatoreArchivio esportatore, File cartella) throws IOException {
+        try (Connection lettura = DriverManager.getConnection(url)) {
+            lettura.setReadOnly(true);
+            return esportatore.esporta(cartella,
+                    w -> {
+                        esportatore.intestazioneLibri(w);
+                        return scorri(lettura, "SELECT isbn, titolo, autori, data_pubblicazione, disponibilita FROM libro ORDER BY isbn",
+                                rs -> esportatore.scriviLibro(w, rs.getString(1), rs.getString(2),
+                                        Arrays.asList(rs.getString(3).split(SEPARATORE_AUTORI)), data(rs.getDate(4)), rs.getInt(5)));
+                    },
+                    w -> {
+                        esportatore.intestazioneUtenti(w);
+                        return scorri(lettura, "SELECT matricola, nome, cognome, email FROM utente ORDER BY matricola",
+                                rs -> esportatore.scriviUtente(w, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+                    },
+                    w -> {
+                        esportatore.intestazionePrestiti(w);
+                        return scorri(lettura, "SELECT matricola, isbn, data_inizio, data_fine_prevista FROM prestito "
+                                        + "ORDER BY matricola, isbn, data_inizio",
+                                rs -> esportatore.scriviPrestito(w, rs.getString(1), rs.getString(2), data(rs.getDate(3)), data(rs.getDate(4))));
+                    });
+        } catch (SQLException e) {
+            throw new IOException("Errore del database: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void chiudi() {
+        try {
+            connessione.close();
+        } catch (SQLException e) {
+            System.err.println("Errore nella chiusura del database: " + e.getMessage());
+        }
+    }
+
+    // --- TABELLE ---
+
+    /**
+     * @brief Repository su una tabella: le sottoclassi indicano solo la corrispondenza tra righe e oggetti.
+     */
+    private abstract class Tabella<K extends Comparable<K>, V> implements Repository<K, V> {
+
+        private final String nome;
+        private final String colonneChiave;
+        private final String colonne;
+
+        Tabella(String nome, String colonneChiave, String colonne) {
+            this.nome = nome;
+            this.colonneChiave = colonneChiave;
+            this.colonne = colonne;
+        }
+
+        /** @return L'oggetto già in memoria con questa chiave, o null. */
+        abstract V inMemoria(K chiave);
+
+        /** Trasforma una riga nell'oggetto (riusando quello in memoria se c'è già). */
+        abstract V leggi(Object[] riga) throws SQLException;
+
+        /** Imposta i parametri della chiave a partire dalla posizione indicata; restituisce la successiva. */
+        abstract int impostaChiave(PreparedStatement ps, int posizione, K chiave) throws SQLException;
+
+        /** Imposta tutti i parametri della riga, nell'ordine di {@code colonne}. */
+        abstract void impostaRiga(PreparedStatement ps, V valore) throws SQLException;
+
+        abstract K chiave(V valore);
+
+        /** Aggiorna la mappa di identità dopo un salvataggio o un'eliminazione. */
+        abstract void ricorda(K chiave, V valore);
+
+        @Override
+        public Optional<V> trova(K chiave) {
+            synchronized (ArchivioDatabase.this) {
+                V presente = inMemoria(chiave);
+                if (presente != null) return Optional.of(presente);
+                try (PreparedStatement ps = connessione.prepareStatement(
+                        "SELECT " + colonne + " FROM " + nome + " WHERE (" + colonneChiave + ") = (" + segnaposto() + ")")) {
+                    impostaChiave(ps, 1, chiave);
+                    List<V> righe = leggiTutte(ps);
+                    return righe.isEmpty() ? Optional.empty() : Optional.of(righe.get(0));
+                } catch (SQLException e) {
+                    throw errore(e);
+                }
+            }
+        }
+
+        @Override
+        public List<V> intervallo(K da, K a) {
+            synchronized (ArchivioDatabase.this) {
+                StringBuilder sql = new StringBuilder("SELECT " + colonne + " FROM " + nome + " WHERE TRUE");
+                if (da != null) sql.append(" AND (").append(colonneChiave).append(") >= (").append(segnaposto()).append(")");
+                if (a != null) sql.append(" AND (").append(colonneChiave).append(") < (").append(segnaposto()).append(")");
+                sql.append(" ORDER BY ").append(colonneChiave);
+                try (PreparedStatement ps = connessione.prepareStatement(sql.toString())) {
+                    int posizione = 1;
+                    if (da != null) posizione = impostaChiave(ps, posizione, da);
+                    if (a != null) impostaChiave(ps, posizione, a);
+                    return leggiTutte(ps);
+                } catch (SQLException e) {
+                    throw errore(e);
+                }
+            }
+        }
+
+        @Override
+        public void salva(V valore) {
+            synchronized (ArchivioDatabase.this) {
+                try (PreparedStatement ps = connessione.prepareStatement(istruzioneMerge())) {
+                    impostaRiga(ps, valore);
+                    ps.executeUpdate();
+                } catch (SQLException e) {
+                    throw errore(e);
+                }
+                ricorda(chiave(valore), valore);
+            }
+        }
+
+        @Override
+        public boolean elimina(K chiave) {
+            synchronized (ArchivioDatabase.this) {
+                boolean eliminato;
+                try (PreparedStatement ps = connessione.prepareStatement(
+                        "DELETE FROM " + nome + " WHERE (" + colonneChiave + ") = (" + segnaposto() + ")")) {
+                    impostaChiave(ps, 1, chiave);
+                    eliminato = ps.executeUpdate() > 0;
+                } catch (SQLException e) {
+                    throw errore(e);
+                }
+                // Come in salva: la mappa delle identità cambia solo se il database è stato aggiornato
+                ricorda(chiave, null);
+                return eliminato;
+            }
+        }
+
+        @Override
+        public int conta() {
+            synchronized (ArchivioDatabase.this) {
+                try (Statement st = connessione.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + nome)) {
+                    rs.next();
+                    return rs.getInt(1);
+                } catch (SQLException e) {
+                    throw errore(e);
+                }
+            }
+        }
+
+        /**
+         * @brief Esegue una SELECT sulla tabella con la condizione indicata.
+         * @param condizione Clausola WHERE (può proseguire con ORDER BY e LIMIT).
+         * @param parametri Valori dei segnaposto.
+         */
+        List<V> seleziona(String condizione, Object... parametri) {
+            try (PreparedStatement ps = connessione.prepareStatement(
+                    "SELECT " + colonne + " FROM " + nome + " WHERE " + condizione)) {
+                for (int i = 0; i < parametri.length; i++) ps.setObject(i + 1, parametri[i]);
+                return leggiTutte(ps);
+            } catch (SQLException e) {
+                throw errore(e);
+            }
+        }
+
+        /** Inserisce le righe a blocchi (la transazione è gestita dal chiamante). */
+        void inserisciABlocchi(Collection<V> valori) throws SQLException {
+            try (PreparedStatement ps = connessione.prepareStatement(istruzioneMerge())) {
+                int inBlocco = 0;
+                for (V valore : valori) {
+                    impostaRiga(ps, valore);
+                    ps.addBatch();
+                    if (++inBlocco == DIMENSIONE_BATCH) {
+                        ps.executeBatch();
+                        inBlocco = 0;
+                    }
+                }
+                if (inBlocco > 0) ps.executeBatch();
+            }
+        }
+
+        private String istruzioneMerge() {
+            int numColonne = colonne.split(",").length;
+            return "MERGE INTO " + nome + " (" + colonne + ") KEY (" + colonneChiave + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(numColonne, "?")) + ")";
+        }
+
+        private String segnaposto() {
+            return String.join(", ", Collections.nCopies(colonneChiave.split(",").length, "?"));
+        }
+
+        /**
+         * @brief Legge prima tutte le righe e solo dopo le trasforma in oggetti.
+         * * Trasformare una riga può richiedere altre query (es. i prestiti di un utente),
+         * che così non si intrecciano con il ResultSet ancora aperto.
+         */
+        private List<V> leggiTutte(PreparedStatement ps) throws SQLException {
+            List<Object[]> righe = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                int numColonne = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    Object[] riga = new Object[numColonne];
+                    for (int i = 0; i < numColonne; i++) {
+                        boolean isData = rs.getMetaData().getColumnType(i + 1) == Types.DATE;
+                        riga[i] = isData ? rs.getDate(i + 1) : rs.getObject(i + 1);
+                    }
+                    righe.add(riga);
+                }
+            }
+            List<V> risultato = new ArrayList<>(righe.size());
+            for (Object[] riga : righe) {
+                V valore = leggi(riga);
+                if (valore != null) risultato.add(valore);
+            }
+            return risultato;
+        }
+    }
+
+    private class TabellaLibri extends Tabella<String, Libro> {
+
+        TabellaLibri() {
+            super("libro", "isbn", "isbn, titolo, autori, data_pubblicazione, disponibilita");
+        }
+
+        @Override
+        Libro inMemoria(String isbn) {
+            return mappa.libro(isbn);
+        }
+
+        @Override
+        Libro leggi(Object[] riga) {
+            String isbn = (String) riga[0];
+            Libro presente = mappa.libro(isbn);
+            if (presente != null) return presente;
+            // Come in CodecRecord: il costruttore richiede almeno una copia, la disponibilità reale si imposta dopo
+            List<String> autori = new ArrayList<>(Arrays.asList(((String) riga[2]).split(SEPARATORE_AUTORI)));
+            Libro libro = new Libro((String) riga[1], autori, data((java.sql.Date) riga[3]), isbn, 1);
+            libro.setDisponibilita(((Number) riga[4]).intValue());
+            mappa.inserisciLibro(libro);
+            return libro;
+        }
+
+        @Override
+        int impostaChiave(PreparedStatement ps, int posizione, String isbn) throws SQLException {
+            ps.setString(posizione, isbn);
+            return posizione + 1;
+        }
+
+        @Override
+        void impostaRiga(PreparedStatement ps, Libro libro) throws SQLException {
+            ps.setString(1, libro.getIsbn());
+            ps.setString(2, libro.getTitolo());
+            ps.setString(3, String.join(SEPARATORE_AUTORI, libro.getAutori()));
+            ps.setDate(4, data(libro.getDataPubblicazione()));
+            ps.setInt(5, libro.getDisponibilita());
+        }
+
+        @Override
+        String chiave(Libro libro) {
+            return libro.getIsbn();
+        }
+
+        @Override
+        void ricorda(String isbn, Libro libro) {
+            if (libro != null) mappa.inserisciLibro(libro);
+            else mappa.rimuoviLibro(isbn);
+        }
+    }
+
+    private class TabellaUtenti extends Tabella<String, Utente> {
+
+        TabellaUtenti() {
+            super("utente", "matricola", "matricola, nome, cognome, email");
+        }
+
+        @Override
+        Utente inMemoria(String matricola) {
+            return mappa.utente(matricola);
+        }
+
+        /**
+         * Un utente nuovo viene letto insieme ai suoi prestiti (chiave primaria di prestito),
+         * così la sua lista dei prestiti attivi e il limite dei prestiti restano corretti.
+         */
+        @Override
+        Utente leggi(Object[] riga) throws SQLException {
+            String matricola = (String) riga[0];
+            Utente presente = mappa.utente(matricola);
+            if (presente != null) return presente;
+            Utente utente = new Utente((String) riga[1], (String) riga[2], matricola, (String) riga[3]);
+            mappa.inserisciUtente(utente);
+
+            List<ChiavePrestito> chiavi = new ArrayList<>();
+            try (PreparedStatement ps = connessione.prepareStatement(
+                    "SELECT isbn, data_inizio FROM prestito WHERE matricola = ? ORDER BY data_inizio")) {
+                ps.setString(1, matricola);
+                try (ResultSet righe = ps.executeQuery()) {
+                    while (righe.next()) chiavi.add(new ChiavePrestito(matricola, righe.getString(1), data(righe.getDate(2))));
+                }
+            }
+            for (ChiavePrestito chiave : chiavi) {
+                libri.trova(chiave.getIsbn());
+                Prestito p = mappa.collega(chiave);
+                if (p != null) prestitiCaricati.put(chiave, p);
+            }
+            return utente;
+        }
+
+        @Override
+        int impostaChiave(PreparedStatement ps, int posizione, String matricola) throws SQLException {
+            ps.setString(posizione, matricola);
+            return posizione + 1;
+        }
+
+        @Override
+        void impostaRiga(PreparedStatement ps, Utente utente) throws SQLException {
+            ps.setString(1, utente.getMatricola());
+            ps.setString(2, utente.getNome());
+            ps.setString(3, utente.getCognome());
+            ps.setString(4, utente.getEmail());
+        }
+
+        @Override
+        String chiave(Utente utente) {
+            return utente.getMatricola();
+        }
+
+        @Override
+        void ricorda(String matricola, Utente utente) {
+            if (utente != null) mappa.inserisciUtente(utente);
+            else mappa.rimuoviUtente(matricola);
+        }
+    }
+
+    private class TabellaPrestiti extends Tabella<ChiavePrestito, Prestito> {
+
+        TabellaPrestiti() {
+            super("prestito", "matricola, isbn, data_inizio", "matricola, isbn, data_inizio, data_fine_prevista");
+        }
+
+        @Override
+        Prestito inMemoria(ChiavePrestito chiave) {
+            return prestitiCaricati.get(chiave);
+        }
+
+        /** I prestiti si ottengono leggendo il loro utente, che li carica tutti. */
+        @Override
+        Prestito leggi(Object[] riga) {
+            ChiavePrestito chiave = new ChiavePrestito((String) riga[0], (String) riga[1], data((java.sql.Date) riga[2]));
+            Prestito presente = prestitiCaricati.get(chiave);
+            if (presente != null) return presente;
+            utenti.trova(chiave.getMatricola());
+            return prestitiCaricati.get(chiave);
+        }
+
+        @Override
+        int impostaChiave(PreparedStatement ps, int posizione, ChiavePrestito chiave) throws SQLException {
+            ps.setString(posizione, chiave.getMatricola());
+            ps.setString(posizione + 1, chiave.getIsbn());
+            ps.setDate(posizione + 2, data(chiave.getDataInizio()));
+            return posizione + 3;
+        }
+
+        @Override
+        void impostaRiga(PreparedStatement ps, Prestito prestito) throws SQLException {
+            ps.setString(1, prestito.getUtente().getMatricola());
+            ps.setString(2, prestito.getLibro().getIsbn());
+            ps.setDate(3, data(prestito.getDataInizio()));
+            ps.setDate(4, data(prestito.getDataFinePrevista()));
+        }
+
+        @Override
+        ChiavePrestito chiave(Prestito prestito) {
+            return ChiavePrestito.di(prestito);
+        }
+
+        @Override
+        void ricorda(ChiavePrestito chiave, Prestito prestito) {
+            if (prestito == null) {
+                prestitiCaricati.remove(chiave);
+                return;
+            }
+            prestitiCaricati.put(chiave, prestito);
+            if (mappa.utente(chiave.getMatricola()) == null) mappa.inserisciUtente(prestito.getUtente());
+            if (mappa.libro(chiave.getIsbn()) == null) mappa.inserisciLibro(prestito.getLibro());
+        }
+    }
+
+    // --- METODI PRIVATI ---
+
+    /** Scrittura di una riga letta da un cursore. */
+    private interface Riga {
+        void scrivi(ResultSet rs) throws SQLException, IOException;
+    }
+
+    /** Scorre i risultati di {@code query} a blocchi di {@link #DIMENSIONE_BATCH} righe; restituisce il numero di righe. */
+    private static int scorri(Connection c, String query, Riga riga) throws IOException {
+        try (Statement st = c.createStatement()) {
+            st.setFetchSize(DIMENSIONE_BATCH);
+            int n = 0;
+            try (ResultSet rs = st.executeQuery(query)) {
+                while (rs.next()) {
+                    riga.scrivi(rs);
+                    n++;
+                }
+            }
+            return n;
+        } catch (SQLException e) {
+            throw new IOException("Errore del database: " + e.getMessage(), e);
+        }
+    }
+
+    /** @return Modello LIKE "contiene", con i caratteri speciali di LIKE protetti. */
+    private static String contiene(String testo) {
+        String protetto = testo.toLowerCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + protetto + "%";
+    }
+
+    private static java.sql.Date data(LocalDate data) {
+        return data == null ? null : java.sql.Date.valueOf(data);
+    }
+
+    private static LocalDate data(java.sql.Date data) {
+        return data == null ? null : data.toLocalDate();
+    }
+
+    private static IllegalStateException errore(SQLException e) {
+        return new IllegalStateException("Errore del database: " + e.getMessage(), e);
+    }
+}
@@ -0,0 +1,73 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.ObservableList;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @brief Backend che tiene i dati solo in memoria, senza alcun file.
+ * * Pensato per i test e come riferimento per misurare il costo dei backend persistenti:
+ * i dati "salvati" sopravvivono solo finché esiste l'oggetto.
+ */
+public class ArchivioInMemoria implements ArchivioBiblioteca {
+
+    private final AtomicInteger modificheNonSalvate = new AtomicInteger();
+    private final RepositoryInMemoria<String, Libro> libri = new RepositoryInMemoria<>(
+            Libro::getIsbn, l -> modificheNonSalvate.incrementAndGet(), k -> modificheNonSalvate.incrementAndGet());
+    private final RepositoryInMemoria<String, Utente> utenti = new RepositoryInMemoria<>(
+            Utente::getMatricola, u -> modificheNonSalvate.incrementAndGet(), k -> modificheNonSalvate.incrementAndGet());
+    private final RepositoryInMemoria<ChiavePrestito, Prestito> prestiti = new RepositoryInMemoria<>(
+            ChiavePrestito::di, p -> modificheNonSalvate.incrementAndGet(), k -> modificheNonSalvate.incrementAndGet());
+
+    @Override
+    public Repository<String, Libro> libri() {
+        return libri;
+    }
+
+    @Override
+    public Repository<String, Utente> utenti() {
+        return utenti;
+    }
+
+    @Override
+    public Repository<ChiavePrestito, Prestito> prestiti() {
+        return prestiti;
+    }
+
+    @Override
+    public void caricaTutto(ObservableList<Libro> catalogo, ObservableList<Utente> anagrafica, ObservableList<Prestito> prestiti) {
+        catalogo.setAll(this.libri.intervallo(null, null));
+        anagrafica.setAll(this.utenti.intervallo(null, null));
+        prestiti.setAll(this.prestiti.intervallo(null, null));
+    }
+
+    @Override
+    public void salvaTutto(ObservableList<Libro> libri, ObservableList<Utente> utenti, ObservableList<Prestito> prestiti) {
+        salvaInBackground(libri, utenti, prestiti);
+    }
+
+    @Override
+    public Future<?> salvaInBackground(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti) {
+        this.libri.ricarica(libri);
+        this.utenti.ricarica(utenti);
+        this.prestiti.ricarica(prestiti);
+        modificheNonSalvate.set(0);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public int getModificheNonSalvate() {
+        return modificheNonSalvate.get();
+    }
+
+    @Override
+    public void chiudi() {
+        // Nessuna risorsa da rilasciare
+    }
+}
@@ -0,0 +1,328 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @brief Suddivisione di una sezione dello snapshot in blocchi codificabili e decodificabili in parallelo.
+ * * @details
+ * **Formato di una sezione:**
+ * `[int numBlocchi][per ogni blocco: int lunghezza, int numRecord, int crc, int lunghezzaOriginale][dati dei blocchi]`
+ * * Ogni blocco contiene un numero fisso di record completi, quindi può essere letto
+ * e decodificato da un thread diverso senza conoscere il contenuto dei blocchi precedenti.
+ * Codifica e decodifica avvengono sul ForkJoinPool comune: le letture posizionali di un
+ * FileChannel sono sicure fra thread diversi.
+ * * Se richiesto, ogni blocco viene compresso in modo indipendente con `Deflater`
+ * (`lunghezzaOriginale` è la dimensione prima della compressione, {@link #NON_COMPRESSO}
+ * se il blocco è salvato così com'è). Un blocco che non si riduce viene salvato non compresso.
+ * * Il CRC32 di ogni blocco (calcolato sui byte su disco) viene verificato dallo stesso task
+ * che lo decodifica, sui byte già in memoria: la validazione non richiede una seconda lettura
+ * del file.
+ */
+final class BlocchiSezione {
+
+    /** Record per blocco: abbastanza da ammortizzare il costo di un task. */
+    static final int RECORD_PER_BLOCCO = 4096;
+    /** Valore di `lunghezzaOriginale` per i blocchi non compressi. */
+    static final int NON_COMPRESSO = -1;
+    /** Dimensione di una voce della tabella: lunghezza, numRecord, crc, lunghezzaOriginale. */
+    private static final int DIMENSIONE_VOCE = 4 * 4;
+
+    private BlocchiSezione() {
+    }
+
+    /**
+     * Scrittura di un singolo record.
+     */
+    interface Codificatore<T> {
+        void scrivi(DataOutput out, T record) throws IOException;
+    }
+
+    /**
+     * Lettura di un singolo record.
+     */
+    interface Decodificatore<T> {
+        T leggi(DataInput in) throws IOException;
+    }
+
+    /**
+     * Posizione di un blocco nel file.
+     */
+    static final class Blocco {
+        final long offset;
+        final int lunghezza;
+        final int numRecord;
+        final long crc;
+        final int lunghezzaOriginale;
+
+        Blocco(long offset, int lunghezza, int numRecord, long crc, int lunghezzaOriginale) {
+            this.offset = offset;
+            this.lunghezza = lunghezza;
+            this.numRecord = numRecord;
+            this.crc = crc;
+            this.lunghezzaOriginale = lunghezzaOriginale;
+        }
+    }
+
+    // --- SCRITTURA ---
+
+    /**
+     * @brief Scrive l'intera sezione: tabella dei blocchi seguita dai dati.
+     * * I blocchi vengono codificati (e compressi) in parallelo, poi scritti nell'ordine dei record.
+     * @param out Destinazione.
+     * @param record Record della sezione.
+     * @param codificatore Codifica del singolo record.
+     * @param compressione true per comprimere i blocchi.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    static <T> void scrivi(DataOutputStream out, List<T> record, Codificatore<T> codificatore, boolean compressione) throws IOException {
+        List<ForkJoinTask<BloccoCodificato>> task = new ArrayList<>();
+        for (int inizio = 0; inizio < record.size(); inizio += RECORD_PER_BLOCCO) {
+            int fine = Math.min(inizio + RECORD_PER_BLOCCO, record.size());
+            task.add(ForkJoinPool.commonPool().submit(new Codifica<>(record.subList(inizio, fine), codificatore, compressione)));
+        }
+        List<BloccoCodificato> blocchi = new ArrayList<>(task.size());
+        for (ForkJoinTask<BloccoCodificato> t : task) blocchi.add(attendi(t));
+
+        out.writeInt(blocchi.size());
+        for (BloccoCodificato b : blocchi) {
+            out.writeInt(b.dati.length);
+            out.writeInt(b.numRecord);
+            out.writeInt(b.crc);
+            out.writeInt(b.lunghezzaOriginale);
+        }
+        for (BloccoCodificato b : blocchi) out.write(b.dati);
+    }
+
+    // --- LETTURA ---
+
+    /**
+     * @brief Legge la tabella dei blocchi di una sezione.
+     * @param canale File dello snapshot.
+     * @param offset Inizio della sezione.
+     * @param lunghezzaSezione Lunghezza della sezione secondo l'indice del file.
+     * @return I blocchi della sezione, in ordine.
+     * @throws IOException Se la tabella non è leggibile o non è coerente con la sezione.
+     */
+    static List<Blocco> leggiTabella(FileChannel canale, long offset, long lunghezzaSezione) throws IOException {
+        int numBlocchi = leggiCompleto(canale, offset, 4).getInt();
+        if (numBlocchi < 0 || 4 + (long) numBlocchi * DIMENSIONE_VOCE > lunghezzaSezione) {
+            throw new IOException("Tabella dei blocchi non valida.");
+        }
+
+        ByteBuffer tabella = leggiCompleto(canale, offset + 4, numBlocchi * DIMENSIONE_VOCE);
+        List<Blocco> blocchi = new ArrayList<>(numBlocchi);
+        long posizione = offset + 4 + (long) numBlocchi * DIMENSIONE_VOCE;
+        for (int i = 0; i < numBlocchi; i++) {
+            int lunghezza = tabella.getInt();
+            int numRecord = tabella.getInt();
+            long crc = tabella.getInt() & 0xFFFFFFFFL;
+            int lunghezzaOriginale = tabella.getInt();
+            if (lunghezza < 0 || numRecord < 0 || lunghezzaOriginale < NON_COMPRESSO
+                    || posizione + lunghezza > offset + lunghezzaSezione) {
+                throw new IOException("Tabella dei blocchi non valida.");
+            }
+            blocchi.add(new Blocco(posizione, lunghezza, numRecord, crc, lunghezzaOriginale));
+            posizione += lunghezza;
+        }
+        return blocchi;
+    }
+
+    /**
+     * @brief Avvia la decodifica parallela dei blocchi, senza attenderne la fine.
+     * * Il risultato va raccolto con {@link #raccogli}; nel frattempo il chiamante può
+     * avviare la decodifica di altre sezioni.
+     * @param canale File dello snapshot.
+     * @param blocchi Blocchi da decodificare.
+     * @param decodificatore Decodifica del singolo record.
+     * @return Un task per blocco, nell'ordine del file.
+     */
+    static <T> List<ForkJoinTask<List<T>>> avvia(FileChannel canale, List<Blocco> blocchi, Decodificatore<T> decodificatore) {
+        List<ForkJoinTask<List<T>>> task = new ArrayList<>(blocchi.size());
+        for (Blocco blocco : blocchi) {
+            task.add(ForkJoinPool.commonPool().submit(new Decodifica<>(canale, blocco, decodificatore)));
+        }
+        return task;
+    }
+
+    /**
+     * @brief Attende i task avviati e concatena i record nell'ordine del file.
+     * @param task Task restituiti da {@link #avvia}.
+     * @return Tutti i record della sezione.
+     * @throws IOException Se la decodifica di un blocco è fallita.
+     */
+    static <T> List<T> raccogli(List<ForkJoinTask<List<T>>> task) throws IOException {
+        List<T> record = new ArrayList<>();
+        for (ForkJoinTask<List<T>> t : task) record.addAll(attendi(t));
+        return record;
+    }
+
+    // --- METODI PRIVATI ---
+
+    private static <T> T attendi(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ByteBuffer leggiCompleto(FileChannel canale, long posizione, int lunghezza) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lunghezza);
+        while (buffer.hasRemaining()) {
+            if (canale.read(buffer, posizione + buffer.position()) < 0) {
+                throw new EOFException("Sezione troncata.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int crc(byte[] dati) {
+        CRC32 crc = new CRC32();
+        crc.update(dati, 0, dati.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Blocco pronto per la scrittura.
+     */
+    private static final class BloccoCodificato {
+        final byte[] dati;
+        final int numRecord;
+        final int crc;
+        final int lunghezzaOriginale;
+
+        BloccoCodificato(byte[] dati, int numRecord, int lunghezzaOriginale) {
+            this.dati = dati;
+            this.numRecord = numRecord;
+            this.crc = crc(dati);
+            this.lunghezzaOriginale = lunghezzaOriginale;
+        }
+    }
+
+    /**
+     * Codifica (ed eventuale compressione) di un singolo blocco.
+     */
+    private static class Codifica<T> extends RecursiveTask<BloccoCodificato> {
+        // Come per Decodifica: il task non viene mai serializzato
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> record;
+        private final Codificatore<T> codificatore;
+        private final boolean compressione;
+
+        Codifica(List<T> record, Codificatore<T> codificatore, boolean compressione) {
+            this.record = record;
+            this.codificatore = codificatore;
+            this.compressione = compressione;
+        }
+
+        @Override
+        protected BloccoCodificato compute() {
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+                DataOutputStream out = new DataOutputStream(buffer);
+                for (T r : record) codificatore.scrivi(out, r);
+                out.flush();
+                byte[] originale = buffer.toByteArray();
+
+                if (compressione) {
+                    byte[] compresso = comprimi(originale);
+                    if (compresso.length < originale.length) {
+                        return new BloccoCodificato(compresso, record.size(), originale.length);
+                    }
+                }
+                return new BloccoCodificato(originale, record.size(), NON_COMPRESSO);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static byte[] comprimi(byte[] dati) {
+            // BEST_SPEED: la compressione deve costare meno della scrittura risparmiata
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(dati);
+                deflater.finish();
+                ByteArrayOutputStream compresso = new ByteArrayOutputStream(dati.length / 2 + 64);
+                byte[] buffer = new byte[1 << 16];
+                while (!deflater.finished()) {
+                    compresso.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return compresso.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Lettura, verifica ed eventuale decompressione di un singolo blocco, seguite dalla decodifica.
+     */
+    private static class Decodifica<T> extends RecursiveTask<List<T>> {
+        // I task non vengono mai serializzati: il valore serve solo a non dipendere da quello calcolato
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel canale;
+        private final Blocco blocco;
+        private final Decodificatore<T> decodificatore;
+
+        Decodifica(FileChannel canale, Blocco blocco, Decodificatore<T> decodificatore) {
+            this.canale = canale;
+            this.blocco = blocco;
+            this.decodificatore = decodificatore;
+        }
+
+        @Override
+        protected List<T> compute() {
+            try {
+                byte[] dati = leggiCompleto(canale, blocco.offset, blocco.lunghezza).array();
+                if ((crc(dati) & 0xFFFFFFFFL) != blocco.crc) {
+                    throw new IOException("Checksum errato nel blocco in posizione " + blocco.offset + ".");
+                }
+                if (blocco.lunghezzaOriginale != NON_COMPRESSO) {
+                    dati = decomprimi(dati, blocco.lunghezzaOriginale);
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(dati));
+                List<T> record = new ArrayList<>(blocco.numRecord);
+                for (int i = 0; i < blocco.numRecord; i++) record.add(decodificatore.leggi(in));
+                return record;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static byte[] decomprimi(byte[] dati, int lunghezzaOriginale) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(dati);
+                byte[] originale = new byte[lunghezzaOriginale];
+                int letti = 0;
+                while (letti < lunghezzaOriginale && !inflater.finished()) {
+                    int n = inflater.inflate(originale, letti, lunghezzaOriginale - letti);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    letti += n;
+                }
+                if (letti != lunghezzaOriginale) {
+                    throw new IOException("Blocco compresso incompleto.");
+                }
+                return originale;
+            } catch (DataFormatException e) {
+                throw new IOException("Blocco compresso non valido: " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
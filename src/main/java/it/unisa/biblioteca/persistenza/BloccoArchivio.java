@@ -0,0 +1,105 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @brief Blocco in scrittura su un archivio usato da più postazioni (processi) contemporaneamente.
+ * * Il blocco è un {@link FileLock} esclusivo su un file dedicato ({@code base.lock}), che non contiene
+ * dati: chi scrive nei journal o riscrive uno snapshot lo tiene per la durata della scrittura; chi
+ * legge non lo prende mai, perché i journal crescono solo in coda e gli snapshot vengono sostituiti
+ * con un rename atomico.
+ * * Java non ammette due {@link FileLock} sovrapposti nello stesso processo: per questo prima del
+ * blocco sul file si prende un {@link ReentrantLock} condiviso da tutte le istanze sullo stesso file.
+ * Il blocco è rientrante per il thread che lo possiede: le acquisizioni annidate non toccano il file.
+ */
+public class BloccoArchivio {
+
+    private static final ConcurrentMap<String, ReentrantLock> BLOCCHI_PROCESSO = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final ReentrantLock bloccoProcesso;
+
+    /**
+     * @brief Prepara il blocco sul file indicato (creato alla prima acquisizione).
+     * @param file File di blocco.
+     */
+    public BloccoArchivio(File file) {
+        this.file = file;
+        this.bloccoProcesso = BLOCCHI_PROCESSO.computeIfAbsent(file.getAbsoluteFile().toPath().normalize().toString(),
+                k -> new ReentrantLock());
+    }
+
+    /**
+     * @brief Attende il blocco esclusivo; va rilasciato chiudendo l'oggetto restituito (try-with-resources).
+     * @return Il blocco acquisito.
+     * @throws IOException Se il file di blocco non può essere aperto o bloccato.
+     */
+    public Blocco acquisisci() throws IOException {
+        bloccoProcesso.lock();
+        if (bloccoProcesso.getHoldCount() > 1) return new Blocco(null, null);
+        FileChannel canale = null;
+        try {
+            canale = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return new Blocco(canale, canale.lock());
+        } catch (IOException | RuntimeException e) {
+            if (canale != null) canale.close();
+            bloccoProcesso.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * @brief Esegue un'operazione tenendo il blocco esclusivo, rilasciato anche se l'operazione fallisce.
+     * @param operazione Operazione da eseguire.
+     * @param <T> Tipo del risultato.
+     * @return Il risultato dell'operazione.
+     * @throws IOException Se il blocco non può essere acquisito o l'operazione fallisce.
+     */
+    public <T> T esegui(Operazione<T> operazione) throws IOException {
+        Blocco acquisito = acquisisci();
+        try {
+            return operazione.esegui();
+        } finally {
+            acquisito.close();
+        }
+    }
+
+    /**
+     * @brief Operazione eseguita tenendo il blocco ({@link #esegui}).
+     * @param <T> Tipo del risultato.
+     */
+    public interface Operazione<T> {
+        T esegui() throws IOException;
+    }
+
+    /**
+     * @brief Blocco acquisito con {@link #acquisisci}.
+     */
+    public final class Blocco implements Closeable {
+        private final FileChannel canale;
+        private final FileLock blocco;
+
+        private Blocco(FileChannel canale, FileLock blocco) {
+            this.canale = canale;
+            this.blocco = blocco;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blocco != null) blocco.release();
+                if (canale != null) canale.close();
+            } finally {
+                bloccoProcesso.unlock();
+            }
+        }
+    }
+}
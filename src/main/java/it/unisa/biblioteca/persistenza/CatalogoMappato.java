@@ -0,0 +1,289 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * @brief Catalogo dei libri in sola lettura, letto direttamente da un file mappato in memoria.
+ * * Pensato per i terminali di ricerca self-service (chioschi): il banco prestiti pubblica il
+ * catalogo con {@link #scrivi} e i terminali lo aprono con {@link FileChannel#map} in sola lettura.
+ * I processi sulla stessa macchina condividono così le pagine della cache del sistema operativo,
+ * invece di tenere ciascuno una copia deserializzata del catalogo.
+ * * Formato del file:
+ * - intestazione: magic, versione, numero di libri, riservato (4 int);
+ * - tabella a larghezza fissa ({@code DIMENSIONE_RECORD} byte per libro, in ordine di ISBN):
+ *   posizione nell'heap di ISBN, titolo e autori, data di pubblicazione (giorno dall'epoch),
+ *   disponibilità;
+ * - heap delle stringhe: lunghezza (int) e byte UTF-8 di ciascuna; gli autori sono separati da un a capo.
+ * * La ricerca per ISBN è una ricerca binaria sulla tabella; le altre ricerche scorrono la tabella
+ * leggendo solo il campo richiesto (per le date, un intero per libro, senza leggere alcuna stringa).
+ * Solo i libri trovati diventano oggetti {@link Libro}.
+ * * Le modifiche non sono ammesse ({@link UnsupportedOperationException}). Il banco sostituisce il
+ * file con un rename atomico: {@link #aggiorna} rimappa il file quando cambia.
+ */
+public class CatalogoMappato implements Repository<String, Libro>, Closeable {
+
+    public static final int MAGIC = 0x42494243; // "BIBC"
+    public static final int VERSIONE = 1;
+
+    private static final int LUNGHEZZA_INTESTAZIONE = 16;
+    private static final int DIMENSIONE_RECORD = 20;
+    private static final int DATA_ASSENTE = Integer.MIN_VALUE;
+    private static final String SEPARATORE_AUTORI = "\n";
+
+    private final File file;
+    private ByteBuffer buffer;  // null se il catalogo non è (ancora) stato pubblicato
+    private int numeroLibri;
+    private int inizioHeap;
+    private List<Object> identitaFile;
+
+    /**
+     * @brief Apre il catalogo; se il file non esiste il catalogo è vuoto finché non viene pubblicato.
+     * @param file File del catalogo.
+     */
+    public CatalogoMappato(File file) {
+        this.file = file;
+        aggiorna();
+    }
+
+    // --- SCRITTURA (banco prestiti) ---
+
+    /**
+     * @brief Pubblica il catalogo: scrive un file temporaneo e lo sostituisce con un rename atomico.
+     * * I terminali che hanno ancora mappato il file precedente continuano a leggerlo fino al
+     * prossimo {@link #aggiorna}. (Su Windows un file mappato non può essere sostituito: la
+     * pubblicazione fallisce con IOException e viene ritentata al salvataggio successivo.)
+     * @param file File del catalogo.
+     * @param libri Libri da pubblicare.
+     * @throws IOException Se la scrittura fallisce (il catalogo precedente resta valido).
+     */
+    public static void scrivi(File file, Collection<Libro> libri) throws IOException {
+        List<Libro> ordinati = new ArrayList<>(libri);
+        ordinati.sort(Comparator.comparing(Libro::getIsbn));
+
+        ByteArrayOutputStream tabella = new ByteArrayOutputStream(ordinati.size() * DIMENSIONE_RECORD);
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        DataOutputStream outTabella = new DataOutputStream(tabella);
+        DataOutputStream outHeap = new DataOutputStream(heap);
+        for (Libro l : ordinati) {
+            outTabella.writeInt(scriviStringa(outHeap, l.getIsbn()));
+            outTabella.writeInt(scriviStringa(outHeap, l.getTitolo()));
+            outTabella.writeInt(scriviStringa(outHeap, String.join(SEPARATORE_AUTORI, l.getAutori())));
+            outTabella.writeInt(l.getDataPubblicazione() == null ? DATA_ASSENTE : (int) l.getDataPubblicazione().toEpochDay());
+            outTabella.writeInt(l.getDisponibilita());
+        }
+
+        File temporaneo = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temporaneo);
+             DataOutputStream out = new DataOutputStream(fos)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIONE);
+            out.writeInt(ordinati.size());
+            out.writeInt(0);
+            tabella.writeTo(out);
+            heap.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            temporaneo.delete();
+            throw e;
+        }
+        Files.move(temporaneo.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int scriviStringa(DataOutputStream heap, String s) throws IOException {
+        int posizione = heap.size();
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        heap.writeInt(bytes.length);
+        heap.write(bytes);
+        return posizione;
+    }
+
+    // --- LETTURA (terminali) ---
+
+    /**
+     * @brief Rimappa il file se è stato sostituito dall'ultima apertura.
+     * * Costa solo la lettura degli attributi del file: va chiamato prima di ogni ricerca.
+     * @return true se il catalogo è stato (ri)aperto.
+     */
+    public synchronized boolean aggiorna() {
+        List<Object> identita;
+        try {
+            BasicFileAttributes attributi = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            identita = Arrays.asList(attributi.fileKey(), attributi.lastModifiedTime(), attributi.size());
+        } catch (IOException e) {
+            return false; // Non ancora pubblicato: resta quello attuale (o vuoto)
+        }
+        if (identita.equals(identitaFile)) return false;
+
+        try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer mappato = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+            if (mappato.limit() < LUNGHEZZA_INTESTAZIONE || mappato.getInt(0) != MAGIC) {
+                throw new IOException("Il file " + file + " non è un catalogo valido.");
+            }
+            if (mappato.getInt(4) > VERSIONE) throw new IOException("Versione del catalogo non supportata.");
+            int numero = mappato.getInt(8);
+            long heap = LUNGHEZZA_INTESTAZIONE + (long) numero * DIMENSIONE_RECORD;
+            if (numero < 0 || heap > mappato.limit()) throw new IOException("Catalogo " + file + " troncato.");
+
+            // La mappatura resta valida anche dopo la chiusura del canale
+            buffer = mappato;
+            numeroLibri = numero;
+            inizioHeap = (int) heap;
+            identitaFile = identita;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Errore apertura catalogo: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized Optional<Libro> trova(String isbn) {
+        int i = posizione(isbn);
+        return i >= 0 ? Optional.of(libro(i)) : Optional.empty();
+    }
+
+    @Override
+    public synchronized List<Libro> intervallo(String da, String a) {
+        int inizio = da == null ? 0 : inizioDa(da);
+        int fine = a == null ? numeroLibri : inizioDa(a);
+        List<Libro> risultato = new ArrayList<>();
+        for (int i = inizio; i < fine; i++) risultato.add(libro(i));
+        return risultato;
+    }
+
+    @Override
+    public void salva(Libro libro) {
+        throw new UnsupportedOperationException("Catalogo in sola lettura.");
+    }
+
+    @Override
+    public boolean elimina(String isbn) {
+        throw new UnsupportedOperationException("Catalogo in sola lettura.");
+    }
+
+    @Override
+    public synchronized int conta() {
+        return buffer == null ? 0 : numeroLibri;
+    }
+
+    /**
+     * @brief Cerca i libri il cui campo contiene il testo indicato (senza distinzione di maiuscole).
+     * * Per ogni libro viene letto dal file solo il campo richiesto.
+     * @param criterio "Titolo", "ISBN" oppure "Autore".
+     * @param testo Testo da cercare.
+     * @param limite Numero massimo di risultati.
+     * @return I libri trovati, in ordine di ISBN.
+     */
+    public synchronized List<Libro> cerca(String criterio, String testo, int limite) {
+        List<Libro> risultato = new ArrayList<>();
+        if (buffer == null) return risultato;
+        String cercato = testo.toLowerCase(Locale.ROOT);
+        int campo;
+        switch (criterio) {
+            case "ISBN": campo = 0; break;
+            case "Titolo": campo = 4; break;
+            case "Autore": campo = 8; break;
+            default: return risultato;
+        }
+        for (int i = 0; i < numeroLibri && risultato.size() < limite; i++) {
+            int record = LUNGHEZZA_INTESTAZIONE + i * DIMENSIONE_RECORD;
+            if (stringa(buffer.getInt(record + campo)).toLowerCase(Locale.ROOT).contains(cercato)) risultato.add(libro(i));
+        }
+        return risultato;
+    }
+
+    /**
+     * @brief Cerca i libri pubblicati in un intervallo di date.
+     * * Per ogni libro si confronta solo il giorno di pubblicazione scritto nella tabella (un intero):
+     * non si legge alcuna stringa e solo i libri trovati diventano oggetti.
+     * @param intervallo Date comprese (un estremo null vuol dire senza limite).
+     * @param limite Numero massimo di risultati.
+     * @return I libri trovati, in ordine di ISBN.
+     */
+    public synchronized List<Libro> cercaPubblicatiTra(IntervalloDate intervallo, int limite) {
+        List<Libro> risultato = new ArrayList<>();
+        if (buffer == null) return risultato;
+        // DATA_ASSENTE è il minimo degli int: resta sempre fuori dall'intervallo
+        long da = intervallo.getDa() == null ? DATA_ASSENTE + 1L : intervallo.getDa().toEpochDay();
+        long a = intervallo.getA() == null ? Integer.MAX_VALUE : intervallo.getA().toEpochDay();
+        for (int i = 0; i < numeroLibri && risultato.size() < limite; i++) {
+            int giorno = buffer.getInt(LUNGHEZZA_INTESTAZIONE + i * DIMENSIONE_RECORD + 12);
+            if (giorno >= da && giorno <= a) risultato.add(libro(i));
+        }
+        return risultato;
+    }
+
+    @Override
+    public synchronized void close() {
+        // Java 8 non permette di rilasciare una mappatura: se ne occupa il garbage collector
+        buffer = null;
+        identitaFile = null;
+    }
+
+    // --- METODI PRIVATI ---
+
+    private String stringa(int posizione) {
+        ByteBuffer lettura = buffer.duplicate();
+        lettura.position(inizioHeap + posizione);
+        byte[] bytes = new byte[lettura.getInt()];
+        lettura.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String isbn(int i) {
+        return stringa(buffer.getInt(LUNGHEZZA_INTESTAZIONE + i * DIMENSIONE_RECORD));
+    }
+
+    /** Ricerca binaria: indice del libro con l'ISBN indicato, oppure -1. */
+    private int posizione(String isbn) {
+        int i = inizioDa(isbn);
+        return i < conta() && isbn(i).equals(isbn) ? i : -1;
+    }
+
+    /** Ricerca binaria: indice del primo libro con ISBN maggiore o uguale a quello indicato. */
+    private int inizioDa(String isbn) {
+        int basso = 0;
+        int alto = conta();
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            if (isbn(medio).compareTo(isbn) < 0) basso = medio + 1;
+            else alto = medio;
+        }
+        return basso;
+    }
+
+    private Libro libro(int i) {
+        int record = LUNGHEZZA_INTESTAZIONE + i * DIMENSIONE_RECORD;
+        String isbn = stringa(buffer.getInt(record));
+        String titolo = stringa(buffer.getInt(record + 4));
+        List<String> autori = new ArrayList<>(Arrays.asList(stringa(buffer.getInt(record + 8)).split(SEPARATORE_AUTORI)));
+        int giorno = buffer.getInt(record + 12);
+        // Come in CodecRecord: il costruttore richiede almeno una copia, la disponibilità reale si imposta dopo
+        Libro libro = new Libro(titolo, autori, giorno == DATA_ASSENTE ? null : LocalDate.ofEpochDay(giorno), isbn, 1);
+        libro.setDisponibilita(buffer.getInt(record + 16));
+        return libro;
+    }
+}
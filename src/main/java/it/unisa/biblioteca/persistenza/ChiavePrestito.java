@@ -0,0 +1,75 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Prestito;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * @brief Forma "persistita" di un prestito: solo chiavi esterne e date.
+ * * Su file un prestito non contiene gli oggetti Utente e Libro ma solo la
+ * matricola e l'ISBN che li identificano, più la data di inizio (la scadenza
+ * è sempre ricalcolata dal costruttore di Prestito).
+ * Il collegamento agli oggetti veri avviene al caricamento.
+ * * Le chiavi sono ordinate per matricola, ISBN e data: una scansione per intervallo
+ * su una sola matricola restituisce quindi tutti i prestiti di quell'utente.
+ */
+public final class ChiavePrestito implements Comparable<ChiavePrestito> {
+    private final String matricola;
+    private final String isbn;
+    private final LocalDate dataInizio;
+
+    /**
+     * @brief Crea la chiave di un prestito.
+     * @param matricola Matricola dell'utente.
+     * @param isbn ISBN del libro.
+     * @param dataInizio Data di inizio del prestito.
+     */
+    public ChiavePrestito(String matricola, String isbn, LocalDate dataInizio) {
+        this.matricola = matricola;
+        this.isbn = isbn;
+        this.dataInizio = dataInizio;
+    }
+
+    /**
+     * @brief Ricava la chiave da un prestito esistente.
+     * @param prestito Il prestito di partenza.
+     * @return La chiave corrispondente.
+     */
+    public static ChiavePrestito di(Prestito prestito) {
+        return new ChiavePrestito(prestito.getUtente().getMatricola(), prestito.getLibro().getIsbn(), prestito.getDataInizio());
+    }
+
+    /** @return Matricola dell'utente del prestito. */
+    public String getMatricola() { return matricola; }
+    /** @return ISBN del libro prestato. */
+    public String getIsbn() { return isbn; }
+    /** @return Data di inizio del prestito. */
+    public LocalDate getDataInizio() { return dataInizio; }
+
+    @Override
+    public int compareTo(ChiavePrestito altra) {
+        int confronto = matricola.compareTo(altra.matricola);
+        if (confronto == 0) confronto = isbn.compareTo(altra.isbn);
+        if (confronto == 0) confronto = dataInizio.compareTo(altra.dataInizio);
+        return confronto;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChiavePrestito that = (ChiavePrestito) o;
+        return matricola.equals(that.matricola) && isbn.equals(that.isbn) && dataInizio.equals(that.dataInizio);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(matricola, isbn, dataInizio);
+    }
+
+    @Override
+    public String toString() {
+        return matricola + "/" + isbn + "/" + dataInizio;
+    }
+}
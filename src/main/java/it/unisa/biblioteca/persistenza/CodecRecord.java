@@ -0,0 +1,283 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Codifica binaria compatta, scritta a mano, dei record Libro, Utente e Prestito.
+ * * Sostituisce la serializzazione Java standard, che per ogni file scrive i descrittori
+ * delle classi, passa i `LocalDate` attraverso il loro proxy di serializzazione ed è lenta
+ * da decodificare.
+ * * @details
+ * **Regole di codifica:**
+ * - Interi non negativi (lunghezze, contatori, copie): *varint* (7 bit per byte).
+ * - Stringhe: lunghezza in byte (varint) seguita dai byte UTF-8.
+ * - `LocalDate`: giorno epoch come `int` (`DATA_ASSENTE` se null).
+ * - ISBN: un byte di tipo seguito da un `long` se è composto da esattamente 13 cifre,
+ *   altrimenti dalla stringa (ISBN storici o con trattini).
+ * - Prestito: solo matricola, ISBN e data di inizio (vedi {@link ChiavePrestito}).
+ * * Ogni file che usa questa codifica inizia con `MAGIC` e `VERSIONE`: un cambio di
+ * formato va accompagnato da un nuovo numero di versione.
+ */
+public final class CodecRecord {
+
+    /** Firma iniziale dei file ("BIBL"). */
+    public static final int MAGIC = 0x4249424C;
+    /** Versione corrente del formato. */
+    public static final short VERSIONE = 1;
+
+    private static final int DATA_ASSENTE = Integer.MIN_VALUE;
+    private static final byte ISBN_NUMERICO = 0;
+    private static final byte ISBN_TESTO = 1;
+
+    private CodecRecord() {
+        // Classe di sole funzioni statiche
+    }
+
+    // --- INTESTAZIONE ---
+
+    /**
+     * @brief Scrive firma e versione del formato.
+     * @param out Destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviIntestazione(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSIONE);
+    }
+
+    /**
+     * @brief Legge e verifica firma e versione del formato.
+     * @param in Sorgente.
+     * @return La versione letta.
+     * @throws IOException Se la firma non corrisponde o la versione non è supportata.
+     */
+    public static int leggiIntestazione(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Formato file non riconosciuto.");
+        }
+        int versione = in.readShort();
+        if (versione != VERSIONE) {
+            throw new IOException("Versione del formato non supportata: " + versione);
+        }
+        return versione;
+    }
+
+    // --- LIBRO ---
+
+    /**
+     * @brief Codifica un libro.
+     * @param out Destinazione.
+     * @param libro Libro da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviLibro(DataOutput out, Libro libro) throws IOException {
+        scriviStringa(out, libro.getTitolo());
+        List<String> autori = libro.getAutori();
+        scriviVarInt(out, autori.size());
+        for (String autore : autori) scriviStringa(out, autore);
+        scriviData(out, libro.getDataPubblicazione());
+        scriviIsbn(out, libro.getIsbn());
+        scriviVarInt(out, libro.getDisponibilita());
+    }
+
+    /**
+     * @brief Decodifica un libro.
+     * @param in Sorgente.
+     * @return Il libro letto.
+     * @throws IOException Se i dati sono incompleti o non validi.
+     */
+    public static Libro leggiLibro(DataInput in) throws IOException {
+        String titolo = leggiStringa(in);
+        int numAutori = leggiVarInt(in);
+        List<String> autori = new ArrayList<>(numAutori);
+        for (int i = 0; i < numAutori; i++) autori.add(leggiStringa(in));
+        LocalDate data = leggiData(in);
+        String isbn = leggiIsbn(in);
+        int disponibilita = leggiVarInt(in);
+
+        try {
+            // Il costruttore richiede almeno una copia: la disponibilità reale (anche 0) si imposta dopo
+            Libro libro = new Libro(titolo, autori, data, isbn, 1);
+            libro.setDisponibilita(disponibilita);
+            return libro;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Record libro non valido: " + e.getMessage(), e);
+        }
+    }
+
+    // --- UTENTE ---
+
+    /**
+     * @brief Codifica un utente (senza i prestiti, che sono salvati a parte).
+     * @param out Destinazione.
+     * @param utente Utente da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviUtente(DataOutput out, Utente utente) throws IOException {
+        scriviStringa(out, utente.getNome());
+        scriviStringa(out, utente.getCognome());
+        scriviStringa(out, utente.getMatricola());
+        scriviStringa(out, utente.getEmail());
+    }
+
+    /**
+     * @brief Decodifica un utente.
+     * @param in Sorgente.
+     * @return L'utente letto (senza prestiti attivi).
+     * @throws IOException Se i dati sono incompleti o non validi.
+     */
+    public static Utente leggiUtente(DataInput in) throws IOException {
+        String nome = leggiStringa(in);
+        String cognome = leggiStringa(in);
+        String matricola = leggiStringa(in);
+        String email = leggiStringa(in);
+        try {
+            return new Utente(nome, cognome, matricola, email);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Record utente non valido: " + e.getMessage(), e);
+        }
+    }
+
+    // --- PRESTITO ---
+
+    /**
+     * @brief Codifica un prestito come chiavi esterne (matricola, ISBN) e data di inizio.
+     * @param out Destinazione.
+     * @param prestito Prestito da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviPrestito(DataOutput out, Prestito prestito) throws IOException {
+        scriviChiavePrestito(out, ChiavePrestito.di(prestito));
+    }
+
+    /**
+     * @brief Codifica la chiave di un prestito.
+     * @param out Destinazione.
+     * @param chiave Chiave da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviChiavePrestito(DataOutput out, ChiavePrestito chiave) throws IOException {
+        scriviStringa(out, chiave.getMatricola());
+        scriviIsbn(out, chiave.getIsbn());
+        scriviData(out, chiave.getDataInizio());
+    }
+
+    /**
+     * @brief Decodifica la chiave di un prestito.
+     * @param in Sorgente.
+     * @return La chiave letta.
+     * @throws IOException Se i dati sono incompleti.
+     */
+    public static ChiavePrestito leggiChiavePrestito(DataInput in) throws IOException {
+        String matricola = leggiStringa(in);
+        String isbn = leggiIsbn(in);
+        LocalDate dataInizio = leggiData(in);
+        if (dataInizio == null) throw new IOException("Record prestito senza data di inizio.");
+        return new ChiavePrestito(matricola, isbn, dataInizio);
+    }
+
+    // --- TIPI ELEMENTARI ---
+
+    /**
+     * @brief Scrive una stringa come lunghezza (varint) + byte UTF-8.
+     * @param out Destinazione.
+     * @param s Stringa da scrivere (non null).
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviStringa(DataOutput out, String s) throws IOException {
+        byte[] byteUtf8 = s.getBytes(StandardCharsets.UTF_8);
+        scriviVarInt(out, byteUtf8.length);
+        out.write(byteUtf8);
+    }
+
+    /**
+     * @brief Legge una stringa scritta con {@link #scriviStringa}.
+     * @param in Sorgente.
+     * @return La stringa letta.
+     * @throws IOException Se i dati sono incompleti.
+     */
+    public static String leggiStringa(DataInput in) throws IOException {
+        byte[] byteUtf8 = new byte[leggiVarInt(in)];
+        in.readFully(byteUtf8);
+        return new String(byteUtf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief Scrive un intero non negativo in formato varint (1-5 byte).
+     * @param out Destinazione.
+     * @param valore Valore non negativo.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviVarInt(DataOutput out, int valore) throws IOException {
+        if (valore < 0) throw new IllegalArgumentException("Varint negativo: " + valore);
+        while ((valore & ~0x7F) != 0) {
+            out.writeByte((valore & 0x7F) | 0x80);
+            valore >>>= 7;
+        }
+        out.writeByte(valore);
+    }
+
+    /**
+     * @brief Legge un intero scritto con {@link #scriviVarInt}.
+     * @param in Sorgente.
+     * @return Il valore letto.
+     * @throws IOException Se i dati sono incompleti o il varint è troppo lungo.
+     */
+    public static int leggiVarInt(DataInput in) throws IOException {
+        int valore = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            valore |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return valore;
+        }
+        throw new IOException("Varint malformato.");
+    }
+
+    private static void scriviData(DataOutput out, LocalDate data) throws IOException {
+        out.writeInt(data == null ? DATA_ASSENTE : (int) data.toEpochDay());
+    }
+
+    private static LocalDate leggiData(DataInput in) throws IOException {
+        int giorno = in.readInt();
+        return giorno == DATA_ASSENTE ? null : LocalDate.ofEpochDay(giorno);
+    }
+
+    private static void scriviIsbn(DataOutput out, String isbn) throws IOException {
+        if (isbn.length() == 13 && soloCifre(isbn)) {
+            out.writeByte(ISBN_NUMERICO);
+            out.writeLong(Long.parseLong(isbn));
+        } else {
+            out.writeByte(ISBN_TESTO);
+            scriviStringa(out, isbn);
+        }
+    }
+
+    private static String leggiIsbn(DataInput in) throws IOException {
+        byte tipo = in.readByte();
+        if (tipo == ISBN_NUMERICO) {
+            // 13 cifre: eventuali zeri iniziali vanno ripristinati
+            String cifre = Long.toString(in.readLong());
+            return cifre.length() >= 13 ? cifre : "0000000000000".substring(cifre.length()) + cifre;
+        }
+        if (tipo == ISBN_TESTO) return leggiStringa(in);
+        throw new IOException("Tipo ISBN sconosciuto: " + tipo);
+    }
+
+    private static boolean soloCifre(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.util.List;
+
+/**
+ * @brief Dati letti da uno snapshot: libri, utenti, prestiti già collegati e metadati.
+ * * Le liste sono normali liste Java: il passaggio alle ObservableList della GUI
+ * è compito del chiamante.
+ */
+public class ContenutoArchivio {
+    private final List<Libro> libri;
+    private final List<Utente> utenti;
+    private final List<Prestito> prestiti;
+    private final long seqJournal;
+
+    /**
+     * @brief Crea il contenitore dei dati letti.
+     * @param libri Libri letti.
+     * @param utenti Utenti letti.
+     * @param prestiti Prestiti letti, già collegati a libri e utenti.
+     * @param seqJournal Sequenza dell'ultima modifica del journal inclusa nello snapshot.
+     */
+    public ContenutoArchivio(List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti, long seqJournal) {
+        this.libri = libri;
+        this.utenti = utenti;
+        this.prestiti = prestiti;
+        this.seqJournal = seqJournal;
+    }
+
+    /** @return Libri letti dallo snapshot. */
+    public List<Libro> getLibri() { return libri; }
+    /** @return Utenti letti dallo snapshot. */
+    public List<Utente> getUtenti() { return utenti; }
+    /** @return Prestiti letti dallo snapshot. */
+    public List<Prestito> getPrestiti() { return prestiti; }
+    /** @return Sequenza dell'ultima modifica del journal inclusa nello snapshot. */
+    public long getSeqJournal() { return seqJournal; }
+}
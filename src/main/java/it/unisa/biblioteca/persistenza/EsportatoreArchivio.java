@@ -0,0 +1,408 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * @brief Esportazione di libri, utenti e prestiti in formati leggibili da altri programmi
+ * (CSV o JSON lines), per i report.
+ * * Ogni oggetto viene scritto appena letto, attraverso un buffer sul canale del file: non si
+ * costruiscono né copie delle liste né il testo completo in memoria. Ogni sezione viene scritta in
+ * un file temporaneo e rinominata alla fine, così chi legge non trova mai un file a metà.
+ * * Colonne CSV (con intestazione), le stesse accettate dalle importazioni:
+ * - libri: titolo, autori (separati da "; "), data, isbn, copie;
+ * - utenti: matricola, nome, cognome, email;
+ * - prestiti: matricola, isbn, data_inizio, data_fine_prevista.
+ * * In JSON lines ogni riga è un oggetto con gli stessi campi (gli autori come array).
+ * * Chi ha i dati in un'altra forma (es. le righe di un database) può scrivere le sezioni campo per
+ * campo ({@link Sezione}, {@link #scriviLibro}...), senza costruire gli oggetti del modello.
+ */
+public class EsportatoreArchivio {
+
+    private static final int DIMENSIONE_BUFFER = 1 << 16;
+
+    /**
+     * @brief Formato dei file esportati.
+     */
+    public enum Formato {
+        CSV(".csv"),
+        JSON_LINES(".jsonl");
+
+        private final String estensione;
+
+        Formato(String estensione) {
+            this.estensione = estensione;
+        }
+
+        /** @return Estensione dei file, punto compreso. */
+        public String getEstensione() {
+            return estensione;
+        }
+    }
+
+    /**
+     * @brief Scrive le righe di una sezione nel file aperto da {@link #esporta(File, Sezione, Sezione, Sezione)}.
+     */
+    @FunctionalInterface
+    public interface Sezione {
+        /**
+         * @param w Destinazione (non va chiusa).
+         * @return Numero di record scritti.
+         * @throws IOException Se la scrittura o la lettura dei dati fallisce.
+         */
+        int scrivi(Writer w) throws IOException;
+    }
+
+    private final Formato formato;
+
+    /**
+     * @brief Crea un esportatore nel formato indicato.
+     * @param formato CSV o JSON lines.
+     */
+    public EsportatoreArchivio(Formato formato) {
+        this.formato = formato;
+    }
+
+    /**
+     * @brief Esporta le tre sezioni in {@code cartella}, nei file libri, utenti e prestiti.
+     * * Può essere chiamato da un thread in background: le raccolte vengono solo scorse.
+     * @param cartella Cartella di destinazione.
+     * @param libri Libri da esportare.
+     * @param utenti Utenti da esportare.
+     * @param prestiti Prestiti da esportare.
+     * @return Numero di record scritti.
+     * @throws IOException Se un file non può essere scritto.
+     */
+    public long esporta(File cartella, Iterable<Libro> libri, Iterable<Utente> utenti, Iterable<Prestito> prestiti) throws IOException {
+        return esporta(cartella, w -> esportaLibri(libri, w), w -> esportaUtenti(utenti, w), w -> esportaPrestiti(prestiti, w));
+    }
+
+    /**
+     * @brief Esporta le tre sezioni in {@code cartella}, lasciando scrivere le righe a chi ha i dati.
+     * * Ogni sezione scrive l'intestazione ({@link #intestazioneLibri}...) e poi le righe.
+     * @param cartella Cartella di destinazione.
+     * @param libri Scrittura della sezione libri.
+     * @param utenti Scrittura della sezione utenti.
+     * @param prestiti Scrittura della sezione prestiti.
+     * @return Numero di record scritti.
+     * @throws IOException Se un file non può essere scritto.
+     */
+    public long esporta(File cartella, Sezione libri, Sezione utenti, Sezione prestiti) throws IOException {
+        long scritti = scriviSezione(cartella, "libri", libri);
+        scritti += scriviSezione(cartella, "utenti", utenti);
+        scritti += scriviSezione(cartella, "prestiti", prestiti);
+        return scritti;
+    }
+
+    /**
+     * Scrive la sezione nel file temporaneo e lo sposta sul file definitivo. Se la scrittura
+     * fallisce il temporaneo viene eliminato, così nella cartella non restano file a metà.
+     */
+    private int scriviSezione(File cartella, String nome, Sezione sezione) throws IOException {
+        File temporaneo = temporaneo(cartella, nome);
+        boolean spostato = false;
+        try {
+            int scritti;
+            try (Writer w = apri(temporaneo)) {
+                scritti = sezione.scrivi(w);
+            }
+            Files.move(temporaneo.toPath(), new File(cartella, nome + formato.getEstensione()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            spostato = true;
+            return scritti;
+        } finally {
+            // delete() e non deleteIfExists: un errore qui non deve nascondere quello della scrittura
+            if (!spostato && temporaneo.exists() && !temporaneo.delete()) {
+                System.err.println("Impossibile eliminare il file temporaneo " + temporaneo);
+            }
+        }
+    }
+
+    private Writer apri(File temporaneo) throws IOException {
+        FileChannel canale = FileChannel.open(temporaneo.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedWriter(Channels.newWriter(canale, StandardCharsets.UTF_8.newEncoder(), DIMENSIONE_BUFFER), DIMENSIONE_BUFFER);
+    }
+
+    private File temporaneo(File cartella, String sezione) {
+        return new File(cartella, sezione + formato.getEstensione() + ".tmp");
+    }
+
+    /**
+     * @brief Scrive i libri, uno per riga.
+     * @param libri Libri da scrivere.
+     * @param w Destinazione (non viene chiusa).
+     * @return Numero di libri scritti.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public int esportaLibri(Iterable<Libro> libri, Writer w) throws IOException {
+        intestazioneLibri(w);
+        int n = 0;
+        for (Libro l : libri) {
+            scriviLibro(w, l.getIsbn(), l.getTitolo(), l.getAutori(), l.getDataPubblicazione(), l.getDisponibilita());
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @brief Scrive l'intestazione della sezione libri (solo in CSV).
+     * @param w Destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void intestazioneLibri(Writer w) throws IOException {
+        if (formato == Formato.CSV) w.write("titolo,autori,data,isbn,copie\n");
+    }
+
+    /**
+     * @brief Scrive un libro su una riga, a partire dai suoi campi.
+     * @param w Destinazione.
+     * @param isbn ISBN.
+     * @param titolo Titolo.
+     * @param autori Autori.
+     * @param dataPubblicazione Data di pubblicazione (può mancare).
+     * @param copie Copie disponibili.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void scriviLibro(Writer w, String isbn, String titolo, List<String> autori, LocalDate dataPubblicazione, int copie) throws IOException {
+        if (formato == Formato.CSV) {
+            campoCsv(w, titolo).write(',');
+            campoCsv(w, String.join("; ", autori)).write(',');
+            w.write(data(dataPubblicazione));
+            w.write(',');
+            w.write(isbn);
+            w.write(',');
+            w.write(Integer.toString(copie));
+        } else {
+            scriviJsonLibro(w, isbn, titolo, autori, dataPubblicazione, copie);
+        }
+        w.write('\n');
+    }
+
+    /**
+     * @brief Scrive gli utenti, uno per riga.
+     * @param utenti Utenti da scrivere.
+     * @param w Destinazione (non viene chiusa).
+     * @return Numero di utenti scritti.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public int esportaUtenti(Iterable<Utente> utenti, Writer w) throws IOException {
+        intestazioneUtenti(w);
+        int n = 0;
+        for (Utente u : utenti) {
+            scriviUtente(w, u.getMatricola(), u.getNome(), u.getCognome(), u.getEmail());
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @brief Scrive l'intestazione della sezione utenti (solo in CSV).
+     * @param w Destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void intestazioneUtenti(Writer w) throws IOException {
+        if (formato == Formato.CSV) w.write("matricola,nome,cognome,email\n");
+    }
+
+    /**
+     * @brief Scrive un utente su una riga, a partire dai suoi campi.
+     * @param w Destinazione.
+     * @param matricola Matricola.
+     * @param nome Nome.
+     * @param cognome Cognome.
+     * @param email Email.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void scriviUtente(Writer w, String matricola, String nome, String cognome, String email) throws IOException {
+        if (formato == Formato.CSV) {
+            w.write(matricola);
+            w.write(',');
+            campoCsv(w, nome).write(',');
+            campoCsv(w, cognome).write(',');
+            campoCsv(w, email);
+        } else {
+            scriviJsonUtente(w, matricola, nome, cognome, email);
+        }
+        w.write('\n');
+    }
+
+    /**
+     * @brief Scrive i prestiti, uno per riga (utente e libro indicati dalla chiave).
+     * @param prestiti Prestiti da scrivere.
+     * @param w Destinazione (non viene chiusa).
+     * @return Numero di prestiti scritti.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public int esportaPrestiti(Iterable<Prestito> prestiti, Writer w) throws IOException {
+        intestazionePrestiti(w);
+        int n = 0;
+        for (Prestito p : prestiti) {
+            scriviPrestito(w, p.getUtente().getMatricola(), p.getLibro().getIsbn(), p.getDataInizio(), p.getDataFinePrevista());
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @brief Scrive l'intestazione della sezione prestiti (solo in CSV).
+     * @param w Destinazione.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void intestazionePrestiti(Writer w) throws IOException {
+        if (formato == Formato.CSV) w.write("matricola,isbn,data_inizio,data_fine_prevista\n");
+    }
+
+    /**
+     * @brief Scrive un prestito su una riga, a partire dai suoi campi.
+     * @param w Destinazione.
+     * @param matricola Matricola dell'utente.
+     * @param isbn ISBN del libro.
+     * @param dataInizio Data di inizio.
+     * @param dataFinePrevista Data di restituzione prevista.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void scriviPrestito(Writer w, String matricola, String isbn, LocalDate dataInizio, LocalDate dataFinePrevista) throws IOException {
+        if (formato == Formato.CSV) {
+            w.write(matricola);
+            w.write(',');
+            w.write(isbn);
+            w.write(',');
+            w.write(data(dataInizio));
+            w.write(',');
+            w.write(data(dataFinePrevista));
+        } else {
+            scriviJsonPrestito(w, matricola, isbn, dataInizio, dataFinePrevista);
+        }
+        w.write('\n');
+    }
+
+    /**
+     * @brief Scrive un libro come oggetto JSON su una riga (senza a capo finale).
+     * @param w Destinazione.
+     * @param l Libro da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviJson(Writer w, Libro l) throws IOException {
+        scriviJsonLibro(w, l.getIsbn(), l.getTitolo(), l.getAutori(), l.getDataPubblicazione(), l.getDisponibilita());
+    }
+
+    private static void scriviJsonLibro(Writer w, String isbn, String titolo, List<String> autori, LocalDate dataPubblicazione, int copie) throws IOException {
+        w.write("{\"isbn\":");
+        stringaJson(w, isbn);
+        w.write(",\"titolo\":");
+        stringaJson(w, titolo);
+        w.write(",\"autori\":[");
+        for (int i = 0; i < autori.size(); i++) {
+            if (i > 0) w.write(',');
+            stringaJson(w, autori.get(i));
+        }
+        w.write("],\"dataPubblicazione\":");
+        stringaJson(w, dataPubblicazione == null ? null : dataPubblicazione.toString());
+        w.write(",\"disponibilita\":");
+        w.write(Integer.toString(copie));
+        w.write('}');
+    }
+
+    /**
+     * @brief Scrive un utente come oggetto JSON su una riga (senza a capo finale).
+     * @param w Destinazione.
+     * @param u Utente da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviJson(Writer w, Utente u) throws IOException {
+        scriviJsonUtente(w, u.getMatricola(), u.getNome(), u.getCognome(), u.getEmail());
+    }
+
+    private static void scriviJsonUtente(Writer w, String matricola, String nome, String cognome, String email) throws IOException {
+        w.write("{\"matricola\":");
+        stringaJson(w, matricola);
+        w.write(",\"nome\":");
+        stringaJson(w, nome);
+        w.write(",\"cognome\":");
+        stringaJson(w, cognome);
+        w.write(",\"email\":");
+        stringaJson(w, email);
+        w.write('}');
+    }
+
+    /**
+     * @brief Scrive un prestito come oggetto JSON su una riga (senza a capo finale).
+     * @param w Destinazione.
+     * @param p Prestito da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scriviJson(Writer w, Prestito p) throws IOException {
+        scriviJsonPrestito(w, p.getUtente().getMatricola(), p.getLibro().getIsbn(), p.getDataInizio(), p.getDataFinePrevista());
+    }
+
+    private static void scriviJsonPrestito(Writer w, String matricola, String isbn, LocalDate dataInizio, LocalDate dataFinePrevista) throws IOException {
+        w.write("{\"matricola\":");
+        stringaJson(w, matricola);
+        w.write(",\"isbn\":");
+        stringaJson(w, isbn);
+        w.write(",\"dataInizio\":");
+        stringaJson(w, data(dataInizio));
+        w.write(",\"dataFinePrevista\":");
+        stringaJson(w, data(dataFinePrevista));
+        w.write('}');
+    }
+
+    /**
+     * @brief Scrive una stringa JSON tra virgolette, con i caratteri speciali in escape (null se assente).
+     * @param w Destinazione.
+     * @param s Stringa da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void stringaJson(Writer w, String s) throws IOException {
+        if (s == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': w.write("\\\""); break;
+                case '\\': w.write("\\\\"); break;
+                case '\n': w.write("\\n"); break;
+                case '\r': w.write("\\r"); break;
+                case '\t': w.write("\\t"); break;
+                default:
+                    if (c < 0x20) w.write(String.format("\\u%04x", (int) c));
+                    else w.write(c);
+            }
+        }
+        w.write('"');
+    }
+
+    /** Campo CSV, tra virgolette solo se contiene separatori, virgolette o a capo. */
+    private static Writer campoCsv(Writer w, String s) throws IOException {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            w.write(s);
+        } else {
+            w.write('"');
+            w.write(s.replace("\"", "\"\""));
+            w.write('"');
+        }
+        return w;
+    }
+
+    private static String data(LocalDate data) {
+        return data == null ? "" : data.toString();
+    }
+}
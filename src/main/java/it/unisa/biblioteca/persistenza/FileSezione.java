@@ -0,0 +1,393 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @brief File di una singola sezione dell'archivio (libri, utenti o prestiti).
+ * * Ogni sezione ha il proprio snapshot ({@code base.libri.dat}), il proprio journal
+ * ({@code base.libri.journal}) e i rispettivi backup ({@code .bak}, {@code .journal.bak}),
+ * così una sezione può essere riscritta senza toccare le altre: un prestito registrato
+ * non costringe a riscrivere il catalogo.
+ * * Tiene anche il conto delle modifiche arrivate dall'ultimo salvataggio ("sezione sporca"):
+ * una sezione senza modifiche viene saltata del tutto.
+ * * Il journal viene ripiegato in un nuovo snapshot (compattazione) quando supera la dimensione
+ * dello snapshot, {@link #SOGLIA_JOURNAL_BYTE} oppure quando la sua rilettura all'avvio richiederebbe
+ * più di {@link #SOGLIA_REPLAY_MS}, stimata dalla velocità misurata all'ultimo caricamento:
+ * il tempo di avvio resta così limitato qualunque sia la durata della sessione.
+ * * Quando più postazioni usano lo stesso archivio, {@link #aggiorna} legge le modifiche scritte
+ * dalle altre dopo l'ultima lettura, anche se nel frattempo una di esse ha compattato la sezione.
+ */
+public class FileSezione implements Closeable {
+
+    /**
+     * @brief Legge i record di una sezione da uno snapshot.
+     */
+    public interface Lettore<T> {
+        List<T> leggi(File file) throws IOException;
+    }
+
+    /**
+     * @brief Scrive lo snapshot di una sezione aggiornato alla sequenza indicata.
+     */
+    public interface Scrittore {
+        void scrivi(File file, long seqJournal) throws IOException;
+    }
+
+    private final Sezione sezione;
+    private final File fileDati;
+    private final File fileTemporaneo;
+    private final File fileBackup;
+    private final File fileJournal;
+    private final File fileJournalBackup;
+    private final JournalModifiche journal;
+
+    /** Dimensione del journal oltre la quale la sezione viene compattata, qualunque sia lo snapshot. */
+    public static final long SOGLIA_JOURNAL_BYTE = 8L * 1024 * 1024;
+    /** Tempo stimato di rilettura del journal oltre il quale la sezione viene compattata. */
+    public static final long SOGLIA_REPLAY_MS = 500;
+    // Sotto questa quantità di journal riletto la velocità misurata non è attendibile (prevale l'apertura del file)
+    private static final long MINIMO_BYTE_MISURA = 64 * 1024;
+
+    private final AtomicInteger modifiche = new AtomicInteger();
+    private volatile boolean daRiscrivere;
+    // Sequenza dello snapshot su cui si basano i dati in memoria (letto al caricamento o scritto da qui)
+    private volatile long seqSnapshotLetto;
+
+    // Metriche dell'ultima rilettura del journal (caricamento)
+    private volatile long durataReplayNanos;
+    private volatile long byteRiletti;
+    private volatile int recordRiletti;
+
+    /**
+     * @brief Prepara i file della sezione (non li crea).
+     * @param base Percorso comune dei file, senza estensione (es. {@code database_biblioteca}).
+     * @param sezione Sezione a cui si riferiscono.
+     */
+    public FileSezione(String base, Sezione sezione) {
+        this.sezione = sezione;
+        String prefisso = base + "." + sezione.name().toLowerCase(Locale.ROOT);
+        this.fileDati = new File(prefisso + ".dat");
+        this.fileTemporaneo = new File(prefisso + ".tmp");
+        this.fileBackup = new File(prefisso + ".bak");
+        this.fileJournal = new File(prefisso + ".journal");
+        this.fileJournalBackup = new File(prefisso + ".journal.bak");
+        this.journal = new JournalModifiche(fileJournal);
+    }
+
+    /** @return La sezione. */
+    public Sezione getSezione() { return sezione; }
+
+    /** @return Il file dello snapshot della sezione. */
+    public File getFileDati() { return fileDati; }
+
+    /** @return Il journal della sezione. */
+    public JournalModifiche getJournal() { return journal; }
+
+    /** @return true se esiste uno snapshot della sezione (anche solo il backup). */
+    public boolean esiste() {
+        return fileDati.exists() || fileBackup.exists();
+    }
+
+    // --- MODIFICHE ---
+
+    /**
+     * @brief Segna una modifica della sezione, da salvare al prossimo salvataggio.
+     */
+    public void segnaModifica() {
+        modifiche.incrementAndGet();
+    }
+
+    /**
+     * @brief Restituisce e azzera il numero di modifiche dall'ultimo salvataggio.
+     * @return Numero di modifiche (0 se la sezione è pulita).
+     */
+    public int prendiModifiche() {
+        return modifiche.getAndSet(0);
+    }
+
+    /**
+     * @brief Rimette in conto modifiche prese da un salvataggio fallito.
+     * @param numero Numero di modifiche.
+     */
+    public void restituisciModifiche(int numero) {
+        modifiche.addAndGet(numero);
+    }
+
+    /**
+     * @brief Fa riscrivere lo snapshot al prossimo salvataggio (es. una modifica non accodata al journal).
+     */
+    public void richiediRiscrittura() {
+        daRiscrivere = true;
+    }
+
+    /**
+     * @brief Indica se la sezione va passata al salvataggio.
+     * @param modificata true se la sezione ha modifiche dall'ultimo salvataggio.
+     * @return true se è modificata oppure se lo snapshot manca o va ricostruito.
+     */
+    public boolean isDaSalvare(boolean modificata) {
+        return modificata || daRiscrivere || !fileDati.exists();
+    }
+
+    /**
+     * @brief Indica se conviene ripiegare il journal in un nuovo snapshot.
+     * @param rapportoSnapshot Frazione della dimensione dello snapshot oltre la quale il journal
+     *                         va compattato (1 al salvataggio; meno per la compattazione periodica,
+     *                         che avviene nei momenti di inattività).
+     * @return true se il journal contiene record e supera una delle soglie.
+     */
+    public boolean isDaCompattare(double rapportoSnapshot) {
+        long dimensione = journal.dimensione();
+        if (dimensione <= JournalModifiche.LUNGHEZZA_INTESTAZIONE) return false;
+        return dimensione > fileDati.length() * rapportoSnapshot
+                || dimensione >= SOGLIA_JOURNAL_BYTE
+                || stimaReplayMs() >= SOGLIA_REPLAY_MS;
+    }
+
+    // --- METRICHE ---
+
+    /** @return Durata in millisecondi dell'ultima rilettura del journal al caricamento. */
+    public long getDurataReplayMs() { return durataReplayNanos / 1_000_000; }
+
+    /** @return Byte di journal riletti all'ultimo caricamento. */
+    public long getByteRiletti() { return byteRiletti; }
+
+    /** @return Record del journal applicati all'ultimo caricamento. */
+    public int getRecordRiletti() { return recordRiletti; }
+
+    /**
+     * @brief Stima il tempo di rilettura del journal attuale al prossimo avvio.
+     * * Usa la velocità misurata all'ultimo caricamento; senza una misura attendibile
+     * restituisce 0 e valgono solo le soglie sulla dimensione.
+     * @return Tempo stimato in millisecondi.
+     */
+    public long stimaReplayMs() {
+        long riletti = byteRiletti;
+        if (riletti < MINIMO_BYTE_MISURA) return 0;
+        return (long) ((double) durataReplayNanos / riletti * journal.dimensione() / 1_000_000);
+    }
+
+    // --- CARICAMENTO ---
+
+    /**
+     * @brief Legge lo snapshot della sezione e vi applica il journal.
+     * * Se lo snapshot è danneggiato viene rinominato in {@code .danneggiato} e si riparte
+     * dal backup, applicando prima il journal archiviato con esso e poi quello corrente.
+     * Se non è mai stato scritto alcuno snapshot (archivio nuovo) il journal contiene tutte le
+     * modifiche e viene riletto dall'inizio. Se invece snapshot e backup sono entrambi danneggiati
+     * il journal non ha una base: viene rinominato in {@code .danneggiato} insieme a quello archiviato,
+     * così resta disponibile per un recupero manuale.
+     * Anche un journal illeggibile viene messo da parte. In tutti questi casi lo snapshot verrà
+     * riscritto al prossimo salvataggio.
+     * @param lettore Legge i record dallo snapshot.
+     * @param snapshot Riceve i record dello snapshot, prima del journal.
+     * @param destinatario Riceve le modifiche del journal.
+     * @return Numero di modifiche applicate dal journal.
+     */
+    public <T> int carica(Lettore<T> lettore, Consumer<List<T>> snapshot, JournalModifiche.Destinatario destinatario) {
+        // Residuo di un salvataggio interrotto: lo snapshot valido è ancora quello precedente
+        fileTemporaneo.delete();
+
+        long seq = 0;
+        List<T> record = null;
+        boolean snapshotScritto = esiste();
+        if (fileDati.exists()) {
+            try {
+                seq = SnapshotArchivio.leggiSeqJournal(fileDati);
+                record = lettore.leggi(fileDati);
+            } catch (IOException e) {
+                System.err.println("Snapshot " + fileDati + " danneggiato: " + e.getMessage());
+                mettiDaParte(fileDati);
+            }
+        }
+        boolean ripristino = record == null && fileBackup.exists();
+        if (ripristino) {
+            System.err.println("Ripristino dall'ultimo snapshot valido: " + fileBackup);
+            try {
+                seq = SnapshotArchivio.leggiSeqJournal(fileBackup);
+                record = lettore.leggi(fileBackup);
+            } catch (IOException e) {
+                System.err.println("Snapshot " + fileBackup + " danneggiato: " + e.getMessage());
+                mettiDaParte(fileBackup);
+                ripristino = false;
+            }
+        }
+        daRiscrivere = record == null || ripristino;
+        if (record == null && snapshotScritto) {
+            System.err.println("Sezione " + sezione + ": nessuno snapshot leggibile, journal messo da parte.");
+            if (fileJournal.exists()) mettiDaParte(fileJournal);
+            if (fileJournalBackup.exists()) mettiDaParte(fileJournalBackup);
+            snapshot.accept(new ArrayList<>());
+            return 0;
+        }
+        if (record == null) record = new ArrayList<>(); // Archivio nuovo: il journal parte dalla sequenza 0
+
+        snapshot.accept(record);
+        seqSnapshotLetto = seq;
+        int applicate = 0;
+        long inizio = System.nanoTime();
+        long byteJournal = journal.dimensione();
+        if (ripristino) {
+            byteJournal += fileJournalBackup.length();
+            applicate += rileggi(new JournalModifiche(fileJournalBackup), fileJournalBackup, seq, destinatario);
+        }
+        applicate += rileggi(journal, fileJournal, seq, destinatario);
+        durataReplayNanos = System.nanoTime() - inizio;
+        byteRiletti = byteJournal;
+        recordRiletti = applicate;
+        return applicate;
+    }
+
+    /**
+     * @brief Applica le modifiche scritte da altri processi dopo l'ultima lettura della sezione.
+     * * Legge solo i record nuovi del journal. Se un altro processo ha riscritto lo snapshot, il journal
+     * che si stava leggendo è stato archiviato insieme al backup: prima si leggono da lì i record
+     * mancanti, poi il nuovo journal dall'inizio. Le sequenze evitano di applicare due volte un record.
+     * @param destinatario Riceve le modifiche lette.
+     * @param troncaCoda true solo tenendo il blocco in scrittura (vedi {@link JournalModifiche#rileggiNuovi}).
+     * @return Numero di modifiche applicate.
+     * @throws IOException Se i file della sezione non sono leggibili.
+     */
+    public int aggiorna(JournalModifiche.Destinatario destinatario, boolean troncaCoda) throws IOException {
+        long seqSnapshot = leggiSeqSnapshot();
+        int applicate = 0;
+        if (seqSnapshot != seqSnapshotLetto) {
+            if (journal.getUltimaSeq() < seqSnapshot) {
+                JournalModifiche archiviato = new JournalModifiche(fileJournalBackup);
+                applicate += archiviato.rileggiNuovi(journal.getUltimaSeq(), destinatario, false);
+                journal.aggiornaSeq(archiviato.getUltimaSeq());
+            }
+            if (journal.getUltimaSeq() < seqSnapshot) {
+                // Lo snapshot è stato riscritto più volte dall'ultima lettura: i record intermedi non esistono più
+                System.err.println("Sezione " + sezione + ": modifiche di altre postazioni non più leggibili, riavviare il programma.");
+                journal.aggiornaSeq(seqSnapshot);
+            }
+            journal.azzeraLettura();
+            seqSnapshotLetto = seqSnapshot;
+        }
+        return applicate + journal.rileggiNuovi(journal.getUltimaSeq(), destinatario, troncaCoda);
+    }
+
+    /**
+     * @brief Indica se i dati in memoria coincidono con quelli su disco fino alla sequenza indicata.
+     * * Vale se nessun record è stato letto o scritto dopo `seqJournal`, nel file non ci sono record
+     * non ancora letti e lo snapshot non è stato riscritto da altri: solo allora uno snapshot scritto
+     * dalla memoria non perde le modifiche di altre postazioni. Va chiesto tenendo il blocco in scrittura.
+     * @param seqJournal Sequenza a cui si riferisce la copia dei dati.
+     * @return true se la copia è allineata all'archivio condiviso.
+     * @throws IOException Se lo snapshot non è leggibile.
+     */
+    public boolean isAllineata(long seqJournal) throws IOException {
+        return journal.getUltimaSeq() == seqJournal && journal.isLettoTutto() && leggiSeqSnapshot() == seqSnapshotLetto;
+    }
+
+    // --- SALVATAGGIO ---
+
+    /**
+     * @brief Salva la sezione. Va eseguito sul thread di scrittura.
+     * * Una sezione senza modifiche non viene toccata. Altrimenti, se lo snapshot esiste e il
+     * journal non supera le soglie di compattazione ({@link #isDaCompattare}), basta rendere
+     * persistente il journal; in caso contrario (o se lo snapshot manca o va ricostruito,
+     * o se la compattazione è richiesta) la sezione viene riscritta: file temporaneo
+     * forzato su disco, snapshot corrente spostato nel backup, rename atomico del temporaneo
+     * e archiviazione del journal insieme al backup.
+     * @param scrittore Scrive lo snapshot della sezione.
+     * @param seqJournal Sequenza dell'ultimo record incluso nei dati da scrivere.
+     * @param modificata true se la sezione ha modifiche dall'ultimo salvataggio.
+     * @param compattare true per riscrivere comunque lo snapshot, svuotando il journal.
+     * @return Byte di snapshot scritti (0 se non è stato riscritto).
+     * @throws IOException Se la scrittura fallisce (lo snapshot precedente resta valido).
+     */
+    public long salva(Scrittore scrittore, long seqJournal, boolean modificata, boolean compattare) throws IOException {
+        boolean riscrivere = compattare || daRiscrivere || !fileDati.exists();
+        if (!modificata && !riscrivere) return 0;
+        if (!riscrivere && !isDaCompattare(1)) {
+            journal.sincronizza();
+            return 0;
+        }
+        try {
+            scrittore.scrivi(fileTemporaneo, seqJournal);
+            if (fileDati.exists()) {
+                Files.move(fileDati.toPath(), fileBackup.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                // Un backup più vecchio non è coerente con il journal che sta per essere archiviato
+                Files.deleteIfExists(fileBackup.toPath());
+            }
+            Files.move(fileTemporaneo.toPath(), fileDati.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            fileTemporaneo.delete();
+            throw e;
+        }
+        sincronizzaCartella();
+        journal.archivia(fileJournalBackup);
+        seqSnapshotLetto = seqJournal;
+        daRiscrivere = false;
+        return fileDati.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    // --- METODI PRIVATI ---
+
+    /**
+     * Un journal illeggibile (es. intestazione danneggiata) viene messo da parte invece di essere
+     * archiviato sopra {@code .journal.bak} al prossimo salvataggio, che riscriverà lo snapshot.
+     */
+    private int rileggi(JournalModifiche daRileggere, File file, long seq, JournalModifiche.Destinatario destinatario) {
+        try {
+            return daRileggere.rileggi(seq, destinatario);
+        } catch (IOException e) {
+            System.err.println("Journal " + file + " illeggibile, messo da parte: " + e.getMessage());
+            mettiDaParte(file);
+            daRiscrivere = true;
+            return 0;
+        }
+    }
+
+    /** Sequenza dello snapshot attuale; se manca (es. rename in corso) resta quella nota. */
+    private long leggiSeqSnapshot() throws IOException {
+        try {
+            return SnapshotArchivio.leggiSeqJournal(fileDati);
+        } catch (NoSuchFileException e) {
+            return seqSnapshotLetto;
+        }
+    }
+
+    /**
+     * Un file danneggiato non viene sovrascritto dai salvataggi successivi e resta disponibile per un recupero manuale.
+     */
+    private static void mettiDaParte(File file) {
+        File danneggiato = new File(file.getPath() + ".danneggiato");
+        if (!file.renameTo(danneggiato)) {
+            System.err.println("Impossibile rinominare " + file + " in " + danneggiato);
+        }
+    }
+
+    /**
+     * Rende persistente il rename appena fatto. Non tutti i sistemi permettono di aprire
+     * una cartella (es. Windows): in quel caso il rename resta comunque atomico.
+     */
+    private void sincronizzaCartella() {
+        File cartella = fileDati.getAbsoluteFile().getParentFile();
+        try (FileChannel canale = FileChannel.open(cartella.toPath(), StandardOpenOption.READ)) {
+            canale.force(true);
+        } catch (IOException e) {
+            // Non supportato: nessuna azione
+        }
+    }
+}
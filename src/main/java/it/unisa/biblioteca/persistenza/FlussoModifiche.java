@@ -0,0 +1,284 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Flusso delle modifiche (change data capture) per i sistemi di analisi: ogni modifica fatta
+ * al banco diventa un evento numerato su una riga JSON.
+ * * Formato di una riga:
+ * {@code {"seq":12,"istante":"2024-05-10T09:30:00.123Z","tipo":"PRESTITO_APERTO","prestito":{...}}},
+ * con l'oggetto nello stesso formato dell'esportazione JSON lines ({@link EsportatoreArchivio}).
+ * I numeri di sequenza crescono senza buchi, anche tra un avvio e l'altro.
+ * * Chi registra un evento paga solo la sua conversione in testo (lo stato dell'oggetto va fissato
+ * in quel momento) e un inserimento in coda: la scrittura avviene su un thread dedicato, che scrive
+ * tutti gli eventi in coda in un colpo solo e svuota il buffer una volta per lotto.
+ * * Il file attivo ({@code nome.jsonl}) viene ruotato quando supera la dimensione indicata: è
+ * rinominato in {@code nome.<prima sequenza>.jsonl} e si riparte con un file vuoto. I file ruotati
+ * non vengono mai più modificati e si possono leggere e cancellare liberamente.
+ */
+public class FlussoModifiche implements Closeable {
+
+    /**
+     * @brief Tipo di modifica.
+     */
+    public enum Tipo {
+        LIBRO_CREATO, LIBRO_MODIFICATO, LIBRO_ELIMINATO, COPIE_INCREMENTATE, COPIE_DECREMENTATE,
+        UTENTE_CREATO, UTENTE_MODIFICATO, UTENTE_ELIMINATO,
+        PRESTITO_APERTO, PRESTITO_CHIUSO
+    }
+
+    public static final long DIMENSIONE_ROTAZIONE = 16L * 1024 * 1024;
+
+    private static final int MAX_LOTTO = 4096;
+    private static final int DIMENSIONE_BUFFER = 1 << 16;
+    private static final Pattern SEQ = Pattern.compile("\\{\"seq\":(\\d+)");
+    private static final Evento FINE = new Evento(-1, null);
+
+    private final File file;
+    private final String prefisso;
+    private final long dimensioneRotazione;
+    private final AtomicLong seq;
+    private final BlockingQueue<Evento> coda = new LinkedBlockingQueue<>();
+    private final Thread scrittore;
+
+    private Writer writer;
+    private long dimensione;
+    private long primaSeqFile = -1;
+
+    /**
+     * @brief Apre il flusso con la dimensione di rotazione predefinita ({@link #DIMENSIONE_ROTAZIONE}).
+     * @param file File attivo (es. "modifiche.jsonl").
+     * @throws IOException Se il file non può essere aperto.
+     */
+    public FlussoModifiche(File file) throws IOException {
+        this(file, DIMENSIONE_ROTAZIONE);
+    }
+
+    /**
+     * @brief Apre il flusso e riprende la numerazione dall'ultimo evento scritto.
+     * @param file File attivo (es. "modifiche.jsonl").
+     * @param dimensioneRotazione Dimensione in byte oltre la quale il file attivo viene ruotato.
+     * @throws IOException Se il file non può essere aperto.
+     */
+    public FlussoModifiche(File file, long dimensioneRotazione) throws IOException {
+        this.file = file.getAbsoluteFile();
+        String nome = this.file.getName();
+        this.prefisso = nome.endsWith(".jsonl") ? nome.substring(0, nome.length() - ".jsonl".length()) : nome;
+        this.dimensioneRotazione = dimensioneRotazione;
+        this.seq = new AtomicLong(ultimaSeqScritta());
+        apri();
+        scrittore = new Thread(this::scrivi, "flusso-modifiche");
+        scrittore.setDaemon(true);
+        scrittore.start();
+    }
+
+    /**
+     * @brief Registra un evento su un libro.
+     * @param tipo Tipo di modifica.
+     * @param libro Il libro nel suo stato attuale.
+     */
+    public void libro(Tipo tipo, Libro libro) {
+        evento(tipo, "libro", w -> EsportatoreArchivio.scriviJson(w, libro));
+    }
+
+    /**
+     * @brief Registra un evento su un utente.
+     * @param tipo Tipo di modifica.
+     * @param utente L'utente nel suo stato attuale.
+     */
+    public void utente(Tipo tipo, Utente utente) {
+        evento(tipo, "utente", w -> EsportatoreArchivio.scriviJson(w, utente));
+    }
+
+    /**
+     * @brief Registra un evento su un prestito.
+     * @param tipo Tipo di modifica.
+     * @param prestito Il prestito aperto o chiuso.
+     */
+    public void prestito(Tipo tipo, Prestito prestito) {
+        evento(tipo, "prestito", w -> EsportatoreArchivio.scriviJson(w, prestito));
+    }
+
+    /** Oggetto da scrivere in JSON. */
+    private interface Oggetto {
+        void scrivi(Writer w) throws IOException;
+    }
+
+    /**
+     * Numero di sequenza e testo vengono decisi sotto lo stesso lock, così gli eventi entrano in coda
+     * nell'ordine dei numeri anche se arrivano da thread diversi.
+     */
+    private synchronized void evento(Tipo tipo, String campo, Oggetto oggetto) {
+        long n = seq.incrementAndGet();
+        StringWriter riga = new StringWriter(256);
+        try {
+            riga.write("{\"seq\":");
+            riga.write(Long.toString(n));
+            riga.write(",\"istante\":\"");
+            riga.write(Instant.now().toString());
+            riga.write("\",\"tipo\":\"");
+            riga.write(tipo.name());
+            riga.write("\",\"");
+            riga.write(campo);
+            riga.write("\":");
+            oggetto.scrivi(riga);
+            riga.write("}\n");
+        } catch (IOException e) {
+            // StringWriter non lancia eccezioni
+            throw new IllegalStateException(e);
+        }
+        coda.add(new Evento(n, riga.toString()));
+    }
+
+    /**
+     * @brief Restituisce il numero dell'ultimo evento registrato (scritto o ancora in coda).
+     * @return Numero di sequenza, 0 se non ci sono ancora eventi.
+     */
+    public long getUltimaSeq() {
+        return seq.get();
+    }
+
+    /**
+     * @brief Scrive gli eventi ancora in coda e chiude il file.
+     */
+    @Override
+    public void close() {
+        coda.add(FINE);
+        try {
+            scrittore.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Corpo del thread di scrittura: un lotto alla volta, un flush per lotto. */
+    private void scrivi() {
+        List<Evento> lotto = new ArrayList<>();
+        boolean fine = false;
+        while (!fine) {
+            try {
+                lotto.add(coda.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            coda.drainTo(lotto, MAX_LOTTO);
+            try {
+                for (Evento e : lotto) {
+                    if (e == FINE) {
+                        fine = true;
+                        break;
+                    }
+                    if (primaSeqFile < 0) primaSeqFile = e.seq;
+                    writer.write(e.riga);
+                    dimensione += e.riga.length();
+                    if (dimensione >= dimensioneRotazione) ruota();
+                }
+                writer.flush();
+            } catch (IOException ex) {
+                System.err.println("Errore flusso modifiche: " + ex.getMessage());
+            }
+            lotto.clear();
+        }
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            System.err.println("Errore chiusura flusso modifiche: " + ex.getMessage());
+        }
+    }
+
+    private void apri() throws IOException {
+        FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        dimensione = canale.size();
+        writer = new BufferedWriter(Channels.newWriter(canale, StandardCharsets.UTF_8.newEncoder(), DIMENSIONE_BUFFER), DIMENSIONE_BUFFER);
+        primaSeqFile = dimensione == 0 ? -1 : primaSeq(file);
+        // Una riga lasciata a metà da una chiusura improvvisa non deve unirsi alla prossima
+        if (dimensione > 0 && !terminaConACapo(file)) {
+            writer.write('\n');
+            dimensione++;
+        }
+    }
+
+    private void ruota() throws IOException {
+        writer.close();
+        File ruotato = new File(file.getParentFile(), String.format("%s.%012d.jsonl", prefisso, primaSeqFile));
+        Files.move(file.toPath(), ruotato.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        apri();
+    }
+
+    /** Ultimo numero scritto: dal file attivo o, se è vuoto, dall'ultimo file ruotato. */
+    private long ultimaSeqScritta() throws IOException {
+        long ultima = ultimaSeq(file);
+        if (ultima > 0) return ultima;
+        File[] ruotati = file.getParentFile().listFiles((cartella, nome) -> nome.matches(Pattern.quote(prefisso) + "\\.\\d{12}\\.jsonl"));
+        if (ruotati == null || ruotati.length == 0) return 0;
+        File ultimo = ruotati[0];
+        for (File f : ruotati) if (f.getName().compareTo(ultimo.getName()) > 0) ultimo = f;
+        return ultimaSeq(ultimo);
+    }
+
+    /** Numero dell'ultima riga completa o a metà, letto dagli ultimi 64 KB del file. */
+    private static long ultimaSeq(File f) throws IOException {
+        if (!f.exists()) return 0;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            int quanti = (int) Math.min(raf.length(), 64 * 1024);
+            byte[] coda = new byte[quanti];
+            raf.seek(raf.length() - quanti);
+            raf.readFully(coda);
+            Matcher m = SEQ.matcher(new String(coda, StandardCharsets.UTF_8));
+            long ultima = 0;
+            while (m.find()) ultima = Long.parseLong(m.group(1));
+            return ultima;
+        }
+    }
+
+    private static long primaSeq(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            byte[] inizio = new byte[(int) Math.min(raf.length(), 64)];
+            raf.readFully(inizio);
+            Matcher m = SEQ.matcher(new String(inizio, StandardCharsets.UTF_8));
+            return m.find() ? Long.parseLong(m.group(1)) : 0;
+        }
+    }
+
+    private static boolean terminaConACapo(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /** Evento già convertito in testo, con il suo numero. */
+    private static final class Evento {
+        final long seq;
+        final String riga;
+
+        Evento(long seq, String riga) {
+            this.seq = seq;
+            this.riga = riga;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * @brief Importazione in blocco del catalogo da un file CSV.
+ * * Colonne, nell'ordine della schermata di inserimento: titolo, autori, data di pubblicazione,
+ * ISBN, copie. Una prima riga di intestazione (che inizia con "titolo") viene saltata.
+ * - autori separati da ';' (o da ',' se non ci sono ';'), come nel campo tra virgolette "Rossi; Bianchi";
+ * - data nel formato {@code aaaa-mm-gg}, oppure solo l'anno (diventa il 1° gennaio);
+ * - ISBN-13 con cifra di controllo corretta; trattini e spazi vengono ignorati;
+ * - copie: intero non inferiore a 1.
+ * * Il file viene letto a blocchi di {@code dimensioneLotto} record: mentre un blocco viene
+ * validato in parallelo (un record per volta su ogni core), si legge il successivo. I duplicati
+ * (ISBN già in archivio o già visto nel file) si riconoscono con un indice hash, nell'ordine del
+ * file: vince la prima occorrenza. I libri validi di ogni blocco arrivano alla destinazione
+ * tutti insieme, così chi li aggiunge a una lista osservabile genera una sola notifica per blocco.
+ */
+public class ImportatoreCsvLibri {
+
+    public static final int DIMENSIONE_LOTTO = 5000;
+
+    private final int dimensioneLotto;
+
+    /**
+     * @brief Crea un importatore con la dimensione dei lotti predefinita ({@link #DIMENSIONE_LOTTO}).
+     */
+    public ImportatoreCsvLibri() {
+        this(DIMENSIONE_LOTTO);
+    }
+
+    /**
+     * @brief Crea un importatore.
+     * @param dimensioneLotto Numero di record letti, validati e consegnati insieme.
+     */
+    public ImportatoreCsvLibri(int dimensioneLotto) {
+        if (dimensioneLotto < 1) throw new IllegalArgumentException("La dimensione del lotto deve essere almeno 1.");
+        this.dimensioneLotto = dimensioneLotto;
+    }
+
+    /**
+     * @brief Importa il file: legge, valida e consegna i libri nuovi a lotti.
+     * * Viene eseguito sul thread chiamante (tranne la validazione): va chiamato da un thread in background.
+     * @param sorgente Testo CSV; non viene chiuso.
+     * @param isbnPresente Dice se un ISBN è già in archivio (chiamato solo dal thread chiamante).
+     * @param destinazione Riceve i libri validi e nuovi di ogni lotto, nell'ordine del file.
+     * @return Il riepilogo dell'importazione.
+     * @throws IOException Se il file non può essere letto.
+     */
+    public RiepilogoImportazione importa(Reader sorgente, Predicate<String> isbnPresente, Consumer<List<Libro>> destinazione) throws IOException {
+        LettoreCsv lettore = new LettoreCsv(sorgente);
+        RiepilogoImportazione riepilogo = new RiepilogoImportazione();
+        Set<String> visti = new HashSet<>();
+        CompletableFuture<List<Esito>> inValidazione = null;
+        boolean primo = true;
+        List<Riga> blocco = new ArrayList<>(dimensioneLotto);
+        List<String> campi;
+        while ((campi = lettore.prossimo()) != null) {
+            if (primo) {
+                primo = false;
+                if (!campi.isEmpty() && campi.get(0).trim().equalsIgnoreCase("titolo")) continue;
+            }
+            blocco.add(new Riga(lettore.getRigaRecord(), campi));
+            if (blocco.size() == dimensioneLotto) {
+                CompletableFuture<List<Esito>> successivo = avviaValidazione(blocco);
+                if (inValidazione != null) consegna(inValidazione.join(), isbnPresente, visti, destinazione, riepilogo);
+                inValidazione = successivo;
+                blocco = new ArrayList<>(dimensioneLotto);
+            }
+        }
+        if (inValidazione != null) consegna(inValidazione.join(), isbnPresente, visti, destinazione, riepilogo);
+        if (!blocco.isEmpty()) consegna(valida(blocco), isbnPresente, visti, destinazione, riepilogo);
+        return riepilogo;
+    }
+
+    private static CompletableFuture<List<Esito>> avviaValidazione(List<Riga> blocco) {
+        return CompletableFuture.supplyAsync(() -> valida(blocco));
+    }
+
+    private static List<Esito> valida(List<Riga> blocco) {
+        return blocco.parallelStream().map(Esito::di).collect(Collectors.toList());
+    }
+
+    /** Scarta i duplicati nell'ordine del file e consegna il lotto. */
+    private static void consegna(List<Esito> esiti, Predicate<String> isbnPresente, Set<String> visti,
+                                 Consumer<List<Libro>> destinazione, RiepilogoImportazione riepilogo) {
+        List<Libro> lotto = new ArrayList<>(esiti.size());
+        for (Esito e : esiti) {
+            if (e.errore != null) {
+                riepilogo.scartato(e.riga, e.errore);
+            } else if (!visti.add(e.libro.getIsbn()) || isbnPresente.test(e.libro.getIsbn())) {
+                riepilogo.duplicato();
+            } else {
+                lotto.add(e.libro);
+            }
+        }
+        if (lotto.isEmpty()) return;
+        destinazione.accept(lotto);
+        riepilogo.importati(lotto.size());
+    }
+
+    /**
+     * @brief Costruisce un libro da un record del file, con gli stessi controlli della schermata di inserimento.
+     * @param campi Titolo, autori, data di pubblicazione, ISBN e copie.
+     * @return Il libro.
+     * @throws IllegalArgumentException Se un campo manca o non è valido.
+     */
+    public static Libro libro(List<String> campi) {
+        if (campi.size() < 5) {
+            throw new IllegalArgumentException("Attesi 5 campi (titolo, autori, data, ISBN, copie), trovati " + campi.size() + ".");
+        }
+        String titolo = campi.get(0).trim();
+        if (titolo.isEmpty()) throw new IllegalArgumentException("Il titolo non può essere vuoto.");
+        String autoriRaw = campi.get(1).trim();
+        List<String> autori = new ArrayList<>(Arrays.asList(autoriRaw.split(autoriRaw.indexOf(';') >= 0 ? ";" : ",")));
+        autori.replaceAll(String::trim);
+        autori.removeIf(String::isEmpty);
+        if (autori.isEmpty()) throw new IllegalArgumentException("Inserire almeno un autore.");
+        LocalDate data = data(campi.get(2).trim());
+        String isbn = normalizzaIsbn(campi.get(3));
+        String copie = campi.get(4).trim();
+        if (!copie.matches("\\d{1,9}") || Integer.parseInt(copie) < 1) {
+            throw new IllegalArgumentException("Copie non valide: '" + copie + "'.");
+        }
+        return new Libro(titolo, autori, data, isbn, Integer.parseInt(copie));
+    }
+
+    private static LocalDate data(String testo) {
+        if (testo.isEmpty()) throw new IllegalArgumentException("Data di pubblicazione mancante.");
+        try {
+            if (testo.matches("\\d{4}")) return LocalDate.of(Integer.parseInt(testo), 1, 1);
+            return LocalDate.parse(testo);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Data non valida: '" + testo + "' (atteso aaaa-mm-gg).");
+        }
+    }
+
+    /**
+     * @brief Riporta un ISBN-13 a sole cifre e ne verifica la cifra di controllo.
+     * @param testo ISBN, anche con trattini o spazi (es. "978-88-04-66823-7").
+     * @return Le 13 cifre.
+     * @throws IllegalArgumentException Se non sono 13 cifre o la cifra di controllo è sbagliata.
+     */
+    public static String normalizzaIsbn(String testo) {
+        String isbn = testo.replace("-", "").replace(" ", "").trim();
+        if (!isbn.matches("\\d{13}")) {
+            throw new IllegalArgumentException("L'ISBN deve essere composto da 13 cifre: '" + testo.trim() + "'.");
+        }
+        if (cifraControlloIsbn(isbn) != isbn.charAt(12)) {
+            throw new IllegalArgumentException("Cifra di controllo dell'ISBN errata: '" + testo.trim() + "'.");
+        }
+        return isbn;
+    }
+
+    /**
+     * @brief Calcola la cifra di controllo di un ISBN-13 (pesi alternati 1 e 3, modulo 10).
+     * @param isbn Almeno le prime 12 cifre dell'ISBN; le successive vengono ignorate.
+     * @return La tredicesima cifra attesa.
+     */
+    public static char cifraControlloIsbn(String isbn) {
+        int somma = 0;
+        for (int i = 0; i < 12; i++) {
+            somma += (isbn.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (char) ('0' + (10 - somma % 10) % 10);
+    }
+
+    /** Record letto dal file, con la riga su cui inizia. */
+    private static final class Riga {
+        final long numero;
+        final List<String> campi;
+
+        Riga(long numero, List<String> campi) {
+            this.numero = numero;
+            this.campi = campi;
+        }
+    }
+
+    /** Risultato della validazione di un record: il libro oppure il motivo dello scarto. */
+    private static final class Esito {
+        final long riga;
+        final Libro libro;
+        final String errore;
+
+        private Esito(long riga, Libro libro, String errore) {
+            this.riga = riga;
+            this.libro = libro;
+            this.errore = errore;
+        }
+
+        static Esito di(Riga r) {
+            try {
+                return new Esito(r.numero, libro(r.campi), null);
+            } catch (IllegalArgumentException e) {
+                return new Esito(r.numero, null, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @brief Importazione in blocco del catalogo da un file MARC21 binario (ISO 2709), come quelli
+ * forniti dall'ufficio acquisti.
+ * * Campi usati:
+ * - 020 $a: ISBN (il primo valido; un ISBN-10 viene convertito in ISBN-13);
+ * - 245 $a e $b: titolo e sottotitolo, senza la punteggiatura ISBD finale;
+ * - 100 $a e 700 $a: autore principale e altri autori;
+ * - 264 $c (secondo indicatore 1, pubblicazione), altrimenti 260 $c o il campo 008: anno di
+ *   pubblicazione (diventa il 1° gennaio).
+ * * Un record bibliografico non dice quante copie ci sono: ogni libro entra con {@code copie} copie.
+ * Il testo è letto in UTF-8 se la posizione 9 dell'intestazione vale 'a', altrimenti in ISO-8859-1
+ * (i caratteri diacritici MARC-8 non vengono convertiti).
+ * * L'importazione è una pipeline su tre thread collegati da code di lunghezza fissa: un thread
+ * separa i record del file, uno li valida e li raccoglie in lotti, il thread chiamante scarta i
+ * duplicati (indice hash degli ISBN) e consegna i lotti. In memoria restano solo i record in coda,
+ * qualunque sia la dimensione del file.
+ */
+public class ImportatoreMarc21 {
+
+    private static final int FINE_CAMPO = 0x1E;
+    private static final int FINE_RECORD = 0x1D;
+    private static final int INIZIO_SOTTOCAMPO = 0x1F;
+    private static final int LUNGHEZZA_INTESTAZIONE = 24;
+    private static final int LUNGHEZZA_VOCE = 12;
+    private static final int RECORD_IN_CODA = 1000;
+    private static final int LOTTI_IN_CODA = 2;
+
+    private static final byte[] FINE = new byte[0];
+    private static final List<Esito> FINE_LOTTI = Collections.emptyList();
+    private static final Pattern ANNO = Pattern.compile("\\d{4}");
+    private static final Pattern CODICE_ISBN = Pattern.compile("[0-9Xx-]{10,17}");
+
+    private final int dimensioneLotto;
+    private final int copie;
+
+    /**
+     * @brief Crea un importatore con la dimensione dei lotti predefinita, una copia per libro.
+     */
+    public ImportatoreMarc21() {
+        this(ImportatoreCsvLibri.DIMENSIONE_LOTTO, 1);
+    }
+
+    /**
+     * @brief Crea un importatore.
+     * @param dimensioneLotto Numero di libri consegnati insieme.
+     * @param copie Copie disponibili di ogni libro importato.
+     */
+    public ImportatoreMarc21(int dimensioneLotto, int copie) {
+        if (dimensioneLotto < 1) throw new IllegalArgumentException("La dimensione del lotto deve essere almeno 1.");
+        if (copie < 1) throw new IllegalArgumentException("La disponibilità iniziale deve essere almeno 1.");
+        this.dimensioneLotto = dimensioneLotto;
+        this.copie = copie;
+    }
+
+    /**
+     * @brief Importa il file: legge, valida e consegna i libri nuovi a lotti.
+     * * Va chiamato da un thread in background: la consegna avviene sul thread chiamante, che
+     * attende i lotti dai thread di lettura e di validazione.
+     * @param sorgente File MARC21; non viene chiuso.
+     * @param isbnPresente Dice se un ISBN è già in archivio (chiamato solo dal thread chiamante).
+     * @param destinazione Riceve i libri validi e nuovi di ogni lotto, nell'ordine del file.
+     * @return Il riepilogo dell'importazione.
+     * @throws IOException Se il file non può essere letto o termina a metà di un record
+     *                     (i lotti già consegnati restano importati).
+     */
+    public RiepilogoImportazione importa(InputStream sorgente, Predicate<String> isbnPresente, Consumer<List<Libro>> destinazione) throws IOException {
+        InputStream in = new BufferedInputStream(sorgente, 1 << 16);
+        BlockingQueue<byte[]> grezzi = new ArrayBlockingQueue<>(RECORD_IN_CODA);
+        BlockingQueue<List<Esito>> validati = new ArrayBlockingQueue<>(LOTTI_IN_CODA);
+        AtomicReference<IOException> erroreLettura = new AtomicReference<>();
+
+        Thread lettura = avvia("marc-lettura", () -> {
+            try {
+                try {
+                    byte[] record;
+                    while ((record = leggiRecord(in)) != null) grezzi.put(record);
+                } catch (IOException e) {
+                    erroreLettura.set(e);
+                }
+                grezzi.put(FINE);
+            } catch (InterruptedException e) {
+                // Importazione interrotta: nessuno legge più la coda
+            }
+        });
+        Thread validazione = avvia("marc-validazione", () -> {
+            try {
+                long numero = 0;
+                List<Esito> lotto = new ArrayList<>(dimensioneLotto);
+                byte[] record;
+                while ((record = grezzi.take()) != FINE) {
+                    lotto.add(Esito.di(++numero, record, copie));
+                    if (lotto.size() == dimensioneLotto) {
+                        validati.put(lotto);
+                        lotto = new ArrayList<>(dimensioneLotto);
+                    }
+                }
+                if (!lotto.isEmpty()) validati.put(lotto);
+                validati.put(FINE_LOTTI);
+            } catch (InterruptedException e) {
+                // Importazione interrotta: nessuno legge più la coda
+            }
+        });
+
+        try {
+            RiepilogoImportazione riepilogo = new RiepilogoImportazione();
+            Set<String> visti = new HashSet<>();
+            List<Esito> esiti;
+            while ((esiti = validati.take()) != FINE_LOTTI) {
+                List<Libro> lotto = new ArrayList<>(esiti.size());
+                for (Esito e : esiti) {
+                    if (e.errore != null) {
+                        riepilogo.scartato("Record " + e.numero, e.errore);
+                    } else if (!visti.add(e.libro.getIsbn()) || isbnPresente.test(e.libro.getIsbn())) {
+                        riepilogo.duplicato();
+                    } else {
+                        lotto.add(e.libro);
+                    }
+                }
+                if (lotto.isEmpty()) continue;
+                destinazione.accept(lotto);
+                riepilogo.importati(lotto.size());
+            }
+            if (erroreLettura.get() != null) throw erroreLettura.get();
+            return riepilogo;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Importazione interrotta.");
+        } finally {
+            // Se la consegna fallisce i due thread non restano bloccati sulle code
+            lettura.interrupt();
+            validazione.interrupt();
+        }
+    }
+
+    private static Thread avvia(String nome, Runnable compito) {
+        Thread thread = new Thread(compito, nome);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Legge il prossimo record, lungo quanto dichiarato nell'intestazione. Un'intestazione non valida
+     * viene letta fino al terminatore di record, così il record successivo si legge di nuovo
+     * correttamente e quello danneggiato viene scartato dalla validazione.
+     * @return Il record, o null a fine file.
+     */
+    static byte[] leggiRecord(InputStream in) throws IOException {
+        int c;
+        do {
+            c = in.read();
+            if (c == -1) return null;
+        } while (c == '\n' || c == '\r');
+        byte[] intestazione = new byte[LUNGHEZZA_INTESTAZIONE];
+        intestazione[0] = (byte) c;
+        leggiTutto(in, intestazione, 1, LUNGHEZZA_INTESTAZIONE - 1);
+        int lunghezza = numero(intestazione, 0, 5);
+        if (lunghezza <= LUNGHEZZA_INTESTAZIONE) {
+            ByteArrayOutputStream danneggiato = new ByteArrayOutputStream();
+            danneggiato.write(intestazione, 0, LUNGHEZZA_INTESTAZIONE);
+            while ((c = in.read()) != -1 && c != FINE_RECORD) danneggiato.write(c);
+            return danneggiato.toByteArray();
+        }
+        byte[] record = new byte[lunghezza];
+        System.arraycopy(intestazione, 0, record, 0, LUNGHEZZA_INTESTAZIONE);
+        leggiTutto(in, record, LUNGHEZZA_INTESTAZIONE, lunghezza - LUNGHEZZA_INTESTAZIONE);
+        return record;
+    }
+
+    private static void leggiTutto(InputStream in, byte[] b, int da, int quanti) throws IOException {
+        while (quanti > 0) {
+            int letti = in.read(b, da, quanti);
+            if (letti < 0) throw new EOFException("File MARC troncato a metà di un record.");
+            da += letti;
+            quanti -= letti;
+        }
+    }
+
+    /** Numero in cifre ASCII, -1 se non sono tutte cifre. */
+    private static int numero(byte[] b, int da, int cifre) {
+        int n = 0;
+        for (int i = da; i < da + cifre; i++) {
+            if (b[i] < '0' || b[i] > '9') return -1;
+            n = n * 10 + (b[i] - '0');
+        }
+        return n;
+    }
+
+    /**
+     * @brief Costruisce un libro da un record MARC21.
+     * @param record Record completo, intestazione compresa.
+     * @param copie Copie disponibili del libro.
+     * @return Il libro.
+     * @throws IllegalArgumentException Se il record è danneggiato o manca un campo obbligatorio.
+     */
+    public static Libro libro(byte[] record, int copie) {
+        if (record.length <= LUNGHEZZA_INTESTAZIONE || record[record.length - 1] != FINE_RECORD) {
+            throw new IllegalArgumentException("Record danneggiato.");
+        }
+        Charset codifica = record[9] == 'a' ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+        int base = numero(record, 12, 5);
+        if (base <= LUNGHEZZA_INTESTAZIONE || base >= record.length) throw new IllegalArgumentException("Record danneggiato.");
+
+        String isbn = null;
+        String titolo = null;
+        String autorePrincipale = null;
+        List<String> altriAutori = new ArrayList<>();
+        String data264 = null;
+        String data260 = null;
+        String data008 = null;
+        for (int voce = LUNGHEZZA_INTESTAZIONE; record[voce] != FINE_CAMPO; voce += LUNGHEZZA_VOCE) {
+            if (voce + LUNGHEZZA_VOCE >= base) throw new IllegalArgumentException("Record danneggiato.");
+            String tag = new String(record, voce, 3, StandardCharsets.US_ASCII);
+            int lunghezza = numero(record, voce + 3, 4);
+            int inizio = base + numero(record, voce + 7, 5);
+            if (lunghezza < 1 || inizio < base || inizio + lunghezza > record.length) {
+                throw new IllegalArgumentException("Record danneggiato (campo " + tag + ").");
+            }
+            // Il terminatore di campo non fa parte dei dati
+            int fine = inizio + lunghezza - 1;
+            switch (tag) {
+                case "008":
+                    if (fine - inizio >= 11) data008 = new String(record, inizio + 7, 4, StandardCharsets.US_ASCII);
+                    break;
+                case "020":
+                    if (isbn == null) isbn = isbn(sottocampo(record, inizio, fine, 'a', codifica));
+                    break;
+                case "245":
+                    String a = sottocampo(record, inizio, fine, 'a', codifica);
+                    String b = sottocampo(record, inizio, fine, 'b', codifica);
+                    if (a != null) titolo = pulisci(b == null ? a : a.trim() + " " + b);
+                    break;
+                case "100":
+                    autorePrincipale = pulisci(sottocampo(record, inizio, fine, 'a', codifica));
+                    break;
+                case "700":
+                    String autore = pulisci(sottocampo(record, inizio, fine, 'a', codifica));
+                    if (autore != null && !autore.isEmpty()) altriAutori.add(autore);
+                    break;
+                case "264":
+                    if (data264 == null && fine - inizio >= 2 && record[inizio + 1] == '1') {
+                        data264 = sottocampo(record, inizio, fine, 'c', codifica);
+                    }
+                    break;
+                case "260":
+                    if (data260 == null) data260 = sottocampo(record, inizio, fine, 'c', codifica);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (isbn == null) throw new IllegalArgumentException("ISBN mancante o non valido (campo 020).");
+        if (titolo == null || titolo.isEmpty()) throw new IllegalArgumentException("Titolo mancante (campo 245).");
+        List<String> autori = new ArrayList<>();
+        if (autorePrincipale != null && !autorePrincipale.isEmpty()) autori.add(autorePrincipale);
+        autori.addAll(altriAutori);
+        if (autori.isEmpty()) throw new IllegalArgumentException("Autore mancante (campi 100 e 700).");
+        Integer anno = anno(data264);
+        if (anno == null) anno = anno(data260);
+        if (anno == null) anno = anno(data008);
+        if (anno == null) throw new IllegalArgumentException("Anno di pubblicazione mancante (campi 264, 260, 008).");
+        return new Libro(titolo, autori, LocalDate.of(anno, 1, 1), isbn, copie);
+    }
+
+    /** Primo sottocampo con il codice indicato (dopo i due indicatori), o null. */
+    private static String sottocampo(byte[] record, int inizio, int fine, char codice, Charset codifica) {
+        for (int i = inizio + 2; i < fine; i++) {
+            if (record[i] != INIZIO_SOTTOCAMPO || i + 1 >= fine || record[i + 1] != codice) continue;
+            int da = i + 2;
+            int a = da;
+            while (a < fine && record[a] != INIZIO_SOTTOCAMPO) a++;
+            return new String(record, da, a - da, codifica);
+        }
+        return null;
+    }
+
+    /** ISBN-13 da un 020 $a come "0132350882 (pbk.)", o null se non valido. */
+    private static String isbn(String testo) {
+        if (testo == null) return null;
+        Matcher m = CODICE_ISBN.matcher(testo);
+        if (!m.find()) return null;
+        String codice = m.group().replace("-", "").toUpperCase();
+        if (codice.length() == 10 && codice.matches("\\d{9}[\\dX]")) {
+            // ISBN-10 -> ISBN-13: prefisso 978, stessa parte centrale, nuova cifra di controllo
+            codice = "978" + codice.substring(0, 9) + "0";
+            int somma = 0;
+            for (int i = 0; i < 12; i++) somma += (codice.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+            codice = codice.substring(0, 12) + (10 - somma % 10) % 10;
+        }
+        try {
+            return ImportatoreCsvLibri.normalizzaIsbn(codice);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Toglie la punteggiatura ISBD finale ("Clean code :", "Eco, Umberto."), non il punto di un'iniziale. */
+    private static String pulisci(String testo) {
+        if (testo == null) return null;
+        String pulito = testo.trim().replaceAll("[\\s,/:;=]+$", "");
+        if (pulito.endsWith(".") && !pulito.matches(".*(^|[\\s.])\\p{Lu}\\.$")) {
+            pulito = pulito.substring(0, pulito.length() - 1).trim();
+        }
+        return pulito;
+    }
+
+    private static Integer anno(String testo) {
+        if (testo == null) return null;
+        Matcher m = ANNO.matcher(testo);
+        return m.find() ? Integer.valueOf(m.group()) : null;
+    }
+
+    /** Risultato della validazione di un record: il libro oppure il motivo dello scarto. */
+    private static final class Esito {
+        final long numero;
+        final Libro libro;
+        final String errore;
+
+        private Esito(long numero, Libro libro, String errore) {
+            this.numero = numero;
+            this.libro = libro;
+            this.errore = errore;
+        }
+
+        static Esito di(long numero, byte[] record, int copie) {
+            try {
+                return new Esito(numero, libro(record, copie), null);
+            } catch (IllegalArgumentException e) {
+                return new Esito(numero, null, e.getMessage());
+            } catch (RuntimeException e) {
+                // Directory incoerente: indici fuori dal record
+                return new Esito(numero, null, "Record danneggiato.");
+            }
+        }
+    }
+}
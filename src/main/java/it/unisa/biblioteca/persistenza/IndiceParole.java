@@ -0,0 +1,237 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * @brief Indice invertito delle parole di un campo di testo (es. titolo o autori dei libri).
+ * * Ogni parola normalizzata (minuscole, senza accenti) punta alla lista ordinata degli elementi che la
+ * contengono, identificati da un numero interno crescente. Una ricerca trova gli elementi in cui ogni
+ * parola cercata è l'inizio di una parola del campo ("mart rob" trova "Robert C. Martin"), senza
+ * scorrere tutti gli elementi: si parte dalla parola cercata più rara e si controllano solo i suoi elementi.
+ * * Per ogni elemento vengono tenute anche le sue parole, così può essere tolto dall'indice anche dopo
+ * che il campo è cambiato. Dopo una modifica del campo va chiamato {@link #aggiorna}.
+ * * Non è thread-safe: va usato dal thread che modifica gli elementi.
+ * @param <T> Tipo degli elementi (con equals/hashCode sulla chiave, es. l'ISBN).
+ */
+public class IndiceParole<T> {
+
+    private static final int[] VUOTA = new int[0];
+
+    private final Function<T, String> campo;
+    // La mappa hash serve per aggiornare, quella ordinata per cercare le parole che iniziano in un certo modo
+    private final Map<String, Elenco> parole = new HashMap<>();
+    private final TreeMap<String, Elenco> paroleOrdinate = new TreeMap<>();
+    private final Map<T, Integer> numeri = new HashMap<>();
+    // Per numero: l'elemento e le sue parole (null se tolto)
+    private final List<T> elementi = new ArrayList<>();
+    private final List<String[]> paroleElemento = new ArrayList<>();
+    private int liberi;
+
+    /**
+     * @brief Crea un indice vuoto.
+     * @param campo Restituisce il testo da indicizzare di un elemento.
+     */
+    public IndiceParole(Function<T, String> campo) {
+        this.campo = campo;
+    }
+
+    /**
+     * @brief Aggiunge un elemento all'indice (se è già presente viene reindicizzato).
+     * @param elemento Elemento da aggiungere.
+     */
+    public void aggiungi(T elemento) {
+        if (numeri.containsKey(elemento)) rimuovi(elemento);
+        int n = elementi.size();
+        List<String> lette = parole(campo.apply(elemento));
+        String[] proprie = new String[lette.size()];
+        for (int i = 0; i < proprie.length; i++) {
+            Elenco elenco = parole.get(lette.get(i));
+            if (elenco == null) {
+                elenco = new Elenco(lette.get(i));
+                parole.put(elenco.parola, elenco);
+                paroleOrdinate.put(elenco.parola, elenco);
+            }
+            elenco.aggiungi(n);
+            // La stessa istanza della chiave, così le parole uguali non si ripetono in memoria
+            proprie[i] = elenco.parola;
+        }
+        elementi.add(elemento);
+        paroleElemento.add(proprie);
+        numeri.put(elemento, n);
+    }
+
+    /**
+     * @brief Toglie un elemento dall'indice, con le parole con cui era stato indicizzato.
+     * @param elemento Elemento da togliere (se assente non succede nulla).
+     */
+    public void rimuovi(T elemento) {
+        Integer n = numeri.remove(elemento);
+        if (n == null) return;
+        for (String parola : paroleElemento.get(n)) {
+            Elenco elenco = parole.get(parola);
+            elenco.rimuovi(n);
+            if (elenco.dimensione == 0) {
+                parole.remove(parola);
+                paroleOrdinate.remove(parola);
+            }
+        }
+        elementi.set(n, null);
+        paroleElemento.set(n, null);
+        // Gli elementi modificati prendono un numero nuovo: quando i vecchi sono più dei vivi si rinumera
+        if (++liberi > 1024 && liberi > numeri.size()) compatta();
+    }
+
+    private void compatta() {
+        List<T> vivi = new ArrayList<>(numeri.size());
+        for (T t : elementi) if (t != null) vivi.add(t);
+        svuota();
+        for (T t : vivi) aggiungi(t);
+    }
+
+    /**
+     * @brief Reindicizza un elemento dopo la modifica del campo.
+     * @param elemento Elemento modificato.
+     */
+    public void aggiorna(T elemento) {
+        rimuovi(elemento);
+        aggiungi(elemento);
+    }
+
+    /**
+     * @brief Svuota l'indice.
+     */
+    public void svuota() {
+        parole.clear();
+        paroleOrdinate.clear();
+        numeri.clear();
+        elementi.clear();
+        paroleElemento.clear();
+        liberi = 0;
+    }
+
+    /**
+     * @brief Restituisce il numero di elementi indicizzati.
+     * @return Numero di elementi.
+     */
+    public int dimensione() {
+        return numeri.size();
+    }
+
+    /**
+     * @brief Cerca gli elementi in cui ogni parola del testo è l'inizio di una parola del campo.
+     * @param testo Testo cercato (maiuscole, accenti e punteggiatura non contano).
+     * @return Gli elementi trovati; vuoto se il testo non contiene parole.
+     */
+    public Set<T> cerca(String testo) {
+        List<String> cercate = parole(testo);
+        if (cercate.isEmpty()) return Collections.emptySet();
+
+        // Si parte dalla parola cercata con meno elementi: le altre si controllano solo su quelli
+        NavigableMap<String, Elenco> migliori = null;
+        long minimo = Long.MAX_VALUE;
+        String partenza = null;
+        for (String cercata : cercate) {
+            NavigableMap<String, Elenco> conPrefisso = conPrefisso(cercata);
+            long totale = 0;
+            for (Elenco e : conPrefisso.values()) totale += e.dimensione;
+            if (totale == 0) return Collections.emptySet();
+            if (totale < minimo) {
+                minimo = totale;
+                migliori = conPrefisso;
+                partenza = cercata;
+            }
+        }
+
+        Set<T> trovati = new HashSet<>();
+        for (Elenco elenco : migliori.values()) {
+            for (int i = 0; i < elenco.dimensione; i++) {
+                int n = elenco.numeri[i];
+                if (contieneTutte(paroleElemento.get(n), cercate, partenza)) trovati.add(elementi.get(n));
+            }
+        }
+        return trovati;
+    }
+
+    private NavigableMap<String, Elenco> conPrefisso(String prefisso) {
+        return paroleOrdinate.subMap(prefisso, true, prefisso + Character.MAX_VALUE, false);
+    }
+
+    private static boolean contieneTutte(String[] proprie, List<String> cercate, String giaVerificata) {
+        for (String cercata : cercate) {
+            if (cercata == giaVerificata) continue;
+            boolean trovata = false;
+            for (String parola : proprie) {
+                if (parola.startsWith(cercata)) {
+                    trovata = true;
+                    break;
+                }
+            }
+            if (!trovata) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @brief Divide un testo in parole normalizzate: minuscole, senza accenti, solo lettere e cifre.
+     * @param testo Testo da dividere (null equivale a vuoto).
+     * @return Le parole, senza ripetizioni, nell'ordine in cui compaiono.
+     */
+    public static List<String> parole(String testo) {
+        if (testo == null || testo.isEmpty()) return Collections.emptyList();
+        String normale = isAscii(testo) ? testo : Normalizer.normalize(testo, Normalizer.Form.NFD);
+        List<String> parole = new ArrayList<>();
+        StringBuilder parola = new StringBuilder();
+        for (int i = 0; i <= normale.length(); i++) {
+            char c = i < normale.length() ? normale.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                parola.append(Character.toLowerCase(c));
+            } else if (parola.length() > 0) {
+                String p = parola.toString();
+                if (!parole.contains(p)) parole.add(p);
+                parola.setLength(0);
+            }
+        }
+        return parole;
+    }
+
+    private static boolean isAscii(String testo) {
+        for (int i = 0; i < testo.length(); i++) if (testo.charAt(i) > 0x7F) return false;
+        return true;
+    }
+
+    /** Numeri degli elementi che contengono una parola, in ordine crescente. */
+    private static final class Elenco {
+        final String parola;
+        int[] numeri = VUOTA;
+        int dimensione;
+
+        Elenco(String parola) {
+            this.parola = parola;
+        }
+
+        void aggiungi(int n) {
+            // I numeri nuovi sono sempre i più alti: l'elenco resta ordinato
+            if (dimensione == numeri.length) numeri = Arrays.copyOf(numeri, Math.max(4, dimensione * 2));
+            numeri[dimensione++] = n;
+        }
+
+        void rimuovi(int n) {
+            int i = Arrays.binarySearch(numeri, 0, dimensione, n);
+            if (i < 0) return;
+            System.arraycopy(numeri, i + 1, numeri, i, dimensione - i - 1);
+            dimensione--;
+        }
+    }
+}
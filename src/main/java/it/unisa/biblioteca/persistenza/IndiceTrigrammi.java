@@ -0,0 +1,232 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * @brief Indice a trigrammi per la ricerca di un testo in qualunque punto di un campo
+ * (come {@code campo.toLowerCase().contains(testo)}), senza scorrere tutti gli elementi.
+ * * Ogni sequenza di tre caratteri del campo in minuscolo punta all'elenco degli elementi che la
+ * contengono. Un elemento che contiene il testo cercato contiene anche tutti i suoi trigrammi: si
+ * intersecano i loro elenchi, partendo dal più corto, e si verifica il testo solo sui candidati rimasti.
+ * Testi più corti di tre caratteri non hanno trigrammi e vengono cercati scorrendo i campi.
+ * * Gli elenchi sono compressi: numeri crescenti memorizzati come differenze dal precedente, in byte a
+ * lunghezza variabile (una matricola o un ISBN vicini costano uno o due byte per trigramma).
+ * Un elemento tolto o modificato non viene cancellato dagli elenchi: il suo vecchio numero resta
+ * spento e viene saltato. Quando i numeri spenti superano quelli vivi l'indice viene ricostruito,
+ * così la memoria resta proporzionale agli elementi presenti.
+ * * Non è thread-safe: va usato dal thread che modifica gli elementi.
+ * @param <T> Tipo degli elementi (con equals/hashCode sulla chiave, es. l'ISBN).
+ */
+public class IndiceTrigrammi<T> {
+
+    private static final int SOGLIA_VERIFICA = 64;
+
+    private final Function<T, String> campo;
+    private final Map<Long, Elenco> trigrammi = new HashMap<>();
+    private final Map<T, Integer> numeri = new HashMap<>();
+    // Per numero: l'elemento e il campo in minuscolo al momento dell'inserimento (null se spento)
+    private final List<T> elementi = new ArrayList<>();
+    private final List<String> testi = new ArrayList<>();
+    private int spenti;
+
+    /**
+     * @brief Crea un indice vuoto.
+     * @param campo Restituisce il testo da indicizzare di un elemento.
+     */
+    public IndiceTrigrammi(Function<T, String> campo) {
+        this.campo = campo;
+    }
+
+    /**
+     * @brief Aggiunge un elemento all'indice (se è già presente viene reindicizzato).
+     * @param elemento Elemento da aggiungere.
+     */
+    public void aggiungi(T elemento) {
+        if (numeri.containsKey(elemento)) rimuovi(elemento);
+        int n = elementi.size();
+        String testo = campo.apply(elemento);
+        testo = testo == null ? "" : testo.toLowerCase();
+        for (long t : trigrammi(testo)) {
+            Elenco elenco = trigrammi.get(t);
+            if (elenco == null) {
+                elenco = new Elenco();
+                trigrammi.put(t, elenco);
+            }
+            elenco.aggiungi(n);
+        }
+        elementi.add(elemento);
+        testi.add(testo);
+        numeri.put(elemento, n);
+    }
+
+    /**
+     * @brief Toglie un elemento dall'indice.
+     * @param elemento Elemento da togliere (se assente non succede nulla).
+     */
+    public void rimuovi(T elemento) {
+        Integer n = numeri.remove(elemento);
+        if (n == null) return;
+        elementi.set(n, null);
+        testi.set(n, null);
+        if (++spenti > 1024 && spenti > numeri.size()) compatta();
+    }
+
+    /**
+     * @brief Reindicizza un elemento dopo la modifica del campo.
+     * @param elemento Elemento modificato.
+     */
+    public void aggiorna(T elemento) {
+        rimuovi(elemento);
+        aggiungi(elemento);
+    }
+
+    /**
+     * @brief Svuota l'indice.
+     */
+    public void svuota() {
+        trigrammi.clear();
+        numeri.clear();
+        elementi.clear();
+        testi.clear();
+        spenti = 0;
+    }
+
+    /**
+     * @brief Restituisce il numero di elementi indicizzati.
+     * @return Numero di elementi.
+     */
+    public int dimensione() {
+        return numeri.size();
+    }
+
+    /**
+     * @brief Cerca gli elementi il cui campo contiene il testo, senza distinguere maiuscole e minuscole.
+     * @param testo Testo cercato.
+     * @return Gli elementi trovati (tutti se il testo è vuoto).
+     */
+    public Set<T> cerca(String testo) {
+        String cercato = testo.toLowerCase();
+        Set<T> trovati = new HashSet<>();
+        long[] cercati = trigrammi(cercato);
+        if (cercati.length == 0) {
+            for (int n = 0; n < testi.size(); n++) verifica(n, cercato, trovati);
+            return trovati;
+        }
+
+        Elenco[] elenchi = new Elenco[cercati.length];
+        for (int i = 0; i < cercati.length; i++) {
+            elenchi[i] = trigrammi.get(cercati[i]);
+            if (elenchi[i] == null) return trovati;
+        }
+        Arrays.sort(elenchi, (a, b) -> Integer.compare(a.dimensione, b.dimensione));
+
+        // Si interseca finché i candidati sono tanti; gli ultimi si verificano direttamente sul testo
+        int[] candidati = elenchi[0].numeri();
+        int quanti = candidati.length;
+        for (int i = 1; i < elenchi.length && quanti > SOGLIA_VERIFICA; i++) {
+            quanti = elenchi[i].interseca(candidati, quanti);
+        }
+        for (int i = 0; i < quanti; i++) verifica(candidati[i], cercato, trovati);
+        return trovati;
+    }
+
+    private void verifica(int n, String cercato, Set<T> trovati) {
+        String t = testi.get(n);
+        if (t != null && t.contains(cercato)) trovati.add(elementi.get(n));
+    }
+
+    private void compatta() {
+        List<T> vivi = new ArrayList<>(numeri.size());
+        for (T t : elementi) if (t != null) vivi.add(t);
+        svuota();
+        for (T t : vivi) aggiungi(t);
+    }
+
+    /** Trigrammi distinti del testo, ognuno come tre caratteri da 16 bit in un long. */
+    private static long[] trigrammi(String testo) {
+        if (testo.length() < 3) return new long[0];
+        long[] tutti = new long[testo.length() - 2];
+        for (int i = 0; i < tutti.length; i++) {
+            tutti[i] = ((long) testo.charAt(i) << 32) | ((long) testo.charAt(i + 1) << 16) | testo.charAt(i + 2);
+        }
+        Arrays.sort(tutti);
+        int distinti = 0;
+        for (int i = 0; i < tutti.length; i++) {
+            if (i == 0 || tutti[i] != tutti[i - 1]) tutti[distinti++] = tutti[i];
+        }
+        return Arrays.copyOf(tutti, distinti);
+    }
+
+    /** Numeri crescenti degli elementi che contengono un trigramma, come differenze in byte a lunghezza variabile. */
+    private static final class Elenco {
+        byte[] dati = new byte[4];
+        int lunghezza;
+        int dimensione;
+        int ultimo = -1;
+
+        void aggiungi(int n) {
+            // I trigrammi di un testo sono distinti: ogni numero entra una volta sola, in ordine crescente
+            int differenza = n - ultimo;
+            if (lunghezza + 5 > dati.length) dati = Arrays.copyOf(dati, dati.length * 2);
+            while ((differenza & ~0x7F) != 0) {
+                dati[lunghezza++] = (byte) ((differenza & 0x7F) | 0x80);
+                differenza >>>= 7;
+            }
+            dati[lunghezza++] = (byte) differenza;
+            ultimo = n;
+            dimensione++;
+        }
+
+        int[] numeri() {
+            int[] numeri = new int[dimensione];
+            int pos = 0;
+            int n = -1;
+            for (int i = 0; i < dimensione; i++) {
+                int differenza = 0;
+                int spostamento = 0;
+                byte b;
+                do {
+                    b = dati[pos++];
+                    differenza |= (b & 0x7F) << spostamento;
+                    spostamento += 7;
+                } while (b < 0);
+                n += differenza;
+                numeri[i] = n;
+            }
+            return numeri;
+        }
+
+        /** Tiene in {@code candidati} (ordinati) solo i numeri presenti anche in questo elenco. */
+        int interseca(int[] candidati, int quanti) {
+            int pos = 0;
+            int letti = 0;
+            int n = -1;
+            int rimasti = 0;
+            for (int i = 0; i < quanti; i++) {
+                int c = candidati[i];
+                while (n < c && letti < dimensione) {
+                    int differenza = 0;
+                    int spostamento = 0;
+                    byte b;
+                    do {
+                        b = dati[pos++];
+                        differenza |= (b & 0x7F) << spostamento;
+                        spostamento += 7;
+                    } while (b < 0);
+                    n += differenza;
+                    letti++;
+                }
+                if (n == c) candidati[rimasti++] = c;
+                else if (n < c) break;
+            }
+            return rimasti;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @brief Indici di catalogo e anagrafica per i criteri delle viste.
+ * * L'accesso per ISBN e matricola esatti è quello del repository del backend ({@link Repository#trova}).
+ * - prestiti di un libro o di un utente: insiemi per ISBN e per matricola, a costo costante
+ *   qualunque sia il numero di prestiti in archivio;
+ * - titolo, ISBN, cognome, matricola ed email: testo in qualunque punto del campo ({@link IndiceTrigrammi});
+ * - autori: parole che iniziano con quelle cercate ({@link IndiceParole});
+ * - data di pubblicazione: mappa ordinata per data, per gli intervalli ({@link IntervalloDate})
+ *   in tempo logaritmico più i risultati.
+ * * Chi possiede le liste deve riportare qui ogni inserimento, rimozione e modifica dei dati.
+ * Non è thread-safe: si costruisce su un thread e poi si usa solo da quello che modifica le liste.
+ */
+public class IndiciRicerca {
+
+    private final Map<String, Set<Prestito>> prestitiPerIsbn = new HashMap<>();
+    private final Map<String, Set<Prestito>> prestitiPerMatricola = new HashMap<>();
+    private final IndiceTrigrammi<Libro> titoli = new IndiceTrigrammi<>(Libro::getTitolo);
+    private final IndiceTrigrammi<Libro> isbn = new IndiceTrigrammi<>(Libro::getIsbn);
+    private final IndiceParole<Libro> autori = new IndiceParole<>(l -> String.join(" ", l.getAutori()));
+    private final IndiceTrigrammi<Utente> cognomi = new IndiceTrigrammi<>(Utente::getCognome);
+    private final IndiceTrigrammi<Utente> matricole = new IndiceTrigrammi<>(Utente::getMatricola);
+    private final IndiceTrigrammi<Utente> email = new IndiceTrigrammi<>(Utente::getEmail);
+    private final TreeMap<LocalDate, Set<Libro>> libriPerData = new TreeMap<>();
+    // Data con cui ogni libro è stato indicizzato: serve a toglierlo anche dopo che è cambiata
+    private final Map<Libro, LocalDate> dataIndicizzata = new HashMap<>();
+
+    /**
+     * @brief Indicizza un libro.
+     * @param l Libro aggiunto al catalogo.
+     */
+    public void aggiungiLibro(Libro l) {
+        titoli.aggiungi(l);
+        isbn.aggiungi(l);
+        autori.aggiungi(l);
+        aggiungiData(l);
+    }
+
+    /**
+     * @brief Toglie un libro dagli indici.
+     * @param l Libro rimosso dal catalogo.
+     */
+    public void rimuoviLibro(Libro l) {
+        titoli.rimuovi(l);
+        isbn.rimuovi(l);
+        autori.rimuovi(l);
+        rimuoviData(l);
+    }
+
+    /**
+     * @brief Reindicizza un libro dopo la modifica di titolo, autori o data (l'ISBN non cambia).
+     * @param l Libro modificato.
+     */
+    public void aggiornaLibro(Libro l) {
+        titoli.aggiorna(l);
+        autori.aggiorna(l);
+        rimuoviData(l);
+        aggiungiData(l);
+    }
+
+    private void aggiungiData(Libro l) {
+        LocalDate data = l.getDataPubblicazione();
+        if (data == null) return;
+        libriPerData.computeIfAbsent(data, k -> new LinkedHashSet<>()).add(l);
+        dataIndicizzata.put(l, data);
+    }
+
+    private void rimuoviData(Libro l) {
+        LocalDate data = dataIndicizzata.remove(l);
+        if (data == null) return;
+        Set<Libro> insieme = libriPerData.get(data);
+        if (insieme != null && insieme.remove(l) && insieme.isEmpty()) libriPerData.remove(data);
+    }
+
+    /**
+     * @brief Indicizza un utente.
+     * @param u Utente aggiunto all'anagrafica.
+     */
+    public void aggiungiUtente(Utente u) {
+        cognomi.aggiungi(u);
+        matricole.aggiungi(u);
+        email.aggiungi(u);
+    }
+
+    /**
+     * @brief Toglie un utente dagli indici.
+     * @param u Utente rimosso dall'anagrafica.
+     */
+    public void rimuoviUtente(Utente u) {
+        cognomi.rimuovi(u);
+        matricole.rimuovi(u);
+        email.rimuovi(u);
+    }
+
+    /**
+     * @brief Reindicizza un utente dopo la modifica di cognome o email (la matricola non cambia).
+     * @param u Utente modificato.
+     */
+    public void aggiornaUtente(Utente u) {
+        cognomi.aggiorna(u);
+        email.aggiorna(u);
+    }
+
+    /**
+     * @brief Registra un prestito sotto il suo libro e il suo utente.
+     * @param p Prestito aggiunto.
+     */
+    public void aggiungiPrestito(Prestito p) {
+        prestitiPerIsbn.computeIfAbsent(p.getLibro().getIsbn(), k -> new LinkedHashSet<>()).add(p);
+        prestitiPerMatricola.computeIfAbsent(p.getUtente().getMatricola(), k -> new LinkedHashSet<>()).add(p);
+    }
+
+    /**
+     * @brief Toglie un prestito (restituito o eliminato).
+     * @param p Prestito rimosso.
+     */
+    public void rimuoviPrestito(Prestito p) {
+        rimuovi(prestitiPerIsbn, p.getLibro().getIsbn(), p);
+        rimuovi(prestitiPerMatricola, p.getUtente().getMatricola(), p);
+    }
+
+    private static void rimuovi(Map<String, Set<Prestito>> mappa, String chiave, Prestito p) {
+        Set<Prestito> insieme = mappa.get(chiave);
+        if (insieme != null && insieme.remove(p) && insieme.isEmpty()) mappa.remove(chiave);
+    }
+
+    /**
+     * @brief Restituisce i prestiti di un libro, nell'ordine in cui sono stati aggiunti.
+     * @param isbn ISBN del libro.
+     * @return Vista non modificabile (vuota se il libro non ha prestiti).
+     */
+    public Set<Prestito> prestitiDelLibro(String isbn) {
+        Set<Prestito> insieme = prestitiPerIsbn.get(isbn);
+        return insieme == null ? Collections.emptySet() : Collections.unmodifiableSet(insieme);
+    }
+
+    /**
+     * @brief Restituisce i prestiti di un utente, nell'ordine in cui sono stati aggiunti.
+     * @param matricola Matricola dell'utente.
+     * @return Vista non modificabile (vuota se l'utente non ha prestiti).
+     */
+    public Set<Prestito> prestitiDellUtente(String matricola) {
+        Set<Prestito> insieme = prestitiPerMatricola.get(matricola);
+        return insieme == null ? Collections.emptySet() : Collections.unmodifiableSet(insieme);
+    }
+
+    /**
+     * @brief Restituisce i libri pubblicati in un intervallo di date, dal più vecchio.
+     * @param intervallo Date comprese (un estremo null vuol dire senza limite).
+     * @return I libri trovati.
+     */
+    public List<Libro> libriPubblicatiTra(IntervalloDate intervallo) {
+        NavigableMap<LocalDate, Set<Libro>> vista = libriPerData;
+        if (intervallo.getDa() != null) vista = vista.tailMap(intervallo.getDa(), true);
+        if (intervallo.getA() != null) vista = vista.headMap(intervallo.getA(), true);
+        List<Libro> trovati = new ArrayList<>();
+        for (Set<Libro> libri : vista.values()) trovati.addAll(libri);
+        return trovati;
+    }
+
+    /**
+     * @brief Cerca i libri per uno dei criteri della vista.
+     * @param criterio "Titolo", "ISBN" o "Autore".
+     * @param testo Testo cercato.
+     * @return I libri trovati, oppure null se il criterio non è indicizzato.
+     */
+    public Set<Libro> cercaLibri(String criterio, String testo) {
+        switch (criterio) {
+            case "Titolo": return titoli.cerca(testo);
+            case "ISBN": return isbn.cerca(testo);
+            case "Autore": return autori.cerca(testo);
+            default: return null;
+        }
+    }
+
+    /**
+     * @brief Cerca gli utenti per uno dei criteri della vista.
+     * @param criterio "Cognome", "Matricola" o "Email".
+     * @param testo Testo cercato.
+     * @return Gli utenti trovati, oppure null se il criterio non è indicizzato.
+     */
+    public Set<Utente> cercaUtenti(String criterio, String testo) {
+        switch (criterio) {
+            case "Cognome": return cognomi.cerca(testo);
+            case "Matricola": return matricole.cerca(testo);
+            case "Email": return email.cerca(testo);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * @brief Intervallo di date (estremi compresi, ciascuno facoltativo) per le ricerche per data di pubblicazione.
+ * * Si scrive come nella barra di ricerca del catalogo:
+ * - {@code 1990}: tutto il 1990;
+ * - {@code 1990-1999} oppure {@code 1990..1999}: dal 1° gennaio 1990 al 31 dicembre 1999;
+ * - {@code 2001-03-15..2002-01-31}: tra due date (anni e date si possono mescolare);
+ * - {@code 1990..} oppure {@code ..1999}: senza limite da un lato.
+ */
+public class IntervalloDate {
+
+    private final LocalDate da;
+    private final LocalDate a;
+
+    /**
+     * @brief Crea un intervallo.
+     * @param da Prima data compresa, oppure null se senza limite.
+     * @param a Ultima data compresa, oppure null se senza limite.
+     * @throws IllegalArgumentException Se l'intervallo inizia dopo la fine.
+     */
+    public IntervalloDate(LocalDate da, LocalDate a) {
+        if (da != null && a != null && da.isAfter(a)) {
+            throw new IllegalArgumentException("L'intervallo inizia dopo la fine (" + da + " - " + a + ").");
+        }
+        this.da = da;
+        this.a = a;
+    }
+
+    /**
+     * @brief Legge un intervallo scritto dall'utente.
+     * @param testo Testo della ricerca (vedi la descrizione della classe).
+     * @return L'intervallo.
+     * @throws IllegalArgumentException Se il testo non è un anno, una data o un intervallo valido.
+     */
+    public static IntervalloDate leggi(String testo) {
+        String t = testo.trim();
+        String inizio;
+        String fine;
+        int punti = t.indexOf("..");
+        if (punti >= 0) {
+            inizio = t.substring(0, punti).trim();
+            fine = t.substring(punti + 2).trim();
+        } else if (t.matches("\\d{1,4}\\s*-\\s*\\d{1,4}")) {
+            int trattino = t.indexOf('-');
+            inizio = t.substring(0, trattino).trim();
+            fine = t.substring(trattino + 1).trim();
+        } else {
+            inizio = t;
+            fine = t;
+        }
+        if (inizio.isEmpty() && fine.isEmpty()) {
+            throw new IllegalArgumentException("Indicare un anno (es. 1990), un intervallo (es. 1990-1999) o due date (es. 2001-03-15..2002-01-31).");
+        }
+        return new IntervalloDate(inizio.isEmpty() ? null : data(inizio, true), fine.isEmpty() ? null : data(fine, false));
+    }
+
+    private static LocalDate data(String s, boolean inizio) {
+        if (s.matches("\\d{1,4}")) {
+            int anno = Integer.parseInt(s);
+            return inizio ? LocalDate.of(anno, 1, 1) : LocalDate.of(anno, 12, 31);
+        }
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Data non valida: " + s + " (usare aaaa oppure aaaa-mm-gg).");
+        }
+    }
+
+    /** @return Prima data compresa, oppure null se senza limite. */
+    public LocalDate getDa() {
+        return da;
+    }
+
+    /** @return Ultima data compresa, oppure null se senza limite. */
+    public LocalDate getA() {
+        return a;
+    }
+
+    /**
+     * @brief Verifica se una data cade nell'intervallo.
+     * @param data Data da verificare (null non è mai compresa).
+     * @return true se compresa.
+     */
+    public boolean contiene(LocalDate data) {
+        return data != null && (da == null || !data.isBefore(da)) && (a == null || !data.isAfter(a));
+    }
+
+    @Override
+    public String toString() {
+        return (da == null ? "" : da.toString()) + ".." + (a == null ? "" : a.toString());
+    }
+}
@@ -0,0 +1,604 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * @brief Registro append-only delle singole modifiche ai dati (journal).
+ * * Ogni operazione sul modello (libro aggiunto o modificato, utente modificato,
+ * prestito creato o rimosso, ...) viene accodata al file come un record autonomo,
+ * nel momento stesso in cui avviene. In questo modo il costo di un salvataggio
+ * dipende dal numero di modifiche e non dalla dimensione dell'archivio.
+ * * All'avvio il journal viene riletto ("replay") sopra l'ultimo snapshot completo.
+ * * Un record può essere preparato (`prepara...`) sul thread che esegue la modifica
+ * e accodato al file ({@link #accoda}) in seguito da un thread di scrittura dedicato.
+ * * @details
+ * **Formato:** il file inizia con firma e versione ({@link #MAGIC}, {@link CodecRecord#VERSIONE});
+ * seguono i record, ciascuno nella forma `[int lunghezza][long seq][byte tipo][dati...][int crc]`,
+ * dove i dati sono codificati con {@link CodecRecord} e il CRC32 copre sequenza, tipo e dati
+ * (come per i blocchi dello snapshot).
+ * La lunghezza in testa permette di riconoscere un record scritto a metà
+ * (es. crash durante la scrittura): la coda incompleta viene scartata e troncata.
+ * Una lunghezza oltre la fine del file, un CRC errato o un record non decodificabile
+ * chiudono la lettura come una coda incompleta; se dopo il record danneggiato il file
+ * prosegue, prima di troncarlo ne viene salvata una copia in {@code .danneggiato}.
+ * Il numero di sequenza (`seq`) è crescente e permette di ignorare i record
+ * già inclusi nello snapshot.
+ */
+public class JournalModifiche implements Closeable {
+
+    /** Firma iniziale del file di journal ("BIBJ"). */
+    public static final int MAGIC = 0x4249424A;
+    static final int LUNGHEZZA_INTESTAZIONE = 4 + 2;
+    // CRC32 in coda a ogni record
+    private static final int LUNGHEZZA_CRC = 4;
+
+    /**
+     * @brief Tipologie di modifica registrabili.
+     * * L'ordinale viene scritto su file: NON riordinare le costanti.
+     */
+    public enum Tipo {
+        LIBRO,              ///< Libro inserito o aggiornato (record completo)
+        LIBRO_RIMOSSO,      ///< Libro eliminato (solo ISBN)
+        UTENTE,             ///< Utente inserito o aggiornato (record completo)
+        UTENTE_RIMOSSO,     ///< Utente eliminato (solo matricola)
+        PRESTITO,           ///< Prestito registrato
+        PRESTITO_RIMOSSO    ///< Prestito rimosso dallo storico
+    }
+
+    /**
+     * @brief Riceve le modifiche lette durante il replay del journal.
+     * * I prestiti vengono restituiti come {@link ChiavePrestito} perché
+     * il collegamento agli oggetti Utente e Libro spetta a chi applica le modifiche.
+     */
+    public interface Destinatario {
+        void libro(Libro libro);
+        void libroRimosso(String isbn);
+        void utente(Utente utente);
+        void utenteRimosso(String matricola);
+        void prestito(ChiavePrestito chiave);
+        void prestitoRimosso(ChiavePrestito chiave);
+
+        /**
+         * @brief Chiamato prima di ogni modifica consegnata, con la sua sequenza.
+         * * Serve a chi tiene una versione per record (es. più postazioni sullo stesso archivio).
+         * @param seq Sequenza del record che sta per essere consegnato.
+         */
+        default void sequenza(long seq) { }
+    }
+
+    private final File file;
+    private FileOutputStream fos;
+    private DataOutputStream out;
+    private long ultimaSeq;
+
+    // Lettura incrementale (rileggiNuovi): posizione raggiunta e sequenza del primo record del file letto
+    private long posizioneLettura;
+    private long primaSeqLetta;
+
+    /**
+     * @brief Crea un journal associato al file indicato.
+     * * Il file viene aperto in scrittura (append) solo alla prima modifica.
+     * @param file File del journal.
+     */
+    public JournalModifiche(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @brief Record del journal già codificato, pronto per essere accodato al file.
+     * * La codifica (e l'assegnazione della sequenza) avviene nel momento della modifica,
+     * così il record fotografa lo stato dell'oggetto in quell'istante anche se la
+     * scrittura su disco avviene più tardi su un altro thread.
+     */
+    public static final class Record {
+        private final long seq;
+        private final Tipo tipo;
+        private final byte[] dati;
+
+        private Record(long seq, Tipo tipo, byte[] dati) {
+            this.seq = seq;
+            this.tipo = tipo;
+            this.dati = dati;
+        }
+
+        /** @return Numero di sequenza assegnato al record. */
+        public long getSeq() { return seq; }
+
+        /** @return Tipologia della modifica. */
+        public Tipo getTipo() { return tipo; }
+    }
+
+    // --- PREPARAZIONE DEI RECORD ---
+
+    /**
+     * @brief Prepara il record di inserimento o aggiornamento di un libro.
+     * @param libro Il libro nel suo stato attuale.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaLibro(Libro libro) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviLibro(new DataOutputStream(buffer), libro);
+        return prepara(Tipo.LIBRO, buffer.toByteArray());
+    }
+
+    /**
+     * @brief Prepara il record di eliminazione di un libro.
+     * @param isbn ISBN del libro eliminato.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaRimozioneLibro(String isbn) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviStringa(new DataOutputStream(buffer), isbn);
+        return prepara(Tipo.LIBRO_RIMOSSO, buffer.toByteArray());
+    }
+
+    /**
+     * @brief Prepara il record di inserimento o aggiornamento di un utente.
+     * @param utente L'utente nel suo stato attuale.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaUtente(Utente utente) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviUtente(new DataOutputStream(buffer), utente);
+        return prepara(Tipo.UTENTE, buffer.toByteArray());
+    }
+
+    /**
+     * @brief Prepara il record di eliminazione di un utente.
+     * @param matricola Matricola dell'utente eliminato.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaRimozioneUtente(String matricola) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviStringa(new DataOutputStream(buffer), matricola);
+        return prepara(Tipo.UTENTE_RIMOSSO, buffer.toByteArray());
+    }
+
+    /**
+     * @brief Prepara il record di creazione di un prestito.
+     * @param prestito Il prestito creato.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaPrestito(Prestito prestito) throws IOException {
+        return prepara(Tipo.PRESTITO, chiavePrestito(prestito));
+    }
+
+    /**
+     * @brief Prepara il record di rimozione di un prestito.
+     * @param prestito Il prestito rimosso.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaRimozionePrestito(Prestito prestito) throws IOException {
+        return preparaRimozionePrestito(ChiavePrestito.di(prestito));
+    }
+
+    /**
+     * @brief Prepara il record di rimozione di un prestito, a partire dalla sua chiave.
+     * @param chiave Chiave del prestito rimosso.
+     * @return Il record codificato, con la sua sequenza.
+     * @throws IOException Se la codifica fallisce.
+     */
+    public Record preparaRimozionePrestito(ChiavePrestito chiave) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviChiavePrestito(new DataOutputStream(buffer), chiave);
+        return prepara(Tipo.PRESTITO_RIMOSSO, buffer.toByteArray());
+    }
+
+    // --- SCRITTURA ---
+
+    /**
+     * @brief Accoda al file un record preparato in precedenza.
+     * * I record vanno accodati nell'ordine in cui sono stati preparati
+     * (es. da un unico thread di scrittura).
+     * @param record Il record da scrivere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void accoda(Record record) throws IOException {
+        if (out == null) {
+            boolean nuovo = !file.exists() || file.length() < LUNGHEZZA_INTESTAZIONE;
+            fos = new FileOutputStream(file, !nuovo);
+            out = new DataOutputStream(new BufferedOutputStream(fos));
+            if (nuovo) {
+                out.writeInt(MAGIC);
+                out.writeShort(CodecRecord.VERSIONE);
+            }
+        }
+        byte[] corpo = ByteBuffer.allocate(8 + 1 + record.dati.length)
+                .putLong(record.seq).put((byte) record.tipo.ordinal()).put(record.dati).array();
+        out.writeInt(corpo.length);
+        out.write(corpo);
+        out.writeInt(crc(corpo));
+        out.flush(); // Il record deve arrivare al sistema operativo subito, non alla chiusura
+    }
+
+    /**
+     * @brief Registra l'inserimento o l'aggiornamento di un libro.
+     * @param libro Il libro nel suo stato attuale.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviLibro(Libro libro) throws IOException {
+        return scrivi(preparaLibro(libro));
+    }
+
+    /**
+     * @brief Registra l'eliminazione di un libro.
+     * @param isbn ISBN del libro eliminato.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviRimozioneLibro(String isbn) throws IOException {
+        return scrivi(preparaRimozioneLibro(isbn));
+    }
+
+    /**
+     * @brief Registra l'inserimento o l'aggiornamento di un utente.
+     * @param utente L'utente nel suo stato attuale.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviUtente(Utente utente) throws IOException {
+        return scrivi(preparaUtente(utente));
+    }
+
+    /**
+     * @brief Registra l'eliminazione di un utente.
+     * @param matricola Matricola dell'utente eliminato.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviRimozioneUtente(String matricola) throws IOException {
+        return scrivi(preparaRimozioneUtente(matricola));
+    }
+
+    /**
+     * @brief Registra la creazione di un prestito.
+     * @param prestito Il prestito creato.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviPrestito(Prestito prestito) throws IOException {
+        return scrivi(preparaPrestito(prestito));
+    }
+
+    /**
+     * @brief Registra la rimozione di un prestito.
+     * @param prestito Il prestito rimosso.
+     * @return Numero di sequenza assegnato al record.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public long scriviRimozionePrestito(Prestito prestito) throws IOException {
+        return scrivi(preparaRimozionePrestito(prestito));
+    }
+
+    /**
+     * @brief Forza la scrittura su disco dei record accodati (flush + fsync).
+     * @throws IOException Se la sincronizzazione fallisce.
+     */
+    public void sincronizza() throws IOException {
+        if (out != null) {
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * @brief Chiude il file e scarta i record accodati dopo la dimensione indicata (es. un gruppo scritto solo in parte).
+     * * Le sequenze già assegnate non vengono riusate.
+     * @param dimensione Dimensione del file prima dei record da scartare.
+     * @throws IOException Se il file non può essere troncato.
+     */
+    public synchronized void tronca(long dimensione) throws IOException {
+        try {
+            close();
+        } finally {
+            if (file.length() > dimensione) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(dimensione);
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Svuota il journal dopo che il suo contenuto è stato incluso in uno snapshot.
+     * * Il numero di sequenza NON viene azzerato: i record futuri restano
+     * successivi allo snapshot appena scritto.
+     * @throws IOException Se il file non può essere troncato.
+     */
+    public synchronized void svuota() throws IOException {
+        close();
+        posizioneLettura = 0;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Impossibile svuotare il journal " + file);
+        }
+    }
+
+    /**
+     * @brief Come {@link #svuota}, ma il contenuto attuale viene spostato nel file indicato invece di essere cancellato.
+     * * Serve a conservare le modifiche incluse nell'ultimo snapshot finché non ne viene
+     * scritto un altro: se lo snapshot risultasse danneggiato, lo snapshot precedente più
+     * il journal archiviato permettono di ricostruire gli stessi dati.
+     * @param archivio File di destinazione (sostituito se esiste).
+     * @throws IOException Se lo spostamento fallisce.
+     */
+    public synchronized void archivia(File archivio) throws IOException {
+        close();
+        posizioneLettura = 0;
+        if (file.exists()) {
+            Files.move(file.toPath(), archivio.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(archivio.toPath());
+        }
+    }
+
+    /**
+     * @brief Chiude il file del journal (se aperto).
+     * @throws IOException Se la chiusura fallisce.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                out.close();
+            } finally {
+                out = null;
+                fos = null;
+            }
+        }
+    }
+
+    // --- LETTURA (REPLAY) ---
+
+    /**
+     * @brief Rilegge il journal e consegna al destinatario le modifiche successive a uno snapshot.
+     * * I record con sequenza minore o uguale a `dopoSeq` sono già contenuti nello
+     * snapshot e vengono saltati. Se l'ultimo record risulta incompleto (scrittura
+     * interrotta da un crash) o danneggiato, viene scartato e il file troncato all'ultimo
+     * record valido (salvandone prima una copia se il danno non è in coda).
+     * * @param dopoSeq Sequenza dell'ultimo record incluso nello snapshot.
+     * @param destinatario Chi applica le modifiche lette.
+     * @return Numero di record applicati.
+     * @throws IOException Se il file non è leggibile.
+     */
+    public synchronized int rileggi(long dopoSeq, Destinatario destinatario) throws IOException {
+        posizioneLettura = 0;
+        return rileggiNuovi(dopoSeq, destinatario, true);
+    }
+
+    /**
+     * @brief Come {@link #rileggi}, ma riprende dal punto raggiunto dalla lettura precedente.
+     * * Serve a leggere i record accodati da un altro processo: il costo dipende solo dai record
+     * nuovi. Se il file è stato sostituito (riconosciuto dalla sequenza del primo record) la
+     * lettura riparte dall'inizio. Un record incompleto in coda può essere ancora in scrittura
+     * da parte di un altro processo: senza `troncaCoda` viene solo saltato e riletto la volta
+     * successiva; il file va troncato solo da chi ha il blocco in scrittura ({@link BloccoArchivio}).
+     * @param dopoSeq I record con sequenza minore o uguale sono già stati applicati.
+     * @param destinatario Chi applica le modifiche lette.
+     * @param troncaCoda true per troncare un record incompleto in coda.
+     * @return Numero di record applicati.
+     * @throws IOException Se il file non è leggibile o non è un journal.
+     */
+    public synchronized int rileggiNuovi(long dopoSeq, Destinatario destinatario, boolean troncaCoda) throws IOException {
+        aggiornaSeq(dopoSeq);
+        // Intestazione assente o incompleta: il journal era appena stato creato, nessun record
+        if (!file.exists() || file.length() < LUNGHEZZA_INTESTAZIONE) {
+            posizioneLettura = 0;
+            return 0;
+        }
+
+        int applicati = 0;
+        long posizioneValida = LUNGHEZZA_INTESTAZIONE;
+        // true se un record completo è risultato danneggiato (e non solo scritto a metà in coda)
+        boolean danneggiato = false;
+        try (FileInputStream fis = new FileInputStream(file)) {
+            if (posizioneLettura > LUNGHEZZA_INTESTAZIONE && leggiPrimaSeq(fis) != primaSeqLetta) {
+                posizioneLettura = 0; // Journal archiviato e ricreato da un'altra postazione
+            }
+            long dimensioneFile = fis.getChannel().size();
+            fis.getChannel().position(0);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fis));
+            if (in.readInt() != MAGIC) throw new IOException("Il file " + file + " non è un journal valido.");
+            int versione = in.readShort();
+            if (versione != CodecRecord.VERSIONE) throw new IOException("Versione del journal non supportata.");
+            if (posizioneLettura > LUNGHEZZA_INTESTAZIONE) {
+                fis.getChannel().position(posizioneLettura);
+                in = new DataInputStream(new BufferedInputStream(fis));
+                posizioneValida = posizioneLettura;
+            }
+
+            while (true) {
+                // Un record che finirebbe oltre il file è la coda scritta a metà (o un altro processo sta scrivendo)
+                long disponibili = dimensioneFile - posizioneValida - 4 - LUNGHEZZA_CRC;
+                if (disponibili < 9) break;
+                int lunghezza = in.readInt();
+                if (lunghezza > disponibili) break;
+                if (lunghezza < 9) { // Non contiene nemmeno seq e tipo
+                    danneggiato = true;
+                    break;
+                }
+                byte[] corpo = new byte[lunghezza];
+                in.readFully(corpo);
+                if (in.readInt() != crc(corpo)) {
+                    danneggiato = true;
+                    break;
+                }
+
+                DataInputStream dati = new DataInputStream(new ByteArrayInputStream(corpo));
+                long seq = dati.readLong();
+                int tipo = dati.readByte();
+                if (tipo < 0 || tipo >= Tipo.values().length) {
+                    danneggiato = true;
+                    break;
+                }
+                if (seq > dopoSeq) {
+                    try {
+                        // Il record è decodificato per intero prima di essere consegnato
+                        Runnable modifica = decodifica(Tipo.values()[tipo], dati, destinatario);
+                        destinatario.sequenza(seq);
+                        modifica.run();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Journal " + file + ": record " + seq + " non leggibile (" + e.getMessage() + ").");
+                        danneggiato = true;
+                        break;
+                    }
+                    applicati++;
+                }
+                if (posizioneValida == LUNGHEZZA_INTESTAZIONE) primaSeqLetta = seq;
+                posizioneValida += 4 + corpo.length + LUNGHEZZA_CRC;
+                aggiornaSeq(seq);
+            }
+        }
+        posizioneLettura = posizioneValida;
+
+        long dimensione = file.length();
+        if (danneggiato && !troncaCoda) {
+            System.err.println("Journal " + file + ": record danneggiato in posizione " + posizioneValida + ", lettura interrotta.");
+        }
+        if (troncaCoda && posizioneValida < dimensione) {
+            if (danneggiato) {
+                // I record successivi a quello danneggiato non sono più leggibili da qui: se ne conserva una copia
+                File copia = new File(file.getPath() + ".danneggiato");
+                Files.copy(file.toPath(), copia.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                System.err.println("Journal " + file + ": record danneggiato in posizione " + posizioneValida
+                        + ", scartati " + (dimensione - posizioneValida) + " byte (copia in " + copia + ").");
+            } else {
+                System.err.println("Journal: scartata coda incompleta di " + (dimensione - posizioneValida) + " byte.");
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(posizioneValida);
+            }
+        }
+        return applicati;
+    }
+
+    /**
+     * @brief Indica se la lettura incrementale ha raggiunto la fine del file.
+     * @return true se non ci sono record scritti dopo l'ultima lettura (o scrittura, vedi {@link #segnaLetto}).
+     */
+    public synchronized boolean isLettoTutto() {
+        return dimensione() <= Math.max(posizioneLettura, LUNGHEZZA_INTESTAZIONE);
+    }
+
+    /**
+     * @brief Segna come già letti i record presenti nel file, ad esempio quelli appena accodati.
+     * * Va chiamato solo se il file era già stato letto fino in fondo, tenendo il blocco in scrittura.
+     * @throws IOException Se il file non è leggibile.
+     */
+    public synchronized void segnaLetto() throws IOException {
+        if (posizioneLettura <= LUNGHEZZA_INTESTAZIONE && dimensione() > LUNGHEZZA_INTESTAZIONE) {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                primaSeqLetta = leggiPrimaSeq(fis);
+            }
+        }
+        posizioneLettura = dimensione();
+    }
+
+    /**
+     * @brief Fa ripartire dall'inizio del file la prossima lettura incrementale (es. journal sostituito).
+     */
+    public synchronized void azzeraLettura() {
+        posizioneLettura = 0;
+    }
+
+    // --- INFO ---
+
+    /**
+     * @brief Restituisce il numero di sequenza dell'ultimo record preparato o letto.
+     * @return Sequenza corrente.
+     */
+    public synchronized long getUltimaSeq() {
+        return ultimaSeq;
+    }
+
+    /**
+     * @brief Restituisce la dimensione attuale del journal su disco.
+     * @return Numero di byte (0 se il file non esiste).
+     */
+    public long dimensione() {
+        // Ogni record viene scaricato subito da accoda(), quindi la lunghezza del file è aggiornata
+        // (esclusi i record preparati ma non ancora accodati)
+        return file.exists() ? file.length() : 0;
+    }
+
+    // --- METODI PRIVATI ---
+
+    /**
+     * Assegna la sequenza successiva: può essere chiamato da un thread diverso da quello che scrive.
+     */
+    private synchronized Record prepara(Tipo tipo, byte[] dati) {
+        ultimaSeq++;
+        return new Record(ultimaSeq, tipo, dati);
+    }
+
+    private long scrivi(Record record) throws IOException {
+        accoda(record);
+        return record.seq;
+    }
+
+    /** Porta la sequenza corrente almeno a quella indicata (es. record letti da un altro file). */
+    synchronized void aggiornaSeq(long seq) {
+        ultimaSeq = Math.max(ultimaSeq, seq);
+    }
+
+    private static int crc(byte[] dati) {
+        CRC32 crc = new CRC32();
+        crc.update(dati, 0, dati.length);
+        return (int) crc.getValue();
+    }
+
+    /** Sequenza del primo record del file (-1 se non ce ne sono). */
+    private static long leggiPrimaSeq(FileInputStream fis) throws IOException {
+        fis.getChannel().position(LUNGHEZZA_INTESTAZIONE + 4);
+        DataInputStream in = new DataInputStream(fis);
+        try {
+            return in.readLong();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] chiavePrestito(Prestito prestito) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviPrestito(new DataOutputStream(buffer), prestito);
+        return buffer.toByteArray();
+    }
+
+    /** Decodifica i dati di un record; la modifica restituita li consegna al destinatario. */
+    private static Runnable decodifica(Tipo tipo, DataInputStream dati, Destinatario destinatario) throws IOException {
+        switch (tipo) {
+            case LIBRO:
+                Libro libro = CodecRecord.leggiLibro(dati);
+                return () -> destinatario.libro(libro);
+            case LIBRO_RIMOSSO:
+                String isbn = CodecRecord.leggiStringa(dati);
+                return () -> destinatario.libroRimosso(isbn);
+            case UTENTE:
+                Utente utente = CodecRecord.leggiUtente(dati);
+                return () -> destinatario.utente(utente);
+            case UTENTE_RIMOSSO:
+                String matricola = CodecRecord.leggiStringa(dati);
+                return () -> destinatario.utenteRimosso(matricola);
+            case PRESTITO:
+                ChiavePrestito prestito = CodecRecord.leggiChiavePrestito(dati);
+                return () -> destinatario.prestito(prestito);
+            default:
+                ChiavePrestito rimosso = CodecRecord.leggiChiavePrestito(dati);
+                return () -> destinatario.prestitoRimosso(rimosso);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Lettura di un file CSV un record alla volta (formato RFC 4180).
+ * * I campi sono separati da un carattere (di norma la virgola); un campo tra virgolette può
+ * contenere separatori, a capo e virgolette raddoppiate ({@code ""}). Il file non viene mai
+ * tenuto tutto in memoria: si legge solo il record richiesto.
+ * * Un eventuale BOM UTF-8 all'inizio del file viene ignorato.
+ */
+public class LettoreCsv implements Closeable {
+
+    private final BufferedReader sorgente;
+    private final char separatore;
+    private long riga = 1;
+    private long rigaRecord;
+    private boolean inizio = true;
+
+    /**
+     * @brief Prepara la lettura con la virgola come separatore.
+     * @param sorgente Testo CSV.
+     */
+    public LettoreCsv(Reader sorgente) {
+        this(sorgente, ',');
+    }
+
+    /**
+     * @brief Prepara la lettura con il separatore indicato (es. ';' per i file di Excel in italiano).
+     * @param sorgente Testo CSV.
+     * @param separatore Separatore dei campi.
+     */
+    public LettoreCsv(Reader sorgente, char separatore) {
+        this.sorgente = sorgente instanceof BufferedReader ? (BufferedReader) sorgente : new BufferedReader(sorgente, 1 << 16);
+        this.separatore = separatore;
+    }
+
+    /**
+     * @brief Legge il prossimo record.
+     * * Le righe vuote vengono saltate.
+     * @return I campi del record, o null a fine file.
+     * @throws IOException Se la lettura fallisce o il file termina dentro un campo tra virgolette.
+     */
+    public List<String> prossimo() throws IOException {
+        List<String> campi = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean traVirgolette = false;
+        boolean campoIniziato = false;
+        rigaRecord = riga;
+        int c;
+        while ((c = sorgente.read()) != -1) {
+            if (inizio) {
+                inizio = false;
+                if (c == '\uFEFF') continue;
+            }
+            if (traVirgolette) {
+                if (c == '"') {
+                    sorgente.mark(1);
+                    if (sorgente.read() == '"') {
+                        campo.append('"');
+                    } else {
+                        sorgente.reset();
+                        traVirgolette = false;
+                    }
+                } else {
+                    if (c == '\n') riga++;
+                    campo.append((char) c);
+                }
+            } else if (c == '"' && campo.length() == 0) {
+                traVirgolette = true;
+                campoIniziato = true;
+            } else if (c == separatore) {
+                campi.add(campo.toString());
+                campo.setLength(0);
+                campoIniziato = true;
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r') {
+                    sorgente.mark(1);
+                    if (sorgente.read() != '\n') sorgente.reset();
+                }
+                riga++;
+                if (!campoIniziato && campo.length() == 0 && campi.isEmpty()) {
+                    rigaRecord = riga;
+                    continue;
+                }
+                campi.add(campo.toString());
+                return campi;
+            } else {
+                campo.append((char) c);
+            }
+        }
+        if (traVirgolette) {
+            throw new IOException("Riga " + rigaRecord + ": virgolette non chiuse a fine file.");
+        }
+        if (!campoIniziato && campo.length() == 0 && campi.isEmpty()) return null;
+        campi.add(campo.toString());
+        return campi;
+    }
+
+    /**
+     * @brief Restituisce la riga del file su cui inizia l'ultimo record letto.
+     * @return Numero di riga, a partire da 1.
+     */
+    public long getRigaRecord() {
+        return rigaRecord;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sorgente.close();
+    }
+}
@@ -0,0 +1,142 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.util.*;
+
+/**
+ * @brief Mappa di identità usata in fase di caricamento: una sola istanza per ISBN e per matricola.
+ * * Su file i prestiti contengono solo chiavi esterne ({@link ChiavePrestito}); questa classe
+ * le risolve negli oggetti Libro e Utente già letti tramite mappe hash, in un'unica
+ * passata lineare, e ricostruisce la lista dei prestiti attivi di ogni utente.
+ * * Le mappe mantengono l'ordine di inserimento, così le liste restituite
+ * rispettano l'ordine originale del file.
+ */
+public class MappaIdentita {
+
+    private final Map<String, Libro> libri;
+    private final Map<String, Utente> utenti;
+    private int prestitiScartati;
+
+    /**
+     * @brief Costruisce la mappa a partire dai libri e dagli utenti letti.
+     * @param libri Libri letti (identificati da ISBN).
+     * @param utenti Utenti letti (identificati da matricola).
+     */
+    public MappaIdentita(Collection<Libro> libri, Collection<Utente> utenti) {
+        this.libri = new LinkedHashMap<>(libri.size() * 2);
+        this.utenti = new LinkedHashMap<>(utenti.size() * 2);
+        for (Libro l : libri) this.libri.put(l.getIsbn(), l);
+        for (Utente u : utenti) this.utenti.put(u.getMatricola(), u);
+    }
+
+    // --- ACCESSO PER CHIAVE ---
+
+    /**
+     * @brief Cerca un libro per ISBN.
+     * @param isbn ISBN da cercare.
+     * @return Il libro, oppure null se assente.
+     */
+    public Libro libro(String isbn) {
+        return libri.get(isbn);
+    }
+
+    /**
+     * @brief Cerca un utente per matricola.
+     * @param matricola Matricola da cercare.
+     * @return L'utente, oppure null se assente.
+     */
+    public Utente utente(String matricola) {
+        return utenti.get(matricola);
+    }
+
+    /**
+     * @brief Inserisce un libro (o lo sostituisce se l'ISBN è già presente).
+     * @param libro Libro da inserire.
+     */
+    public void inserisciLibro(Libro libro) {
+        libri.put(libro.getIsbn(), libro);
+    }
+
+    /**
+     * @brief Rimuove un libro.
+     * @param isbn ISBN del libro da rimuovere.
+     */
+    public void rimuoviLibro(String isbn) {
+        libri.remove(isbn);
+    }
+
+    /**
+     * @brief Inserisce un utente (o lo sostituisce se la matricola è già presente).
+     * @param utente Utente da inserire.
+     */
+    public void inserisciUtente(Utente utente) {
+        utenti.put(utente.getMatricola(), utente);
+    }
+
+    /**
+     * @brief Rimuove un utente.
+     * @param matricola Matricola dell'utente da rimuovere.
+     */
+    public void rimuoviUtente(String matricola) {
+        utenti.remove(matricola);
+    }
+
+    /** @return I libri presenti, nell'ordine di inserimento. */
+    public Collection<Libro> getLibri() {
+        return libri.values();
+    }
+
+    /** @return Gli utenti presenti, nell'ordine di inserimento. */
+    public Collection<Utente> getUtenti() {
+        return utenti.values();
+    }
+
+    // --- COLLEGAMENTO PRESTITI ---
+
+    /**
+     * @brief Trasforma la chiave di un prestito nel prestito vero e proprio.
+     * * Il prestito viene anche aggiunto ai prestiti attivi dell'utente. Se l'utente
+     * risulta oltre il limite dei prestiti, il prestito resta comunque nello storico
+     * (il dato salvato prevale) e viene solo segnalato.
+     * @param chiave Chiave del prestito.
+     * @return Il prestito collegato, oppure null se libro o utente non esistono.
+     */
+    public Prestito collega(ChiavePrestito chiave) {
+        Utente u = utenti.get(chiave.getMatricola());
+        Libro l = libri.get(chiave.getIsbn());
+        if (u == null || l == null) {
+            prestitiScartati++;
+            System.err.println("Prestito ignorato, riferimenti mancanti (" + chiave + ")");
+            return null;
+        }
+        Prestito p = new Prestito(u, l, chiave.getDataInizio());
+        try {
+            u.aggiungiPrestito(p);
+        } catch (IllegalStateException e) {
+            System.err.println("Prestito " + chiave + ": " + e.getMessage());
+        }
+        return p;
+    }
+
+    /**
+     * @brief Collega tutte le chiavi in un'unica passata lineare.
+     * @param chiavi Chiavi dei prestiti, nell'ordine del file.
+     * @return I prestiti collegati (quelli con riferimenti mancanti sono esclusi).
+     */
+    public List<Prestito> collegaTutti(List<ChiavePrestito> chiavi) {
+        List<Prestito> prestiti = new ArrayList<>(chiavi.size());
+        for (ChiavePrestito chiave : chiavi) {
+            Prestito p = collega(chiave);
+            if (p != null) prestiti.add(p);
+        }
+        return prestiti;
+    }
+
+    /** @return Numero di prestiti scartati perché riferivano libri o utenti inesistenti. */
+    public int getPrestitiScartati() {
+        return prestitiScartati;
+    }
+}
@@ -0,0 +1,74 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief Modifiche arrivate da un'altra postazione che lavora sullo stesso archivio.
+ * * Gli oggetti aggiornati sono già stati modificati sul posto e vanno solo ridisegnati;
+ * quelli aggiunti e rimossi vanno riportati nelle liste mostrate dalla GUI.
+ * I conflitti sono descritti da un messaggio per l'operatore.
+ */
+public class ModificheRemote {
+
+    private final List<Libro> libriAggiunti = new ArrayList<>();
+    private final List<Libro> libriAggiornati = new ArrayList<>();
+    private final List<Libro> libriRimossi = new ArrayList<>();
+    private final List<Utente> utentiAggiunti = new ArrayList<>();
+    private final List<Utente> utentiAggiornati = new ArrayList<>();
+    private final List<Utente> utentiRimossi = new ArrayList<>();
+    private final List<Prestito> prestitiAggiunti = new ArrayList<>();
+    private final List<Prestito> prestitiRimossi = new ArrayList<>();
+    private final List<String> conflitti = new ArrayList<>();
+
+    public void libroAggiunto(Libro libro) { libriAggiunti.add(libro); }
+
+    public void libroAggiornato(Libro libro) { libriAggiornati.add(libro); }
+
+    public void libroRimosso(Libro libro) { libriRimossi.add(libro); }
+
+    public void utenteAggiunto(Utente utente) { utentiAggiunti.add(utente); }
+
+    public void utenteAggiornato(Utente utente) { utentiAggiornati.add(utente); }
+
+    public void utenteRimosso(Utente utente) { utentiRimossi.add(utente); }
+
+    public void prestitoAggiunto(Prestito prestito) { prestitiAggiunti.add(prestito); }
+
+    public void prestitoRimosso(Prestito prestito) { prestitiRimossi.add(prestito); }
+
+    /**
+     * @brief Registra un conflitto tra una modifica locale e una di un'altra postazione.
+     * @param messaggio Descrizione per l'operatore (cosa è stato mantenuto).
+     */
+    public void conflitto(String messaggio) { conflitti.add(messaggio); }
+
+    public List<Libro> getLibriAggiunti() { return libriAggiunti; }
+
+    public List<Libro> getLibriAggiornati() { return libriAggiornati; }
+
+    public List<Libro> getLibriRimossi() { return libriRimossi; }
+
+    public List<Utente> getUtentiAggiunti() { return utentiAggiunti; }
+
+    public List<Utente> getUtentiAggiornati() { return utentiAggiornati; }
+
+    public List<Utente> getUtentiRimossi() { return utentiRimossi; }
+
+    public List<Prestito> getPrestitiAggiunti() { return prestitiAggiunti; }
+
+    public List<Prestito> getPrestitiRimossi() { return prestitiRimossi; }
+
+    public List<String> getConflitti() { return conflitti; }
+
+    /** @return true se non è arrivata alcuna modifica. */
+    public boolean isVuota() {
+        return libriAggiunti.isEmpty() && libriAggiornati.isEmpty() && libriRimossi.isEmpty()
+                && utentiAggiunti.isEmpty() && utentiAggiornati.isEmpty() && utentiRimossi.isEmpty()
+                && prestitiAggiunti.isEmpty() && prestitiRimossi.isEmpty() && conflitti.isEmpty();
+    }
+}
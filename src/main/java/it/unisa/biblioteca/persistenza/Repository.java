@@ -0,0 +1,51 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @brief Accesso per chiave a un tipo di entità (libri, utenti o prestiti).
+ * * È l'interfaccia comune a tutti i backend di memorizzazione: le chiavi sono
+ * ordinabili, così ogni backend può offrire anche la scansione per intervallo
+ * (es. tutti i prestiti di una matricola, o gli ISBN di un certo prefisso).
+ * @param <K> Tipo della chiave (ISBN, matricola, {@link ChiavePrestito}).
+ * @param <V> Tipo dell'entità.
+ */
+public interface Repository<K extends Comparable<K>, V> {
+
+    /**
+     * @brief Cerca un'entità per chiave.
+     * @param chiave Chiave da cercare.
+     * @return L'entità, oppure Optional vuoto se assente.
+     */
+    Optional<V> trova(K chiave);
+
+    /**
+     * @brief Restituisce le entità con chiave nell'intervallo [da, a), in ordine di chiave.
+     * @param da Primo estremo, incluso (null = dall'inizio).
+     * @param a Secondo estremo, escluso (null = fino alla fine).
+     * @return Le entità trovate.
+     */
+    List<V> intervallo(K da, K a);
+
+    /**
+     * @brief Inserisce l'entità o sostituisce quella con la stessa chiave (upsert).
+     * * Va richiamato anche dopo aver modificato i campi di un'entità già presente,
+     * così il backend può renderla persistente.
+     * @param valore Entità nel suo stato attuale.
+     */
+    void salva(V valore);
+
+    /**
+     * @brief Elimina l'entità con la chiave indicata.
+     * @param chiave Chiave dell'entità da eliminare.
+     * @return true se l'entità era presente.
+     */
+    boolean elimina(K chiave);
+
+    /**
+     * @brief Restituisce il numero di entità presenti.
+     * @return Numero di entità.
+     */
+    int conta();
+}
@@ -0,0 +1,104 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @brief Repository mantenuto in memoria in una mappa ordinata (TreeMap), affiancata da una mappa hash.
+ * * La ricerca per chiave costa O(1) (mappa hash); inserimento ed eliminazione O(log n); la scansione
+ * per intervallo O(log n + risultati). Chi vuole rendere persistenti le modifiche (es. con un journal)
+ * può ricevere una notifica dopo ogni salvataggio ed eliminazione.
+ * @param <K> Tipo della chiave.
+ * @param <V> Tipo dell'entità.
+ */
+public class RepositoryInMemoria<K extends Comparable<K>, V> implements Repository<K, V> {
+
+    private final TreeMap<K, V> dati = new TreeMap<>();
+    // Stesso contenuto di dati, per le ricerche per chiave
+    private final Map<K, V> perChiave = new HashMap<>();
+    private final Function<V, K> chiave;
+    private final Consumer<V> dopoSalvataggio;
+    private final Consumer<K> dopoEliminazione;
+
+    /**
+     * @brief Crea un repository senza notifiche.
+     * @param chiave Funzione che ricava la chiave di un'entità.
+     */
+    public RepositoryInMemoria(Function<V, K> chiave) {
+        this(chiave, v -> { }, k -> { });
+    }
+
+    /**
+     * @brief Crea un repository che notifica ogni modifica.
+     * @param chiave Funzione che ricava la chiave di un'entità.
+     * @param dopoSalvataggio Chiamato dopo ogni {@link #salva}.
+     * @param dopoEliminazione Chiamato dopo ogni {@link #elimina}, anche se la chiave era assente.
+     */
+    public RepositoryInMemoria(Function<V, K> chiave, Consumer<V> dopoSalvataggio, Consumer<K> dopoEliminazione) {
+        this.chiave = chiave;
+        this.dopoSalvataggio = dopoSalvataggio;
+        this.dopoEliminazione = dopoEliminazione;
+    }
+
+    @Override
+    public Optional<V> trova(K k) {
+        return Optional.ofNullable(perChiave.get(k));
+    }
+
+    @Override
+    public List<V> intervallo(K da, K a) {
+        NavigableMap<K, V> vista = dati;
+        if (da != null) vista = vista.tailMap(da, true);
+        if (a != null) vista = vista.headMap(a, false);
+        return new ArrayList<>(vista.values());
+    }
+
+    @Override
+    public void salva(V valore) {
+        inserisci(valore);
+        dopoSalvataggio.accept(valore);
+    }
+
+    @Override
+    public boolean elimina(K k) {
+        boolean presente = rimuovi(k) != null;
+        dopoEliminazione.accept(k);
+        return presente;
+    }
+
+    @Override
+    public int conta() {
+        return dati.size();
+    }
+
+    /**
+     * @brief Sostituisce tutto il contenuto, senza notifiche (es. dopo un caricamento da disco).
+     * @param valori Nuovo contenuto.
+     */
+    public void ricarica(Collection<V> valori) {
+        dati.clear();
+        perChiave.clear();
+        for (V v : valori) inserisci(v);
+    }
+
+    /**
+     * @brief Aggiunge o sostituisce un'entità senza notifiche (es. una modifica letta da un'altra postazione).
+     * @param valore L'entità.
+     */
+    public void inserisci(V valore) {
+        K k = chiave.apply(valore);
+        dati.put(k, valore);
+        perChiave.put(k, valore);
+    }
+
+    /**
+     * @brief Elimina un'entità senza notifiche.
+     * @param k Chiave dell'entità.
+     * @return L'entità eliminata, oppure null se non era presente.
+     */
+    public V rimuovi(K k) {
+        perChiave.remove(k);
+        return dati.remove(k);
+    }
+}
@@ -0,0 +1,91 @@
+package it.unisa.biblioteca.persistenza;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @brief Esito di un'importazione in blocco: quanti record sono entrati, quanti erano già
+ * presenti (ed eventualmente sono stati aggiornati) e quanti sono stati scartati, con il motivo.
+ * * Dei record scartati vengono conservati solo i primi {@link #MAX_ERRORI} messaggi: un file
+ * sbagliato per intero non deve riempire la memoria di errori tutti uguali.
+ */
+public class RiepilogoImportazione {
+
+    public static final int MAX_ERRORI = 100;
+
+    private int importati;
+    private int aggiornati;
+    private int duplicati;
+    private int scartati;
+    private final List<String> errori = new ArrayList<>();
+
+    /**
+     * @brief Conta i record accettati.
+     * @param numero Record accettati.
+     */
+    public void importati(int numero) {
+        importati += numero;
+    }
+
+    /**
+     * @brief Conta i record già presenti i cui dati sono stati aggiornati.
+     * @param numero Record aggiornati.
+     */
+    public void aggiornati(int numero) {
+        aggiornati += numero;
+    }
+
+    /**
+     * @brief Conta un record già presente (in archivio o prima nello stesso file) e lasciato com'è.
+     */
+    public void duplicato() {
+        duplicati++;
+    }
+
+    /**
+     * @brief Conta un record non valido.
+     * @param riga Riga del file su cui inizia il record.
+     * @param motivo Perché è stato scartato.
+     */
+    public void scartato(long riga, String motivo) {
+        scartato("Riga " + riga, motivo);
+    }
+
+    /**
+     * @brief Conta un record non valido di un file senza righe (es. "Record 12").
+     * @param posizione Dove si trova il record nel file.
+     * @param motivo Perché è stato scartato.
+     */
+    public void scartato(String posizione, String motivo) {
+        scartati++;
+        if (errori.size() < MAX_ERRORI) errori.add(posizione + ": " + motivo);
+    }
+
+    public int getImportati() {
+        return importati;
+    }
+
+    public int getAggiornati() {
+        return aggiornati;
+    }
+
+    public int getDuplicati() {
+        return duplicati;
+    }
+
+    public int getScartati() {
+        return scartati;
+    }
+
+    /** @return I primi messaggi di errore, nell'ordine del file (sola lettura). */
+    public List<String> getErrori() {
+        return Collections.unmodifiableList(errori);
+    }
+
+    @Override
+    public String toString() {
+        return importati + " importati, " + (aggiornati > 0 ? aggiornati + " aggiornati, " : "")
+                + duplicati + " già presenti, " + scartati + " scartati";
+    }
+}
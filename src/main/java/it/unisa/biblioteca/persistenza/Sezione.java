@@ -0,0 +1,11 @@
+package it.unisa.biblioteca.persistenza;
+
+/**
+ * @brief Sezioni in cui è suddiviso l'archivio su file.
+ * * L'ordinale viene scritto su file: NON riordinare le costanti.
+ */
+public enum Sezione {
+    LIBRI,      ///< Catalogo dei libri
+    UTENTI,     ///< Anagrafica degli utenti
+    PRESTITI    ///< Prestiti, salvati come chiavi esterne (ISBN, matricola)
+}
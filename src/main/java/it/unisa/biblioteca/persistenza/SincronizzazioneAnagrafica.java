@@ -0,0 +1,116 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * @brief Allineamento dell'anagrafica all'elenco completo degli studenti inviato ogni semestre dalla segreteria.
+ * * L'elenco è un file CSV con le colonne matricola, nome, cognome, email (una prima riga di
+ * intestazione che inizia con "matricola" viene saltata). Il file viene letto un record alla volta
+ * e confrontato con l'anagrafica per matricola, con un indice hash: si ricavano solo gli studenti
+ * nuovi e quelli con nome, cognome o email cambiati. Gli utenti assenti dall'elenco restano
+ * (possono avere prestiti in corso).
+ * * Il confronto ({@link #confronta}) non modifica nulla e può girare in background; le differenze
+ * vengono poi applicate in un colpo solo da chi possiede l'anagrafica ({@link #aggiorna}).
+ */
+public class SincronizzazioneAnagrafica {
+
+    /**
+     * @brief Differenze tra l'elenco e l'anagrafica.
+     */
+    public static class Differenze {
+        private final List<Utente> nuovi = new ArrayList<>();
+        private final List<Utente> aggiornati = new ArrayList<>();
+        private final RiepilogoImportazione riepilogo = new RiepilogoImportazione();
+
+        /** @return Gli studenti da inserire (sola lettura). */
+        public List<Utente> getNuovi() {
+            return Collections.unmodifiableList(nuovi);
+        }
+
+        /** @return I dati nuovi degli studenti già presenti e cambiati (sola lettura). */
+        public List<Utente> getAggiornati() {
+            return Collections.unmodifiableList(aggiornati);
+        }
+
+        /** @return Conteggi del confronto: aggiornati e importati vanno contati da chi applica le differenze. */
+        public RiepilogoImportazione getRiepilogo() {
+            return riepilogo;
+        }
+    }
+
+    private SincronizzazioneAnagrafica() {
+    }
+
+    /**
+     * @brief Legge l'elenco e lo confronta con l'anagrafica.
+     * @param sorgente Elenco CSV; non viene chiuso.
+     * @param esistente Restituisce l'utente con la matricola indicata, o null (un indice hash dell'anagrafica).
+     * @return Le differenze; gli studenti invariati e le righe non valide sono già contati nel riepilogo.
+     * @throws IOException Se il file non può essere letto.
+     */
+    public static Differenze confronta(Reader sorgente, Function<String, Utente> esistente) throws IOException {
+        LettoreCsv lettore = new LettoreCsv(sorgente);
+        Differenze differenze = new Differenze();
+        Set<String> visti = new HashSet<>();
+        boolean primo = true;
+        List<String> campi;
+        while ((campi = lettore.prossimo()) != null) {
+            if (primo) {
+                primo = false;
+                if (campi.get(0).trim().equalsIgnoreCase("matricola")) continue;
+            }
+            Utente letto;
+            try {
+                if (campi.size() < 4) {
+                    throw new IllegalArgumentException("Attesi 4 campi (matricola, nome, cognome, email), trovati " + campi.size() + ".");
+                }
+                letto = new Utente(campi.get(1).trim(), campi.get(2).trim(), campi.get(0).trim(), campi.get(3).trim());
+            } catch (IllegalArgumentException e) {
+                differenze.riepilogo.scartato(lettore.getRigaRecord(), e.getMessage());
+                continue;
+            }
+            if (!visti.add(letto.getMatricola())) {
+                differenze.riepilogo.scartato(lettore.getRigaRecord(), "Matricola ripetuta nell'elenco: " + letto.getMatricola() + ".");
+                continue;
+            }
+            Utente presente = esistente.apply(letto.getMatricola());
+            if (presente == null) {
+                differenze.nuovi.add(letto);
+            } else if (isDiverso(presente, letto)) {
+                differenze.aggiornati.add(letto);
+            } else {
+                differenze.riepilogo.duplicato();
+            }
+        }
+        return differenze;
+    }
+
+    /**
+     * @brief Copia nome, cognome ed email sull'utente in anagrafica, solo se cambiati.
+     * @param presente Utente in anagrafica.
+     * @param letto Stesso utente come appare nell'elenco.
+     * @return true se l'utente è stato modificato (va registrato).
+     */
+    public static boolean aggiorna(Utente presente, Utente letto) {
+        if (!isDiverso(presente, letto)) return false;
+        if (!presente.getNome().equals(letto.getNome())) presente.setNome(letto.getNome());
+        if (!presente.getCognome().equals(letto.getCognome())) presente.setCognome(letto.getCognome());
+        if (!presente.getEmail().equals(letto.getEmail())) presente.setEmail(letto.getEmail());
+        return true;
+    }
+
+    private static boolean isDiverso(Utente presente, Utente letto) {
+        return !presente.getNome().equals(letto.getNome())
+                || !presente.getCognome().equals(letto.getCognome())
+                || !presente.getEmail().equals(letto.getEmail());
+    }
+}
@@ -0,0 +1,270 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+/**
+ * @brief Lettura e scrittura dello snapshot completo dell'archivio.
+ * * @details
+ * **Formato:**
+ * `[intestazione CodecRecord][long seqJournal]`
+ * `[indice: per ogni Sezione (long offset, long lunghezza, int numRecord)][int crc]`
+ * `[sezione LIBRI][sezione UTENTI][sezione PRESTITI]`
+ * * Il CRC32 finale copre intestazione e indice; ogni blocco ha il proprio CRC32.
+ * Un file danneggiato viene quindi riconosciuto durante la normale lettura, senza
+ * una passata di validazione separata.
+ * * I blocchi possono essere compressi (vedi {@link BlocchiSezione}): la scelta avviene in
+ * scrittura e il lettore riconosce da solo i blocchi compressi.
+ * * L'indice in testa permette di leggere ogni sezione indipendentemente dalle altre
+ * (es. solo il catalogo). Ogni sezione è divisa in blocchi ({@link BlocchiSezione})
+ * che vengono decodificati in parallelo: libri e utenti sono letti contemporaneamente
+ * e i prestiti, che contengono solo chiavi esterne, vengono ricollegati a libri e
+ * utenti da {@link MappaIdentita} quando entrambe le sezioni sono disponibili.
+ * * L'archivio salvato con la serializzazione Java dalla prima versione del programma
+ * viene letto da {@link #leggiArchivioPrecedente}, solo per convertirlo.
+ */
+public final class SnapshotArchivio {
+
+    private static final int DIMENSIONE_BUFFER = 1 << 16;
+    private static final int DIMENSIONE_VOCE_INDICE = 8 + 8 + 4;
+    private static final int DIMENSIONE_PREAMBOLO = 4 + 2 + 8; // intestazione + seqJournal
+    private static final int DIMENSIONE_INDICE = Sezione.values().length * DIMENSIONE_VOCE_INDICE;
+
+    private SnapshotArchivio() {
+    }
+
+    // --- SCRITTURA ---
+
+    /**
+     * @brief Scrive lo snapshot completo (non compresso) sul file indicato e lo forza su disco (fsync).
+     * @param file File di destinazione.
+     * @param libri Libri da salvare.
+     * @param utenti Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @param seqJournal Sequenza dell'ultima modifica del journal inclusa nei dati.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scrivi(File file, List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti, long seqJournal) throws IOException {
+        scrivi(file, libri, utenti, prestiti, seqJournal, false);
+    }
+
+    /**
+     * @brief Scrive lo snapshot completo sul file indicato e lo forza su disco (fsync).
+     * @param file File di destinazione.
+     * @param libri Libri da salvare.
+     * @param utenti Utenti da salvare.
+     * @param prestiti Prestiti da salvare.
+     * @param seqJournal Sequenza dell'ultima modifica del journal inclusa nei dati.
+     * @param compressione true per comprimere i blocchi (file più piccolo, più lavoro per la CPU).
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public static void scrivi(File file, List<Libro> libri, List<Utente> utenti, List<Prestito> prestiti, long seqJournal,
+                              boolean compressione) throws IOException {
+        Sezione[] sezioni = Sezione.values();
+        long[] offset = new long[sezioni.length];
+        long[] lunghezza = new long[sezioni.length];
+        int[] numRecord = {libri.size(), utenti.size(), prestiti.size()};
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, DIMENSIONE_BUFFER))) {
+            FileChannel canale = fos.getChannel();
+
+            CodecRecord.scriviIntestazione(out);
+            out.writeLong(seqJournal);
+            // Segnaposto dell'indice e del suo CRC: vengono compilati quando le sezioni sono scritte
+            out.write(new byte[DIMENSIONE_INDICE + 4]);
+
+            for (Sezione sezione : sezioni) {
+                out.flush();
+                offset[sezione.ordinal()] = canale.position();
+                switch (sezione) {
+                    case LIBRI:
+                        BlocchiSezione.scrivi(out, libri, CodecRecord::scriviLibro, compressione);
+                        break;
+                    case UTENTI:
+                        BlocchiSezione.scrivi(out, utenti, CodecRecord::scriviUtente, compressione);
+                        break;
+                    case PRESTITI:
+                        BlocchiSezione.scrivi(out, prestiti, CodecRecord::scriviPrestito, compressione);
+                        break;
+                }
+                out.flush();
+                lunghezza[sezione.ordinal()] = canale.position() - offset[sezione.ordinal()];
+            }
+
+            ByteBuffer preambolo = ByteBuffer.allocate(DIMENSIONE_PREAMBOLO + DIMENSIONE_INDICE + 4);
+            preambolo.putInt(CodecRecord.MAGIC).putShort(CodecRecord.VERSIONE).putLong(seqJournal);
+            for (int i = 0; i < sezioni.length; i++) {
+                preambolo.putLong(offset[i]).putLong(lunghezza[i]).putInt(numRecord[i]);
+            }
+            preambolo.putInt((int) crc(preambolo.array(), DIMENSIONE_PREAMBOLO + DIMENSIONE_INDICE));
+            preambolo.flip();
+            while (preambolo.hasRemaining()) {
+                canale.write(preambolo, preambolo.position());
+            }
+            canale.force(true);
+        }
+    }
+
+    // --- LETTURA ---
+
+    /**
+     * @brief Legge lo snapshot dal file indicato.
+     * * I blocchi di tutte e tre le sezioni vengono decodificati in parallelo; i prestiti
+     * vengono poi ricollegati a libri e utenti in un'unica passata tramite {@link MappaIdentita}.
+     * @param file File da leggere.
+     * @return I dati letti.
+     * @throws IOException Se il file non è leggibile o non è valido.
+     */
+    public static ContenutoArchivio leggi(File file) throws IOException {
+        List<Libro> libri;
+        List<Utente> utenti;
+        List<ChiavePrestito> chiavi;
+        Indice indice;
+        try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            indice = leggiIndice(canale);
+            // Avvio tutte le sezioni prima di attenderne una
+            List<ForkJoinTask<List<Libro>>> taskLibri = avvia(canale, indice, Sezione.LIBRI, CodecRecord::leggiLibro);
+            List<ForkJoinTask<List<Utente>>> taskUtenti = avvia(canale, indice, Sezione.UTENTI, CodecRecord::leggiUtente);
+            List<ForkJoinTask<List<ChiavePrestito>>> taskPrestiti = avvia(canale, indice, Sezione.PRESTITI, CodecRecord::leggiChiavePrestito);
+            libri = BlocchiSezione.raccogli(taskLibri);
+            utenti = BlocchiSezione.raccogli(taskUtenti);
+            chiavi = BlocchiSezione.raccogli(taskPrestiti);
+        }
+
+        MappaIdentita mappa = new MappaIdentita(libri, utenti);
+        List<Prestito> prestiti = mappa.collegaTutti(chiavi);
+        return new ContenutoArchivio(libri, utenti, prestiti, indice.seqJournal);
+    }
+
+    /**
+     * @brief Legge solo la sezione dei libri, senza toccare utenti e prestiti.
+     * @param file File dello snapshot.
+     * @return I libri salvati.
+     * @throws IOException Se il file non è leggibile o non è valido.
+     */
+    public static List<Libro> leggiLibri(File file) throws IOException {
+        return leggiSezione(file, Sezione.LIBRI, CodecRecord::leggiLibro);
+    }
+
+    /**
+     * @brief Legge solo la sezione degli utenti (senza prestiti attivi collegati).
+     * @param file File dello snapshot.
+     * @return Gli utenti salvati.
+     * @throws IOException Se il file non è leggibile o non è valido.
+     */
+    public static List<Utente> leggiUtenti(File file) throws IOException {
+        return leggiSezione(file, Sezione.UTENTI, CodecRecord::leggiUtente);
+    }
+
+    /**
+     * @brief Legge solo la sezione dei prestiti, nella forma di chiavi esterne.
+     * @param file File dello snapshot.
+     * @return Le chiavi dei prestiti salvati.
+     * @throws IOException Se il file non è leggibile o non è valido.
+     */
+    public static List<ChiavePrestito> leggiChiaviPrestiti(File file) throws IOException {
+        return leggiSezione(file, Sezione.PRESTITI, CodecRecord::leggiChiavePrestito);
+    }
+
+    /**
+     * @brief Legge solo la sequenza del journal a cui lo snapshot è aggiornato.
+     * @param file File dello snapshot.
+     * @return Sequenza dell'ultimo record del journal incluso nello snapshot.
+     * @throws IOException Se il file non è leggibile o l'indice è danneggiato.
+     */
+    public static long leggiSeqJournal(File file) throws IOException {
+        try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return leggiIndice(canale).seqJournal;
+        }
+    }
+
+    /**
+     * @brief Legge l'archivio scritto dalla prima versione del programma, per convertirlo.
+     * * Il file contiene le tre liste di libri, utenti e prestiti scritte in quest'ordine con
+     * la serializzazione Java; non essendoci un journal, la sequenza restituita è 0.
+     * @param file File da leggere (es. {@code database_biblioteca.dat}).
+     * @return I dati letti.
+     * @throws IOException Se il file non è leggibile o non è valido.
+     */
+    @SuppressWarnings("unchecked")
+    public static ContenutoArchivio leggiArchivioPrecedente(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), DIMENSIONE_BUFFER))) {
+            // Leggiamo nell'ordine esatto di scrittura
+            List<Libro> libri = (List<Libro>) ois.readObject();
+            List<Utente> utenti = (List<Utente>) ois.readObject();
+            List<Prestito> prestiti = (List<Prestito>) ois.readObject();
+            return new ContenutoArchivio(libri, utenti, prestiti, 0);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Classe non trovata nel file: " + e.getMessage(), e);
+        }
+    }
+
+    // --- METODI PRIVATI ---
+
+    /**
+     * Posizione e dimensione delle sezioni lette dal preambolo del file.
+     */
+    private static class Indice {
+        long seqJournal;
+        final long[] offset = new long[Sezione.values().length];
+        final long[] lunghezza = new long[Sezione.values().length];
+        final int[] numRecord = new int[Sezione.values().length];
+    }
+
+    private static Indice leggiIndice(FileChannel canale) throws IOException {
+        // Lo stream sposta la posizione del canale: le letture dei blocchi sono posizionali e non ne risentono
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(canale.position(0))));
+        Indice indice = new Indice();
+        CodecRecord.leggiIntestazione(in);
+        indice.seqJournal = in.readLong();
+        for (Sezione sezione : Sezione.values()) {
+            indice.offset[sezione.ordinal()] = in.readLong();
+            indice.lunghezza[sezione.ordinal()] = in.readLong();
+            indice.numRecord[sezione.ordinal()] = in.readInt();
+        }
+        ByteBuffer atteso = ByteBuffer.allocate(DIMENSIONE_PREAMBOLO + DIMENSIONE_INDICE);
+        atteso.putInt(CodecRecord.MAGIC).putShort(CodecRecord.VERSIONE).putLong(indice.seqJournal);
+        for (int i = 0; i < Sezione.values().length; i++) {
+            atteso.putLong(indice.offset[i]).putLong(indice.lunghezza[i]).putInt(indice.numRecord[i]);
+        }
+        if ((int) crc(atteso.array(), atteso.capacity()) != in.readInt()) {
+            throw new IOException("Checksum errato nell'indice dello snapshot.");
+        }
+        for (int i = 0; i < Sezione.values().length; i++) {
+            if (indice.offset[i] < 0 || indice.lunghezza[i] < 0 || indice.offset[i] + indice.lunghezza[i] > canale.size()) {
+                throw new IOException("Indice dello snapshot non valido (file troncato?).");
+            }
+        }
+        return indice;
+    }
+
+    private static <T> List<ForkJoinTask<List<T>>> avvia(FileChannel canale, Indice indice, Sezione sezione,
+                                                          BlocchiSezione.Decodificatore<T> decodificatore) throws IOException {
+        int i = sezione.ordinal();
+        List<BlocchiSezione.Blocco> blocchi = BlocchiSezione.leggiTabella(canale, indice.offset[i], indice.lunghezza[i]);
+        return BlocchiSezione.avvia(canale, blocchi, decodificatore);
+    }
+
+    private static <T> List<T> leggiSezione(File file, Sezione sezione, BlocchiSezione.Decodificatore<T> decodificatore) throws IOException {
+        try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return BlocchiSezione.raccogli(avvia(canale, leggiIndice(canale), sezione, decodificatore));
+        }
+    }
+
+    private static long crc(byte[] dati, int lunghezza) {
+        CRC32 crc = new CRC32();
+        crc.update(dati, 0, lunghezza);
+        return crc.getValue();
+    }
+}
@@ -1,10 +1,13 @@
 package it.unisa.biblioteca.view;
 
 import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -19,7 +22,9 @@ import javafx.scene.text.FontWeight;
  * Estende `BorderPane` per organizzare il layout in tre aree distinte:
  * - **TOP**: Il titolo dell'applicazione.
  * - **CENTER**: I pulsanti di navigazione principali (Libri, Utenti, Prestiti) disposti verticalmente.
- * - **BOTTOM**: I pulsanti di utilità (Info, Esci) allineati a destra.
+ * - **BOTTOM**: I pulsanti di utilità (Info, Esporta, Esci) allineati a destra.
+ * * Durante il caricamento dell'archivio sotto i pulsanti compare un indicatore di avanzamento
+ * e i pulsanti Libri, Utenti e Prestiti restano disabilitati.
  * * @details
  * **Design Responsive:**
  * La classe implementa una logica di ridimensionamento dinamico tramite le `Property` di JavaFX.
@@ -35,10 +40,17 @@ public class HomeView extends BorderPane {
 
     // Pulsanti Utility (Basso Destra)
     private Button btnInfo = new Button("ℹ Info");
+    private Button btnEsporta = new Button("⇩ Esporta");
     private Button btnEsci = new Button("⏻ Esci");
 
     private Label title = new Label("GESTIONALE BIBLIOTECA");
 
+    // Indicatore del caricamento dell'archivio in background
+    private ProgressIndicator indicatoreCaricamento = new ProgressIndicator();
+    private Label lblCaricamento = new Label("Caricamento archivio in corso...");
+    private final BooleanProperty caricamentoInCorso = new SimpleBooleanProperty(false);
+    private final BooleanProperty soloCatalogo = new SimpleBooleanProperty(false);
+
     /**
      * @brief Costruttore della HomeView.
      * * Inizializza l'interfaccia grafica:
@@ -81,16 +93,30 @@ public class HomeView extends BorderPane {
         styleMainButton(btnUtenti, "#e67e22"); // Arancio
         styleMainButton(btnPrestiti, "#27ae60"); // Verde
 
+        // Indicatore di caricamento: visibile (e i pulsanti disabilitati) finché i dati non sono pronti
+        HBox boxCaricamento = new HBox(10, indicatoreCaricamento, lblCaricamento);
+        boxCaricamento.setAlignment(Pos.CENTER);
+        indicatoreCaricamento.setPrefSize(30, 30);
+        lblCaricamento.setStyle("-fx-font-size: 16px; -fx-text-fill: #2c3e50;");
+        boxCaricamento.visibleProperty().bind(caricamentoInCorso);
+        boxCaricamento.managedProperty().bind(caricamentoInCorso);
+        centerBox.getChildren().add(boxCaricamento);
+        btnLibri.disableProperty().bind(caricamentoInCorso);
+        btnUtenti.disableProperty().bind(caricamentoInCorso.or(soloCatalogo));
+        btnPrestiti.disableProperty().bind(caricamentoInCorso.or(soloCatalogo));
+
         this.setCenter(centerBox);
 
 
         // --- ZONA BASSA (Info & Esci a Destra) ---
         HBox bottomBox = new HBox(15); // 15px spazio tra i due bottoncini
         bottomBox.setAlignment(Pos.BOTTOM_RIGHT);
-        bottomBox.getChildren().addAll(btnInfo, btnEsci);
+        bottomBox.getChildren().addAll(btnInfo, btnEsporta, btnEsci);
 
         // Stile bottoni piccoli
         styleUtilityButton(btnInfo, "#7f8c8d"); // Grigio
+        styleUtilityButton(btnEsporta, "#7f8c8d");
+        btnEsporta.disableProperty().bind(caricamentoInCorso.or(soloCatalogo));
         styleUtilityButton(btnEsci, "#c0392b"); // Rosso
 
         this.setBottom(bottomBox);
@@ -153,6 +179,18 @@ public class HomeView extends BorderPane {
     }
 
     // --- GETTERS ---
+    /**
+     * @brief Proprietà che indica se l'archivio è ancora in caricamento.
+     * @return Proprietà a cui il controller può collegare lo stato del caricamento.
+     */
+    public BooleanProperty caricamentoInCorsoProperty() { return caricamentoInCorso; }
+
+    /**
+     * @brief Lascia attivo solo il catalogo (terminale di ricerca): Utenti e Prestiti vengono disabilitati.
+     * @param soloCatalogo true per il terminale di ricerca.
+     */
+    public void setSoloCatalogo(boolean soloCatalogo) { this.soloCatalogo.set(soloCatalogo); }
+
     /**
      * @brief Restituisce il pulsante per la gestione dei Libri.
      * @return Oggetto Button su cui il controller può attaccare l'evento di click.
@@ -177,6 +215,12 @@ public class HomeView extends BorderPane {
      */
     public Button getBtnInfo() { return btnInfo; }
 
+    /**
+     * @brief Restituisce il pulsante Esporta.
+     * @return Oggetto Button per esportare i dati in CSV o JSON lines.
+     */
+    public Button getBtnEsporta() { return btnEsporta; }
+
     /**
      * @brief Restituisce il pulsante Esci.
      * @return Oggetto Button per chiudere l'applicazione.
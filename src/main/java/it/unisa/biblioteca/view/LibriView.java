@@ -20,7 +20,7 @@ import javafx.scene.paint.Color;
  * **Layout:**
  * - **TOP**: Barra di navigazione (Indietro) e Barra di Ricerca (ComboBox + TextField).
  * - **CENTER**: `TableView` contenente i dati dei libri.
- * - **BOTTOM**: Pulsanti operativi (Nuovo, Elimina, +Copie, -Copie).
+ * - **BOTTOM**: Pulsanti operativi (Nuovo, Importa, Elimina, +Copie, -Copie).
  * * **Data Binding:**
  * Le colonne della tabella sono configurate per leggere direttamente le proprietà
  * degli oggetti `Libro`. Campi complessi come la lista autori vengono formattati in stringa.
@@ -34,6 +34,7 @@ public class LibriView extends BorderPane {
     private TableView<Libro> tabella = new TableView<>();
     private Button btnIndietro = new Button("< Indietro");
     private Button btnNuovo = new Button("+ Aggiungi Libro");
+    private Button btnImporta = new Button("Importa...");
     private Button btnElimina = new Button("🗑 Elimina Selezionato"); // <--- NUOVO
     private Button btnPiu = new Button("+ Copie");
     private Button btnMeno = new Button("- Copie");
@@ -139,6 +140,9 @@ public class LibriView extends BorderPane {
         txtRicerca.setPrefWidth(200);
         cmbCriterio.getItems().addAll("Titolo", "ISBN", "Autore", "Anno");
         cmbCriterio.setValue("Titolo");
+        // Per anno si cerca un intervallo, non un testo
+        cmbCriterio.valueProperty().addListener((obs, vecchio, nuovo) -> txtRicerca.setPromptText(
+                "Anno".equals(nuovo) ? "1990, 1990-1999, 2001-03-15..2002-01-31" : "Testo da cercare..."));
 
         HBox searchBar = new HBox(10, new Label("Cerca per:"), cmbCriterio, txtRicerca, btnCerca);
         searchBar.setAlignment(Pos.CENTER_RIGHT);
@@ -152,7 +156,7 @@ public class LibriView extends BorderPane {
         // Ho aggiunto btnElimina e l'ho stilizzato rosso
         btnElimina.setStyle("-fx-background-color: #c0392b; -fx-text-fill: white;");
 
-        HBox bottomBar = new HBox(10, btnNuovo, btnElimina, new Separator(), new Label("Gestione Copie:"), btnPiu, btnMeno);
+        HBox bottomBar = new HBox(10, btnNuovo, btnImporta, btnElimina, new Separator(), new Label("Gestione Copie:"), btnPiu, btnMeno);
         bottomBar.setPadding(new Insets(15,0,0,0));
         bottomBar.setAlignment(Pos.CENTER_LEFT);
 
@@ -180,6 +184,12 @@ public class LibriView extends BorderPane {
      */
     public Button getBtnNuovo() { return btnNuovo; }
 
+    /**
+     * @brief Restituisce il pulsante Importa.
+     * @return Button per importare il catalogo da un file CSV o MARC21.
+     */
+    public Button getBtnImporta() { return btnImporta; }
+
     /**
      * @brief Restituisce il pulsante Elimina.
      * @return Button per rimuovere il libro selezionato.
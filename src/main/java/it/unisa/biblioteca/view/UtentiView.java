@@ -30,6 +30,7 @@ public class UtentiView extends BorderPane {
     private TableView<Utente> tabella = new TableView<>();
     private Button btnIndietro = new Button("< Indietro");
     private Button btnNuovo = new Button("+ Nuovo Utente");
+    private Button btnSincronizza = new Button("Sincronizza elenco...");
     private Button btnElimina = new Button("🗑 Elimina Utente"); // <--- NUOVO
 
     // Ricerca
@@ -129,7 +130,7 @@ public class UtentiView extends BorderPane {
 
         // Bottom Layout
         btnElimina.setStyle("-fx-background-color: #c0392b; -fx-text-fill: white;");
-        HBox bottomBar = new HBox(15, btnNuovo, btnElimina);
+        HBox bottomBar = new HBox(15, btnNuovo, btnSincronizza, btnElimina);
         bottomBar.setPadding(new Insets(15,0,0,0));
 
         this.setTop(topPane);
@@ -149,6 +150,12 @@ public class UtentiView extends BorderPane {
      */
     public Button getBtnNuovo() { return btnNuovo; }
 
+    /**
+     * @brief Restituisce il pulsante Sincronizza.
+     * @return Button per allineare l'anagrafica all'elenco degli studenti della segreteria.
+     */
+    public Button getBtnSincronizza() { return btnSincronizza; }
+
     /**
      * @brief Restituisce il pulsante Elimina.
      * @return Button cancellazione utente selezionato.
@@ -3,6 +3,7 @@ package it.unisa.biblioteca.controller;
 import it.unisa.biblioteca.model.Libro;
 import it.unisa.biblioteca.model.Prestito;
 import it.unisa.biblioteca.model.Utente;
+import it.unisa.biblioteca.persistenza.ArchivioBiblioteca;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.embed.swing.JFXPanel; // TRUCCO PER JAVA 8
@@ -31,7 +32,8 @@ class BibliotecaControllerTest {
     private Stage mockStage;
     private GestoreFile mockGestoreFile;
 
-    private static final String FILE_NAME = "database_biblioteca.dat";
+    // Prefisso di tutti i file dell'archivio (snapshot e journal delle sezioni, backup, blocco, catalogo)
+    private static final String PREFISSO_ARCHIVIO = "database_biblioteca.";
 
 
     @BeforeAll
@@ -41,11 +43,8 @@ class BibliotecaControllerTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        // 1. Pulizia preventiva del file database
-        File dbFile = new File(FILE_NAME);
-        if (dbFile.exists()) {
-            dbFile.delete();
-        }
+        // 1. Pulizia preventiva dei file dell'archivio (altrimenti i journal del test precedente verrebbero riletti)
+        cancellaArchivio();
 
         // 2. Mock dello Stage (La "finestra" finta)
         // Usiamo Mockito per non far aprire finestre vere durante i test
@@ -60,9 +59,14 @@ class BibliotecaControllerTest {
         runOnJavaFXThread(() -> {
             controller = new BibliotecaController(mockStage);
         });
+        // L'archivio viene caricato in background: attendiamo che le liste siano pronte
+        runOnJavaFXThread(() -> controller.attendiCaricamento());
 
         // 4. Inject del Mock GestoreFile
-        // Sostituiamo il gestore file reale con uno finto per controllare i salvataggi
+        // Sostituiamo il gestore file reale con uno finto per controllare i salvataggi,
+        // dopo aver chiuso quello reale (che ha già registrato i dati di prova nei journal)
+        ArchivioBiblioteca archivioReale = getPrivateField(controller, "gestoreFile");
+        archivioReale.chiudi();
         mockGestoreFile = mock(GestoreFile.class);
         setPrivateField(controller, "gestoreFile", mockGestoreFile);
     }
@@ -70,10 +74,7 @@ class BibliotecaControllerTest {
     @AfterEach
     void tearDown() {
         // Pulizia finale
-        File dbFile = new File(FILE_NAME);
-        if (dbFile.exists()) {
-            dbFile.delete();
-        }
+        cancellaArchivio();
     }
 
     @Test
@@ -157,6 +158,18 @@ class BibliotecaControllerTest {
     // UTILITIES
     // --------------------------------------------------------------------------------
 
+    /**
+     * Cancella tutti i file dell'archivio su file nella cartella di lavoro (il database H2 non viene toccato).
+     */
+    private static void cancellaArchivio() {
+        File[] files = new File(".").listFiles((cartella, nome) -> nome.startsWith(PREFISSO_ARCHIVIO)
+                && !nome.endsWith(".mv.db") && !nome.endsWith(".trace.db"));
+        if (files == null) return;
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
     /**
      * Esegue codice nel thread JavaFX e aspetta che finisca.
      * Necessario per interagire con componenti grafici o ObservableList attive.
@@ -0,0 +1,473 @@
+package it.unisa.biblioteca.controller;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import it.unisa.biblioteca.persistenza.CatalogoMappato;
+import it.unisa.biblioteca.persistenza.ModificheRemote;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe GestoreFile.
+ * Verifica che salvataggio e caricamento (snapshot + journal per sezione) restituiscano gli stessi dati.
+ */
+class GestoreFileTest {
+
+    @TempDir
+    Path cartella;
+
+    private File fileDati;
+    private ObservableList<Libro> catalogo;
+    private ObservableList<Utente> anagrafica;
+    private ObservableList<Prestito> prestiti;
+
+    @BeforeEach
+    void setUp() {
+        fileDati = cartella.resolve("test.dat").toFile();
+        catalogo = FXCollections.observableArrayList();
+        anagrafica = FXCollections.observableArrayList();
+        prestiti = FXCollections.observableArrayList();
+
+        Libro libro = new Libro("Effective Java", Arrays.asList("Joshua Bloch"), LocalDate.of(2018, 1, 6), "9780134685991", 2);
+        Utente utente = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        Prestito prestito = new Prestito(utente, libro, LocalDate.of(2024, 5, 10));
+        utente.aggiungiPrestito(prestito);
+        libro.decrementaDisponibilita();
+
+        catalogo.add(libro);
+        anagrafica.add(utente);
+        prestiti.add(prestito);
+    }
+
+    @Test
+    @DisplayName("Snapshot: i dati salvati vengono ricaricati identici")
+    void testSalvataggioECaricamento() {
+        new GestoreFile(fileDati).salvaTutto(catalogo, anagrafica, prestiti);
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+
+        assertEquals(catalogo, libriLetti);
+        assertEquals(anagrafica, utentiLetti);
+        assertEquals(1, prestitiLetti.size());
+        assertEquals(1, libriLetti.get(0).getDisponibilita());
+        // Il prestito deve puntare agli stessi oggetti presenti nelle liste
+        assertSame(libriLetti.get(0), prestitiLetti.get(0).getLibro());
+        assertSame(utentiLetti.get(0), prestitiLetti.get(0).getUtente());
+    }
+
+    @Test
+    @DisplayName("Journal: le modifiche registrate dopo lo snapshot vengono riapplicate")
+    void testModificheDalJournal() {
+        // Archivio abbastanza grande da rendere conveniente il solo journal
+        for (int i = 0; i < 100; i++) {
+            catalogo.add(new Libro("Volume " + i, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 1));
+        }
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+
+        // Sessione di lavoro: modifico un libro, aggiungo un utente e chiudo il prestito
+        Libro libro = catalogo.get(0);
+        libro.setTitolo("Effective Java (3rd Edition)");
+        libro.incrementaDisponibilita();
+        gestore.registraLibro(libro);
+
+        Utente nuovo = new Utente("Paolo", "Gallo", "0612700003", "paolo.gallo@studenti.unisa.it");
+        gestore.registraUtente(nuovo);
+        gestore.registraRimozionePrestito(prestiti.get(0));
+
+        File fileLibri = cartella.resolve("test.libri.dat").toFile();
+        long dimensioneSnapshot = fileLibri.length();
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        assertEquals(dimensioneSnapshot, fileLibri.length(), "Con poche modifiche lo snapshot non va riscritto");
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+
+        assertEquals("Effective Java (3rd Edition)", libriLetti.get(0).getTitolo());
+        assertEquals(2, libriLetti.get(0).getDisponibilita());
+        assertEquals(101, libriLetti.size());
+        assertEquals(2, utentiLetti.size());
+        assertEquals("Gallo", utentiLetti.get(1).getCognome());
+        assertTrue(prestitiLetti.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Compattazione: il journal viene ripiegato nello snapshot e riletto con le metriche")
+    void testCompattazione() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            catalogo.add(new Libro("Volume " + i, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 1));
+        }
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+
+        // Modifiche sufficienti a superare un quarto dello snapshot, ma non lo snapshot intero
+        for (int i = 0; i < 40; i++) {
+            catalogo.get(i).setTitolo("Volume corretto " + i);
+            gestore.registraLibro(catalogo.get(i));
+        }
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        File journalLibri = cartella.resolve("test.libri.journal").toFile();
+        assertFalse(cartella.resolve("test.libri.bak").toFile().exists(), "Al salvataggio basta il journal");
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        GestoreFile riletto = new GestoreFile(fileDati);
+        riletto.caricaTutto(libriLetti, FXCollections.observableArrayList(), FXCollections.observableArrayList());
+        riletto.chiudi();
+        assertEquals(40, riletto.getRecordRiletti());
+        assertTrue(riletto.getDurataReplayMs() >= 0);
+
+        long dimensioneJournal = journalLibri.length();
+        gestore.compattaInBackground(catalogo, anagrafica, prestiti).get();
+        assertTrue(cartella.resolve("test.libri.bak").toFile().exists(), "La sezione dei libri va riscritta");
+        assertTrue(journalLibri.length() < dimensioneJournal);
+        // Le sezioni con il journal vuoto non vengono toccate
+        assertFalse(cartella.resolve("test.utenti.bak").toFile().exists());
+        gestore.chiudi();
+
+        libriLetti.clear();
+        riletto = new GestoreFile(fileDati);
+        riletto.caricaTutto(libriLetti, FXCollections.observableArrayList(), FXCollections.observableArrayList());
+        assertEquals(0, riletto.getRecordRiletti());
+        assertEquals("Volume corretto 39", libriLetti.get(39).getTitolo());
+    }
+
+    @Test
+    @DisplayName("Modifiche: i record modificati e non registrati vengono salvati nel journal")
+    void testModificheNonRegistrate() {
+        for (int i = 0; i < 100; i++) {
+            catalogo.add(new Libro("Volume " + i, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 1));
+        }
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        gestore = new GestoreFile(fileDati);
+        gestore.caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+
+        // Modifiche dirette ai campi, senza registraLibro/registraUtente
+        libriLetti.get(5).setTitolo("Titolo corretto");
+        utentiLetti.get(0).setEmail("anna.verdi@unisa.it");
+        File journalLibri = cartella.resolve("test.libri.journal").toFile();
+        long dimensioneSnapshot = cartella.resolve("test.libri.dat").toFile().length();
+        gestore.salvaTutto(libriLetti, utentiLetti, prestitiLetti);
+        long dimensioneJournal = journalLibri.length();
+        // Una sola modifica al catalogo: il journal contiene un record, lo snapshot non viene riscritto
+        assertTrue(dimensioneJournal > 0 && dimensioneJournal < dimensioneSnapshot / 10);
+        assertFalse(cartella.resolve("test.libri.bak").toFile().exists());
+
+        // Senza altre modifiche il salvataggio successivo non scrive nulla
+        gestore.salvaTutto(libriLetti, utentiLetti, prestitiLetti);
+        assertEquals(dimensioneJournal, journalLibri.length());
+        gestore.chiudi();
+
+        ObservableList<Libro> libriRiletti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiRiletti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriRiletti, utentiRiletti, FXCollections.observableArrayList());
+        assertEquals("Titolo corretto", libriRiletti.get(5).getTitolo());
+        assertEquals("anna.verdi@unisa.it", utentiRiletti.get(0).getEmail());
+    }
+
+    @Test
+    @DisplayName("Background: le modifiche successive alla copia finiscono nel journal")
+    void testSalvataggioInBackground() throws Exception {
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.registraLibro(catalogo.get(0));
+        gestore.registraUtente(anagrafica.get(0));
+        assertEquals(2, gestore.getModificheNonSalvate());
+
+        Future<?> salvataggio = gestore.salvaInBackground(catalogo, anagrafica, prestiti);
+        assertEquals(0, gestore.getModificheNonSalvate());
+
+        // Modifica fatta mentre il salvataggio è (forse) ancora in corso
+        Utente nuovo = new Utente("Paolo", "Gallo", "0612700003", "paolo.gallo@studenti.unisa.it");
+        anagrafica.add(nuovo);
+        gestore.registraUtente(nuovo);
+        salvataggio.get();
+        gestore.chiudi();
+
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(FXCollections.observableArrayList(), utentiLetti, FXCollections.observableArrayList());
+        assertEquals(anagrafica, utentiLetti);
+    }
+
+    @Test
+    @DisplayName("Ripristino: con lo snapshot danneggiato si riparte dal backup e dai journal")
+    void testRipristinoDaBackup() throws IOException {
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+
+        // Tante modifiche da rendere il journal più grande dello snapshot: il prossimo salvataggio lo riscrive
+        Libro libro = catalogo.get(0);
+        for (int i = 0; i < 20; i++) {
+            libro.setTitolo("Effective Java, revisione " + i);
+            gestore.registraLibro(libro);
+        }
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        assertTrue(cartella.resolve("test.libri.bak").toFile().exists());
+
+        // Modifica successiva al secondo snapshot, solo nel journal
+        Utente nuovo = new Utente("Paolo", "Gallo", "0612700003", "paolo.gallo@studenti.unisa.it");
+        anagrafica.add(nuovo);
+        gestore.registraUtente(nuovo);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        gestore.chiudi();
+
+        // Danneggio un byte in fondo ai dati dei libri (dopo ci sono solo le sezioni vuote, 4 byte ciascuna)
+        try (RandomAccessFile raf = new RandomAccessFile(cartella.resolve("test.libri.dat").toFile(), "rw")) {
+            raf.seek(raf.length() - 11);
+            int valore = raf.read();
+            raf.seek(raf.length() - 11);
+            raf.write(valore ^ 0xFF);
+        }
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+
+        assertEquals("Effective Java, revisione 19", libriLetti.get(0).getTitolo());
+        assertEquals(anagrafica, utentiLetti);
+        assertEquals(1, prestitiLetti.size());
+        assertTrue(cartella.resolve("test.libri.dat.danneggiato").toFile().exists());
+    }
+
+    @Test
+    @DisplayName("Journal: su un archivio nuovo le modifiche vengono riapplicate anche senza snapshot")
+    void testJournalSenzaSnapshot() {
+        // Registrazioni senza alcun salvataggio, poi crash (nessuna chiusura)
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.registraLibro(catalogo.get(0));
+        gestore.registraUtente(anagrafica.get(0));
+        gestore.registraPrestito(prestiti.get(0));
+        gestore.registraRimozionePrestito(prestiti.get(0));
+        gestore.chiudi();
+        assertFalse(cartella.resolve("test.libri.dat").toFile().exists());
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+
+        assertEquals(catalogo, libriLetti);
+        assertEquals(anagrafica, utentiLetti);
+        // Il prestito restituito non conta più nel limite dell'utente
+        assertTrue(prestitiLetti.isEmpty());
+        assertTrue(utentiLetti.get(0).getPrestitiAttivi().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Journal: con snapshot e backup danneggiati il journal viene messo da parte, non cancellato")
+    void testJournalSenzaSnapshotValido() throws IOException {
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        Libro libro = catalogo.get(0);
+        libro.setTitolo("Effective Java, terza edizione");
+        gestore.registraLibro(libro);
+        gestore.chiudi();
+        Files.write(cartella.resolve("test.libri.dat"), new byte[] {1, 2, 3});
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, FXCollections.observableArrayList(), FXCollections.observableArrayList());
+
+        assertTrue(libriLetti.isEmpty());
+        assertFalse(cartella.resolve("test.libri.journal").toFile().exists());
+        assertTrue(cartella.resolve("test.libri.journal.danneggiato").toFile().exists());
+        assertTrue(cartella.resolve("test.libri.dat.danneggiato").toFile().exists());
+    }
+
+    @Test
+    @DisplayName("Sezioni: un salvataggio riscrive solo le sezioni modificate")
+    void testSalvataggioPerSezione() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            catalogo.add(new Libro("Volume " + i, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 1));
+        }
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        byte[] libriPrima = Files.readAllBytes(cartella.resolve("test.libri.dat"));
+        byte[] utentiPrima = Files.readAllBytes(cartella.resolve("test.utenti.dat"));
+
+        // Giornata tipo: molti prestiti aperti e chiusi, nessuna modifica a libri e utenti
+        Utente utente = anagrafica.get(0);
+        for (int i = 0; i < 30; i++) {
+            Prestito p = new Prestito(utente, catalogo.get(i + 1), LocalDate.of(2024, 6, 1));
+            prestiti.add(p);
+            gestore.registraPrestito(p);
+            prestiti.remove(p);
+            gestore.registraRimozionePrestito(p);
+        }
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        gestore.chiudi();
+
+        assertTrue(cartella.resolve("test.prestiti.bak").toFile().exists(), "La sezione dei prestiti va riscritta");
+        assertArrayEquals(libriPrima, Files.readAllBytes(cartella.resolve("test.libri.dat")));
+        assertArrayEquals(utentiPrima, Files.readAllBytes(cartella.resolve("test.utenti.dat")));
+        assertFalse(cartella.resolve("test.libri.bak").toFile().exists());
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(libriLetti, FXCollections.observableArrayList(), prestitiLetti);
+        assertEquals(101, libriLetti.size());
+        assertEquals(1, prestitiLetti.size());
+    }
+
+    @Test
+    @DisplayName("Catalogo condiviso: pubblicato al salvataggio quando i libri cambiano")
+    void testPubblicazioneCatalogo() {
+        GestoreFile gestore = new GestoreFile(fileDati, false, true);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        File fileCatalogo = cartella.resolve("test.catalogo").toFile();
+        CatalogoMappato mappato = new CatalogoMappato(fileCatalogo);
+        assertEquals(1, mappato.conta());
+
+        Libro libro = catalogo.get(0);
+        libro.incrementaDisponibilita();
+        gestore.registraLibro(libro);
+        gestore.salvaTutto(catalogo, anagrafica, prestiti);
+        gestore.chiudi();
+
+        assertTrue(mappato.aggiorna());
+        assertEquals(2, mappato.trova(libro.getIsbn()).get().getDisponibilita());
+        mappato.close();
+    }
+
+    @Test
+    @DisplayName("Postazioni condivise: le modifiche si propagano, quelle concorrenti si fondono o vanno in conflitto")
+    void testPostazioniCondivise() throws Exception {
+        new GestoreFile(fileDati).salvaTutto(catalogo, anagrafica, prestiti);
+        GestoreFile postazioneA = new GestoreFile(fileDati, false, false, true);
+        GestoreFile postazioneB = new GestoreFile(fileDati, false, false, true);
+        ObservableList<Libro> libriA = FXCollections.observableArrayList();
+        ObservableList<Libro> libriB = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiB = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiB = FXCollections.observableArrayList();
+        postazioneA.caricaTutto(libriA, FXCollections.observableArrayList(), FXCollections.observableArrayList());
+        postazioneB.caricaTutto(libriB, utentiB, prestitiB);
+        List<ModificheRemote> ricevute = new ArrayList<>();
+        postazioneB.setAscoltatoreModificheRemote(ricevute::add, Runnable::run);
+
+        // Un libro inserito da A arriva a B
+        Libro libroA = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        libriA.add(libroA);
+        postazioneA.inGruppo(() -> postazioneA.registraLibro(libroA)).get();
+        postazioneB.sincronizza().get();
+        Libro libroB = ricevute.get(0).getLibriAggiunti().get(0);
+        libriB.add(libroB);
+        assertEquals("Clean Code", libroB.getTitolo());
+
+        // Copie prestate da entrambe senza essersi sincronizzate: la disponibilità si somma
+        libroA.decrementaDisponibilita();
+        postazioneA.inGruppo(() -> postazioneA.registraLibro(libroA)).get();
+        libroB.decrementaDisponibilita();
+        postazioneB.inGruppo(() -> postazioneB.registraLibro(libroB)).get();
+        assertEquals(1, libroB.getDisponibilita());
+        postazioneA.sincronizza().get();
+        assertEquals(1, libroA.getDisponibilita());
+
+        // Stesso campo cambiato da entrambe: resta la prima scrittura e B viene avvisata
+        libroA.setTitolo("Clean Code (2a edizione)");
+        postazioneA.inGruppo(() -> postazioneA.registraLibro(libroA)).get();
+        libroB.setTitolo("Clean Code (ristampa)");
+        postazioneB.inGruppo(() -> postazioneB.registraLibro(libroB)).get();
+        assertEquals("Clean Code (2a edizione)", libroB.getTitolo());
+        assertFalse(ricevute.get(ricevute.size() - 1).getConflitti().isEmpty());
+
+        // L'ultima copia prestata da entrambe: la seconda viene rifiutata, insieme al suo prestito
+        Utente utenteB = utentiB.get(0);
+        libroA.decrementaDisponibilita();
+        postazioneA.inGruppo(() -> postazioneA.registraLibro(libroA)).get();
+        libroB.decrementaDisponibilita();
+        Prestito prestitoB = new Prestito(utenteB, libroB, LocalDate.of(2024, 5, 12));
+        utenteB.aggiungiPrestito(prestitoB);
+        int prestitiUtente = utenteB.getPrestitiAttivi().size();
+        ExecutionException rifiuto = assertThrows(ExecutionException.class, () -> postazioneB.inGruppo(() -> {
+            postazioneB.registraLibro(libroB);
+            postazioneB.registraPrestito(prestitoB);
+        }).get());
+        assertTrue(rifiuto.getCause() instanceof IllegalStateException);
+        assertEquals(0, libroB.getDisponibilita());
+        assertEquals(prestitiUtente - 1, utenteB.getPrestitiAttivi().size());
+        assertTrue(ricevute.get(ricevute.size() - 1).getPrestitiRimossi().contains(prestitoB));
+
+        // A compatta; B, rimasta indietro, non riscrive lo snapshot con i suoi dati vecchi
+        postazioneA.sincronizza().get();
+        postazioneA.compattaInBackground(libriA, FXCollections.observableArrayList(), FXCollections.observableArrayList()).get();
+        Utente luca = new Utente("Luca", "Bianchi", "0612700003", "luca.bianchi@studenti.unisa.it");
+        postazioneA.inGruppo(() -> postazioneA.registraUtente(luca)).get();
+        postazioneB.compattaInBackground(libriB, utentiB, prestitiB).get();
+        postazioneB.sincronizza().get();
+        assertEquals("Luca", ricevute.get(ricevute.size() - 1).getUtentiAggiunti().get(0).getNome());
+        postazioneA.chiudi();
+        postazioneB.chiudi();
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati, false, false, true).caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+        assertEquals(2, libriLetti.size());
+        assertEquals(2, utentiLetti.size());
+        assertEquals(1, prestitiLetti.size());
+        Libro letto = libriLetti.get(0).getIsbn().equals("9780132350884") ? libriLetti.get(0) : libriLetti.get(1);
+        assertEquals("Clean Code (2a edizione)", letto.getTitolo());
+        assertEquals(0, letto.getDisponibilita());
+    }
+
+    @Test
+    @DisplayName("Conversione: l'archivio della prima versione viene diviso per sezione")
+    void testConversioneFormatoUnico() throws IOException {
+        // Stesso formato della prima versione: le tre liste scritte con la serializzazione Java
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileDati))) {
+            oos.writeObject(new ArrayList<>(catalogo));
+            oos.writeObject(new ArrayList<>(anagrafica));
+            oos.writeObject(new ArrayList<>(prestiti));
+        }
+
+        ObservableList<Libro> libriLetti = FXCollections.observableArrayList();
+        ObservableList<Utente> utentiLetti = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestitiLetti = FXCollections.observableArrayList();
+        GestoreFile gestore = new GestoreFile(fileDati);
+        gestore.caricaTutto(libriLetti, utentiLetti, prestitiLetti);
+        gestore.chiudi();
+
+        assertEquals(catalogo, libriLetti);
+        assertEquals(anagrafica, utentiLetti);
+        assertEquals(1, prestitiLetti.size());
+        assertSame(libriLetti.get(0), prestitiLetti.get(0).getLibro());
+        assertFalse(fileDati.exists());
+        for (String sezione : new String[] {"libri", "utenti", "prestiti"}) {
+            assertTrue(cartella.resolve("test." + sezione + ".dat").toFile().exists());
+        }
+
+        // Riletto dai file delle sezioni
+        ObservableList<Utente> utentiRiletti = FXCollections.observableArrayList();
+        new GestoreFile(fileDati).caricaTutto(FXCollections.observableArrayList(), utentiRiletti, FXCollections.observableArrayList());
+        assertEquals(utentiLetti, utentiRiletti);
+    }
+}
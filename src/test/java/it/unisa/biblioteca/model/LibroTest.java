@@ -228,6 +228,17 @@ class LibroTest {
         });
     }
 
+    @Test
+    @DisplayName("Logica: Impostazione diretta della disponibilità (anche a 0)")
+    void testSetDisponibilita() {
+        Libro l = new Libro("Ok", Collections.singletonList("A"), LocalDate.now(), "123", 5);
+        l.setDisponibilita(0);
+        assertEquals(0, l.getDisponibilita());
+
+        // Valori negativi non ammessi
+        assertThrows(IllegalArgumentException.class, () -> l.setDisponibilita(-1));
+    }
+
     // --- 9. TEST EQUALS & HASHCODE ---
 
     @Test
@@ -251,4 +262,26 @@ class LibroTest {
 
         assertNotEquals(l1, l2);
     }
-}
\ No newline at end of file
+
+    // --- 10. TEST SEQUENZA MODIFICHE ---
+
+    @Test
+    @DisplayName("Modifiche: ogni setter aggiorna la sequenza di modifica")
+    void testSeqModifica() {
+        Libro l = new Libro("Titolo", Collections.singletonList("A"), LocalDate.now(), "ISBN-1", 2);
+        long checkpoint = ContatoreModifiche.ultimo();
+        assertTrue(l.getSeqModifica() <= checkpoint);
+
+        l.setTitolo("Nuovo titolo");
+        assertTrue(l.getSeqModifica() > checkpoint);
+
+        long precedente = l.getSeqModifica();
+        l.decrementaDisponibilita();
+        assertTrue(l.getSeqModifica() > precedente);
+
+        // Un setter rifiutato non conta come modifica
+        precedente = l.getSeqModifica();
+        assertThrows(IllegalArgumentException.class, () -> l.setTitolo(""));
+        assertEquals(precedente, l.getSeqModifica());
+    }
+}
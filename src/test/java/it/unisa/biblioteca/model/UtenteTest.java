@@ -266,5 +266,12 @@ public class UtenteTest {
         assertEquals("Mario", u.getNome());
     }
 
+    @Test
+    public void testSeqModifica() {
+        Utente u = new Utente("Mario", "Rossi", "0123456789", "mario@test.it");
+        long checkpoint = ContatoreModifiche.ultimo();
 
+        u.setEmail("mario.rossi@test.it");
+        assertTrue(u.getSeqModifica() > checkpoint);
+    }
 }
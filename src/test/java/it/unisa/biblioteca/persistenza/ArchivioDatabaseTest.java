@@ -0,0 +1,171 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe ArchivioDatabase.
+ * Verifica la persistenza delle modifiche, le ricerche, l'identità degli oggetti letti
+ * e il caricamento parziale all'avvio.
+ */
+class ArchivioDatabaseTest {
+
+    @TempDir
+    Path cartella;
+
+    private ArchivioDatabase archivio;
+
+    @AfterEach
+    void tearDown() {
+        if (archivio != null) archivio.chiudi();
+    }
+
+    private File base() {
+        return cartella.resolve("test").toFile();
+    }
+
+    private Libro libro(int i) {
+        return new Libro("Volume " + i, Arrays.asList("Autore " + i, "Coautore"), LocalDate.of(2000 + i, 1, 1), String.format("97888%08d", i), 2);
+    }
+
+    private Utente utente(int i) {
+        return new Utente("Nome" + i, "Cognome" + i, String.format("06127%05d", i), "utente" + i + "@studenti.unisa.it");
+    }
+
+    @Test
+    @DisplayName("Persistenza: ogni modifica resta nel database dopo la chiusura")
+    void testPersistenza() {
+        archivio = new ArchivioDatabase(base());
+        Libro l = libro(1);
+        Utente u = utente(1);
+        archivio.registraLibro(l);
+        archivio.registraUtente(u);
+        Prestito p = new Prestito(u, l, LocalDate.of(2024, 5, 1));
+        u.aggiungiPrestito(p);
+        l.decrementaDisponibilita();
+        archivio.registraLibro(l);
+        archivio.registraPrestito(p);
+        archivio.registraLibro(libro(2));
+        archivio.registraRimozioneLibro(libro(2));
+        archivio.chiudi();
+
+        archivio = new ArchivioDatabase(base());
+        assertEquals(1, archivio.libri().conta());
+        Libro letto = archivio.libri().trova(l.getIsbn()).orElse(null);
+        assertNotNull(letto);
+        assertEquals(1, letto.getDisponibilita());
+        assertEquals(Arrays.asList("Autore 1", "Coautore"), letto.getAutori());
+
+        Utente lettoU = archivio.utenti().trova(u.getMatricola()).orElse(null);
+        assertNotNull(lettoU);
+        assertEquals(1, lettoU.getPrestitiAttivi().size());
+        // Stessa istanza ovunque: il prestito punta al libro già letto
+        assertSame(letto, lettoU.getPrestitiAttivi().get(0).getLibro());
+    }
+
+    @Test
+    @DisplayName("Ricerche: per campo, per intervallo e per prestiti di libro/utente")
+    void testRicerche() {
+        archivio = new ArchivioDatabase(base());
+        List<Libro> libri = new ArrayList<>();
+        List<Utente> utenti = new ArrayList<>();
+        List<Prestito> prestiti = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            libri.add(libro(i));
+            utenti.add(utente(i));
+        }
+        prestiti.add(new Prestito(utenti.get(3), libri.get(7), LocalDate.of(2024, 1, 1)));
+        archivio.importa(libri, utenti, prestiti);
+
+        assertEquals(1, archivio.cercaLibri("Titolo", "volume 12").size());
+        assertEquals(20, archivio.cercaLibri("Autore", "COAUTORE").size());
+        List<Libro> pubblicati = archivio.cercaLibriPubblicatiTra(IntervalloDate.leggi("2005-2007"));
+        assertEquals(3, pubblicati.size());
+        assertEquals(LocalDate.of(2005, 1, 1), pubblicati.get(0).getDataPubblicazione());
+        assertEquals(2, archivio.cercaLibriPubblicatiTra(IntervalloDate.leggi("2018..")).size());
+        assertEquals(0, archivio.cercaLibri("Titolo", "%").size());
+        assertEquals(1, archivio.cercaUtenti("Cognome", "cognome19").size());
+        assertEquals(3, archivio.libri().intervallo(libri.get(2).getIsbn(), libri.get(5).getIsbn()).size());
+
+        assertEquals(1, archivio.prestitiDelLibro(libri.get(7).getIsbn()).size());
+        assertEquals(1, archivio.prestitiDellUtente(utenti.get(3).getMatricola()).size());
+        assertTrue(archivio.prestitiDelLibro(libri.get(8).getIsbn()).isEmpty());
+        assertEquals(1, archivio.cercaPrestiti("Utente (Cognome)", "Cognome3").size());
+    }
+
+    @Test
+    @DisplayName("Avvio: vengono caricati solo i prestiti più vicini alla scadenza")
+    void testCaricamentoParziale() {
+        archivio = new ArchivioDatabase(base());
+        List<Libro> libri = new ArrayList<>();
+        List<Utente> utenti = new ArrayList<>();
+        List<Prestito> prestiti = new ArrayList<>();
+        for (int i = 0; i < ArchivioDatabase.LIMITE_CARICAMENTO + 10; i++) {
+            libri.add(libro(i));
+            utenti.add(utente(i));
+            prestiti.add(new Prestito(utenti.get(i), libri.get(i), LocalDate.of(2024, 1, 1).plusDays(i)));
+        }
+        archivio.importa(libri, utenti, prestiti);
+
+        ObservableList<Libro> catalogo = FXCollections.observableArrayList();
+        ObservableList<Utente> anagrafica = FXCollections.observableArrayList();
+        ObservableList<Prestito> caricati = FXCollections.observableArrayList();
+        archivio.caricaTutto(catalogo, anagrafica, caricati);
+
+        assertTrue(archivio.isCaricamentoParziale());
+        assertTrue(catalogo.isEmpty());
+        assertEquals(ArchivioDatabase.LIMITE_CARICAMENTO, caricati.size());
+        assertEquals(LocalDate.of(2024, 1, 1), caricati.get(0).getDataInizio());
+
+        // Il salvataggio delle liste parziali non deve cancellare nulla
+        archivio.salvaTutto(catalogo, anagrafica, caricati);
+        assertEquals(libri.size(), archivio.libri().conta());
+    }
+
+    @Test
+    @DisplayName("Esportazione: le righe lette con il cursore danno gli stessi file delle liste in memoria")
+    void testEsportazione() throws IOException {
+        archivio = new ArchivioDatabase(base());
+        List<Libro> libri = new ArrayList<>();
+        List<Utente> utenti = new ArrayList<>();
+        List<Prestito> prestiti = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            libri.add(libro(i));
+            utenti.add(utente(i));
+        }
+        prestiti.add(new Prestito(utenti.get(1), libri.get(2), LocalDate.of(2024, 1, 1)));
+        archivio.importa(libri, utenti, prestiti);
+
+        for (EsportatoreArchivio.Formato formato : EsportatoreArchivio.Formato.values()) {
+            File dalDatabase = cartella.resolve("db-" + formato).toFile();
+            File dalleListe = cartella.resolve("liste-" + formato).toFile();
+            assertTrue(dalDatabase.mkdir() && dalleListe.mkdir());
+            EsportatoreArchivio esportatore = new EsportatoreArchivio(formato);
+            assertEquals(11, archivio.esporta(esportatore, dalDatabase));
+            esportatore.esporta(dalleListe, libri, utenti, prestiti);
+            for (String sezione : Arrays.asList("libri", "utenti", "prestiti")) {
+                String nome = sezione + formato.getEstensione();
+                assertEquals(Files.readAllLines(new File(dalleListe, nome).toPath()),
+                        Files.readAllLines(new File(dalDatabase, nome).toPath()), nome);
+            }
+        }
+    }
+}
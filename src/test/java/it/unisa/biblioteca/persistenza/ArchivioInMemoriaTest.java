@@ -0,0 +1,99 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per i repository e per il backend in memoria.
+ * Verifica ricerca per chiave, scansione per intervallo, inserimento/aggiornamento,
+ * eliminazione e conteggio delle modifiche non salvate.
+ */
+class ArchivioInMemoriaTest {
+
+    private ArchivioInMemoria archivio;
+
+    @BeforeEach
+    void setUp() {
+        archivio = new ArchivioInMemoria();
+    }
+
+    private Libro libro(String isbn) {
+        return new Libro("Titolo " + isbn, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), isbn, 1);
+    }
+
+    @Test
+    @DisplayName("Repository: ricerca per chiave e aggiornamento")
+    void testRicercaEAggiornamento() {
+        Libro l = libro("9788800000001");
+        archivio.libri().salva(l);
+        assertSame(l, archivio.libri().trova("9788800000001").orElse(null));
+        assertFalse(archivio.libri().trova("9788800000002").isPresent());
+
+        // Stesso ISBN: il libro viene sostituito, non duplicato
+        Libro aggiornato = libro("9788800000001");
+        aggiornato.setTitolo("Nuovo titolo");
+        archivio.libri().salva(aggiornato);
+        assertEquals(1, archivio.libri().conta());
+        assertEquals("Nuovo titolo", archivio.libri().trova("9788800000001").get().getTitolo());
+    }
+
+    @Test
+    @DisplayName("Repository: scansione per intervallo di chiavi")
+    void testIntervallo() {
+        for (int i = 5; i >= 1; i--) archivio.libri().salva(libro("978880000000" + i));
+
+        List<Libro> risultato = archivio.libri().intervallo("9788800000002", "9788800000004");
+        assertEquals(2, risultato.size());
+        assertEquals("9788800000002", risultato.get(0).getIsbn());
+        assertEquals("9788800000003", risultato.get(1).getIsbn());
+
+        assertEquals(5, archivio.libri().intervallo(null, null).size());
+        assertEquals(2, archivio.libri().intervallo("9788800000004", null).size());
+    }
+
+    @Test
+    @DisplayName("Repository: eliminazione e prestiti per chiave composta")
+    void testEliminazione() {
+        Libro l = libro("9788800000001");
+        Utente u = new Utente("Mario", "Rossi", "0612700001", "mario@studenti.unisa.it");
+        Prestito p = new Prestito(u, l, LocalDate.of(2024, 3, 1));
+        archivio.prestiti().salva(p);
+
+        assertSame(p, archivio.prestiti().trova(ChiavePrestito.di(p)).orElse(null));
+        assertTrue(archivio.prestiti().elimina(ChiavePrestito.di(p)));
+        assertFalse(archivio.prestiti().elimina(ChiavePrestito.di(p)));
+        assertEquals(0, archivio.prestiti().conta());
+    }
+
+    @Test
+    @DisplayName("Backend: modifiche contate e azzerate dal salvataggio")
+    void testModificheESalvataggio() {
+        archivio.registraLibro(libro("9788800000001"));
+        archivio.registraLibro(libro("9788800000002"));
+        archivio.registraRimozioneLibro(libro("9788800000001"));
+        assertEquals(3, archivio.getModificheNonSalvate());
+
+        ObservableList<Libro> catalogo = FXCollections.observableArrayList();
+        ObservableList<Utente> anagrafica = FXCollections.observableArrayList();
+        ObservableList<Prestito> prestiti = FXCollections.observableArrayList();
+        archivio.caricaTutto(catalogo, anagrafica, prestiti);
+        assertEquals(1, catalogo.size());
+
+        catalogo.add(libro("9788800000003"));
+        archivio.salvaTutto(catalogo, anagrafica, prestiti);
+        assertEquals(0, archivio.getModificheNonSalvate());
+        assertEquals(2, archivio.libri().conta());
+    }
+}
@@ -0,0 +1,104 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe CatalogoMappato.
+ * Verifica la pubblicazione del catalogo, la ricerca per ISBN e per campo sul file mappato
+ * e la rilettura dopo una nuova pubblicazione.
+ */
+class CatalogoMappatoTest {
+
+    @TempDir
+    Path cartella;
+
+    private File file;
+    private List<Libro> libri;
+    private CatalogoMappato catalogo;
+
+    @BeforeEach
+    void setUp() {
+        file = cartella.resolve("test.catalogo").toFile();
+        libri = new ArrayList<>();
+        // Inseriti in ordine inverso: il catalogo li ordina per ISBN
+        for (int i = 19; i >= 0; i--) {
+            libri.add(new Libro("Volume " + i, Arrays.asList("Autore " + i, "Coautore"), LocalDate.of(2000 + i, 1, 1), String.format("97888%08d", i), 2));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (catalogo != null) catalogo.close();
+    }
+
+    @Test
+    @DisplayName("Catalogo: ricerca per ISBN, per intervallo e per campo")
+    void testRicerche() throws IOException {
+        Libro senzaData = new Libro("Città invisibili", Arrays.asList("Italo Calvino"), null, "9788804668237", 1);
+        senzaData.setDisponibilita(0);
+        libri.add(senzaData);
+        CatalogoMappato.scrivi(file, libri);
+        catalogo = new CatalogoMappato(file);
+
+        assertEquals(21, catalogo.conta());
+        Libro letto = catalogo.trova(String.format("97888%08d", 7)).orElse(null);
+        assertNotNull(letto);
+        assertEquals("Volume 7", letto.getTitolo());
+        assertEquals(Arrays.asList("Autore 7", "Coautore"), letto.getAutori());
+        assertEquals(LocalDate.of(2007, 1, 1), letto.getDataPubblicazione());
+        assertFalse(catalogo.trova("9788899999999").isPresent());
+
+        Libro calvino = catalogo.trova("9788804668237").get();
+        assertEquals("Città invisibili", calvino.getTitolo());
+        assertNull(calvino.getDataPubblicazione());
+        assertEquals(0, calvino.getDisponibilita());
+
+        List<Libro> intervallo = catalogo.intervallo(String.format("97888%08d", 2), String.format("97888%08d", 5));
+        assertEquals(3, intervallo.size());
+        assertEquals("Volume 2", intervallo.get(0).getTitolo());
+
+        assertEquals(1, catalogo.cerca("Titolo", "volume 12", 100).size());
+        assertEquals(1, catalogo.cerca("Titolo", "CITTÀ", 100).size());
+        assertEquals(20, catalogo.cerca("Autore", "coautore", 100).size());
+        assertEquals(5, catalogo.cerca("Autore", "coautore", 5).size());
+        assertEquals(3, catalogo.cercaPubblicatiTra(IntervalloDate.leggi("2005-2007"), 100).size());
+        assertEquals(2, catalogo.cercaPubblicatiTra(IntervalloDate.leggi("..2005"), 2).size());
+        assertTrue(catalogo.cercaPubblicatiTra(IntervalloDate.leggi("1990"), 100).isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> catalogo.salva(letto));
+    }
+
+    @Test
+    @DisplayName("Catalogo: una nuova pubblicazione viene rimappata, un catalogo assente è vuoto")
+    void testAggiornamento() throws IOException {
+        catalogo = new CatalogoMappato(file);
+        assertEquals(0, catalogo.conta());
+        assertTrue(catalogo.cerca("Titolo", "volume", 100).isEmpty());
+
+        CatalogoMappato.scrivi(file, libri);
+        assertTrue(catalogo.aggiorna());
+        assertEquals(20, catalogo.conta());
+        assertFalse(catalogo.aggiorna(), "Senza modifiche il file non va rimappato");
+
+        libri.get(0).decrementaDisponibilita();
+        libri.remove(1);
+        CatalogoMappato.scrivi(file, libri);
+        assertTrue(catalogo.aggiorna());
+        assertEquals(19, catalogo.conta());
+        assertEquals(1, catalogo.trova(libri.get(0).getIsbn()).get().getDisponibilita());
+    }
+}
@@ -0,0 +1,107 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe CodecRecord.
+ * Verifica che ogni record codificato venga decodificato identico (round-trip),
+ * compresi i casi limite (disponibilità 0, data assente, ISBN non numerici, caratteri accentati).
+ */
+class CodecRecordTest {
+
+    @Test
+    @DisplayName("Libro: round-trip con ISBN numerico e più autori")
+    void testLibro() throws IOException {
+        Libro originale = new Libro("Però che bello: àèìòù", Arrays.asList("Autore Uno", "Autore Due"),
+                LocalDate.of(1999, 12, 31), "9788812345678", 4);
+
+        Libro letto = CodecRecord.leggiLibro(rileggi(out -> CodecRecord.scriviLibro(out, originale)));
+
+        assertEquals(originale.getTitolo(), letto.getTitolo());
+        assertEquals(originale.getAutori(), letto.getAutori());
+        assertEquals(originale.getDataPubblicazione(), letto.getDataPubblicazione());
+        assertEquals(originale.getIsbn(), letto.getIsbn());
+        assertEquals(4, letto.getDisponibilita());
+    }
+
+    @Test
+    @DisplayName("Libro: casi limite (0 copie, data assente, ISBN con zeri iniziali o testuale)")
+    void testLibroCasiLimite() throws IOException {
+        Libro zeri = new Libro("T", Arrays.asList("A"), null, "0012345678901", 1);
+        zeri.setDisponibilita(0);
+        Libro testuale = new Libro("T", Arrays.asList("A"), LocalDate.of(2000, 1, 1), "978-12345", 1);
+
+        Libro lettoZeri = CodecRecord.leggiLibro(rileggi(out -> CodecRecord.scriviLibro(out, zeri)));
+        Libro lettoTestuale = CodecRecord.leggiLibro(rileggi(out -> CodecRecord.scriviLibro(out, testuale)));
+
+        assertEquals("0012345678901", lettoZeri.getIsbn());
+        assertEquals(0, lettoZeri.getDisponibilita());
+        assertNull(lettoZeri.getDataPubblicazione());
+        assertEquals("978-12345", lettoTestuale.getIsbn());
+    }
+
+    @Test
+    @DisplayName("Utente e Prestito: round-trip, il prestito contiene solo le chiavi")
+    void testUtenteEPrestito() throws IOException {
+        Utente utente = new Utente("Giulia", "D'Amico", "0612709896", "giulia.damico@studenti.unisa.it");
+        Libro libro = new Libro("T", Arrays.asList("A"), null, "9788812345678", 1);
+        Prestito prestito = new Prestito(utente, libro, LocalDate.of(2024, 2, 29));
+
+        Utente letto = CodecRecord.leggiUtente(rileggi(out -> CodecRecord.scriviUtente(out, utente)));
+        ChiavePrestito chiave = CodecRecord.leggiChiavePrestito(rileggi(out -> CodecRecord.scriviPrestito(out, prestito)));
+
+        assertEquals("Giulia", letto.getNome());
+        assertEquals("D'Amico", letto.getCognome());
+        assertEquals("0612709896", letto.getMatricola());
+        assertEquals("giulia.damico@studenti.unisa.it", letto.getEmail());
+        assertEquals(ChiavePrestito.di(prestito), chiave);
+    }
+
+    @Test
+    @DisplayName("Varint: valori piccoli occupano un solo byte")
+    void testVarInt() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodecRecord.scriviVarInt(new DataOutputStream(buffer), 127);
+        assertEquals(1, buffer.size());
+
+        for (int valore : new int[]{0, 1, 128, 300, 65535, Integer.MAX_VALUE}) {
+            assertEquals(valore, CodecRecord.leggiVarInt(rileggi(out -> CodecRecord.scriviVarInt(out, valore))));
+        }
+    }
+
+    @Test
+    @DisplayName("Intestazione: firma errata o versione futura vengono rifiutate")
+    void testIntestazione() throws IOException {
+        assertEquals(CodecRecord.VERSIONE, CodecRecord.leggiIntestazione(rileggi(CodecRecord::scriviIntestazione)));
+
+        assertThrows(IOException.class, () -> CodecRecord.leggiIntestazione(rileggi(out -> out.writeInt(0xCAFEBABE))));
+        assertThrows(IOException.class, () -> CodecRecord.leggiIntestazione(rileggi(out -> {
+            out.writeInt(CodecRecord.MAGIC);
+            out.writeShort(CodecRecord.VERSIONE + 1);
+        })));
+    }
+
+    // --- UTILITIES ---
+
+    private interface Scrittura {
+        void esegui(DataOutputStream out) throws IOException;
+    }
+
+    private static DataInputStream rileggi(Scrittura scrittura) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        scrittura.esegui(out);
+        out.flush();
+        return new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+    }
+}
@@ -0,0 +1,105 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe EsportatoreArchivio.
+ * Verifica i file CSV e JSON lines prodotti e che i CSV si possano reimportare.
+ */
+class EsportatoreArchivioTest {
+
+    @TempDir
+    Path cartella;
+
+    private List<Libro> libri;
+    private List<Utente> utenti;
+    private List<Prestito> prestiti;
+
+    @BeforeEach
+    void setUp() {
+        Libro libro = new Libro("Clean Code: \"A Handbook\", 1st ed.", Arrays.asList("Robert C. Martin", "James Coplien"),
+                LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        Utente utente = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        Prestito prestito = new Prestito(utente, libro, LocalDate.of(2024, 5, 10));
+        libri = Collections.singletonList(libro);
+        utenti = Collections.singletonList(utente);
+        prestiti = Collections.singletonList(prestito);
+    }
+
+    @Test
+    @DisplayName("Esportazione CSV: i file si reimportano con gli stessi dati")
+    void testCsv() throws IOException {
+        long scritti = new EsportatoreArchivio(EsportatoreArchivio.Formato.CSV).esporta(cartella.toFile(), libri, utenti, prestiti);
+        assertEquals(3, scritti);
+        assertFalse(new File(cartella.toFile(), "libri.csv.tmp").exists());
+
+        List<Libro> riletti = new ArrayList<>();
+        String csvLibri = leggi("libri.csv");
+        new ImportatoreCsvLibri().importa(new StringReader(csvLibri), isbn -> false, riletti::addAll);
+        Libro libro = riletti.get(0);
+        assertEquals(libri.get(0).getTitolo(), libro.getTitolo());
+        assertEquals(libri.get(0).getAutori(), libro.getAutori());
+        assertEquals(libri.get(0).getDataPubblicazione(), libro.getDataPubblicazione());
+        assertEquals(3, libro.getDisponibilita());
+
+        SincronizzazioneAnagrafica.Differenze differenze = SincronizzazioneAnagrafica.confronta(
+                new StringReader(leggi("utenti.csv")), matricola -> null);
+        assertEquals("anna.verdi@studenti.unisa.it", differenze.getNuovi().get(0).getEmail());
+        assertEquals("matricola,isbn,data_inizio,data_fine_prevista\n0612700002,9780132350884,2024-05-10,"
+                + prestiti.get(0).getDataFinePrevista() + "\n", leggi("prestiti.csv"));
+    }
+
+    @Test
+    @DisplayName("Esportazione interrotta: il file temporaneo della sezione fallita viene eliminato")
+    void testEsportazioneInterrotta() {
+        EsportatoreArchivio esportatore = new EsportatoreArchivio(EsportatoreArchivio.Formato.CSV);
+        assertThrows(IOException.class, () -> esportatore.esporta(cartella.toFile(),
+                w -> esportatore.esportaLibri(libri, w),
+                w -> {
+                    w.write("riga a metà");
+                    throw new IOException("Lettura dei dati fallita");
+                },
+                w -> esportatore.esportaPrestiti(prestiti, w)));
+
+        assertTrue(cartella.resolve("libri.csv").toFile().exists());
+        assertFalse(cartella.resolve("utenti.csv").toFile().exists());
+        assertFalse(cartella.resolve("utenti.csv.tmp").toFile().exists());
+        assertFalse(cartella.resolve("prestiti.csv.tmp").toFile().exists());
+    }
+
+    @Test
+    @DisplayName("Esportazione JSON lines: un oggetto per riga, caratteri speciali in escape")
+    void testJsonLines() throws IOException {
+        new EsportatoreArchivio(EsportatoreArchivio.Formato.JSON_LINES).esporta(cartella.toFile(), libri, utenti, prestiti);
+        assertEquals("{\"isbn\":\"9780132350884\",\"titolo\":\"Clean Code: \\\"A Handbook\\\", 1st ed.\","
+                + "\"autori\":[\"Robert C. Martin\",\"James Coplien\"],\"dataPubblicazione\":\"2008-08-01\",\"disponibilita\":3}\n",
+                leggi("libri.jsonl"));
+        assertEquals("{\"matricola\":\"0612700002\",\"nome\":\"Anna\",\"cognome\":\"Verdi\",\"email\":\"anna.verdi@studenti.unisa.it\"}\n",
+                leggi("utenti.jsonl"));
+        assertTrue(leggi("prestiti.jsonl").startsWith("{\"matricola\":\"0612700002\",\"isbn\":\"9780132350884\",\"dataInizio\":\"2024-05-10\""));
+    }
+
+    private String leggi(String nome) throws IOException {
+        return new String(Files.readAllBytes(cartella.resolve(nome)), StandardCharsets.UTF_8);
+    }
+}
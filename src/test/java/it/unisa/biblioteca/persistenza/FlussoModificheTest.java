@@ -0,0 +1,91 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe FlussoModifiche.
+ * Verifica il formato degli eventi, la numerazione continua tra un avvio e l'altro e la rotazione dei file.
+ */
+class FlussoModificheTest {
+
+    @TempDir
+    Path cartella;
+
+    @Test
+    @DisplayName("Eventi numerati in ordine, con lo stato dell'oggetto al momento della modifica")
+    void testEventi() throws IOException {
+        Libro libro = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        Utente utente = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        File file = cartella.resolve("modifiche.jsonl").toFile();
+
+        try (FlussoModifiche flusso = new FlussoModifiche(file)) {
+            flusso.libro(FlussoModifiche.Tipo.LIBRO_CREATO, libro);
+            flusso.utente(FlussoModifiche.Tipo.UTENTE_CREATO, utente);
+            Prestito prestito = new Prestito(utente, libro, LocalDate.of(2024, 5, 10));
+            flusso.prestito(FlussoModifiche.Tipo.PRESTITO_APERTO, prestito);
+            libro.decrementaDisponibilita();
+            flusso.libro(FlussoModifiche.Tipo.COPIE_DECREMENTATE, libro);
+            assertEquals(4, flusso.getUltimaSeq());
+        }
+
+        List<String> righe = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, righe.size());
+        assertTrue(righe.get(0).startsWith("{\"seq\":1,\"istante\":\""));
+        assertTrue(righe.get(0).endsWith("\"tipo\":\"LIBRO_CREATO\",\"libro\":{\"isbn\":\"9780132350884\",\"titolo\":\"Clean Code\","
+                + "\"autori\":[\"Robert C. Martin\"],\"dataPubblicazione\":\"2008-08-01\",\"disponibilita\":3}}"));
+        assertTrue(righe.get(1).contains("\"tipo\":\"UTENTE_CREATO\",\"utente\":{\"matricola\":\"0612700002\""));
+        assertTrue(righe.get(2).contains("\"tipo\":\"PRESTITO_APERTO\",\"prestito\":{\"matricola\":\"0612700002\",\"isbn\":\"9780132350884\""));
+        assertTrue(righe.get(3).startsWith("{\"seq\":4,"));
+        assertTrue(righe.get(3).endsWith("\"disponibilita\":2}}"));
+    }
+
+    @Test
+    @DisplayName("Rotazione dei file e numerazione ripresa alla riapertura")
+    void testRotazioneERiapertura() throws IOException {
+        Utente utente = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        File file = cartella.resolve("modifiche.jsonl").toFile();
+
+        try (FlussoModifiche flusso = new FlussoModifiche(file, 1000)) {
+            for (int i = 0; i < 30; i++) flusso.utente(FlussoModifiche.Tipo.UTENTE_MODIFICATO, utente);
+        }
+        try (FlussoModifiche flusso = new FlussoModifiche(file, 1000)) {
+            assertEquals(30, flusso.getUltimaSeq());
+            for (int i = 0; i < 5; i++) flusso.utente(FlussoModifiche.Tipo.UTENTE_MODIFICATO, utente);
+        }
+
+        File[] ruotati = cartella.toFile().listFiles((c, nome) -> nome.matches("modifiche\\.\\d{12}\\.jsonl"));
+        assertNotNull(ruotati);
+        assertTrue(ruotati.length > 1);
+        assertTrue(new File(cartella.toFile(), "modifiche.000000000001.jsonl").exists());
+
+        // Tutti i file insieme contengono la sequenza completa, senza buchi né ripetizioni
+        Arrays.sort(ruotati);
+        List<String> righe = new ArrayList<>();
+        for (File f : ruotati) {
+            assertTrue(f.length() >= 1000);
+            righe.addAll(Files.readAllLines(f.toPath(), StandardCharsets.UTF_8));
+        }
+        righe.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        assertEquals(35, righe.size());
+        for (int i = 0; i < righe.size(); i++) {
+            assertTrue(righe.get(i).startsWith("{\"seq\":" + (i + 1) + ","), righe.get(i));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe ImportatoreCsvLibri.
+ * Verifica la lettura dei campi CSV, la validazione dei record, il riconoscimento dei duplicati
+ * e la consegna dei libri a lotti nell'ordine del file.
+ */
+class ImportatoreCsvLibriTest {
+
+    @Test
+    @DisplayName("Importazione: campi tra virgolette, record non validi e duplicati")
+    void testImportazione() throws IOException {
+        String csv = "\uFEFFtitolo,autori,data,isbn,copie\r\n"
+                + "Effective Java,Joshua Bloch,2018-01-06,9780134685991,2\r\n"
+                + "\"Clean Code: A Handbook, 1st ed.\",\"Martin, Robert C.; Coplien, James\",2008,978-0-13-235088-4,3\r\n"
+                + "\r\n"
+                + "\"Il nome della rosa\n(edizione \"\"tascabile\"\")\",Umberto Eco,1980-10-01,9788804668237,1\r\n"
+                + "ISBN errato,Autore,2020-01-01,9788804668230,1\r\n"
+                + "Senza autori,,2020-01-01,9788899000004,1\r\n"
+                + "Data errata,Autore,01/02/2020,9788899000004,1\r\n"
+                + "Copie zero,Autore,2020-01-01,9788899000004,0\r\n"
+                + "Doppione,Autore,2020-01-01,9780134685991,1\r\n"
+                + "Già presente,Autore,2020-01-01,9788800000000,1\r\n"
+                + "Campi mancanti,Autore\r\n";
+        List<List<Libro>> lotti = new ArrayList<>();
+        RiepilogoImportazione riepilogo = new ImportatoreCsvLibri(2).importa(new StringReader(csv),
+                "9788800000000"::equals, lotti::add);
+
+        assertEquals(3, riepilogo.getImportati());
+        assertEquals(2, riepilogo.getDuplicati());
+        assertEquals(5, riepilogo.getScartati());
+        assertEquals(Arrays.asList(2, 1), Arrays.asList(lotti.get(0).size(), lotti.get(1).size()));
+
+        Libro cleanCode = lotti.get(0).get(1);
+        assertEquals("Clean Code: A Handbook, 1st ed.", cleanCode.getTitolo());
+        assertEquals(Arrays.asList("Martin, Robert C.", "Coplien, James"), cleanCode.getAutori());
+        assertEquals("9780132350884", cleanCode.getIsbn());
+        assertEquals(LocalDate.of(2008, 1, 1), cleanCode.getDataPubblicazione());
+        assertEquals("Il nome della rosa\n(edizione \"tascabile\")", lotti.get(1).get(0).getTitolo());
+
+        // Le righe degli errori sono quelle del file, contando l'a capo dentro il titolo
+        assertTrue(riepilogo.getErrori().get(0).startsWith("Riga 7:"), riepilogo.getErrori().get(0));
+        assertTrue(riepilogo.getErrori().get(0).contains("controllo"));
+        assertTrue(riepilogo.getErrori().get(4).startsWith("Riga 13:"), riepilogo.getErrori().get(4));
+    }
+
+    @Test
+    @DisplayName("Importazione: molti lotti arrivano completi e nell'ordine del file")
+    void testMoltiLotti() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        List<String> attesi = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            String isbn = isbn(String.format("97888%07d", i));
+            attesi.add(isbn);
+            csv.append("Volume ").append(i).append(",Autore ").append(i).append(",2000-01-01,").append(isbn).append(",1\n");
+        }
+        List<String> letti = new ArrayList<>();
+        List<Integer> dimensioni = new ArrayList<>();
+        RiepilogoImportazione riepilogo = new ImportatoreCsvLibri(1000).importa(new StringReader(csv.toString()), isbn -> false, lotto -> {
+            dimensioni.add(lotto.size());
+            for (Libro l : lotto) letti.add(l.getIsbn());
+        });
+        assertEquals(2500, riepilogo.getImportati());
+        assertEquals(Arrays.asList(1000, 1000, 500), dimensioni);
+        assertEquals(attesi, letti);
+    }
+
+    @Test
+    @DisplayName("ISBN: trattini ignorati, cifra di controllo verificata")
+    void testIsbn() {
+        assertEquals("9788804668237", ImportatoreCsvLibri.normalizzaIsbn("978-88-04-66823-7"));
+        assertEquals('7', ImportatoreCsvLibri.cifraControlloIsbn("978880466823"));
+        assertThrows(IllegalArgumentException.class, () -> ImportatoreCsvLibri.normalizzaIsbn("9788804668238"));
+        assertThrows(IllegalArgumentException.class, () -> ImportatoreCsvLibri.normalizzaIsbn("880466823X"));
+        assertThrows(IllegalArgumentException.class, () -> ImportatoreCsvLibri.libro(Collections.singletonList("Solo titolo")));
+    }
+
+    private static String isbn(String dodiciCifre) {
+        int somma = 0;
+        for (int i = 0; i < 12; i++) somma += (dodiciCifre.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        return dodiciCifre + (10 - somma % 10) % 10;
+    }
+}
@@ -0,0 +1,128 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe ImportatoreMarc21.
+ * Verifica la lettura dei record ISO 2709, la corrispondenza dei campi MARC con quelli del libro,
+ * lo scarto dei record non validi o danneggiati e la consegna a lotti.
+ */
+class ImportatoreMarc21Test {
+
+    private static final char SF = 0x1F;
+
+    @Test
+    @DisplayName("MARC21: ISBN, titolo, autori e anno dai campi 020, 245, 100/700, 264")
+    void testCampi() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(record(
+                "008", "080801s2008    nju           001 0 eng d",
+                "020", "  " + SF + "a0132350882 (pbk. : alk. paper)",
+                "100", "1 " + SF + "aMartin, Robert C.,",
+                "245", "10" + SF + "aClean code :" + SF + "ba handbook of agile software craftsmanship /" + SF + "cRobert C. Martin.",
+                "264", " 1" + SF + "aUpper Saddle River, NJ :" + SF + "bPrentice Hall," + SF + "c[2009]",
+                "700", "1 " + SF + "aFeathers, Michael C.")
+        );
+        file.write('\n');
+        file.write(record(
+                "020", "  " + SF + "a9788804668237",
+                "100", "1 " + SF + "aEco, Umberto.",
+                "245", "12" + SF + "aIl nome della rosa.",
+                "260", "  " + SF + "aMilano :" + SF + "bBompiani," + SF + "c1980.")
+        );
+
+        List<Libro> libri = new ArrayList<>();
+        RiepilogoImportazione riepilogo = new ImportatoreMarc21(10, 2).importa(new ByteArrayInputStream(file.toByteArray()), isbn -> false, libri::addAll);
+
+        assertEquals(2, riepilogo.getImportati());
+        Libro cleanCode = libri.get(0);
+        assertEquals("9780132350884", cleanCode.getIsbn());
+        assertEquals("Clean code : a handbook of agile software craftsmanship", cleanCode.getTitolo());
+        assertEquals(Arrays.asList("Martin, Robert C.", "Feathers, Michael C."), cleanCode.getAutori());
+        assertEquals(LocalDate.of(2009, 1, 1), cleanCode.getDataPubblicazione());
+        assertEquals(2, cleanCode.getDisponibilita());
+        Libro rosa = libri.get(1);
+        assertEquals("Il nome della rosa", rosa.getTitolo());
+        assertEquals(Arrays.asList("Eco, Umberto"), rosa.getAutori());
+        assertEquals(1980, rosa.getDataPubblicazione().getYear());
+    }
+
+    @Test
+    @DisplayName("MARC21: record non validi scartati, duplicati ignorati, lettura ripresa dopo un record danneggiato")
+    void testScarti() throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        for (int i = 0; i < 25; i++) file.write(libro(isbn(String.format("97888%07d", i)), "Volume " + i));
+        file.write(libro("9788800000001", "ISBN errato"));
+        file.write(record("020", "  " + SF + "a9788804668237", "245", "10" + SF + "aSenza autore"));
+        file.write("xxxxxintestazione danneggiata".getBytes(StandardCharsets.US_ASCII));
+        file.write(0x1D);
+        file.write(libro(isbn("978880000000"), "Doppione"));
+        file.write(libro("9788804668237", "Ultimo"));
+
+        List<Integer> lotti = new ArrayList<>();
+        RiepilogoImportazione riepilogo = new ImportatoreMarc21(10, 1).importa(new ByteArrayInputStream(file.toByteArray()),
+                isbn -> false, lotto -> lotti.add(lotto.size()));
+
+        assertEquals(26, riepilogo.getImportati());
+        assertEquals(1, riepilogo.getDuplicati());
+        assertEquals(3, riepilogo.getScartati());
+        assertEquals(Arrays.asList(10, 10, 6), lotti);
+        assertTrue(riepilogo.getErrori().get(0).startsWith("Record 26: ISBN"), riepilogo.getErrori().get(0));
+        assertTrue(riepilogo.getErrori().get(1).contains("Autore"));
+        assertTrue(riepilogo.getErrori().get(2).contains("danneggiato"));
+    }
+
+    @Test
+    @DisplayName("MARC21: un file troncato interrompe l'importazione con un errore")
+    void testFileTroncato() throws IOException {
+        byte[] completo = libro("9788804668237", "Il nome della rosa");
+        byte[] troncato = Arrays.copyOf(completo, completo.length - 10);
+        assertThrows(IOException.class, () -> new ImportatoreMarc21().importa(new ByteArrayInputStream(troncato), isbn -> false, lotto -> { }));
+    }
+
+    private static byte[] libro(String isbn, String titolo) {
+        return record("020", "  " + SF + "a" + isbn, "100", "1 " + SF + "aRossi, Mario", "245", "10" + SF + "a" + titolo,
+                "264", " 1" + SF + "c2020");
+    }
+
+    /** Record ISO 2709 in UTF-8 con i campi indicati (coppie tag, contenuto). */
+    private static byte[] record(String... campi) {
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        ByteArrayOutputStream dati = new ByteArrayOutputStream();
+        for (int i = 0; i < campi.length; i += 2) {
+            byte[] campo = (campi[i + 1] + (char) 0x1E).getBytes(StandardCharsets.UTF_8);
+            byte[] voce = String.format("%s%04d%05d", campi[i], campo.length, dati.size()).getBytes(StandardCharsets.US_ASCII);
+            directory.write(voce, 0, voce.length);
+            dati.write(campo, 0, campo.length);
+        }
+        directory.write(0x1E);
+        int base = 24 + directory.size();
+        int lunghezza = base + dati.size() + 1;
+        byte[] intestazione = String.format("%05dnam a22%05d   4500", lunghezza, base).getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(intestazione, 0, intestazione.length);
+        record.write(directory.toByteArray(), 0, directory.size());
+        record.write(dati.toByteArray(), 0, dati.size());
+        record.write(0x1D);
+        return record.toByteArray();
+    }
+
+    private static String isbn(String dodiciCifre) {
+        int somma = 0;
+        for (int i = 0; i < 12; i++) somma += (dodiciCifre.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        return dodiciCifre + (10 - somma % 10) % 10;
+    }
+}
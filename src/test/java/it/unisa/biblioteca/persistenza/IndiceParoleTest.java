@@ -0,0 +1,73 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe IndiceParole.
+ * Verifica la ricerca per parole (anche iniziali e senza accenti) e l'aggiornamento dell'indice.
+ */
+class IndiceParoleTest {
+
+    private IndiceParole<Libro> titoli;
+    private IndiceParole<Libro> autori;
+    private Libro cleanCode;
+    private Libro refactoring;
+    private Libro promessi;
+
+    @BeforeEach
+    void setUp() {
+        titoli = new IndiceParole<>(Libro::getTitolo);
+        autori = new IndiceParole<>(l -> String.join(" ", l.getAutori()));
+        cleanCode = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        refactoring = new Libro("Refactoring: Improving the Design of Existing Code", Arrays.asList("Martin Fowler", "Kent Beck"),
+                LocalDate.of(1999, 7, 8), "9780201485677", 1);
+        promessi = new Libro("I promessi sposi", Arrays.asList("Alessandro Manzoni"), LocalDate.of(1840, 1, 1), "9788804668237", 2);
+        for (Libro l : Arrays.asList(cleanCode, refactoring, promessi)) {
+            titoli.aggiungi(l);
+            autori.aggiungi(l);
+        }
+    }
+
+    @Test
+    @DisplayName("Ricerca: tutte le parole, anche solo l'inizio, senza maiuscole né accenti")
+    void testRicerca() {
+        assertEquals(new HashSet<>(Arrays.asList(cleanCode, refactoring)), titoli.cerca("code"));
+        assertEquals(Collections.singleton(refactoring), titoli.cerca("CODE design"));
+        assertEquals(Collections.singleton(cleanCode), autori.cerca("mart rob"));
+        assertEquals(new HashSet<>(Arrays.asList(cleanCode, refactoring)), autori.cerca("Martin"));
+        assertEquals(Collections.singleton(promessi), titoli.cerca("Promèssi, spo"));
+        assertTrue(titoli.cerca("code sposi").isEmpty());
+        assertTrue(titoli.cerca("  ;; ").isEmpty());
+        assertEquals(Arrays.asList("perche", "l", "eta", "e", "2"), IndiceParole.parole("Perché l'età è l'età 2"));
+    }
+
+    @Test
+    @DisplayName("Modifica e rimozione: l'indice segue i libri")
+    void testAggiornamento() {
+        cleanCode.setTitolo("Clean Architecture");
+        assertEquals(Collections.singleton(cleanCode), titoli.cerca("clean"));
+        titoli.aggiorna(cleanCode);
+        assertEquals(Collections.singleton(refactoring), titoli.cerca("code"));
+        assertEquals(Collections.singleton(cleanCode), titoli.cerca("archi"));
+
+        titoli.rimuovi(refactoring);
+        assertTrue(titoli.cerca("code").isEmpty());
+        assertEquals(2, titoli.dimensione());
+
+        // Molte modifiche: i numeri interni vengono ricompattati senza perdere nulla
+        for (int i = 0; i < 3000; i++) titoli.aggiorna(promessi);
+        assertEquals(Collections.singleton(promessi), titoli.cerca("sposi"));
+        assertEquals(Collections.singleton(cleanCode), titoli.cerca("clean"));
+        assertEquals(2, titoli.dimensione());
+    }
+}
@@ -0,0 +1,67 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe IndiceTrigrammi.
+ * Verifica che la ricerca dia gli stessi risultati di {@code toLowerCase().contains()} e che l'indice
+ * segua inserimenti, modifiche e rimozioni.
+ */
+class IndiceTrigrammiTest {
+
+    @Test
+    @DisplayName("Ricerca: stessi risultati di contains, anche per testi corti")
+    void testComeContains() {
+        IndiceTrigrammi<Utente> email = new IndiceTrigrammi<>(Utente::getEmail);
+        List<Utente> utenti = new ArrayList<>();
+        String[] cognomi = {"Rossi", "Verdi", "Bianchi", "Esposito", "Russo", "Romano", "Colombo", "Ricci"};
+        for (int i = 0; i < 500; i++) {
+            String cognome = cognomi[i % cognomi.length];
+            Utente u = new Utente("Nome", cognome, String.format("06127%05d", i), "n." + cognome.toLowerCase() + i + "@studenti.unisa.it");
+            utenti.add(u);
+            email.aggiungi(u);
+        }
+        for (String cercato : Arrays.asList("ROSSI1", "sso", "o4", "x", "", "unisa.it", "ssi12@", "bianchi99@stud", "zzz")) {
+            Set<Utente> attesi = new HashSet<>();
+            for (Utente u : utenti) if (u.getEmail().toLowerCase().contains(cercato.toLowerCase())) attesi.add(u);
+            assertEquals(attesi, email.cerca(cercato), cercato);
+        }
+    }
+
+    @Test
+    @DisplayName("Modifica e rimozione: i vecchi valori non vengono più trovati")
+    void testAggiornamento() {
+        IndiceTrigrammi<Utente> cognomi = new IndiceTrigrammi<>(Utente::getCognome);
+        Utente anna = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        Utente mario = new Utente("Mario", "Rossi", "0612700001", "mario.rossi@studenti.unisa.it");
+        cognomi.aggiungi(anna);
+        cognomi.aggiungi(mario);
+
+        anna.setCognome("Verdi Bianchi");
+        cognomi.aggiorna(anna);
+        assertEquals(Collections.singleton(anna), cognomi.cerca("bianc"));
+        cognomi.rimuovi(mario);
+        assertTrue(cognomi.cerca("ossi").isEmpty());
+        assertEquals(1, cognomi.dimensione());
+
+        // Molte modifiche: i numeri spenti vengono eliminati ricostruendo l'indice
+        for (int i = 0; i < 3000; i++) {
+            anna.setCognome(i % 2 == 0 ? "Neri" : "Gialli");
+            cognomi.aggiorna(anna);
+        }
+        assertEquals(Collections.singleton(anna), cognomi.cerca("iall"));
+        assertTrue(cognomi.cerca("neri").isEmpty());
+        assertEquals(1, cognomi.dimensione());
+    }
+}
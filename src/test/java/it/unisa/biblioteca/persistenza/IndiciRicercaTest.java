@@ -0,0 +1,99 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe IndiciRicerca.
+ * Verifica i prestiti per libro e per utente, le ricerche per intervallo di date
+ * e la scelta dell'indice per ogni criterio di ricerca.
+ */
+class IndiciRicercaTest {
+
+    @Test
+    @DisplayName("Criteri di ricerca: testo in qualunque punto, parole degli autori, criteri non indicizzati")
+    void testCriteri() {
+        IndiciRicerca indici = new IndiciRicerca();
+        Libro libro = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        Utente utente = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        indici.aggiungiLibro(libro);
+        indici.aggiungiUtente(utente);
+
+        assertEquals(Collections.singleton(libro), indici.cercaLibri("Titolo", "an co"));
+        assertEquals(Collections.singleton(libro), indici.cercaLibri("ISBN", "2350"));
+        assertEquals(Collections.singleton(libro), indici.cercaLibri("Autore", "mart"));
+        assertTrue(indici.cercaLibri("Autore", "artin").isEmpty());
+        assertNull(indici.cercaLibri("Anno", "2008"));
+
+        utente.setEmail("a.verdi@unisa.it");
+        indici.aggiornaUtente(utente);
+        assertEquals(Collections.singleton(utente), indici.cercaUtenti("Email", "a.verdi@u"));
+        assertEquals(Collections.singleton(utente), indici.cercaUtenti("Matricola", "127"));
+        assertTrue(indici.cercaUtenti("Email", "studenti").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Prestiti per libro e per utente, aggiornati a ogni apertura e chiusura")
+    void testPrestiti() {
+        IndiciRicerca indici = new IndiciRicerca();
+        Libro libro = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        Utente anna = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        Utente mario = new Utente("Mario", "Rossi", "0612700001", "mario.rossi@studenti.unisa.it");
+        Prestito p1 = new Prestito(anna, libro, LocalDate.of(2024, 5, 10));
+        Prestito p2 = new Prestito(mario, libro, LocalDate.of(2024, 5, 11));
+        indici.aggiungiPrestito(p1);
+        indici.aggiungiPrestito(p2);
+
+        assertEquals(Arrays.asList(p1, p2), new ArrayList<>(indici.prestitiDelLibro("9780132350884")));
+        assertEquals(Collections.singleton(p1), indici.prestitiDellUtente("0612700002"));
+        assertThrows(UnsupportedOperationException.class, () -> indici.prestitiDelLibro("9780132350884").clear());
+
+        indici.rimuoviPrestito(p1);
+        assertEquals(Collections.singleton(p2), indici.prestitiDelLibro("9780132350884"));
+        assertTrue(indici.prestitiDellUtente("0612700002").isEmpty());
+        indici.rimuoviPrestito(p2);
+        assertTrue(indici.prestitiDelLibro("9780132350884").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Intervalli di date: anni, date, estremi aperti e libri modificati")
+    void testIntervalliDate() {
+        IndiciRicerca indici = new IndiciRicerca();
+        List<Libro> libri = new ArrayList<>();
+        for (int anno = 1985; anno <= 2024; anno++) {
+            Libro l = new Libro("Volume " + anno, Arrays.asList("Autore"), LocalDate.of(anno, 6, 15), String.format("97888%08d", anno), 1);
+            libri.add(l);
+            indici.aggiungiLibro(l);
+        }
+
+        // "19" non trova più il 2019: è l'anno 19, non un pezzo di testo
+        assertTrue(indici.libriPubblicatiTra(IntervalloDate.leggi("19")).isEmpty());
+        assertEquals(libri.subList(5, 15), indici.libriPubblicatiTra(IntervalloDate.leggi("1990-1999")));
+        assertEquals(libri.subList(5, 15), indici.libriPubblicatiTra(IntervalloDate.leggi("1990 .. 1999")));
+        assertEquals(libri.subList(38, 40), indici.libriPubblicatiTra(IntervalloDate.leggi("2023..")));
+        assertEquals(libri.subList(0, 2), indici.libriPubblicatiTra(IntervalloDate.leggi("..1986")));
+        assertEquals(libri.subList(16, 17), indici.libriPubblicatiTra(IntervalloDate.leggi("2001-06-15..2002-06-14")));
+        assertThrows(IllegalArgumentException.class, () -> IntervalloDate.leggi("2000-1990"));
+        assertThrows(IllegalArgumentException.class, () -> IntervalloDate.leggi("ieri"));
+        assertThrows(IllegalArgumentException.class, () -> IntervalloDate.leggi(".."));
+
+        Libro spostato = libri.get(0);
+        spostato.setDataPubblicazione(LocalDate.of(2030, 1, 1));
+        indici.aggiornaLibro(spostato);
+        assertEquals(Collections.singletonList(spostato), indici.libriPubblicatiTra(IntervalloDate.leggi("2030")));
+        indici.rimuoviLibro(libri.get(1));
+        assertTrue(indici.libriPubblicatiTra(IntervalloDate.leggi("..1989")).stream().noneMatch(l -> l == spostato || l == libri.get(1)));
+        assertEquals(3, indici.libriPubblicatiTra(IntervalloDate.leggi("..1989")).size());
+    }
+}
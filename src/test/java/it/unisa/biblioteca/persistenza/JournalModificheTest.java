@@ -0,0 +1,215 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe JournalModifiche.
+ * Verifica scrittura e rilettura dei record, il salto dei record già inclusi
+ * nello snapshot e il recupero da una scrittura interrotta.
+ */
+class JournalModificheTest {
+
+    @TempDir
+    Path cartella;
+
+    private File fileJournal;
+    private Libro libro;
+    private Utente utente;
+
+    @BeforeEach
+    void setUp() {
+        fileJournal = cartella.resolve("test.journal").toFile();
+        libro = new Libro("Clean Code", Arrays.asList("Robert C. Martin"), LocalDate.of(2008, 8, 1), "9780132350884", 3);
+        utente = new Utente("Mario", "Rossi", "0612700001", "mario.rossi@studenti.unisa.it");
+    }
+
+    @Test
+    @DisplayName("Replay: i record vengono riletti nell'ordine di scrittura")
+    void testScritturaERilettura() throws IOException {
+        try (JournalModifiche journal = new JournalModifiche(fileJournal)) {
+            journal.scriviLibro(libro);
+            journal.scriviUtente(utente);
+            journal.scriviPrestito(new Prestito(utente, libro, LocalDate.of(2024, 3, 1)));
+            journal.scriviRimozioneLibro("9780132350884");
+        }
+
+        Registro registro = new Registro();
+        int applicati = new JournalModifiche(fileJournal).rileggi(0, registro);
+
+        assertEquals(4, applicati);
+        assertEquals(Arrays.asList(
+                "libro:9780132350884:3",
+                "utente:0612700001:Rossi",
+                "prestito:0612700001:9780132350884:2024-03-01",
+                "libroRimosso:9780132350884"), registro.eventi);
+    }
+
+    @Test
+    @DisplayName("Replay: i record già inclusi nello snapshot vengono saltati")
+    void testSaltoRecordSnapshot() throws IOException {
+        long seqSnapshot;
+        try (JournalModifiche journal = new JournalModifiche(fileJournal)) {
+            journal.scriviLibro(libro);
+            seqSnapshot = journal.scriviUtente(utente);
+            libro.setDisponibilita(0);
+            journal.scriviLibro(libro);
+        }
+
+        Registro registro = new Registro();
+        JournalModifiche riletto = new JournalModifiche(fileJournal);
+        riletto.rileggi(seqSnapshot, registro);
+
+        assertEquals(Arrays.asList("libro:9780132350884:0"), registro.eventi);
+        assertEquals(seqSnapshot + 1, riletto.getUltimaSeq(), "La sequenza deve proseguire dall'ultimo record");
+    }
+
+    @Test
+    @DisplayName("Recupero: una coda scritta a metà viene scartata e troncata")
+    void testCodaIncompleta() throws IOException {
+        try (JournalModifiche journal = new JournalModifiche(fileJournal)) {
+            journal.scriviLibro(libro);
+        }
+        long lunghezzaValida = fileJournal.length();
+
+        // Simulo un crash a metà scrittura: lunghezza dichiarata ma dati mancanti
+        try (FileOutputStream fos = new FileOutputStream(fileJournal, true)) {
+            fos.write(new byte[]{0, 0, 0, 50, 1, 2, 3});
+        }
+
+        Registro registro = new Registro();
+        JournalModifiche riletto = new JournalModifiche(fileJournal);
+        assertEquals(1, riletto.rileggi(0, registro));
+        assertEquals(lunghezzaValida, fileJournal.length(), "Il file deve essere troncato all'ultimo record valido");
+
+        // Le nuove scritture proseguono dopo l'ultimo record valido
+        riletto.scriviRimozioneUtente("0612700001");
+        riletto.close();
+        assertEquals(2, new JournalModifiche(fileJournal).rileggi(0, new Registro()));
+    }
+
+    @Test
+    @DisplayName("Checksum: un record danneggiato interrompe la lettura e il resto del file viene conservato")
+    void testRecordDanneggiato() throws IOException {
+        try (JournalModifiche journal = new JournalModifiche(fileJournal)) {
+            journal.scriviLibro(libro);
+            journal.scriviUtente(utente);
+            journal.scriviRimozioneLibro(libro.getIsbn());
+        }
+        byte[] originale = Files.readAllBytes(fileJournal.toPath());
+        long dopoPrimo;
+        try (JournalModifiche journal = new JournalModifiche(cartella.resolve("primo.journal").toFile())) {
+            journal.scriviLibro(libro);
+            dopoPrimo = cartella.resolve("primo.journal").toFile().length();
+        }
+
+        // Un bit cambiato nei dati del secondo record: la lunghezza resta plausibile, il CRC no
+        try (RandomAccessFile raf = new RandomAccessFile(fileJournal, "rw")) {
+            raf.seek(dopoPrimo + 4 + 10);
+            int valore = raf.read();
+            raf.seek(dopoPrimo + 4 + 10);
+            raf.write(valore ^ 0x01);
+        }
+
+        Registro registro = new Registro();
+        assertEquals(1, new JournalModifiche(fileJournal).rileggi(0, registro));
+        assertEquals(Arrays.asList("libro:9780132350884:3"), registro.eventi);
+        assertEquals(dopoPrimo, fileJournal.length());
+        File copia = cartella.resolve("test.journal.danneggiato").toFile();
+        assertEquals(originale.length, copia.length(), "I record successivi vanno conservati per un recupero manuale");
+    }
+
+    @Test
+    @DisplayName("Checksum: una lunghezza oltre la fine del file viene trattata come coda incompleta")
+    void testLunghezzaEccessiva() throws IOException {
+        try (JournalModifiche journal = new JournalModifiche(fileJournal)) {
+            journal.scriviLibro(libro);
+        }
+        long lunghezzaValida = fileJournal.length();
+        try (FileOutputStream fos = new FileOutputStream(fileJournal, true)) {
+            // 2 GB dichiarati: non deve essere allocato nulla
+            fos.write(new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14});
+        }
+
+        assertEquals(1, new JournalModifiche(fileJournal).rileggi(0, new Registro()));
+        assertEquals(lunghezzaValida, fileJournal.length());
+        assertFalse(cartella.resolve("test.journal.danneggiato").toFile().exists());
+    }
+
+    @Test
+    @DisplayName("Svuota: il journal riparte vuoto ma la sequenza non torna indietro")
+    void testSvuota() throws IOException {
+        JournalModifiche journal = new JournalModifiche(fileJournal);
+        journal.scriviLibro(libro);
+        long seq = journal.scriviLibro(libro);
+        journal.svuota();
+
+        assertEquals(0, journal.dimensione());
+        assertTrue(journal.scriviUtente(utente) > seq);
+        journal.close();
+    }
+
+    @Test
+    @DisplayName("Lettura incrementale: solo i record nuovi, la coda in scrittura non viene troncata")
+    void testLetturaIncrementale() throws IOException {
+        JournalModifiche scrittore = new JournalModifiche(fileJournal);
+        JournalModifiche lettore = new JournalModifiche(fileJournal);
+        scrittore.scriviLibro(libro);
+        assertEquals(1, lettore.rileggiNuovi(0, new Registro(), false));
+
+        scrittore.scriviUtente(utente);
+        scrittore.close();
+        // Un altro processo sta scrivendo un record: la coda incompleta va solo saltata
+        try (FileOutputStream fos = new FileOutputStream(fileJournal, true)) {
+            fos.write(new byte[]{0, 0, 0, 50, 1, 2, 3});
+        }
+        long lunghezza = fileJournal.length();
+        Registro registro = new Registro();
+        assertEquals(1, lettore.rileggiNuovi(lettore.getUltimaSeq(), registro, false));
+        assertEquals(Arrays.asList("utente:0612700001:Rossi"), registro.eventi);
+        assertEquals(lunghezza, fileJournal.length());
+        assertFalse(lettore.isLettoTutto());
+
+        // Il file viene archiviato e ricreato: la lettura riparte dall'inizio del nuovo file
+        scrittore.archivia(cartella.resolve("test.journal.bak").toFile());
+        scrittore.scriviRimozioneLibro(libro.getIsbn());
+        scrittore.scriviRimozioneUtente(utente.getMatricola());
+        scrittore.close();
+        registro = new Registro();
+        assertEquals(2, lettore.rileggiNuovi(lettore.getUltimaSeq(), registro, false));
+        assertEquals(Arrays.asList("libroRimosso:9780132350884", "utenteRimosso:0612700001"), registro.eventi);
+        assertTrue(lettore.isLettoTutto());
+    }
+
+    /**
+     * Destinatario che annota in forma testuale le modifiche ricevute.
+     */
+    private static class Registro implements JournalModifiche.Destinatario {
+        final List<String> eventi = new ArrayList<>();
+
+        @Override public void libro(Libro l) { eventi.add("libro:" + l.getIsbn() + ":" + l.getDisponibilita()); }
+        @Override public void libroRimosso(String isbn) { eventi.add("libroRimosso:" + isbn); }
+        @Override public void utente(Utente u) { eventi.add("utente:" + u.getMatricola() + ":" + u.getCognome()); }
+        @Override public void utenteRimosso(String matricola) { eventi.add("utenteRimosso:" + matricola); }
+        @Override public void prestito(ChiavePrestito c) { eventi.add("prestito:" + c.getMatricola() + ":" + c.getIsbn() + ":" + c.getDataInizio()); }
+        @Override public void prestitoRimosso(ChiavePrestito c) { eventi.add("prestitoRimosso:" + c.getMatricola() + ":" + c.getIsbn() + ":" + c.getDataInizio()); }
+    }
+}
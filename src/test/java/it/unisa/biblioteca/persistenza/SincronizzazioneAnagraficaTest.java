@@ -0,0 +1,56 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per la classe SincronizzazioneAnagrafica.
+ * Verifica il confronto dell'elenco degli studenti con l'anagrafica per matricola
+ * e l'aggiornamento dei soli dati cambiati.
+ */
+class SincronizzazioneAnagraficaTest {
+
+    @Test
+    @DisplayName("Elenco studenti: nuovi, cambiati, invariati e righe non valide")
+    void testConfronto() throws IOException {
+        Map<String, Utente> anagrafica = new HashMap<>();
+        Utente anna = new Utente("Anna", "Verdi", "0612700002", "anna.verdi@studenti.unisa.it");
+        Utente mario = new Utente("Mario", "Rossi", "0612700001", "mario.rossi@studenti.unisa.it");
+        anagrafica.put(anna.getMatricola(), anna);
+        anagrafica.put(mario.getMatricola(), mario);
+
+        String elenco = "matricola,nome,cognome,email\n"
+                + "0612700001,Mario,Rossi,mario.rossi@studenti.unisa.it\n"
+                + "0612700002,Anna,Verdi Bianchi,a.verdibianchi@studenti.unisa.it\n"
+                + "0612700003,Luca,Neri,luca.neri@studenti.unisa.it\n"
+                + "0612700004,Sara,Blu,sara.blu-senza-dominio\n"
+                + "123,Piero,Gialli,piero.gialli@studenti.unisa.it\n"
+                + "0612700003,Luca,Neri,luca.neri@studenti.unisa.it\n";
+        SincronizzazioneAnagrafica.Differenze differenze = SincronizzazioneAnagrafica.confronta(new StringReader(elenco), anagrafica::get);
+
+        assertEquals(1, differenze.getNuovi().size());
+        assertEquals("Neri", differenze.getNuovi().get(0).getCognome());
+        assertEquals(1, differenze.getAggiornati().size());
+        assertEquals(1, differenze.getRiepilogo().getDuplicati());
+        assertEquals(3, differenze.getRiepilogo().getScartati());
+        assertTrue(differenze.getRiepilogo().getErrori().get(2).startsWith("Riga 7: Matricola ripetuta"));
+        // Il confronto non modifica l'anagrafica
+        assertEquals("Verdi", anna.getCognome());
+
+        long seqMario = mario.getSeqModifica();
+        assertTrue(SincronizzazioneAnagrafica.aggiorna(anna, differenze.getAggiornati().get(0)));
+        assertEquals("Verdi Bianchi", anna.getCognome());
+        assertEquals("a.verdibianchi@studenti.unisa.it", anna.getEmail());
+        assertEquals("Anna", anna.getNome());
+        assertFalse(SincronizzazioneAnagrafica.aggiorna(mario, new Utente("Mario", "Rossi", "0612700001", "mario.rossi@studenti.unisa.it")));
+        assertEquals(seqMario, mario.getSeqModifica());
+    }
+}
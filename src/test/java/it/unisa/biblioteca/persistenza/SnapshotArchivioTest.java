@@ -0,0 +1,153 @@
+package it.unisa.biblioteca.persistenza;
+
+import it.unisa.biblioteca.model.Libro;
+import it.unisa.biblioteca.model.Prestito;
+import it.unisa.biblioteca.model.Utente;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test per le classi SnapshotArchivio e MappaIdentita.
+ * Verifica la lettura indipendente delle sezioni, la lettura parallela dei blocchi
+ * il rilevamento dei dati danneggiati e il ricollegamento dei prestiti.
+ */
+class SnapshotArchivioTest {
+
+    @TempDir
+    Path cartella;
+
+    private File fileSnapshot;
+    private List<Libro> libri;
+    private List<Utente> utenti;
+    private List<Prestito> prestiti;
+
+    @BeforeEach
+    void setUp() {
+        fileSnapshot = cartella.resolve("test.dat").toFile();
+        libri = new ArrayList<>();
+        utenti = new ArrayList<>();
+        prestiti = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            libri.add(new Libro("Volume " + i, Arrays.asList("Autore"), LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 2));
+            utenti.add(new Utente("Nome" + i, "Cognome" + i, "061270000" + i, "utente" + i + "@studenti.unisa.it"));
+        }
+        for (int i = 0; i < 3; i++) {
+            Prestito p = new Prestito(utenti.get(i), libri.get(2 - i), LocalDate.of(2024, 1, 1 + i));
+            utenti.get(i).aggiungiPrestito(p);
+            prestiti.add(p);
+        }
+    }
+
+    @Test
+    @DisplayName("Sezioni: ogni sezione può essere letta da sola")
+    void testLetturaSezioni() throws IOException {
+        SnapshotArchivio.scrivi(fileSnapshot, libri, utenti, prestiti, 7);
+
+        assertEquals(libri, SnapshotArchivio.leggiLibri(fileSnapshot));
+        assertEquals(utenti, SnapshotArchivio.leggiUtenti(fileSnapshot));
+        List<ChiavePrestito> chiavi = SnapshotArchivio.leggiChiaviPrestiti(fileSnapshot);
+        assertEquals(3, chiavi.size());
+        assertEquals(ChiavePrestito.di(prestiti.get(1)), chiavi.get(1));
+    }
+
+    @Test
+    @DisplayName("Caricamento completo: i prestiti puntano alle istanze lette")
+    void testCollegamentoPrestiti() throws IOException {
+        SnapshotArchivio.scrivi(fileSnapshot, libri, utenti, prestiti, 7);
+
+        ContenutoArchivio contenuto = SnapshotArchivio.leggi(fileSnapshot);
+
+        assertEquals(7, contenuto.getSeqJournal());
+        assertEquals(3, contenuto.getPrestiti().size());
+        for (int i = 0; i < 3; i++) {
+            Prestito p = contenuto.getPrestiti().get(i);
+            assertSame(contenuto.getUtenti().get(i), p.getUtente());
+            assertSame(contenuto.getLibri().get(2 - i), p.getLibro());
+            assertEquals(Collections.singletonList(p), p.getUtente().getPrestitiAttivi());
+        }
+    }
+
+    @Test
+    @DisplayName("Blocchi: una sezione di più blocchi mantiene l'ordine dei record")
+    void testSezioneSuPiuBlocchi() throws IOException {
+        int n = BlocchiSezione.RECORD_PER_BLOCCO * 2 + 17;
+        List<Libro> molti = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            molti.add(new Libro("Volume " + i, Arrays.asList("Autore"), null, String.format("97888%08d", i), 1));
+        }
+        SnapshotArchivio.scrivi(fileSnapshot, molti, utenti, prestiti, 0);
+
+        ContenutoArchivio contenuto = SnapshotArchivio.leggi(fileSnapshot);
+
+        assertEquals(molti, contenuto.getLibri());
+        assertEquals(3, contenuto.getPrestiti().size());
+    }
+
+    @Test
+    @DisplayName("Compressione: file più piccolo e stessi dati riletti")
+    void testCompressione() throws IOException {
+        List<Libro> molti = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            molti.add(new Libro("Manuale di programmazione, volume " + i, Arrays.asList("Autore Ricorrente"),
+                    LocalDate.of(2000, 1, 1), String.format("97888%08d", i), 1));
+        }
+        File compresso = cartella.resolve("compresso.dat").toFile();
+        SnapshotArchivio.scrivi(fileSnapshot, molti, utenti, prestiti, 0, false);
+        SnapshotArchivio.scrivi(compresso, molti, utenti, prestiti, 0, true);
+
+        assertTrue(compresso.length() < fileSnapshot.length() / 2);
+        ContenutoArchivio contenuto = SnapshotArchivio.leggi(compresso);
+        assertEquals(molti, contenuto.getLibri());
+        assertEquals("Manuale di programmazione, volume 4999", contenuto.getLibri().get(4999).getTitolo());
+        assertEquals(3, contenuto.getPrestiti().size());
+    }
+
+    @Test
+    @DisplayName("Checksum: un byte alterato in un blocco o nell'indice viene rilevato")
+    void testChecksum() throws IOException {
+        SnapshotArchivio.scrivi(fileSnapshot, libri, utenti, prestiti, 0);
+        alteraByte(fileSnapshot.length() - 5);
+        assertThrows(IOException.class, () -> SnapshotArchivio.leggi(fileSnapshot));
+
+        SnapshotArchivio.scrivi(fileSnapshot, libri, utenti, prestiti, 0);
+        alteraByte(10); // Dentro la sequenza del journal, coperta dal CRC dell'indice
+        assertThrows(IOException.class, () -> SnapshotArchivio.leggi(fileSnapshot));
+    }
+
+    @Test
+    @DisplayName("MappaIdentita: i prestiti con riferimenti mancanti vengono scartati")
+    void testRiferimentiMancanti() {
+        MappaIdentita mappa = new MappaIdentita(libri.subList(0, 1), utenti.subList(0, 1));
+
+        List<Prestito> collegati = mappa.collegaTutti(Arrays.asList(
+                new ChiavePrestito("0612700000", "9788800000000", LocalDate.of(2024, 1, 1)),
+                new ChiavePrestito("0612700000", "9788899999999", LocalDate.of(2024, 1, 1)),
+                new ChiavePrestito("0612799999", "9788800000000", LocalDate.of(2024, 1, 1))));
+
+        assertEquals(1, collegati.size());
+        assertEquals(2, mappa.getPrestitiScartati());
+    }
+
+    private void alteraByte(long posizione) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(fileSnapshot, "rw")) {
+            raf.seek(posizione);
+            int valore = raf.read();
+            raf.seek(posizione);
+            raf.write(valore ^ 0xFF);
+        }
+    }
+}